@@ -22,13 +22,18 @@ import org.ethereum.crypto.HashUtil;
 import org.ethereum.datasource.*;
 import org.ethereum.datasource.inmem.HashMapDB;
 import org.ethereum.datasource.leveldb.LevelDbDataSource;
+import org.ethereum.datasource.lsm.LsmDbDataSource;
 import org.ethereum.datasource.rocksdb.RocksDbDataSource;
 import org.ethereum.db.*;
 import org.ethereum.listener.CompositeEthereumListener;
 import org.ethereum.listener.EthereumListener;
+import org.ethereum.metrics.Metric;
+import org.ethereum.metrics.Metrics;
 import org.ethereum.net.eth.handler.Eth63;
 import org.ethereum.sync.FastSyncManager;
+import org.ethereum.util.LatencyHistogram;
 import org.ethereum.validator.*;
+import org.ethereum.vm.PrecompiledContracts;
 import org.ethereum.vm.DataWord;
 import org.ethereum.vm.program.ProgramPrecompile;
 import org.slf4j.Logger;
@@ -36,10 +41,13 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.config.BeanPostProcessor;
 import org.springframework.context.annotation.*;
 
+import javax.annotation.PreDestroy;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static java.util.Arrays.asList;
 
@@ -50,6 +58,7 @@ import static java.util.Arrays.asList;
 public class CommonConfig {
     private static final Logger logger = LoggerFactory.getLogger("general");
     private Set<DbSource> dbSources = new HashSet<>();
+    private Map<String, Metric> dbMetrics = new ConcurrentHashMap<>();
 
     private static CommonConfig defaultInstance;
 
@@ -67,7 +76,9 @@ public class CommonConfig {
 
     @Bean
     public SystemProperties systemProperties() {
-        return SystemProperties.getSpringDefault();
+        SystemProperties config = SystemProperties.getSpringDefault();
+        PrecompiledContracts.init(config);
+        return config;
     }
 
     @Bean
@@ -168,6 +179,8 @@ public class CommonConfig {
                 dbSource = new HashMapDB<>();
             } else if ("leveldb".equals(dataSource)){
                 dbSource = levelDbDataSource();
+            } else if ("lsm".equals(dataSource)) {
+                dbSource = lsmDbDataSource();
             } else {
                 dataSource = "rocksdb";
                 dbSource = rocksDbDataSource();
@@ -175,6 +188,11 @@ public class CommonConfig {
             dbSource.setName(name);
             dbSource.init(settings);
             dbSources.add(dbSource);
+            for (LatencyHistogram latency : dbSource.getLatencyStats()) {
+                String metricName = "db." + name + "." + latency.getName();
+                dbMetrics.put(metricName, latency);
+                Metrics.register(metricName, latency);
+            }
             return dbSource;
         } finally {
             logger.info(dataSource + " key-value data source created: " + name);
@@ -193,6 +211,12 @@ public class CommonConfig {
         return new RocksDbDataSource();
     }
 
+    @Bean
+    @Scope("prototype")
+    protected LsmDbDataSource lsmDbDataSource() {
+        return new LsmDbDataSource();
+    }
+
     public void fastSyncCleanUp() {
         if (!systemProperties().isSyncEnabled()) return;
         byte[] fastsyncStageBytes = blockchainDB().get(FastSyncManager.FASTSYNC_DB_KEY_SYNC_STAGE);
@@ -321,4 +345,9 @@ public class CommonConfig {
         dbSources.add(dbSource);
         return new PeerSource(dbSource);
     }
+
+    @PreDestroy
+    public void removeMetrics() {
+        dbMetrics.forEach(Metrics::remove);
+    }
 }
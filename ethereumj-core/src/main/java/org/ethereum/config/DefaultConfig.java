@@ -19,8 +19,10 @@ package org.ethereum.config;
 
 import org.ethereum.datasource.Source;
 import org.ethereum.db.BlockStore;
+import org.ethereum.db.BloomBitsIndex;
 import org.ethereum.db.IndexedBlockStore;
 import org.ethereum.db.PruneManager;
+import org.ethereum.db.ReceiptsIndex;
 import org.ethereum.db.TransactionStore;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -83,6 +85,27 @@ public class DefaultConfig {
         return new TransactionStore(commonConfig.cachedDbSource("transactions"));
     }
 
+    @Bean
+    public BloomBitsIndex bloomBitsIndex() {
+        if (config.isBloomBitsIndexEnabled()) {
+            commonConfig.fastSyncCleanUp();
+            return new BloomBitsIndex(commonConfig.cachedDbSource("bloombits"), blockStore());
+        } else {
+            return new BloomBitsIndex(null, null); // dummy
+        }
+    }
+
+    @Bean
+    public ReceiptsIndex receiptsIndex() {
+        if (config.isReceiptsIndexEnabled()) {
+            commonConfig.fastSyncCleanUp();
+            return new ReceiptsIndex(commonConfig.cachedDbSource("receiptsindex"), blockStore(), transactionStore(),
+                    ReceiptsIndex.CONFIRMATIONS);
+        } else {
+            return new ReceiptsIndex(null, null, null, -1); // dummy
+        }
+    }
+
     @Bean
     public PruneManager pruneManager() {
         if (config.databasePruneDepth() >= 0) {
@@ -29,6 +29,7 @@ import org.ethereum.core.genesis.GenesisConfig;
 import org.ethereum.core.genesis.GenesisJson;
 import org.ethereum.core.genesis.GenesisLoader;
 import org.ethereum.crypto.ECKey;
+import org.ethereum.mine.EthashValidationHelper;
 import org.ethereum.net.p2p.P2pHandler;
 import org.ethereum.net.rlpx.MessageCodec;
 import org.ethereum.net.rlpx.Node;
@@ -453,6 +454,30 @@ public class SystemProperties {
             : MessageCodec.NO_FRAMING;
     }
 
+    @ValidateMe
+    public int peerOutboundFlushInterval() {
+        return config.getInt("peer.outbound.flushInterval");
+    }
+
+    @ValidateMe
+    public int peerOutboundMaxBatchSize() {
+        return config.getInt("peer.outbound.maxBatchSize");
+    }
+
+    @ValidateMe
+    public long peerOutboundMaxBytesPerSec() {
+        return config.getLong("peer.outbound.maxBytesPerSec");
+    }
+
+    @ValidateMe
+    public int ethWorkersMaxPeerQueue() {
+        return config.getInt("peer.eth.workers.maxPeerQueue");
+    }
+
+    public int ethWorkersThreads(String messageType) {
+        return config.getInt("peer.eth.workers." + messageType);
+    }
+
     @ValidateMe
     public int transactionApproveTimeout() {
         return config.getInt("transaction.approve.timeout") * 1000;
@@ -487,6 +512,16 @@ public class SystemProperties {
         return config.getBoolean("database.prune.enabled") ? config.getInt("database.prune.maxDepth") : -1;
     }
 
+    @ValidateMe
+    public boolean isReceiptsIndexEnabled() {
+        return config.getBoolean("database.receiptsIndex.enabled");
+    }
+
+    @ValidateMe
+    public boolean isBloomBitsIndexEnabled() {
+        return config.getBoolean("database.bloomBitsIndex.enabled");
+    }
+
     @ValidateMe
     public List<Node> peerActive() {
         if (!config.hasPath("peer.active")) {
@@ -555,6 +590,16 @@ public class SystemProperties {
         return config.getInt("cache.headerQueueSize") * 1024 * 1024;
     }
 
+    @ValidateMe
+    public long servingCacheSize() {
+        return config.getLong("cache.servingCacheSize") * 1024 * 1024;
+    }
+
+    @ValidateMe
+    public long precompiledCacheSize() {
+        return config.getLong("cache.precompiledCacheSize") * 1024 * 1024;
+    }
+
     @ValidateMe
     public Integer peerChannelReadTimeout() {
         return config.getInt("peer.channel.read.timeout");
@@ -734,6 +779,21 @@ public class SystemProperties {
         return config.getInt("peer.maxActivePeers");
     }
 
+    @ValidateMe
+    public int peerEvictInterval() {
+        return config.getInt("peer.evict.interval");
+    }
+
+    @ValidateMe
+    public int peerEvictScore() {
+        return config.getInt("peer.evict.score");
+    }
+
+    @ValidateMe
+    public int metricsPort() {
+        return config.getInt("metrics.port");
+    }
+
     @ValidateMe
     public boolean eip8() {
         return config.getBoolean("peer.p2p.eip8");
@@ -854,6 +914,26 @@ public class SystemProperties {
         return config.getInt("transaction.outdated.threshold");
     }
 
+    @ValidateMe
+    public int txPoolMaxSize() {
+        return config.getInt("transaction.pool.maxSize");
+    }
+
+    @ValidateMe
+    public int txPoolMaxPerAccount() {
+        return config.getInt("transaction.pool.maxPerAccount");
+    }
+
+    @ValidateMe
+    public int txPoolMaxNonceGap() {
+        return config.getInt("transaction.pool.maxNonceGap");
+    }
+
+    @ValidateMe
+    public int txPoolPriceBump() {
+        return config.getInt("transaction.pool.priceBump");
+    }
+
     public void setGenesisInfo(String genesisInfo) {
         this.genesisInfo = genesisInfo;
     }
@@ -920,6 +1000,11 @@ public class SystemProperties {
         this.recordInternalTransactionsData = recordInternalTransactionsData;
     }
 
+    @ValidateMe
+    public boolean recordExecutionSummaries() {
+        return config.getBoolean("record.execution.summaries");
+    }
+
     @ValidateMe
     public String getHash256AlgName() {
         return config.getString("crypto.hash.alg256");
@@ -935,6 +1020,21 @@ public class SystemProperties {
         return config.getString("sync.ethash");
     }
 
+    @ValidateMe
+    public int getEthashCachedEpochs() {
+        int epochs = config.getInt("sync.ethashCache.epochs");
+        if (epochs < EthashValidationHelper.MIN_CACHED_EPOCHS) {
+            throw new RuntimeException("sync.ethashCache.epochs should be at least " +
+                    EthashValidationHelper.MIN_CACHED_EPOCHS + ": " + epochs);
+        }
+        return epochs;
+    }
+
+    @ValidateMe
+    public int getEthashVerifiedCacheSize() {
+        return config.getInt("sync.ethashCache.verifiedSize");
+    }
+
     private GenesisJson getGenesisJson() {
         if (genesisJson == null) {
             genesisJson = GenesisLoader.loadGenesisJson(this, classLoader);
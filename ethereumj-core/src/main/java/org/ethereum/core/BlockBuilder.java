@@ -0,0 +1,207 @@
+/*
+ * Copyright (c) [2016] [ <ether.camp> ]
+ * This file is part of the ethereumJ library.
+ *
+ * The ethereumJ library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The ethereumJ library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with the ethereumJ library. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.core;
+
+import org.ethereum.db.ByteArrayWrapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Candidate block which is extended by transactions one by one. <br>
+ *
+ * Each added transaction is executed on top of the state left by previously added ones,
+ * so refreshing the candidate with new pending transactions doesn't re-execute the block prefix.
+ * Transactions which can't be executed in the current state (wrong nonce, block gas limit
+ * exceeded, etc.) are skipped and retried after the next successful addition. <br>
+ *
+ * The builder is bound to its parent block and is created by {@link BlockchainImpl#createBlockBuilder(Block, List)}
+ */
+public class BlockBuilder {
+    private static final Logger logger = LoggerFactory.getLogger("mine");
+
+    private final BlockchainImpl blockchain;
+    private final Block parent;
+    private final Block template;
+    private final Repository track;
+    private final boolean eip658;
+
+    private final List<Transaction> txs = new ArrayList<>();
+    private final List<TransactionReceipt> receipts = new ArrayList<>();
+    private final List<TransactionExecutionSummary> summaries = new ArrayList<>();
+    private final Set<ByteArrayWrapper> included = new HashSet<>();
+    private final Set<ByteArrayWrapper> rejected = new HashSet<>();
+    private final Bloom logBloom = new Bloom();
+    private long gasUsed = 0;
+
+    BlockBuilder(BlockchainImpl blockchain, Block parent, Block template, Repository track, boolean eip658) {
+        this.blockchain = blockchain;
+        this.parent = parent;
+        this.template = template;
+        this.track = track;
+        this.eip658 = eip658;
+    }
+
+    public Block getParent() {
+        return parent;
+    }
+
+    /**
+     * Executes the transaction on top of the candidate state
+     * @return true if the transaction is included into the block
+     */
+    public synchronized boolean add(Transaction tx) {
+        ByteArrayWrapper hash = new ByteArrayWrapper(tx.getHash());
+        if (included.contains(hash) || rejected.contains(hash)) return false;
+
+        Repository txTrack = track.startTracking();
+        TransactionExecutor executor = blockchain.createTransactionExecutor(tx, txTrack, template, gasUsed)
+                .withExecutionProfile(ExecutionProfile.RECEIPTS);
+
+        executor.init();
+        executor.execute();
+        executor.go();
+        TransactionExecutionSummary summary = executor.finalization();
+
+        if (summary == null) {
+            logger.debug("Transaction is not applicable to the block {}: {}", template.getNumber(), tx);
+            txTrack.rollback();
+            rejected.add(hash);
+            return false;
+        }
+
+        txTrack.commit();
+        gasUsed += executor.getGasUsed();
+
+        TransactionReceipt receipt = executor.getReceipt();
+        if (eip658) {
+            receipt.setTxStatus(receipt.isSuccessful());
+        } else {
+            receipt.setPostTxState(track.getRoot());
+        }
+        logBloom.or(receipt.getBloomFilter());
+
+        txs.add(tx);
+        receipts.add(receipt);
+        summaries.add(summary);
+        included.add(hash);
+        // the state has changed, rejected transactions may become applicable
+        rejected.clear();
+
+        return true;
+    }
+
+    /**
+     * @return number of transactions included into the block
+     */
+    public synchronized int addAll(Collection<Transaction> txs) {
+        int ret = 0;
+        for (Transaction tx : txs) {
+            if (add(tx)) ret++;
+        }
+        return ret;
+    }
+
+    /**
+     * @return true if some of the transactions have not been tried by this builder yet
+     */
+    public synchronized boolean hasNew(Collection<Transaction> txs) {
+        for (Transaction tx : txs) {
+            ByteArrayWrapper hash = new ByteArrayWrapper(tx.getHash());
+            if (!included.contains(hash) && !rejected.contains(hash)) return true;
+        }
+        return false;
+    }
+
+    public synchronized List<Transaction> getTransactions() {
+        return new ArrayList<>(txs);
+    }
+
+    public synchronized long getGasUsed() {
+        return gasUsed;
+    }
+
+    /**
+     * Creates the block with transactions added so far,
+     * the builder remains usable and may be extended further
+     */
+    public synchronized Block build() {
+        byte[] stateRoot = calcStateRootWithReward();
+
+        return new Block(template.getParentHash(),
+                template.getUnclesHash(),
+                template.getCoinbase(),
+                logBloom.getData(),
+                template.getDifficulty(),
+                template.getNumber(),
+                template.getGasLimit(),
+                gasUsed,
+                template.getTimestamp(),
+                template.getExtraData(),
+                new byte[0],  // mixHash (to mine)
+                new byte[0],  // nonce   (to mine)
+                BlockchainImpl.calcReceiptsTrie(receipts),
+                BlockchainImpl.calcTxTrie(txs),
+                stateRoot,
+                new ArrayList<>(txs),
+                template.getUncleList());
+    }
+
+    /**
+     * The reward is applied to calculate the state root and then reverted
+     * since further transactions are executed against the state without it
+     */
+    private byte[] calcStateRootWithReward() {
+        Map<ByteArrayWrapper, BigInteger> balances = new HashMap<>();
+        saveBalance(balances, template.getCoinbase());
+        for (BlockHeader uncle : template.getUncleList()) {
+            saveBalance(balances, uncle.getCoinbase());
+        }
+
+        Repository rewardTrack = track.startTracking();
+        blockchain.addReward(rewardTrack, template, summaries);
+        rewardTrack.commit();
+        byte[] stateRoot = track.getRoot();
+
+        for (Map.Entry<ByteArrayWrapper, BigInteger> entry : balances.entrySet()) {
+            byte[] addr = entry.getKey().getData();
+            if (entry.getValue() == null) {
+                track.delete(addr);
+            } else {
+                track.addBalance(addr, entry.getValue().subtract(track.getBalance(addr)));
+            }
+        }
+
+        return stateRoot;
+    }
+
+    private void saveBalance(Map<ByteArrayWrapper, BigInteger> balances, byte[] addr) {
+        ByteArrayWrapper key = new ByteArrayWrapper(addr);
+        if (!balances.containsKey(key)) {
+            balances.put(key, track.isExist(addr) ? track.getBalance(addr) : null);
+        }
+    }
+}
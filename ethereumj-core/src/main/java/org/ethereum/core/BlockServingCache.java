@@ -0,0 +1,192 @@
+/*
+ * Copyright (c) [2016] [ <ether.camp> ]
+ * This file is part of the ethereumJ library.
+ *
+ * The ethereumJ library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The ethereumJ library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with the ethereumJ library. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.core;
+
+import org.ethereum.db.ByteArrayWrapper;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps RLP encoded responses to block headers and block bodies requests
+ * which are served to other peers. <br>
+ *
+ * Only blocks near the chain head are cached since they are requested by most of syncing peers.
+ * Headers are cached as the whole encoded response keyed by request parameters,
+ * only complete responses are cached, those don't change until the main chain is rebranched. <br>
+ *
+ * Cache is limited by the total size of encoded data, least recently used entries are evicted first
+ */
+public class BlockServingCache {
+
+    /**
+     * Max distance from the best block for blocks to be cached
+     */
+    public static final int HEAD_DISTANCE = 1024;
+
+    private final LRUBytes<HeadersKey> headers;
+    private final LRUBytes<ByteArrayWrapper> bodies;
+
+    // incremented on each rebranch, prevents caching headers read before the rebranch
+    private volatile long headersVersion = 0;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * @param maxSize max total size of the cached data in bytes, split between headers and bodies
+     */
+    public BlockServingCache(long maxSize) {
+        this.headers = new LRUBytes<>(maxSize / 4);
+        this.bodies = new LRUBytes<>(maxSize - maxSize / 4);
+    }
+
+    public byte[] getHeaders(BlockIdentifier identifier, int skip, int limit, boolean reverse) {
+        return count(headers.get(new HeadersKey(identifier, skip, limit, reverse)));
+    }
+
+    /**
+     * @param version {@link #getHeadersVersion()} taken before the headers were read
+     */
+    public void putHeaders(BlockIdentifier identifier, int skip, int limit, boolean reverse,
+                           byte[] encoded, long version) {
+        synchronized (headers) {
+            if (version != headersVersion) return;
+            headers.put(new HeadersKey(identifier, skip, limit, reverse), encoded);
+        }
+    }
+
+    public long getHeadersVersion() {
+        return headersVersion;
+    }
+
+    public byte[] getBody(byte[] blockHash) {
+        return count(bodies.get(new ByteArrayWrapper(blockHash)));
+    }
+
+    public void putBody(byte[] blockHash, byte[] encodedBody) {
+        bodies.put(new ByteArrayWrapper(blockHash), encodedBody);
+    }
+
+    /**
+     * Drops cached headers responses, they are no more valid when the main chain is switched
+     * while bodies are keyed by block hash and thus remain valid
+     */
+    public void onReBranch() {
+        synchronized (headers) {
+            ++headersVersion;
+            headers.clear();
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getSize() {
+        return headers.getSize() + bodies.getSize();
+    }
+
+    private byte[] count(byte[] cached) {
+        if (cached != null) {
+            hits.incrementAndGet();
+        } else {
+            misses.incrementAndGet();
+        }
+        return cached;
+    }
+
+    private static class HeadersKey {
+        private final byte[] hash;
+        private final long number;
+        private final int skip;
+        private final int limit;
+        private final boolean reverse;
+
+        HeadersKey(BlockIdentifier identifier, int skip, int limit, boolean reverse) {
+            this.hash = identifier.getHash();
+            this.number = hash == null ? identifier.getNumber() : 0;
+            this.skip = skip;
+            this.limit = limit;
+            this.reverse = reverse;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof HeadersKey)) return false;
+            HeadersKey that = (HeadersKey) o;
+            return number == that.number && skip == that.skip && limit == that.limit &&
+                    reverse == that.reverse && Arrays.equals(hash, that.hash);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = Arrays.hashCode(hash);
+            result = 31 * result + (int) (number ^ (number >>> 32));
+            result = 31 * result + skip;
+            result = 31 * result + limit;
+            result = 31 * result + (reverse ? 1 : 0);
+            return result;
+        }
+    }
+
+    private static class LRUBytes<K> {
+        private final long maxSize;
+        private final LinkedHashMap<K, byte[]> map = new LinkedHashMap<>(16, 0.75f, true);
+        private long size = 0;
+
+        LRUBytes(long maxSize) {
+            this.maxSize = maxSize;
+        }
+
+        synchronized byte[] get(K key) {
+            return map.get(key);
+        }
+
+        synchronized void put(K key, byte[] value) {
+            if (value.length > maxSize) return;
+
+            byte[] prev = map.put(key, value);
+            if (prev != null) size -= prev.length;
+            size += value.length;
+
+            Iterator<Map.Entry<K, byte[]>> it = map.entrySet().iterator();
+            while (size > maxSize && it.hasNext()) {
+                size -= it.next().getValue().length;
+                it.remove();
+            }
+        }
+
+        synchronized void clear() {
+            map.clear();
+            size = 0;
+        }
+
+        synchronized long getSize() {
+            return size;
+        }
+    }
+}
@@ -97,6 +97,18 @@ public interface Blockchain {
      */
     Iterator<BlockHeader> getIteratorOfHeadersStartFrom(BlockIdentifier identifier, int skip, int limit, boolean reverse);
 
+    /**
+     * Returns RLP encoded list of up to limit headers found with following search parameters,
+     * recently requested ranges near the chain head are served from cache
+     * [Synchronized only in blockstore, not using any synchronized BlockchainImpl methods]
+     * @param identifier        Identifier of start block, by number of by hash
+     * @param skip              Number of blocks to skip between consecutive headers
+     * @param limit             Maximum number of headers in return
+     * @param reverse           Is search reverse or not
+     * @return  RLP encoded list of headers
+     */
+    byte[] getEncodedHeadersStartFrom(BlockIdentifier identifier, int skip, int limit, boolean reverse);
+
     /**
      * @deprecated
      * Returns list of block bodies by block hashes, stopping on first not found block
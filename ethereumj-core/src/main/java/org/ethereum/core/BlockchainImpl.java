@@ -29,6 +29,10 @@ import org.ethereum.trie.TrieImpl;
 import org.ethereum.listener.EthereumListener;
 import org.ethereum.listener.EthereumListenerAdapter;
 import org.ethereum.manager.AdminInfo;
+import org.ethereum.metrics.Counter;
+import org.ethereum.metrics.Gauge;
+import org.ethereum.metrics.Meter;
+import org.ethereum.metrics.Metrics;
 import org.ethereum.sync.SyncManager;
 import org.ethereum.util.*;
 import org.ethereum.validator.DependentBlockHeaderRule;
@@ -106,11 +110,22 @@ public class BlockchainImpl implements Blockchain, org.ethereum.facade.Blockchai
     private static final Logger logger = LoggerFactory.getLogger("blockchain");
     private static final Logger stateLogger = LoggerFactory.getLogger("state");
 
+    private static final LatencyHistogram importTime = Metrics.histogram("blockchain.import.total");
+    private static final LatencyHistogram validateTime = Metrics.histogram("blockchain.import.validate");
+    private static final LatencyHistogram executeTime = Metrics.histogram("blockchain.import.execute");
+    private static final LatencyHistogram storeTime = Metrics.histogram("blockchain.import.store");
+    private static final Meter importedBlocks = Metrics.meter("blockchain.import.blocks");
+    private static final Counter invalidBlocks = Metrics.counter("blockchain.import.invalid");
+    private static final LatencyHistogram txExecuteTime = Metrics.histogram("blockchain.tx.execute");
+    private static final Meter executedTxs = Metrics.meter("blockchain.tx.executed");
+
     // to avoid using minGasPrice=0 from Genesis for the wallet
     private static final long INITIAL_MIN_GAS_PRICE = 10 * SZABO.longValue();
     private static final int MAGIC_REWARD_OFFSET = 8;
     public static final byte[] EMPTY_LIST_HASH = sha3(RLP.encodeList(new byte[0]));
 
+    private final Map<String, Gauge> gauges = new HashMap<>();
+
     @Autowired @Qualifier("defaultRepository")
     private Repository repository;
 
@@ -153,6 +168,9 @@ public class BlockchainImpl implements Blockchain, org.ethereum.facade.Blockchai
     @Autowired
     PruneManager pruneManager;
 
+    @Autowired
+    BloomBitsIndex bloomBitsIndex;
+
     @Autowired
     StateSource stateDataSource;
 
@@ -181,6 +199,8 @@ public class BlockchainImpl implements Blockchain, org.ethereum.facade.Blockchai
 
     private Stack<State> stateStack = new Stack<>();
 
+    private BlockServingCache servingCache;
+
     /** Tests only **/
     public BlockchainImpl() {
     }
@@ -239,6 +259,12 @@ public class BlockchainImpl implements Blockchain, org.ethereum.facade.Blockchai
         minerExtraData = config.getMineExtraData();
         UNCLE_LIST_LIMIT = config.getBlockchainConfig().getCommonConstants().getUNCLE_LIST_LIMIT();
         UNCLE_GENERATION_LIMIT = config.getBlockchainConfig().getCommonConstants().getUNCLE_GENERATION_LIMIT();
+        if (config.servingCacheSize() > 0) {
+            servingCache = new BlockServingCache(config.servingCacheSize());
+            gauge("cache.serving.hits", servingCache::getHits);
+            gauge("cache.serving.misses", servingCache::getMisses);
+            gauge("cache.serving.size", servingCache::getSize);
+        }
     }
 
     @Override
@@ -402,6 +428,7 @@ public class BlockchainImpl implements Blockchain, org.ethereum.facade.Blockchai
             // cause we proved that total difficulty
             // is greateer
             blockStore.reBranch(block);
+            if (servingCache != null) servingCache.onReBranch();
 
             // The main repository rebranch
             this.repository = repo;
@@ -418,6 +445,19 @@ public class BlockchainImpl implements Blockchain, org.ethereum.facade.Blockchai
 
 
     public synchronized ImportResult tryToConnect(final Block block) {
+        long start = System.nanoTime();
+        ImportResult ret = tryToConnectImpl(block);
+
+        if (ret.isSuccessful()) {
+            importTime.recordSince(start);
+            importedBlocks.mark();
+        } else if (ret == INVALID_BLOCK) {
+            invalidBlocks.inc();
+        }
+        return ret;
+    }
+
+    private ImportResult tryToConnectImpl(final Block block) {
 
         if (logger.isDebugEnabled())
             logger.debug("Try connect block hash: {}, number: {}",
@@ -469,7 +509,7 @@ public class BlockchainImpl implements Blockchain, org.ethereum.facade.Blockchai
             listener.trace(String.format("Block chain size: [ %d ]", this.getSize()));
 
             if (ret == IMPORTED_BEST) {
-                eventDispatchThread.invokeLater(() -> pendingState.processBest(block, summary.getReceipts()));
+                eventDispatchThread.invokeLater(() -> pendingState.processBest(summary));
             }
         }
 
@@ -485,6 +525,41 @@ public class BlockchainImpl implements Blockchain, org.ethereum.facade.Blockchai
     }
 
     public synchronized Block createNewBlock(Block parent, List<Transaction> txs, List<BlockHeader> uncles, long time) {
+        Block block = createBlockTemplate(parent, txs, uncles, time);
+
+        Repository track = repository.getSnapshotTo(parent.getStateRoot());
+        BlockSummary summary = applyBlock(track, block);
+        List<TransactionReceipt> receipts = summary.getReceipts();
+        block.setStateRoot(track.getRoot());
+
+        Bloom logBloom = new Bloom();
+        for (TransactionReceipt receipt : receipts) {
+            logBloom.or(receipt.getBloomFilter());
+        }
+        block.getHeader().setLogsBloom(logBloom.getData());
+        block.getHeader().setGasUsed(receipts.size() > 0 ? receipts.get(receipts.size() - 1).getCumulativeGasLong() : 0);
+        block.getHeader().setReceiptsRoot(calcReceiptsTrie(receipts));
+
+        return block;
+    }
+
+    /**
+     * Creates builder of a new block which executes transactions as they are added
+     * thus the block can be extended without re-executing transactions which are already included
+     */
+    public synchronized BlockBuilder createBlockBuilder(Block parent, List<BlockHeader> uncles) {
+        long time = System.currentTimeMillis() / 1000;
+        if (parent.getTimestamp() >= time) time = parent.getTimestamp() + 1;
+
+        Block template = createBlockTemplate(parent, Collections.emptyList(), uncles, time);
+        Repository track = repository.getSnapshotTo(parent.getStateRoot());
+        config.getBlockchainConfig().getConfigForBlock(template.getNumber()).hardForkTransfers(template, track);
+
+        return new BlockBuilder(this, parent, template, track,
+                config.getBlockchainConfig().getConfigForBlock(template.getNumber()).eip658());
+    }
+
+    private Block createBlockTemplate(Block parent, List<Transaction> txs, List<BlockHeader> uncles, long time) {
         final long blockNumber = parent.getNumber() + 1;
 
         final byte[] extraData = config.getBlockchainConfig().getConfigForBlock(blockNumber).getExtraData(minerExtraData, blockNumber);
@@ -514,19 +589,6 @@ public class BlockchainImpl implements Blockchain, org.ethereum.facade.Blockchai
         block.getHeader().setDifficulty(ByteUtil.bigIntegerToBytes(block.getHeader().
                 calcDifficulty(config.getBlockchainConfig(), parent.getHeader())));
 
-        Repository track = repository.getSnapshotTo(parent.getStateRoot());
-        BlockSummary summary = applyBlock(track, block);
-        List<TransactionReceipt> receipts = summary.getReceipts();
-        block.setStateRoot(track.getRoot());
-
-        Bloom logBloom = new Bloom();
-        for (TransactionReceipt receipt : receipts) {
-            logBloom.or(receipt.getBloomFilter());
-        }
-        block.getHeader().setLogsBloom(logBloom.getData());
-        block.getHeader().setGasUsed(receipts.size() > 0 ? receipts.get(receipts.size() - 1).getCumulativeGasLong() : 0);
-        block.getHeader().setReceiptsRoot(calcReceiptsTrie(receipts));
-
         return block;
     }
 
@@ -568,7 +630,10 @@ public class BlockchainImpl implements Blockchain, org.ethereum.facade.Blockchai
         }
 
 
-        if (!isValid(repo, block)) {
+        long validateStart = System.nanoTime();
+        boolean valid = isValid(repo, block);
+        validateTime.recordSince(validateStart);
+        if (!valid) {
             logger.warn("Invalid block with number: {}", block.getNumber());
             return null;
         }
@@ -587,7 +652,9 @@ public class BlockchainImpl implements Blockchain, org.ethereum.facade.Blockchai
             AdvancedDeviceUtils.adjustDetailedTracing(config, block.getNumber());
         }
 
+        long executeStart = System.nanoTime();
         BlockSummary summary = processBlock(repo, block);
+        executeTime.recordSince(executeStart);
         final List<TransactionReceipt> receipts = summary.getReceipts();
 
         // Sanity checks
@@ -631,6 +698,7 @@ public class BlockchainImpl implements Blockchain, org.ethereum.facade.Blockchai
         }
 
         if (summary != null) {
+            long storeStart = System.nanoTime();
             repo.commit();
             updateTotalDifficulty(block);
             summary.setTotalDifficulty(getTotalDifficulty());
@@ -643,6 +711,7 @@ public class BlockchainImpl implements Blockchain, org.ethereum.facade.Blockchai
             } else {
                 storeBlock(block, receipts);
             }
+            storeTime.recordSince(storeStart);
         }
 
         return summary;
@@ -868,14 +937,34 @@ public class BlockchainImpl implements Blockchain, org.ethereum.facade.Blockchai
         }
     }
 
+    /**
+     * Executes the block on top of the track which should be at the parent block state.
+     * Nothing is stored, transaction execution events go to the supplied listener only.
+     * The method is not synchronized, thus blocks may be replayed concurrently on different tracks
+     */
+    public BlockSummary replayBlock(Repository track, Block block, EthereumListener listener) {
+        return applyBlock(track, block, listener, ExecutionProfile.FULL);
+    }
+
     private BlockSummary applyBlock(Repository track, Block block) {
+        long saveTime = System.nanoTime();
+        BlockSummary summary = applyBlock(track, block, listener,
+                config.recordExecutionSummaries() ? ExecutionProfile.FULL : ExecutionProfile.RECEIPTS);
+
+        long totalTime = System.nanoTime() - saveTime;
+        adminInfo.addBlockExecTime(totalTime);
+        logger.debug("block: num: [{}] hash: [{}], executed after: [{}]nano", block.getNumber(), block.getShortHash(), totalTime);
+
+        return summary;
+    }
+
+    private BlockSummary applyBlock(Repository track, Block block, EthereumListener listener, ExecutionProfile profile) {
 
         logger.debug("applyBlock: block: [{}] tx.list: [{}]", block.getNumber(), block.getTransactionsList().size());
 
         BlockchainConfig blockchainConfig = config.getBlockchainConfig().getConfigForBlock(block.getNumber());
         blockchainConfig.hardForkTransfers(block, track);
 
-        long saveTime = System.nanoTime();
         int i = 1;
         long totalGasUsed = 0;
         List<TransactionReceipt> receipts = new ArrayList<>();
@@ -885,15 +974,16 @@ public class BlockchainImpl implements Blockchain, org.ethereum.facade.Blockchai
             stateLogger.debug("apply block: [{}] tx: [{}] ", block.getNumber(), i);
 
             Repository txTrack = track.startTracking();
-            TransactionExecutor executor = new TransactionExecutor(
-                    tx, block.getCoinbase(),
-                    txTrack, blockStore, programInvokeFactory, block, listener, totalGasUsed, vmHook)
-                    .withCommonConfig(commonConfig);
+            TransactionExecutor executor = createTransactionExecutor(tx, txTrack, block, totalGasUsed, listener)
+                    .withExecutionProfile(profile);
 
+            long txStart = System.nanoTime();
             executor.init();
             executor.execute();
             executor.go();
             TransactionExecutionSummary summary = executor.finalization();
+            txExecuteTime.recordSince(txStart);
+            executedTxs.mark();
 
             totalGasUsed += executor.getGasUsed();
 
@@ -937,20 +1027,28 @@ public class BlockchainImpl implements Blockchain, org.ethereum.facade.Blockchai
 //        if (block.getNumber() >= config.traceStartBlock())
 //            repository.dumpState(block, totalGasUsed, 0, null);
 
-        long totalTime = System.nanoTime() - saveTime;
-        adminInfo.addBlockExecTime(totalTime);
-        logger.debug("block: num: [{}] hash: [{}], executed after: [{}]nano", block.getNumber(), block.getShortHash(), totalTime);
-
         return new BlockSummary(block, rewards, receipts, summaries);
     }
 
+    TransactionExecutor createTransactionExecutor(Transaction tx, Repository txTrack, Block block, long gasUsedInBlock) {
+        return createTransactionExecutor(tx, txTrack, block, gasUsedInBlock, listener);
+    }
+
+    private TransactionExecutor createTransactionExecutor(Transaction tx, Repository txTrack, Block block,
+                                                          long gasUsedInBlock, EthereumListener listener) {
+        return new TransactionExecutor(
+                tx, block.getCoinbase(),
+                txTrack, blockStore, programInvokeFactory, block, listener, gasUsedInBlock, vmHook)
+                .withCommonConfig(commonConfig);
+    }
+
     /**
      * Add reward to block- and every uncle coinbase
      * assuming the entire block is valid.
      *
      * @param block object containing the header and uncles
      */
-    private Map<byte[], BigInteger> addReward(Repository track, Block block, List<TransactionExecutionSummary> summaries) {
+    Map<byte[], BigInteger> addReward(Repository track, Block block, List<TransactionExecutionSummary> summaries) {
 
         Map<byte[], BigInteger> rewards = new HashMap<>();
 
@@ -1002,6 +1100,10 @@ public class BlockchainImpl implements Blockchain, org.ethereum.facade.Blockchai
             pruneManager.blockCommitted(block.getHeader());
         }
 
+        if (bloomBitsIndex != null) {
+            bloomBitsIndex.blockCommitted(block.getHeader());
+        }
+
         logger.debug("Block saved: number: {}, hash: {}, TD: {}",
                 block.getNumber(), block.getShortHash(), totalDifficulty);
 
@@ -1048,9 +1150,15 @@ public class BlockchainImpl implements Blockchain, org.ethereum.facade.Blockchai
 
     @Override
     public synchronized void close() {
+        gauges.forEach(Metrics::remove);
         blockStore.close();
     }
 
+    private void gauge(String name, Gauge gauge) {
+        gauges.put(name, gauge);
+        Metrics.gauge(name, gauge);
+    }
+
     @Override
     public BigInteger getTotalDifficulty() {
         return totalDifficulty;
@@ -1133,6 +1241,7 @@ public class BlockchainImpl implements Blockchain, org.ethereum.facade.Blockchai
 
                     if (totalDifficulty.compareTo(maxTD) < 0)  {
                         blockStore.reBranch(bestStoredBlock);
+                        if (servingCache != null) servingCache.onReBranch();
                         bestBlock = bestStoredBlock;
                         totalDifficulty = maxTD;
                         repository = repository.getSnapshotTo(bestBlock.getStateRoot());
@@ -1224,6 +1333,34 @@ public class BlockchainImpl implements Blockchain, org.ethereum.facade.Blockchai
         return new BlockHeadersIterator(startHeader, skip, limit, reverse);
     }
 
+    @Override
+    public byte[] getEncodedHeadersStartFrom(BlockIdentifier identifier, int skip, int limit, boolean reverse) {
+        long cacheVersion = 0;
+        if (servingCache != null) {
+            byte[] cached = servingCache.getHeaders(identifier, skip, limit, reverse);
+            if (cached != null) return cached;
+            cacheVersion = servingCache.getHeadersVersion();
+        }
+
+        Iterator<BlockHeader> iterator = getIteratorOfHeadersStartFrom(identifier, skip, limit, reverse);
+        List<byte[]> encodedHeaders = new ArrayList<>();
+        long startNumber = -1;
+        while (iterator.hasNext()) {
+            BlockHeader header = iterator.next();
+            if (startNumber < 0) startNumber = header.getNumber();
+            encodedHeaders.add(header.getEncoded());
+        }
+        byte[] encoded = RLP.encodeList(encodedHeaders.toArray(new byte[encodedHeaders.size()][]));
+
+        // incomplete response near the head might be extended by new blocks
+        if (servingCache != null && encodedHeaders.size() == limit &&
+                startNumber >= blockStore.getBestBlock().getNumber() - BlockServingCache.HEAD_DISTANCE) {
+            servingCache.putHeaders(identifier, skip, limit, reverse, encoded, cacheVersion);
+        }
+
+        return encoded;
+    }
+
     /**
      * Searches block in blockStore, if it's not found there
      * and headerStore is defined, searches blockHeader in it.
@@ -1364,6 +1501,8 @@ public class BlockchainImpl implements Blockchain, org.ethereum.facade.Blockchai
     class BlockBodiesIterator implements Iterator<byte[]> {
         private final List<byte[]> hashes;
         private Integer position = 0;
+        private byte[] nextBody = null;
+        private long minCachedNumber = -1;
 
 
         BlockBodiesIterator(List<byte[]> hashes) {
@@ -1372,7 +1511,11 @@ public class BlockchainImpl implements Blockchain, org.ethereum.facade.Blockchai
 
         @Override
         public boolean hasNext() {
-            return position < hashes.size() && blockStore.getBlockByHash(hashes.get(position)) != null;
+            if (nextBody != null) return true;
+            if (position >= hashes.size()) return false;
+
+            nextBody = loadBody(hashes.get(position));
+            return nextBody != null;
         }
 
         @Override
@@ -1381,13 +1524,30 @@ public class BlockchainImpl implements Blockchain, org.ethereum.facade.Blockchai
                 throw new NoSuchElementException("Nothing left");
             }
 
-            Block block = blockStore.getBlockByHash(hashes.get(position));
-            if (block == null) {
-                throw new NoSuchElementException("Nothing left");
-            }
+            byte[] body = nextBody;
+            nextBody = null;
             ++position;
 
-            return block.getEncodedBody();
+            return body;
+        }
+
+        private byte[] loadBody(byte[] hash) {
+            if (servingCache != null) {
+                byte[] cached = servingCache.getBody(hash);
+                if (cached != null) return cached;
+            }
+
+            Block block = blockStore.getBlockByHash(hash);
+            if (block == null) return null;
+
+            byte[] body = block.getEncodedBody();
+            if (servingCache != null) {
+                if (minCachedNumber < 0) {
+                    minCachedNumber = blockStore.getBestBlock().getNumber() - BlockServingCache.HEAD_DISTANCE;
+                }
+                if (block.getNumber() >= minCachedNumber) servingCache.putBody(hash, body);
+            }
+            return body;
         }
     }
 
@@ -0,0 +1,40 @@
+/*
+ * Copyright (c) [2016] [ <ether.camp> ]
+ * This file is part of the ethereumJ library.
+ *
+ * The ethereumJ library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The ethereumJ library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with the ethereumJ library. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.core;
+
+/**
+ * Defines what is recorded during the {@link TransactionExecutor} run
+ * in addition to the state changes and the receipt
+ */
+public enum ExecutionProfile {
+
+    /**
+     * Complete {@link TransactionExecutionSummary} including internal transactions
+     * and deleted accounts, contract storage changes are tracked
+     */
+    FULL,
+
+    /**
+     * Only the data required for the receipt and fee calculation is collected:
+     * internal transactions are neither created nor recorded, storage changes aren't tracked
+     * and the summary has empty internal transactions and deleted accounts lists.
+     * Touched accounts including the receivers of value transfers made by contracts
+     * are still recorded, see {@link TransactionExecutionSummary#getTouchedAccounts()}
+     */
+    RECEIPTS
+}
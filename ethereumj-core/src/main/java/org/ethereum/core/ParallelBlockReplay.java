@@ -0,0 +1,225 @@
+/*
+ * Copyright (c) [2016] [ <ether.camp> ]
+ * This file is part of the ethereumJ library.
+ *
+ * The ethereumJ library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The ethereumJ library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with the ethereumJ library. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.core;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.ethereum.datasource.Source;
+import org.ethereum.db.BlockStore;
+import org.ethereum.db.StateSource;
+import org.ethereum.listener.EthereumListener;
+import org.ethereum.listener.EthereumListenerAdapter;
+import org.ethereum.util.FastByteComparisons;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import static org.ethereum.util.ByteUtil.byteArrayToLong;
+import static org.ethereum.util.ByteUtil.longToBytes;
+
+/**
+ * Re-executes a range of the main chain blocks on several threads. <br>
+ *
+ * The range is split into segments, each segment is executed by a worker starting from
+ * the stored state of the block preceding the segment, thus the states of the segment
+ * starts must be present in the database (i.e. not pruned). Results are emitted to the
+ * listener on the caller thread strictly in the chain order: {@link EthereumListener#onTransactionExecuted}
+ * for each transaction followed by {@link EthereumListener#onBlock(BlockSummary, boolean)}. <br>
+ *
+ * Trie nodes of the replayed states are kept in memory by the worker's snapshot, so once per
+ * {@link #withSnapshotResetInterval(int)} blocks the snapshot is re-created from the stored state
+ * of the last replayed block if that state is present in the database. <br>
+ *
+ * Only {@code 2 * threads} segments are scheduled at once, a new one is scheduled when the head
+ * segment is emitted, thus memory is bounded by the summaries of the scheduled segments. <br>
+ *
+ * When checkpoints are enabled the number of the last block of each completed segment
+ * is persisted, so an interrupted replay is resumed from the next segment
+ */
+public class ParallelBlockReplay {
+    private static final Logger logger = LoggerFactory.getLogger("blockchain");
+
+    public static final int DEFAULT_SEGMENT_SIZE = 1000;
+    public static final int DEFAULT_SNAPSHOT_RESET_INTERVAL = 100;
+
+    // number of segments scheduled per thread, the ones beyond the head keep workers busy
+    private static final int SEGMENTS_PER_THREAD = 2;
+
+    private final BlockchainImpl blockchain;
+    private final BlockStore blockStore;
+    private final Repository repository;
+
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private int segmentSize = DEFAULT_SEGMENT_SIZE;
+    private int snapshotResetInterval = DEFAULT_SNAPSHOT_RESET_INTERVAL;
+
+    private Source<byte[], byte[]> checkpointSource;
+    private byte[] checkpointKey;
+
+    public ParallelBlockReplay(BlockchainImpl blockchain) {
+        this.blockchain = blockchain;
+        this.blockStore = blockchain.getBlockStore();
+        this.repository = blockchain.getRepository();
+    }
+
+    public ParallelBlockReplay withThreads(int threads) {
+        this.threads = threads;
+        return this;
+    }
+
+    public ParallelBlockReplay withSegmentSize(int segmentSize) {
+        this.segmentSize = segmentSize;
+        return this;
+    }
+
+    public ParallelBlockReplay withSnapshotResetInterval(int snapshotResetInterval) {
+        this.snapshotResetInterval = snapshotResetInterval;
+        return this;
+    }
+
+    /**
+     * Enables resumable replay
+     * @param source storage of the checkpoint
+     * @param key key of the checkpoint, distinct replays should use different keys
+     */
+    public ParallelBlockReplay withCheckpoint(Source<byte[], byte[]> source, byte[] key) {
+        this.checkpointSource = source;
+        this.checkpointKey = key;
+        return this;
+    }
+
+    /**
+     * @return the last block replayed and checkpointed, -1 if there is no checkpoint
+     */
+    public long getCheckpoint() {
+        if (checkpointSource == null) return -1;
+        byte[] bytes = checkpointSource.get(checkpointKey);
+        return bytes == null ? -1 : byteArrayToLong(bytes);
+    }
+
+    /**
+     * Replays blocks of the range (inclusive) skipping the ones covered by the checkpoint
+     *
+     * @return the number of the last replayed block
+     */
+    public long replay(long fromBlock, long toBlock, EthereumListener listener) throws InterruptedException {
+        // the genesis has no parent state to start from
+        long first = Math.max(Math.max(fromBlock, getCheckpoint() + 1), 1);
+        long last = first - 1;
+        if (first > toBlock) return last;
+
+        logger.info("Replaying blocks {} - {} on {} threads", first, toBlock, threads);
+
+        List<Segment> segments = new ArrayList<>();
+        for (long num = first; num <= toBlock; num += segmentSize) {
+            segments.add(new Segment(num, Math.min(toBlock, num + segmentSize - 1)));
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads,
+                new ThreadFactoryBuilder().setNameFormat("block-replay-%d").setDaemon(true).build());
+        try {
+            int scheduled = Math.min(segments.size(), threads * SEGMENTS_PER_THREAD);
+            for (int i = 0; i < scheduled; i++) {
+                executor.submit(segments.get(i));
+            }
+
+            for (Segment segment : segments) {
+                for (long num = segment.from; num <= segment.to; num++) {
+                    BlockSummary summary = segment.take();
+                    for (TransactionExecutionSummary txSummary : summary.getSummaries()) {
+                        listener.onTransactionExecuted(txSummary);
+                    }
+                    listener.onBlock(summary, true);
+                    last = num;
+                }
+                if (checkpointSource != null) {
+                    checkpointSource.put(checkpointKey, longToBytes(segment.to));
+                }
+                logger.debug("Replayed blocks {} - {}", segment.from, segment.to);
+                if (scheduled < segments.size()) {
+                    executor.submit(segments.get(scheduled++));
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        logger.info("Replay complete, last block: {}", last);
+        return last;
+    }
+
+    private class Segment implements Runnable {
+        final long from;
+        final long to;
+        final BlockingQueue<Object> results = new LinkedBlockingQueue<>();
+
+        Segment(long from, long to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        public void run() {
+            try {
+                try {
+                    Block parent = blockStore.getChainBlockByNumber(from - 1);
+                    Repository track = repository.getSnapshotTo(parent.getStateRoot());
+                    EthereumListener stub = new EthereumListenerAdapter();
+
+                    for (long num = from; num <= to; num++) {
+                        Block block = blockStore.getChainBlockByNumber(num);
+                        BlockSummary summary = blockchain.replayBlock(track, block, stub);
+                        if (!FastByteComparisons.equal(track.getRoot(), block.getStateRoot())) {
+                            throw new IllegalStateException("State root mismatch after replaying block " + block.getShortDescr());
+                        }
+                        results.put(summary);
+
+                        if ((num - from + 1) % snapshotResetInterval == 0 && isStateStored(block.getStateRoot())) {
+                            // drops the nodes accumulated by the write cache
+                            track = repository.getSnapshotTo(block.getStateRoot());
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    throw e;
+                } catch (Exception e) {
+                    results.put(e);
+                }
+            } catch (InterruptedException e) {
+                // replay cancelled
+            }
+        }
+
+        private boolean isStateStored(byte[] root) {
+            StateSource stateSource = blockchain.stateDataSource;
+            return stateSource != null && stateSource.get(root) != null;
+        }
+
+        BlockSummary take() throws InterruptedException {
+            Object ret = results.take();
+            if (ret instanceof Exception) {
+                throw new RuntimeException("Failed to replay blocks " + from + " - " + to, (Exception) ret);
+            }
+            return (BlockSummary) ret;
+        }
+    }
+}
@@ -55,4 +55,12 @@ public interface PendingState extends org.ethereum.facade.PendingState {
      * @param block block imported into blockchain as a <b>BEST</b> one
      */
     void processBest(Block block, List<TransactionReceipt> receipts);
+
+    /**
+     * Same as {@link #processBest(Block, List)},
+     * internal transactions of the summary are used to find the accounts which balances are changed by the block
+     *
+     * @param summary summary of the block imported as a <b>BEST</b> one
+     */
+    void processBest(BlockSummary summary);
 }
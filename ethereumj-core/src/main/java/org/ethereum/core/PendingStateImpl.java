@@ -22,16 +22,19 @@ import static org.ethereum.listener.EthereumListener.PendingTransactionState.INC
 import static org.ethereum.listener.EthereumListener.PendingTransactionState.NEW_PENDING;
 import static org.ethereum.listener.EthereumListener.PendingTransactionState.PENDING;
 
+import java.math.BigInteger;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.Comparator;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.TreeSet;
 
 import org.apache.commons.collections4.map.LRUMap;
 import org.ethereum.config.CommonConfig;
 import org.ethereum.config.SystemProperties;
+import org.ethereum.core.TransactionPool.Entry;
 import org.ethereum.db.BlockStore;
 import org.ethereum.db.ByteArrayWrapper;
 import org.ethereum.db.TransactionStore;
@@ -49,7 +52,14 @@ import org.springframework.stereotype.Component;
 import static org.ethereum.util.ByteUtil.toHexString;
 
 /**
- * Keeps logic providing pending state management
+ * Keeps logic providing pending state management <br>
+ *
+ * Transactions are kept in the {@link TransactionPool}. A transaction which nonce is ahead of
+ * the sender's next nonce is queued silently and gets NEW_PENDING state once the missing transactions arrive. <br>
+ *
+ * When a new best block arrives only transactions of the accounts touched by the block are re-executed,
+ * other transactions keep their last receipts. The pending state repository is rebuilt
+ * on the first request after the new block and then is kept updated with newly added transactions
  *
  * @author Mikhail Kalinin
  * @since 28.09.2015
@@ -93,15 +103,17 @@ public class PendingStateImpl implements PendingState {
     @Autowired
     private ProgramInvokeFactory programInvokeFactory;
 
-//    private Repository repository;
-
-    private final List<PendingTransaction> pendingTransactions = new ArrayList<>();
+    private final TransactionPool pool = new TransactionPool();
 
     // to filter out the transactions we have already processed
     // transactions could be sent by peers even if they were already included into blocks
     private final Map<ByteArrayWrapper, Object> receivedTxs = new LRUMap<>(100000);
     private final Object dummyObject = new Object();
 
+    // best block state, a base for pending transactions execution
+    private Repository bestState;
+
+    // best block state with all pending transactions applied, null when it should be rebuilt
     private Repository pendingState;
 
     private Block best = null;
@@ -109,17 +121,37 @@ public class PendingStateImpl implements PendingState {
     @Autowired
     public PendingStateImpl(final EthereumListener listener) {
         this.listener = listener;
-//        this.repository = blockchain.getRepository();
     }
 
-    public void init() {
-        this.pendingState = getOrigRepository().startTracking();
+    /**
+     * Rebuilds pending state repository executing all pending transactions on top of the best block state
+     */
+    public synchronized void init() {
+        Repository state = getBestState().startTracking();
+
+        long t = System.nanoTime();
+
+        List<Entry> pending = pool.getPending();
+        for (Entry entry : pending) {
+            entry.setReceipt(executeTx(entry.getTransaction(), state));
+        }
+        this.pendingState = state;
+
+        logger.debug("Pending state rebuilt, txs: {}, time: {}s", pending.size(),
+                String.format("%.3f", (System.nanoTime() - t) / 1_000_000_000d));
     }
 
     private Repository getOrigRepository() {
         return blockchain.getRepositorySnapshot();
     }
 
+    private Repository getBestState() {
+        if (bestState == null) {
+            bestState = getOrigRepository();
+        }
+        return bestState;
+    }
+
     @Override
     public synchronized Repository getRepository() {
         if (pendingState == null) {
@@ -129,15 +161,12 @@ public class PendingStateImpl implements PendingState {
     }
 
     @Override
-    public synchronized List<Transaction> getPendingTransactions() {
-
-        List<Transaction> txs = new ArrayList<>();
-
-        for (PendingTransaction tx : pendingTransactions) {
-            txs.add(tx.getTransaction());
-        }
+    public List<Transaction> getPendingTransactions() {
+        return pool.getPendingTransactions();
+    }
 
-        return txs;
+    public TransactionPool getPool() {
+        return pool;
     }
 
     public Block getBestBlock() {
@@ -163,9 +192,7 @@ public class PendingStateImpl implements PendingState {
         for (Transaction tx : transactions) {
             if (addNewTxIfNotExist(tx)) {
                 unknownTx++;
-                if (addPendingTransactionImpl(tx)) {
-                    newPending.add(tx);
-                }
+                addPendingTransactionImpl(tx, newPending);
             }
         }
 
@@ -199,7 +226,7 @@ public class PendingStateImpl implements PendingState {
     private void fireTxUpdate(TransactionReceipt txReceipt, PendingTransactionState state, Block block) {
         if (logger.isDebugEnabled()) {
             logger.debug(String.format("PendingTransactionUpdate: (Tot: %3s) %12s : %s %8s %s [%s]",
-                    getPendingTransactions().size(),
+                    pool.getPendingSize(),
                     state, toHexString(txReceipt.getTransaction().getSender()).substring(0, 8),
                     ByteUtil.byteArrayToLong(txReceipt.getTransaction().getNonce()),
                     block.getShortDescr(), txReceipt.getError()));
@@ -207,32 +234,134 @@ public class PendingStateImpl implements PendingState {
         listener.onPendingTransactionUpdate(txReceipt, state, block);
     }
 
+    private void fireDropped(Entry entry, String error) {
+        fireTxUpdate(createDroppedReceipt(entry.getTransaction(), error), DROPPED, getBestBlock());
+    }
+
     /**
-     * Executes pending tx on the latest best block
+     * Executes pending tx on the latest best block with preceding sender's transactions applied,
+     * queues it if there is a nonce gap
      * Fires pending state update
      * @param tx    Transaction
-     * @return True if transaction gets NEW_PENDING state, False if DROPPED
+     * @param newPending    collects transactions got NEW_PENDING state
      */
-    private boolean addPendingTransactionImpl(final Transaction tx) {
-        TransactionReceipt newReceipt = new TransactionReceipt();
-        newReceipt.setTransaction(tx);
-
+    private void addPendingTransactionImpl(final Transaction tx, List<Transaction> newPending) {
         String err = validate(tx);
+        if (err != null) {
+            fireTxUpdate(createDroppedReceipt(tx, err), DROPPED, getBestBlock());
+            return;
+        }
+
+        ByteArrayWrapper sender = new ByteArrayWrapper(tx.getSender());
+        long nonce = ByteUtil.byteArrayToLong(tx.getNonce());
+        List<Entry> senderEntries = pool.getSenderEntries(sender);
+
+        long stateNonce = getBestState().getNonce(sender.getData()).longValue();
+        long expectedNonce = stateNonce;
+        for (Entry entry : senderEntries) {
+            if (entry.isQueued() || entry.getNonce() != expectedNonce) break;
+            expectedNonce++;
+        }
 
-        TransactionReceipt txReceipt;
+        Entry replaced = pool.get(sender, nonce);
+        err = validatePoolLimits(tx, nonce, stateNonce, expectedNonce, replaced, senderEntries.size());
         if (err != null) {
-            txReceipt = createDroppedReceipt(tx, err);
+            fireTxUpdate(createDroppedReceipt(tx, err), DROPPED, getBestBlock());
+            return;
+        }
+
+        PendingTransaction pendingTx = new PendingTransaction(tx, getBestBlock().getNumber());
+        if (nonce > expectedNonce) {
+            logger.trace("Queue pending transaction, expected nonce: {}, tx: {}", expectedNonce, tx);
+            if (pool.add(pendingTx, null, true) != null) {
+                fireDropped(replaced, "Replaced by transaction " + toHexString(tx.getHash()));
+            }
+            evictIfFull();
+            return;
+        }
+
+        Repository track;
+        if (pendingState != null && replaced == null) {
+            track = pendingState;
         } else {
-            txReceipt = executeTx(tx);
+            // execute on top of the sender's transactions only, pending state is rebuilt on demand
+            track = getBestState().startTracking();
+            for (Entry entry : senderEntries) {
+                if (entry.getNonce() >= nonce) break;
+                entry.setReceipt(executeTx(entry.getTransaction(), track));
+            }
         }
 
+        TransactionReceipt txReceipt = executeTx(tx, track);
         if (!txReceipt.isValid()) {
             fireTxUpdate(txReceipt, DROPPED, getBestBlock());
-        } else {
-            pendingTransactions.add(new PendingTransaction(tx, getBestBlock().getNumber()));
-            fireTxUpdate(txReceipt, NEW_PENDING, getBestBlock());
+            return;
+        }
+        if (track != pendingState) {
+            pendingState = null;
+        }
+
+        if (pool.add(pendingTx, txReceipt, false) != null) {
+            fireDropped(replaced, "Replaced by transaction " + toHexString(tx.getHash()));
+        }
+        fireTxUpdate(txReceipt, NEW_PENDING, getBestBlock());
+        newPending.add(tx);
+
+        List<Entry> promoted = new ArrayList<>();
+        executeSenderTxs(sender, nonce + 1, track, promoted);
+        for (Entry entry : promoted) {
+            newPending.add(entry.getTransaction());
+        }
+
+        evictIfFull();
+    }
+
+    /**
+     * Executes sender's transactions going one after another starting from the nonce given,
+     * those which go after a gap or a failed transaction are moved to the queued tier
+     * @param promoted    collects transactions moved from the queued tier
+     */
+    private void executeSenderTxs(ByteArrayWrapper sender, long fromNonce, Repository track, List<Entry> promoted) {
+        long expectedNonce = fromNonce;
+        boolean failed = false;
+        for (Entry entry : pool.getSenderEntries(sender)) {
+            if (entry.getNonce() < fromNonce) continue;
+
+            if (!failed && entry.getNonce() == expectedNonce) {
+                TransactionReceipt txReceipt = executeTx(entry.getTransaction(), track);
+                if (txReceipt.isValid()) {
+                    entry.setReceipt(txReceipt);
+                    if (entry.isQueued()) {
+                        pool.setQueued(entry, false);
+                        fireTxUpdate(txReceipt, NEW_PENDING, getBestBlock());
+                        promoted.add(entry);
+                    }
+                    expectedNonce++;
+                    continue;
+                }
+                failed = true;
+            }
+
+            if (!entry.isQueued()) {
+                pool.setQueued(entry, true);
+                pendingState = null;
+            }
+        }
+    }
+
+    private void evictIfFull() {
+        while (pool.size() > config.txPoolMaxSize()) {
+            Entry cheapest = pool.getCheapest();
+            // sender's transactions following the evicted one couldn't be executed anymore
+            for (Entry entry : pool.getSenderEntries(cheapest.getSender())) {
+                if (entry.getNonce() < cheapest.getNonce()) continue;
+                pool.remove(entry);
+                if (!entry.isQueued()) {
+                    pendingState = null;
+                }
+                fireDropped(entry, "Evicted from the full transaction pool");
+            }
         }
-        return txReceipt.isValid();
     }
 
     private TransactionReceipt createDroppedReceipt(Transaction tx, String error) {
@@ -257,6 +386,41 @@ public class PendingStateImpl implements PendingState {
         return null;
     }
 
+    private String validatePoolLimits(Transaction tx, long nonce, long stateNonce, long expectedNonce,
+                                      Entry replaced, int senderSize) {
+        if (nonce < stateNonce) {
+            return String.format("Invalid nonce: required: %s , tx.nonce: %s", stateNonce, nonce);
+        }
+
+        if (nonce - expectedNonce > config.txPoolMaxNonceGap()) {
+            return String.format("Too large nonce: expected: %s , tx.nonce: %s", expectedNonce, nonce);
+        }
+
+        BigInteger gasPrice = ByteUtil.bytesToBigInteger(tx.getGasPrice());
+        if (replaced != null) {
+            BigInteger minPrice = replaced.getGasPrice().multiply(BigInteger.valueOf(100 + config.txPoolPriceBump()))
+                    .divide(BigInteger.valueOf(100));
+            if (gasPrice.compareTo(minPrice) < 0 || gasPrice.compareTo(replaced.getGasPrice()) <= 0) {
+                return "Too low gas price to replace transaction " + toHexString(replaced.getPendingTransaction().getHash()) +
+                        ": " + gasPrice + ", required: " + minPrice.max(replaced.getGasPrice().add(BigInteger.ONE));
+            }
+            return null;
+        }
+
+        if (senderSize >= config.txPoolMaxPerAccount()) {
+            return "Too many pending transactions from the sender: " + senderSize;
+        }
+
+        if (pool.size() >= config.txPoolMaxSize()) {
+            Entry cheapest = pool.getCheapest();
+            if (cheapest != null && gasPrice.compareTo(cheapest.getGasPrice()) <= 0) {
+                return "Transaction pool is full, too low gas price: " + gasPrice;
+            }
+        }
+
+        return null;
+    }
+
     private Block findCommonAncestor(Block b1, Block b2) {
         while(!b1.isEqual(b2)) {
             if (b1.getNumber() >= b2.getNumber()) {
@@ -275,7 +439,22 @@ public class PendingStateImpl implements PendingState {
     }
 
     @Override
-    public synchronized void processBest(Block newBlock, List<TransactionReceipt> receipts) {
+    public void processBest(Block newBlock, List<TransactionReceipt> receipts) {
+        processBest(newBlock, receipts, null);
+    }
+
+    @Override
+    public void processBest(BlockSummary summary) {
+        processBest(summary.getBlock(), summary.getReceipts(), summary.getSummaries());
+    }
+
+    private synchronized void processBest(Block newBlock, List<TransactionReceipt> receipts,
+                                          List<TransactionExecutionSummary> summaries) {
+
+        long t = System.nanoTime();
+
+        // accounts which transactions should be re-executed
+        Set<ByteArrayWrapper> touched = new HashSet<>();
 
         if (getBestBlock() != null && !getBestBlock().isParentOf(newBlock)) {
             // need to switch the state to another fork
@@ -289,18 +468,20 @@ public class PendingStateImpl implements PendingState {
             // first return back the transactions from forked blocks
             Block rollback = getBestBlock();
             while(!rollback.isEqual(commonAncestor)) {
-                List<PendingTransaction> blockTxs = new ArrayList<>();
                 for (Transaction tx : rollback.getTransactionsList()) {
+                    if (pool.get(tx.getHash()) != null) continue;
+
                     logger.trace("Returning transaction back to pending: " + tx);
-                    blockTxs.add(new PendingTransaction(tx, commonAncestor.getNumber()));
+                    Entry replaced = pool.add(new PendingTransaction(tx, commonAncestor.getNumber()), null, false);
+                    if (replaced != null) {
+                        fireDropped(replaced, "Replaced by transaction " + toHexString(tx.getHash()) +
+                                " from the block " + rollback.getShortDescr());
+                    }
                 }
-                pendingTransactions.addAll(0, blockTxs);
+                collectTouched(rollback, null, touched);
                 rollback = blockchain.getBlockByHash(rollback.getParentHash());
             }
 
-            // rollback the state snapshot to the ancestor
-            pendingState = getOrigRepository().getSnapshotTo(commonAncestor.getStateRoot()).startTracking();
-
             // next process blocks from new fork
             Block main = newBlock;
             List<Block> mainFork = new ArrayList<>();
@@ -311,59 +492,93 @@ public class PendingStateImpl implements PendingState {
 
             // processing blocks from ancestor to new block
             for (int i = mainFork.size() - 1; i >= 0; i--) {
-                processBestInternal(mainFork.get(i), null);
+                processBestInternal(mainFork.get(i), null, null, touched);
             }
         } else {
             logger.debug("PendingStateImpl.processBest: " + newBlock.getShortDescr());
-            processBestInternal(newBlock, receipts);
+            processBestInternal(newBlock, receipts, summaries, touched);
         }
 
         best = newBlock;
+        bestState = null;
+        pendingState = null;
 
-        updateState(newBlock);
+        updateState(newBlock, touched);
+
+        logger.debug("Successfully processed #{}, pending txs: {}, queued txs: {}, time: {}s", newBlock.getNumber(),
+                pool.getPendingSize(), pool.getQueuedSize(),
+                String.format("%.3f", (System.nanoTime() - t) / 1_000_000_000d));
 
         listener.onPendingStateChanged(PendingStateImpl.this);
     }
 
-    private void processBestInternal(Block block, List<TransactionReceipt> receipts) {
+    private void processBestInternal(Block block, List<TransactionReceipt> receipts,
+                                     List<TransactionExecutionSummary> summaries, Set<ByteArrayWrapper> touched) {
 
         clearPending(block, receipts);
 
-        clearOutdated(block.getNumber());
-    }
-
-    private void clearOutdated(final long blockNumber) {
-        List<PendingTransaction> outdated = new ArrayList<>();
+        clearOutdated(block.getNumber(), touched);
 
-        for (PendingTransaction tx : pendingTransactions) {
-            if (blockNumber - tx.getBlockNumber() > config.txOutdatedThreshold()) {
-                outdated.add(tx);
+        collectTouched(block, summaries, touched);
+    }
 
-                fireTxUpdate(createDroppedReceipt(tx.getTransaction(),
-                        "Tx was not included into last " + config.txOutdatedThreshold() + " blocks"),
-                        DROPPED, getBestBlock());
+    /**
+     * Only transactions of the block senders and recipients might be affected by the block:
+     * nonces are increased or balances are changed.
+     * Receivers of value transfers made by contracts are taken from touched accounts of the summaries
+     * which are recorded by any execution profile, when summaries are not available
+     * all pending senders are considered touched
+     */
+    private void collectTouched(Block block, List<TransactionExecutionSummary> summaries, Set<ByteArrayWrapper> touched) {
+        touched.add(new ByteArrayWrapper(block.getCoinbase()));
+        for (BlockHeader uncle : block.getUncleList()) {
+            touched.add(new ByteArrayWrapper(uncle.getCoinbase()));
+        }
+        for (Transaction tx : block.getTransactionsList()) {
+            touched.add(new ByteArrayWrapper(tx.getSender()));
+            if (tx.getReceiveAddress() != null) {
+                touched.add(new ByteArrayWrapper(tx.getReceiveAddress()));
             }
         }
 
-        if (outdated.isEmpty()) return;
+        if (summaries == null) {
+            for (Entry entry : pool.getEntries()) {
+                touched.add(entry.getSender());
+            }
+            return;
+        }
+        for (TransactionExecutionSummary summary : summaries) {
+            for (byte[] account : summary.getTouchedAccounts()) {
+                touched.add(new ByteArrayWrapper(account));
+            }
+        }
+    }
 
-        if (logger.isDebugEnabled())
-            for (PendingTransaction tx : outdated)
+    private void clearOutdated(final long blockNumber, Set<ByteArrayWrapper> touched) {
+        for (Entry entry : pool.getEntries()) {
+            PendingTransaction tx = entry.getPendingTransaction();
+            if (blockNumber - tx.getBlockNumber() > config.txOutdatedThreshold()) {
                 logger.trace(
                         "Clear outdated pending transaction, block.number: [{}] hash: [{}]",
                         tx.getBlockNumber(),
                         toHexString(tx.getHash())
                 );
 
-        pendingTransactions.removeAll(outdated);
+                pool.remove(entry);
+                // following sender's transactions are re-validated
+                touched.add(entry.getSender());
+
+                fireDropped(entry, "Tx was not included into last " + config.txOutdatedThreshold() + " blocks");
+            }
+        }
     }
 
     private void clearPending(Block block, List<TransactionReceipt> receipts) {
         for (int i = 0; i < block.getTransactionsList().size(); i++) {
             Transaction tx = block.getTransactionsList().get(i);
-            PendingTransaction pend = new PendingTransaction(tx);
+            Entry entry = pool.get(tx.getHash());
 
-            if (pendingTransactions.remove(pend)) {
+            if (entry != null && pool.remove(entry)) {
                 try {
                     logger.trace("Clear pending transaction, hash: [{}]", toHexString(tx.getHash()));
                     TransactionReceipt receipt;
@@ -388,31 +603,52 @@ public class PendingStateImpl implements PendingState {
         return info;
     }
 
-    private void updateState(Block block) {
+    /**
+     * Re-executes transactions of the touched senders on the new best block state,
+     * other transactions are reported with their last receipts
+     */
+    private void updateState(Block block, Set<ByteArrayWrapper> touched) {
 
-        pendingState = getOrigRepository().startTracking();
+        Set<Entry> promoted = new HashSet<>();
+        int revalidated = 0;
 
-        long t = System.nanoTime();
+        for (ByteArrayWrapper sender : touched) {
+            if (!pool.hasSender(sender)) continue;
 
-        for (PendingTransaction tx : pendingTransactions) {
-            TransactionReceipt receipt = executeTx(tx.getTransaction());
-            fireTxUpdate(receipt, PENDING, block);
+            long stateNonce = getBestState().getNonce(sender.getData()).longValue();
+            for (Entry entry : pool.getSenderEntries(sender)) {
+                if (entry.getNonce() >= stateNonce) break;
+                // another transaction with this nonce was included
+                pool.remove(entry);
+                fireDropped(entry, String.format("Invalid nonce: required: %s , tx.nonce: %s", stateNonce, entry.getNonce()));
+            }
+
+            List<Entry> senderPromoted = new ArrayList<>();
+            executeSenderTxs(sender, stateNonce, getBestState().startTracking(), senderPromoted);
+            promoted.addAll(senderPromoted);
+            revalidated++;
         }
 
-        logger.debug("Successfully processed #{}, txs: {}, time: {}s", block.getNumber(), pendingTransactions.size(),
-                String.format("%.3f", (System.nanoTime() - t) / 1_000_000_000d));
+        for (Entry entry : pool.getPending()) {
+            if (!promoted.contains(entry) && entry.getReceipt() != null) {
+                fireTxUpdate(entry.getReceipt(), PENDING, block);
+            }
+        }
+
+        logger.debug("Pending state updated: revalidated senders: {}, promoted txs: {}", revalidated, promoted.size());
     }
 
-    private TransactionReceipt executeTx(Transaction tx) {
+    private TransactionReceipt executeTx(Transaction tx, Repository track) {
 
         logger.trace("Apply pending state tx: {}", toHexString(tx.getHash()));
 
         Block best = getBestBlock();
 
         TransactionExecutor executor = new TransactionExecutor(
-                tx, best.getCoinbase(), getRepository(),
+                tx, best.getCoinbase(), track,
                 blockStore, programInvokeFactory, createFakePendingBlock())
-                .withCommonConfig(commonConfig);
+                .withCommonConfig(commonConfig)
+                .withExecutionProfile(ExecutionProfile.RECEIPTS);
 
         executor.init();
         executor.execute();
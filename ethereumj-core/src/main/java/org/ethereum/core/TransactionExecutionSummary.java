@@ -47,6 +47,8 @@ public class TransactionExecutionSummary {
     private List<InternalTransaction> internalTransactions = emptyList();
     private Map<DataWord, DataWord> storageDiff = emptyMap();
     private TransactionTouchedStorage touchedStorage = new TransactionTouchedStorage();
+    // not encoded, recorded by every execution profile
+    private List<byte[]> touchedAccounts = emptyList();
 
 
     private byte[] result;
@@ -290,6 +292,16 @@ public class TransactionExecutionSummary {
         return internalTransactions;
     }
 
+    /**
+     * Accounts touched by the successful execution: the recipient, the called contracts
+     * and the receivers of value transfers made by contracts. <br>
+     * Unlike internal transactions these are collected regardless of {@link ExecutionProfile},
+     * the list is empty for the summary decoded from RLP
+     */
+    public List<byte[]> getTouchedAccounts() {
+        return touchedAccounts;
+    }
+
     @Deprecated
     /* Use getTouchedStorage().getAll() instead */
     public Map<DataWord, DataWord> getStorageDiff() {
@@ -354,6 +366,11 @@ public class TransactionExecutionSummary {
             return this;
         }
 
+        public Builder touchedAccounts(Set<byte[]> touchedAccounts) {
+            summary.touchedAccounts = unmodifiableList(new ArrayList<>(touchedAccounts));
+            return this;
+        }
+
         public Builder deletedAccounts(Set<DataWord> deletedAccounts) {
             summary.deletedAccounts = new ArrayList<>();
             for (DataWord account : deletedAccounts) {
@@ -89,6 +89,7 @@ public class TransactionExecutor {
     private ByteArraySet touchedAccounts = new ByteArraySet();
 
     boolean localCall = false;
+    private ExecutionProfile profile = ExecutionProfile.FULL;
     private final VMHook vmHook;
 
     public TransactionExecutor(Transaction tx, byte[] coinbase, Repository track, BlockStore blockStore,
@@ -257,7 +258,9 @@ public class TransactionExecutor {
                         programInvokeFactory.createProgramInvoke(tx, currentBlock, cacheTrack, track, blockStore);
 
                 this.vm = new VM(config, vmHook);
-                this.program = new Program(track.getCodeHash(targetAddress), code, programInvoke, tx, config, vmHook).withCommonConfig(commonConfig);
+                this.program = new Program(track.getCodeHash(targetAddress), code, programInvoke, tx, config, vmHook)
+                        .withCommonConfig(commonConfig)
+                        .withExecutionProfile(profile);
             }
         }
 
@@ -293,7 +296,9 @@ public class TransactionExecutor {
                     cacheTrack, track, blockStore);
 
             this.vm = new VM(config, vmHook);
-            this.program = new Program(tx.getData(), programInvoke, tx, config, vmHook).withCommonConfig(commonConfig);
+            this.program = new Program(tx.getData(), programInvoke, tx, config, vmHook)
+                    .withCommonConfig(commonConfig)
+                    .withExecutionProfile(profile);
 
             // reset storage if the contract with the same address already exists
             // TCK test case only - normally this is near-impossible situation in the real network
@@ -415,8 +420,13 @@ public class TransactionExecutor {
             summaryBuilder
                     .gasUsed(toBI(result.getGasUsed()))
                     .gasRefund(toBI(gasRefund))
-                    .deletedAccounts(result.getDeleteAccounts())
-                    .internalTransactions(result.getInternalTransactions());
+                    .touchedAccounts(touchedAccounts);
+
+            if (profile == ExecutionProfile.FULL) {
+                summaryBuilder
+                        .deletedAccounts(result.getDeleteAccounts())
+                        .internalTransactions(result.getInternalTransactions());
+            }
 
             ContractDetails contractDetails = track.getContractDetails(addr);
             if (contractDetails != null) {
@@ -487,6 +497,14 @@ public class TransactionExecutor {
         return this;
     }
 
+    /**
+     * Should be set before {@link #execute()}, {@link ExecutionProfile#FULL} is used by default
+     */
+    public TransactionExecutor withExecutionProfile(ExecutionProfile profile) {
+        this.profile = profile;
+        return this;
+    }
+
 
     public TransactionReceipt getReceipt() {
         if (receipt == null) {
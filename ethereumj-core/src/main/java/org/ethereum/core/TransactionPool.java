@@ -0,0 +1,237 @@
+/*
+ * Copyright (c) [2016] [ <ether.camp> ]
+ * This file is part of the ethereumJ library.
+ *
+ * The ethereumJ library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The ethereumJ library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with the ethereumJ library. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.core;
+
+import org.ethereum.db.ByteArrayWrapper;
+import org.ethereum.util.ByteUtil;
+
+import java.math.BigInteger;
+import java.util.*;
+
+/**
+ * Storage of transactions managed by {@link PendingStateImpl} <br>
+ *
+ * Transactions are grouped by sender and ordered by nonce. Sender's transactions which
+ * follow each other starting from the sender's nonce on the best block are in the <b>pending</b> tier,
+ * those behind a nonce gap are <b>queued</b> until the missing transactions arrive. <br>
+ *
+ * All transactions are also indexed by gas price: the cheapest one is the first to be evicted
+ * when the pool is full, while pending transactions are returned most expensive first
+ * (keeping the nonce order of each sender) to be included into a new block. <br>
+ *
+ * The class is thread safe, the {@link Entry} state is modified by the pool owner only
+ */
+public class TransactionPool {
+
+    public static class Entry {
+        private final PendingTransaction pendingTx;
+        private final ByteArrayWrapper sender;
+        private final long nonce;
+        private final BigInteger gasPrice;
+        private final long seq;
+        private volatile TransactionReceipt receipt;
+        private boolean queued;
+
+        Entry(PendingTransaction pendingTx, long seq) {
+            this.pendingTx = pendingTx;
+            this.sender = new ByteArrayWrapper(pendingTx.getSender());
+            this.nonce = ByteUtil.byteArrayToLong(pendingTx.getTransaction().getNonce());
+            this.gasPrice = ByteUtil.bytesToBigInteger(pendingTx.getTransaction().getGasPrice());
+            this.seq = seq;
+        }
+
+        public PendingTransaction getPendingTransaction() {
+            return pendingTx;
+        }
+
+        public Transaction getTransaction() {
+            return pendingTx.getTransaction();
+        }
+
+        public ByteArrayWrapper getSender() {
+            return sender;
+        }
+
+        public long getNonce() {
+            return nonce;
+        }
+
+        public BigInteger getGasPrice() {
+            return gasPrice;
+        }
+
+        /**
+         * @return receipt of the last execution, null if the transaction has never been executed
+         */
+        public TransactionReceipt getReceipt() {
+            return receipt;
+        }
+
+        public void setReceipt(TransactionReceipt receipt) {
+            this.receipt = receipt;
+        }
+
+        public boolean isQueued() {
+            return queued;
+        }
+    }
+
+    // cheapest first, among equally priced the latest arrived go first
+    private static final Comparator<Entry> PRICE_ORDER = (e1, e2) -> {
+        int c = e1.gasPrice.compareTo(e2.gasPrice);
+        return c != 0 ? c : Long.compare(e2.seq, e1.seq);
+    };
+
+    // most expensive first, among equally priced the earliest arrived go first
+    private static final Comparator<Entry> BLOCK_ORDER = (e1, e2) -> -PRICE_ORDER.compare(e1, e2);
+
+    private final Map<ByteArrayWrapper, Entry> byHash = new HashMap<>();
+    private final Map<ByteArrayWrapper, TreeMap<Long, Entry>> bySender = new HashMap<>();
+    private final TreeSet<Entry> byPrice = new TreeSet<>(PRICE_ORDER);
+
+    private long seq = 0;
+    private int queuedCount = 0;
+
+    /**
+     * Adds transaction to the pool, a transaction with the same sender and nonce is replaced
+     *
+     * @return replaced entry or null
+     */
+    public synchronized Entry add(PendingTransaction tx, TransactionReceipt receipt, boolean queued) {
+        Entry entry = new Entry(tx, seq++);
+        entry.receipt = receipt;
+        entry.queued = queued;
+
+        Entry replaced = getSenderQueue(entry.sender).get(entry.nonce);
+        if (replaced != null) remove(replaced);
+
+        getSenderQueue(entry.sender).put(entry.nonce, entry);
+        byHash.put(new ByteArrayWrapper(tx.getHash()), entry);
+        byPrice.add(entry);
+        if (queued) queuedCount++;
+
+        return replaced;
+    }
+
+    public synchronized boolean remove(Entry entry) {
+        if (byHash.remove(new ByteArrayWrapper(entry.pendingTx.getHash())) == null) return false;
+
+        TreeMap<Long, Entry> senderQueue = bySender.get(entry.sender);
+        senderQueue.remove(entry.nonce);
+        if (senderQueue.isEmpty()) bySender.remove(entry.sender);
+        byPrice.remove(entry);
+        if (entry.queued) queuedCount--;
+
+        return true;
+    }
+
+    public synchronized void setQueued(Entry entry, boolean queued) {
+        if (entry.queued == queued || !byHash.containsKey(new ByteArrayWrapper(entry.pendingTx.getHash()))) return;
+
+        entry.queued = queued;
+        queuedCount += queued ? 1 : -1;
+    }
+
+    public synchronized Entry get(byte[] hash) {
+        return byHash.get(new ByteArrayWrapper(hash));
+    }
+
+    public synchronized Entry get(ByteArrayWrapper sender, long nonce) {
+        TreeMap<Long, Entry> senderQueue = bySender.get(sender);
+        return senderQueue == null ? null : senderQueue.get(nonce);
+    }
+
+    /**
+     * @return sender's transactions ordered by nonce
+     */
+    public synchronized List<Entry> getSenderEntries(ByteArrayWrapper sender) {
+        TreeMap<Long, Entry> senderQueue = bySender.get(sender);
+        return senderQueue == null ? Collections.emptyList() : new ArrayList<>(senderQueue.values());
+    }
+
+    public synchronized int getSenderSize(ByteArrayWrapper sender) {
+        TreeMap<Long, Entry> senderQueue = bySender.get(sender);
+        return senderQueue == null ? 0 : senderQueue.size();
+    }
+
+    public synchronized boolean hasSender(ByteArrayWrapper sender) {
+        return bySender.containsKey(sender);
+    }
+
+    /**
+     * @return the first candidate for eviction or null if the pool is empty
+     */
+    public synchronized Entry getCheapest() {
+        return byPrice.isEmpty() ? null : byPrice.first();
+    }
+
+    /**
+     * @return all entries in no particular order
+     */
+    public synchronized List<Entry> getEntries() {
+        return new ArrayList<>(byHash.values());
+    }
+
+    /**
+     * Returns transactions of the pending tier in the order they should be included into a block:
+     * the most expensive first while each sender's transactions go in the nonce order
+     */
+    public synchronized List<Entry> getPending() {
+        List<Entry> ret = new ArrayList<>(byHash.size() - queuedCount);
+
+        PriorityQueue<Entry> heads = new PriorityQueue<>(Math.max(1, bySender.size()), BLOCK_ORDER);
+        for (TreeMap<Long, Entry> senderQueue : bySender.values()) {
+            Entry head = senderQueue.firstEntry().getValue();
+            if (!head.queued) heads.add(head);
+        }
+
+        while (!heads.isEmpty()) {
+            Entry entry = heads.poll();
+            ret.add(entry);
+            Map.Entry<Long, Entry> next = bySender.get(entry.sender).higherEntry(entry.nonce);
+            if (next != null && !next.getValue().queued) heads.add(next.getValue());
+        }
+
+        return ret;
+    }
+
+    public List<Transaction> getPendingTransactions() {
+        List<Entry> pending = getPending();
+        List<Transaction> ret = new ArrayList<>(pending.size());
+        for (Entry entry : pending) {
+            ret.add(entry.getTransaction());
+        }
+        return ret;
+    }
+
+    public synchronized int size() {
+        return byHash.size();
+    }
+
+    public synchronized int getQueuedSize() {
+        return queuedCount;
+    }
+
+    public synchronized int getPendingSize() {
+        return byHash.size() - queuedCount;
+    }
+
+    private TreeMap<Long, Entry> getSenderQueue(ByteArrayWrapper sender) {
+        return bySender.computeIfAbsent(sender, s -> new TreeMap<>());
+    }
+}
@@ -242,4 +242,11 @@ public abstract class BN128<T extends Field<T>> {
         if (y != null ? !y.equals(bn128.y) : bn128.y != null) return false;
         return !(z != null ? !z.equals(bn128.z) : bn128.z != null);
     }
+
+    @Override
+    public int hashCode() {
+        int result = x != null ? x.hashCode() : 0;
+        result = 31 * result + (y != null ? y.hashCode() : 0);
+        return 31 * result + (z != null ? z.hashCode() : 0);
+    }
 }
@@ -18,48 +18,77 @@
 package org.ethereum.crypto.zksnark;
 
 import java.math.BigInteger;
-
-import static org.ethereum.crypto.zksnark.Params.P;
+import java.util.Arrays;
 
 /**
- * Arithmetic in F_p, p = 21888242871839275222246405745257275088696311157297823662689037894645226208583
+ * Arithmetic in F_p, p = 21888242871839275222246405745257275088696311157297823662689037894645226208583 <br/>
+ * <br/>
+ *
+ * Elements are kept in Montgomery form {@code a * R mod p}, R = 2^256,
+ * as eight 32-bit limbs in little-endian order,
+ * multiplication is a CIOS Montgomery multiplication which needs no division by p. <br/>
+ * Values which are not less than p are kept as is, they are reported by {@link #isValid()}
+ * and must not be used in arithmetic
  *
  * @author Mikhail Kalinin
  * @since 01.09.2017
  */
 public class Fp implements Field<Fp> {
 
+    private static final int LIMBS = 8;
+    private static final long MASK = 0xFFFFFFFFL;
+
+    // same as Params.P, Params can't be referenced here since its constants are instances of Fp
+    private static final BigInteger P = new BigInteger("21888242871839275222246405745257275088696311157297823662689037894645226208583");
+
+    private static final int[] MODULUS = toLimbs(P);
+    // -p^-1 mod 2^32
+    private static final int INV = P.negate().modInverse(BigInteger.ONE.shiftLeft(32)).intValue();
+    // R^2 mod p, converts value to Montgomery form
+    private static final int[] R2 = toLimbs(BigInteger.ONE.shiftLeft(64 * LIMBS).mod(P));
+    // plain 1, converts value back from Montgomery form
+    private static final int[] ONE = toLimbs(BigInteger.ONE);
+
     static final Fp ZERO = new Fp(BigInteger.ZERO);
     static final Fp _1 = new Fp(BigInteger.ONE);
     static final Fp NON_RESIDUE = new Fp(new BigInteger("21888242871839275222246405745257275088696311157297823662689037894645226208582"));
 
     static final Fp _2_INV = new Fp(BigInteger.valueOf(2).modInverse(P));
 
-    BigInteger v;
+    final int[] v;
 
-    Fp(BigInteger v) { this.v = v; }
+    Fp(BigInteger v) { this.v = toMontgomery(toLimbs(v)); }
 
-    @Override public Fp add(Fp o) { return new Fp(this.v.add(o.v).mod(P)); }
-    @Override public Fp mul(Fp o) { return new Fp(this.v.multiply(o.v).mod(P)); }
-    @Override public Fp sub(Fp o) { return new Fp(this.v.subtract(o.v).mod(P)); }
-    @Override public Fp squared() { return new Fp(v.multiply(v).mod(P)); }
-    @Override public Fp dbl() { return new Fp(v.add(v).mod(P)); }
-    @Override public Fp inverse() { return new Fp(v.modInverse(P)); }
-    @Override public Fp negate() { return new Fp(v.negate().mod(P)); }
-    @Override public boolean isZero() { return v.compareTo(BigInteger.ZERO) == 0; }
+    private Fp(int[] v) { this.v = v; }
+
+    @Override public Fp add(Fp o) { return new Fp(add(v, o.v)); }
+    @Override public Fp mul(Fp o) { return new Fp(mul(v, o.v)); }
+    @Override public Fp sub(Fp o) { return new Fp(sub(v, o.v)); }
+    @Override public Fp squared() { return new Fp(mul(v, v)); }
+    @Override public Fp dbl() { return new Fp(add(v, v)); }
+    @Override public Fp inverse() { return new Fp(toBigInteger().modInverse(P)); }
+    @Override public Fp negate() { return new Fp(sub(ZERO.v, v)); }
+
+    @Override
+    public boolean isZero() {
+        for (int limb : v) {
+            if (limb != 0) return false;
+        }
+        return true;
+    }
 
     /**
      * Checks if provided value is a valid Fp member
      */
     @Override
     public boolean isValid() {
-        return v.compareTo(P) < 0;
+        return compare(v, MODULUS) < 0;
     }
 
     Fp2 mul(Fp2 o) { return new Fp2(o.a.mul(this), o.b.mul(this)); }
 
     static Fp create(byte[] v) {
-        return new Fp(new BigInteger(1, v));
+        return new Fp(toMontgomery(toLimbs(v)));
     }
 
     static Fp create(BigInteger v) {
@@ -67,7 +96,134 @@ public class Fp implements Field<Fp> {
     }
 
     public byte[] bytes() {
-        return v.toByteArray();
+        return toBigInteger().toByteArray();
+    }
+
+    /**
+     * Converts value back from Montgomery form
+     */
+    BigInteger toBigInteger() {
+        return fromLimbs(isValid() ? mul(v, ONE) : v);
+    }
+
+    private static int[] toMontgomery(int[] raw) {
+        return compare(raw, MODULUS) < 0 ? mul(raw, R2) : raw;
+    }
+
+    private static int[] add(int[] a, int[] b) {
+        int[] r = new int[LIMBS];
+        long carry = 0;
+        for (int i = 0; i < LIMBS; i++) {
+            carry += (a[i] & MASK) + (b[i] & MASK);
+            r[i] = (int) carry;
+            carry >>>= 32;
+        }
+        if (carry != 0 || compare(r, MODULUS) >= 0) {
+            subModulus(r);
+        }
+        return r;
+    }
+
+    private static int[] sub(int[] a, int[] b) {
+        int[] r = new int[LIMBS];
+        long borrow = 0;
+        for (int i = 0; i < LIMBS; i++) {
+            borrow = (a[i] & MASK) - (b[i] & MASK) + borrow;
+            r[i] = (int) borrow;
+            borrow >>= 32;
+        }
+        if (borrow != 0) {
+            long carry = 0;
+            for (int i = 0; i < LIMBS; i++) {
+                carry += (r[i] & MASK) + (MODULUS[i] & MASK);
+                r[i] = (int) carry;
+                carry >>>= 32;
+            }
+        }
+        return r;
+    }
+
+    /**
+     * Montgomery multiplication: {@code a * b * R^-1 mod p}
+     */
+    private static int[] mul(int[] a, int[] b) {
+        int[] t = new int[LIMBS + 2];
+
+        for (int i = 0; i < LIMBS; i++) {
+
+            // t += a[i] * b
+            long ai = a[i] & MASK;
+            long carry = 0;
+            for (int j = 0; j < LIMBS; j++) {
+                carry += (t[j] & MASK) + ai * (b[j] & MASK);
+                t[j] = (int) carry;
+                carry >>>= 32;
+            }
+            carry += t[LIMBS] & MASK;
+            t[LIMBS] = (int) carry;
+            t[LIMBS + 1] = (int) (carry >>> 32);
+
+            // t = (t + m * p) / 2^32
+            long m = (t[0] * INV) & MASK;
+            carry = ((t[0] & MASK) + m * (MODULUS[0] & MASK)) >>> 32;
+            for (int j = 1; j < LIMBS; j++) {
+                carry += (t[j] & MASK) + m * (MODULUS[j] & MASK);
+                t[j - 1] = (int) carry;
+                carry >>>= 32;
+            }
+            carry += t[LIMBS] & MASK;
+            t[LIMBS - 1] = (int) carry;
+            t[LIMBS] = t[LIMBS + 1] + (int) (carry >>> 32);
+        }
+
+        int[] r = Arrays.copyOf(t, LIMBS);
+        if (t[LIMBS] != 0 || compare(r, MODULUS) >= 0) {
+            subModulus(r);
+        }
+        return r;
+    }
+
+    private static void subModulus(int[] r) {
+        long borrow = 0;
+        for (int i = 0; i < LIMBS; i++) {
+            borrow = (r[i] & MASK) - (MODULUS[i] & MASK) + borrow;
+            r[i] = (int) borrow;
+            borrow >>= 32;
+        }
+    }
+
+    private static int compare(int[] a, int[] b) {
+        for (int i = LIMBS - 1; i >= 0; i--) {
+            if (a[i] != b[i]) return Integer.compareUnsigned(a[i], b[i]);
+        }
+        return 0;
+    }
+
+    private static int[] toLimbs(BigInteger v) {
+        return toLimbs(v.toByteArray());
+    }
+
+    /**
+     * Big-endian bytes to limbs, bytes beyond 256 bits are ignored
+     */
+    private static int[] toLimbs(byte[] bytes) {
+        int[] r = new int[LIMBS];
+        for (int i = 0; i < bytes.length && i < LIMBS * 4; i++) {
+            r[i >>> 2] |= (bytes[bytes.length - 1 - i] & 0xFF) << ((i & 3) << 3);
+        }
+        return r;
+    }
+
+    private static BigInteger fromLimbs(int[] v) {
+        byte[] bytes = new byte[LIMBS * 4 + 1];
+        for (int i = 0; i < LIMBS; i++) {
+            int limb = v[LIMBS - 1 - i];
+            bytes[1 + i * 4] = (byte) (limb >>> 24);
+            bytes[2 + i * 4] = (byte) (limb >>> 16);
+            bytes[3 + i * 4] = (byte) (limb >>> 8);
+            bytes[4 + i * 4] = (byte) limb;
+        }
+        return new BigInteger(bytes);
     }
 
     @Override
@@ -77,11 +233,16 @@ public class Fp implements Field<Fp> {
 
         Fp fp = (Fp) o;
 
-        return !(v != null ? v.compareTo(fp.v) != 0 : fp.v != null);
+        return Arrays.equals(v, fp.v);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(v);
     }
 
     @Override
     public String toString() {
-        return v.toString();
+        return toBigInteger().toString();
     }
 }
@@ -36,7 +36,6 @@ class Fp6 implements Field<Fp6> {
 
     static final Fp6 ZERO = new Fp6(Fp2.ZERO, Fp2.ZERO, Fp2.ZERO);
     static final Fp6 _1 = new Fp6(Fp2._1, Fp2.ZERO, Fp2.ZERO);
-    static final Fp2 NON_RESIDUE = new Fp2(BigInteger.valueOf(9), BigInteger.ONE);
 
     Fp2 a;
     Fp2 b;
@@ -99,7 +98,7 @@ class Fp6 implements Field<Fp6> {
 
     Fp6 mulByNonResidue() {
 
-        Fp2 ra = NON_RESIDUE.mul(c);
+        Fp2 ra = c.mulByNonResidue();
         Fp2 rb = a;
         Fp2 rc = b;
 
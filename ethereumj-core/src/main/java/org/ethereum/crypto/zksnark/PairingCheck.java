@@ -17,9 +17,13 @@
  */
 package org.ethereum.crypto.zksnark;
 
+import org.apache.commons.collections4.map.LRUMap;
+
 import java.math.BigInteger;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
 import static org.ethereum.crypto.zksnark.Params.B_Fp2;
 import static org.ethereum.crypto.zksnark.Params.PAIRING_FINAL_EXPONENT_Z;
@@ -44,6 +48,10 @@ import static org.ethereum.crypto.zksnark.Params.TWIST;
  *      <li>get result with {@link #result()}</li>
  * </ul>
  *
+ * Ell coefficients of the Miller loop depend on {@link BN128G2} point only,
+ * they are cached for recently used points, which are typically the points of a verification key <br/>
+ * <br/>
+ *
  * Arithmetic has been ported from <a href="https://github.com/scipr-lab/libff/blob/master/libff/algebra/curves/alt_bn128/alt_bn128_pairing.cpp">libff</a>
  * Ate pairing algorithms
  *
@@ -54,6 +62,10 @@ public class PairingCheck {
 
     static final BigInteger LOOP_COUNT = new BigInteger("29793968203157093288");
 
+    private static final int COEFFS_CACHE_SIZE = 32;
+    private static final Map<BN128G2, List<EllCoeffs>> coeffsCache =
+            Collections.synchronizedMap(new LRUMap<BN128G2, List<EllCoeffs>>(COEFFS_CACHE_SIZE));
+
     List<Pair> pairs = new ArrayList<>();
     Fp12 product = Fp12._1;
 
@@ -92,7 +104,7 @@ public class PairingCheck {
         g2 = g2.toAffine();
 
         // calculate Ell coefficients
-        List<EllCoeffs> coeffs = calcEllCoeffs(g2);
+        List<EllCoeffs> coeffs = ellCoeffs(g2);
 
         Fp12 f = Fp12._1;
         int idx = 0;
@@ -120,9 +132,23 @@ public class PairingCheck {
         return f;
     }
 
+    /**
+     * Returns Ell coefficients of the point given in affine coordinates
+     */
+    static List<EllCoeffs> ellCoeffs(BN128G2 g2) {
+
+        List<EllCoeffs> coeffs = coeffsCache.get(g2);
+        if (coeffs == null) {
+            coeffs = calcEllCoeffs(g2);
+            coeffsCache.put(g2, coeffs);
+        }
+
+        return coeffs;
+    }
+
     private static List<EllCoeffs> calcEllCoeffs(BN128G2 base) {
 
-        List<EllCoeffs> coeffs = new ArrayList<>();
+        List<EllCoeffs> coeffs = new ArrayList<>(LOOP_COUNT.bitLength() + LOOP_COUNT.bitCount());
 
         BN128G2 addend = base;
 
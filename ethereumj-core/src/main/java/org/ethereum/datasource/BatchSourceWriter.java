@@ -18,6 +18,7 @@
 package org.ethereum.datasource;
 
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -53,6 +54,11 @@ public class BatchSourceWriter<Key, Value> extends AbstractChainedSource<Key, Va
         return getSource().get(key);
     }
 
+    @Override
+    public List<Value> getBatch(List<Key> keys) {
+        return getSource().getBatch(keys);
+    }
+
     @Override
     public synchronized boolean flushImpl() {
         if (!buf.isEmpty()) {
@@ -74,6 +74,18 @@ public class DataSourceArray<V> extends AbstractList<V> {
         return size;
     }
 
+    /**
+     * Removes elements starting from the given index
+     */
+    public synchronized void truncate(int newSize) {
+        for (int i = newSize; i < size(); i++) {
+            src.delete(ByteUtil.intToBytes(i));
+        }
+        if (newSize < size()) {
+            setSize(newSize);
+        }
+    }
+
     private synchronized void setSize(int newSize) {
         size = newSize;
         src.getSource().put(SIZE_KEY, ByteUtil.intToBytes(newSize));
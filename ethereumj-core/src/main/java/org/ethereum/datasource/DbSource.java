@@ -17,6 +17,10 @@
  */
 package org.ethereum.datasource;
 
+import org.ethereum.util.LatencyHistogram;
+
+import java.util.Collections;
+import java.util.List;
 import java.util.Set;
 
 /**
@@ -78,4 +82,11 @@ public interface DbSource<V> extends BatchSource<byte[], V> {
      * @throws RuntimeException if operation is not supported
      */
     V prefixLookup(byte[] key, int prefixBytes);
+
+    /**
+     * @return latencies of DB operations if the implementation collects them
+     */
+    default List<LatencyHistogram> getLatencyStats() {
+        return Collections.emptyList();
+    }
 }
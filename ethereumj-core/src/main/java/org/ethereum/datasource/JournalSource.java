@@ -141,6 +141,11 @@ public class JournalSource<V> extends AbstractChainedSource<byte[], V, byte[], V
         return getSource().get(key);
     }
 
+    @Override
+    public synchronized List<V> getBatch(List<byte[]> keys) {
+        return getSource().getBatch(keys);
+    }
+
     /**
      * Records all the changes made prior to this call to a single chunk
      * with supplied hash.
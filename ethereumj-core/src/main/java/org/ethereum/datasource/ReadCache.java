@@ -20,10 +20,14 @@ package org.ethereum.datasource;
 import org.apache.commons.collections4.map.LRUMap;
 import org.ethereum.db.ByteArrayWrapper;
 import org.ethereum.util.ByteArrayMap;
+import org.ethereum.util.FlatByteArrayMap;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -56,7 +60,7 @@ public class ReadCache<Key, Value> extends AbstractCachedSource<Key, Value> {
      * Installs the specific cache Map implementation
      */
     public ReadCache<Key, Value> withCache(Map<Key, Value> cache) {
-        byteKeyMap = cache instanceof ByteArrayMap;
+        byteKeyMap = cache instanceof ByteArrayMap || cache instanceof FlatByteArrayMap;
         this.cache = Collections.synchronizedMap(cache);
         return this;
     }
@@ -114,6 +118,31 @@ public class ReadCache<Key, Value> extends AbstractCachedSource<Key, Value> {
         return ret;
     }
 
+    @Override
+    public List<Value> getBatch(List<Key> keys) {
+        List<Value> ret = new ArrayList<>(keys.size());
+        List<Key> missed = new ArrayList<>();
+        for (Key key : keys) {
+            checkByteArrKey(key);
+            Value val = cache.get(key);
+            if (val == null) missed.add(key);
+            ret.add(val);
+        }
+        Iterator<Value> srcValues = missed.isEmpty() ? null : getSource().getBatch(missed).iterator();
+        for (int i = 0; i < ret.size(); i++) {
+            Value val = ret.get(i);
+            if (val == null) {
+                val = srcValues.next();
+                cache.put(keys.get(i), val == null ? NULL : val);
+                cacheAdded(keys.get(i), val);
+                ret.set(i, val);
+            } else if (val == NULL) {
+                ret.set(i, null);
+            }
+        }
+        return ret;
+    }
+
     @Override
     public void delete(Key key) {
         checkByteArrKey(key);
@@ -150,7 +179,7 @@ public class ReadCache<Key, Value> extends AbstractCachedSource<Key, Value> {
 
         public BytesKey(Source<byte[], V> src) {
             super(src);
-            withCache(new ByteArrayMap<V>());
+            withCache(new FlatByteArrayMap<V>(32));
         }
 
         public ReadCache.BytesKey<V> withMaxCapacity(int maxCapacity) {
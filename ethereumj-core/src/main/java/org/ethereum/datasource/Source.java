@@ -17,6 +17,9 @@
  */
 package org.ethereum.datasource;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * Base interface for all data source classes
  *
@@ -35,6 +38,21 @@ public interface Source<K, V> {
      */
     V get(K key);
 
+    /**
+     * Gets values for a number of keys at once. Sources backed by a database
+     * could fetch all of them in a single call, chained sources are expected
+     * to pass the keys they can't resolve to the underlying source as a batch.
+     * The default implementation gets the values one by one
+     * @return values in the order of keys with <null/> for absent ones
+     */
+    default List<V> getBatch(List<K> keys) {
+        List<V> ret = new ArrayList<>(keys.size());
+        for (K key : keys) {
+            ret.add(get(key));
+        }
+        return ret;
+    }
+
     /**
      * Deletes the key-value pair from the source
      */
@@ -58,6 +58,11 @@ public class SourceChainBox<Key, Value, SourceKey, SourceValue>
         return lastSource.get(key);
     }
 
+    @Override
+    public List<Value> getBatch(List<Key> keys) {
+        return lastSource.getBatch(keys);
+    }
+
     @Override
     public void delete(Key key) {
         lastSource.delete(key);
@@ -17,6 +17,9 @@
  */
 package org.ethereum.datasource;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * Source for converting between different key/value types
  * Has no own state and immediately propagate all changes
@@ -53,6 +56,19 @@ public class SourceCodec<Key, Value, SourceKey, SourceValue>
         return valSerializer.deserialize(getSource().get(keySerializer.serialize(key)));
     }
 
+    @Override
+    public List<Value> getBatch(List<Key> keys) {
+        List<SourceKey> srcKeys = new ArrayList<>(keys.size());
+        for (Key key : keys) {
+            srcKeys.add(keySerializer.serialize(key));
+        }
+        List<Value> ret = new ArrayList<>(keys.size());
+        for (SourceValue srcVal : getSource().getBatch(srcKeys)) {
+            ret.add(valSerializer.deserialize(srcVal));
+        }
+        return ret;
+    }
+
     @Override
     public void delete(Key key) {
         getSource().delete(keySerializer.serialize(key));
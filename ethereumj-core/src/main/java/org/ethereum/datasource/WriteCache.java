@@ -21,9 +21,13 @@ import com.googlecode.concurentlocks.ReadWriteUpdateLock;
 import com.googlecode.concurentlocks.ReentrantReadWriteUpdateLock;
 import org.ethereum.util.ALock;
 import org.ethereum.util.ByteArrayMap;
+import org.ethereum.util.FlatByteArrayMap;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -214,6 +218,30 @@ public class WriteCache<Key, Value> extends AbstractCachedSource<Key, Value> {
         }
     }
 
+    @Override
+    public List<Value> getBatch(List<Key> keys) {
+        try (ALock l = readLock.lock()){
+            List<Value> ret = new ArrayList<>(keys.size());
+            List<Key> missed = new ArrayList<>();
+            for (Key key : keys) {
+                checkByteArrKey(key);
+                CacheEntry<Value> curVal = cache.get(key);
+                Value value = curVal == null ? unknownValue() : curVal.getValue();
+                if (value == unknownValue()) missed.add(key);
+                ret.add(value);
+            }
+            if (missed.isEmpty()) return ret;
+
+            Iterator<Value> srcValues = getSource() == null ? null : getSource().getBatch(missed).iterator();
+            for (int i = 0; i < ret.size(); i++) {
+                if (ret.get(i) == unknownValue()) {
+                    ret.set(i, srcValues == null ? null : srcValues.next());
+                }
+            }
+            return ret;
+        }
+    }
+
     @Override
     public void delete(Key key) {
         checkByteArrKey(key);
@@ -286,7 +314,7 @@ public class WriteCache<Key, Value> extends AbstractCachedSource<Key, Value> {
         if (checked) return;
 
         if (key instanceof byte[]) {
-            if (!(cache instanceof ByteArrayMap)) {
+            if (!(cache instanceof ByteArrayMap || cache instanceof FlatByteArrayMap)) {
                 throw new RuntimeException("Wrong map/set for byte[] key");
             }
         }
@@ -304,13 +332,14 @@ public class WriteCache<Key, Value> extends AbstractCachedSource<Key, Value> {
 
     /**
      * Shortcut for WriteCache with byte[] keys. Also prevents accidental
-     * usage of regular Map implementation (non byte[])
+     * usage of regular Map implementation (non byte[]).
+     * Keys are mostly 32 byte hashes, those are stored inline by {@link FlatByteArrayMap}
      */
     public static class BytesKey<V> extends WriteCache<byte[], V> implements CachedSource.BytesKey<V> {
 
         public BytesKey(Source<byte[], V> src, CacheType cacheType) {
             super(src, cacheType);
-            withCache(new ByteArrayMap<CacheEntry<V>>());
+            withCache(new FlatByteArrayMap<CacheEntry<V>>(32));
         }
     }
 }
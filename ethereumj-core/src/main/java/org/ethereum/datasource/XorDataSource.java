@@ -19,6 +19,9 @@ package org.ethereum.datasource;
 
 import org.ethereum.util.ByteUtil;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * When propagating changes to the backing Source XORs keys
  * with the specified value
@@ -47,6 +50,15 @@ public class XorDataSource<V> extends AbstractChainedSource<byte[], V, byte[], V
         return getSource().get(convertKey(key));
     }
 
+    @Override
+    public List<V> getBatch(List<byte[]> keys) {
+        List<byte[]> converted = new ArrayList<>(keys.size());
+        for (byte[] key : keys) {
+            converted.add(convertKey(key));
+        }
+        return getSource().getBatch(converted);
+    }
+
     @Override
     public void put(byte[] key, V value) {
         getSource().put(convertKey(key), value);
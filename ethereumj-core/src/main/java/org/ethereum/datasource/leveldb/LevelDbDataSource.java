@@ -17,10 +17,12 @@
  */
 package org.ethereum.datasource.leveldb;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.ethereum.config.SystemProperties;
 import org.ethereum.datasource.DbSettings;
 import org.ethereum.datasource.DbSource;
 import org.ethereum.util.FileUtil;
+import org.ethereum.util.LatencyHistogram;
 import org.iq80.leveldb.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -31,9 +33,16 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
@@ -48,6 +57,13 @@ public class LevelDbDataSource implements DbSource<byte[]> {
 
     private static final Logger logger = LoggerFactory.getLogger("db");
 
+    // LevelDB has no native multi get, batches of that size and more are split between threads
+    private static final int MIN_PARALLEL_BATCH = 8;
+    private static final int BATCH_THREADS = Math.max(2, Runtime.getRuntime().availableProcessors());
+
+    private static final ExecutorService batchExecutor = Executors.newFixedThreadPool(BATCH_THREADS,
+            new ThreadFactoryBuilder().setNameFormat("leveldb-get-%d").setDaemon(true).build());
+
     @Autowired
     SystemProperties config  = SystemProperties.getDefault(); // initialized for standalone test
 
@@ -65,6 +81,10 @@ public class LevelDbDataSource implements DbSource<byte[]> {
     // however blocks them on init/close/delete operations
     private ReadWriteLock resetDbLock = new ReentrantReadWriteLock();
 
+    private final LatencyHistogram getLatency = new LatencyHistogram("get");
+    private final LatencyHistogram getBatchLatency = new LatencyHistogram("getBatch");
+    private final LatencyHistogram updateBatchLatency = new LatencyHistogram("updateBatch");
+
     public LevelDbDataSource() {
     }
 
@@ -92,9 +112,11 @@ public class LevelDbDataSource implements DbSource<byte[]> {
             Options options = new Options();
             options.createIfMissing(true);
             options.compressionType(CompressionType.NONE);
-            options.blockSize(10 * 1024 * 1024);
+            // small blocks and a block cache for the random reads of trie nodes,
+            // same values as for RocksDB
+            options.blockSize(16 * 1024);
             options.writeBufferSize(10 * 1024 * 1024);
-            options.cacheSize(0);
+            options.cacheSize(32 * 1024 * 1024);
             options.paranoidChecks(true);
             options.verifyChecksums(true);
             options.maxOpenFiles(settings.getMaxOpenFiles());
@@ -187,21 +209,67 @@ public class LevelDbDataSource implements DbSource<byte[]> {
         resetDbLock.readLock().lock();
         try {
             if (logger.isTraceEnabled()) logger.trace("~> LevelDbDataSource.get(): " + name + ", key: " + toHexString(key));
-            try {
-                byte[] ret = db.get(key);
-                if (logger.isTraceEnabled()) logger.trace("<~ LevelDbDataSource.get(): " + name + ", key: " + toHexString(key) + ", " + (ret == null ? "null" : ret.length));
-                return ret;
-            } catch (DBException e) {
-                logger.warn("Exception. Retrying again...", e);
-                byte[] ret = db.get(key);
-                if (logger.isTraceEnabled()) logger.trace("<~ LevelDbDataSource.get(): " + name + ", key: " + toHexString(key) + ", " + (ret == null ? "null" : ret.length));
-                return ret;
+            long start = System.nanoTime();
+            byte[] ret = getInternal(key);
+            getLatency.recordSince(start);
+            if (logger.isTraceEnabled()) logger.trace("<~ LevelDbDataSource.get(): " + name + ", key: " + toHexString(key) + ", " + (ret == null ? "null" : ret.length));
+            return ret;
+        } finally {
+            resetDbLock.readLock().unlock();
+        }
+    }
+
+    private byte[] getInternal(byte[] key) {
+        try {
+            return db.get(key);
+        } catch (DBException e) {
+            logger.warn("Exception. Retrying again...", e);
+            return db.get(key);
+        }
+    }
+
+    @Override
+    public List<byte[]> getBatch(List<byte[]> keys) {
+        resetDbLock.readLock().lock();
+        try {
+            if (logger.isTraceEnabled()) logger.trace("~> LevelDbDataSource.getBatch(): " + name + ", " + keys.size());
+            long start = System.nanoTime();
+            byte[][] ret = new byte[keys.size()][];
+            if (keys.size() < MIN_PARALLEL_BATCH) {
+                getRange(keys, ret, 0, keys.size());
+            } else {
+                // native reads are thread safe and the read lock held here keeps the DB open
+                int chunk = (keys.size() + BATCH_THREADS - 1) / BATCH_THREADS;
+                List<Future<?>> futures = new ArrayList<>();
+                for (int from = chunk; from < keys.size(); from += chunk) {
+                    final int f = from, t = Math.min(from + chunk, keys.size());
+                    futures.add(batchExecutor.submit(() -> getRange(keys, ret, f, t)));
+                }
+                getRange(keys, ret, 0, chunk);
+                for (Future<?> future : futures) {
+                    future.get();
+                }
             }
+            getBatchLatency.recordSince(start);
+            if (logger.isTraceEnabled()) logger.trace("<~ LevelDbDataSource.getBatch(): " + name + ", " + keys.size());
+            return Arrays.asList(ret);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            logger.error("Failed to get batch from db '{}'", name, e);
+            throw new RuntimeException(e.getCause());
         } finally {
             resetDbLock.readLock().unlock();
         }
     }
 
+    private void getRange(List<byte[]> keys, byte[][] ret, int from, int to) {
+        for (int i = from; i < to; i++) {
+            ret[i] = getInternal(keys.get(i));
+        }
+    }
+
     @Override
     public void put(byte[] key, byte[] value) {
         resetDbLock.readLock().lock();
@@ -248,6 +316,7 @@ public class LevelDbDataSource implements DbSource<byte[]> {
     }
 
     private void updateBatchInternal(Map<byte[], byte[]> rows) throws IOException {
+        long start = System.nanoTime();
         try (WriteBatch batch = db.createWriteBatch()) {
             for (Map.Entry<byte[], byte[]> entry : rows.entrySet()) {
                 if (entry.getValue() == null) {
@@ -258,6 +327,7 @@ public class LevelDbDataSource implements DbSource<byte[]> {
             }
             db.write(batch);
         }
+        updateBatchLatency.recordSince(start);
     }
 
     @Override
@@ -289,6 +359,11 @@ public class LevelDbDataSource implements DbSource<byte[]> {
         return false;
     }
 
+    @Override
+    public List<LatencyHistogram> getLatencyStats() {
+        return Arrays.asList(getLatency, getBatchLatency, updateBatchLatency);
+    }
+
     @Override
     public void close() {
         resetDbLock.writeLock().lock();
@@ -297,6 +372,7 @@ public class LevelDbDataSource implements DbSource<byte[]> {
 
             try {
                 logger.debug("Close db: {}", name);
+                if (logger.isDebugEnabled()) logger.debug("Latency stats of db {}: {}", name, getLatencyStats());
                 db.close();
 
                 alive = false;
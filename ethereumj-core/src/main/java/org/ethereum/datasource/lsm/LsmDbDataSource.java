@@ -0,0 +1,788 @@
+/*
+ * Copyright (c) [2016] [ <ether.camp> ]
+ * This file is part of the ethereumJ library.
+ *
+ * The ethereumJ library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The ethereumJ library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with the ethereumJ library. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.datasource.lsm;
+
+import com.google.common.collect.Iterators;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.ethereum.config.SystemProperties;
+import org.ethereum.datasource.DbSettings;
+import org.ethereum.datasource.DbSource;
+import org.ethereum.util.FastByteComparisons;
+import org.ethereum.util.FileUtil;
+import org.ethereum.util.LatencyHistogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import static org.ethereum.util.ByteUtil.toHexString;
+
+/**
+ * Pure Java log-structured merge tree storage. <br>
+ *
+ * Updates go to the write ahead log and to the in-memory table. When the table exceeds
+ * {@link #setMemTableSize(long)} it is written by a background thread to a new sorted run
+ * of immutable memory mapped {@link Segment}s. Runs are ordered from newest to oldest and
+ * have a level: flushed tables are at level 0, and once there are {@link #COMPACTION_FAN_IN}
+ * runs on the same level they are merged into a single run of the next level,
+ * thus every entry is rewritten about log4(db size / table size) times. <br>
+ *
+ * The set of runs is recorded in the MANIFEST file replaced atomically after each flush
+ * and compaction, write ahead logs are removed once their table is in the MANIFEST.
+ * On start logs left by a crash are replayed, a torn last batch is discarded. <br>
+ *
+ * If a table can't be flushed the source turns read-only: further updates are rejected
+ * before they reach the log, updates accepted so far are recovered from the logs on the next start <br>
+ *
+ * The engine has no native parts and holds only the open log file descriptor
+ *
+ * @see org.ethereum.datasource.leveldb.LevelDbDataSource
+ * @see org.ethereum.datasource.rocksdb.RocksDbDataSource
+ */
+public class LsmDbDataSource implements DbSource<byte[]> {
+
+    private static final Logger logger = LoggerFactory.getLogger("db");
+
+    static final byte[] TOMBSTONE = new byte[0];
+
+    static final int COMPACTION_FAN_IN = 4;
+
+    private static final String MANIFEST = "MANIFEST";
+    private static final String SEGMENT_EXT = ".seg";
+    private static final String LOG_EXT = ".log";
+
+    private static final Comparator<byte[]> KEY_COMPARATOR = LsmDbDataSource::compareKeys;
+
+    @Autowired
+    SystemProperties config  = SystemProperties.getDefault(); // initialized for standalone test
+
+    String name;
+    boolean alive;
+
+    DbSettings settings = DbSettings.DEFAULT;
+
+    private long memTableSize = 16 * 1024 * 1024;
+    private long segmentSize = 64 * 1024 * 1024;
+
+    private static final class Run {
+        final int level;
+        final List<Segment> segments;
+
+        Run(int level, List<Segment> segments) {
+            this.level = level;
+            this.segments = segments;
+        }
+
+        byte[] get(byte[] key) {
+            int lo = 0, hi = segments.size() - 1;
+            while (lo <= hi) {
+                int mid = (lo + hi) >>> 1;
+                Segment segment = segments.get(mid);
+                if (compareKeys(key, segment.getFirstKey()) < 0) {
+                    hi = mid - 1;
+                } else if (compareKeys(key, segment.getLastKey()) > 0) {
+                    lo = mid + 1;
+                } else {
+                    return segment.get(key);
+                }
+            }
+            return null;
+        }
+
+        long getSize() {
+            long ret = 0;
+            for (Segment segment : segments) ret += segment.getSize();
+            return ret;
+        }
+
+        Iterator<Map.Entry<byte[], byte[]>> iterator() {
+            List<Iterator<Map.Entry<byte[], byte[]>>> its = new ArrayList<>();
+            for (Segment segment : segments) its.add(segment.iterator());
+            return Iterators.concat(its.iterator());
+        }
+
+        Iterator<Map.Entry<byte[], byte[]>> iterator(byte[] from) {
+            // first segment which last key is not less than the given one
+            int lo = 0, hi = segments.size();
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (compareKeys(segments.get(mid).getLastKey(), from) < 0) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            List<Iterator<Map.Entry<byte[], byte[]>>> its = new ArrayList<>();
+            for (int i = lo; i < segments.size(); i++) {
+                its.add(i == lo ? segments.get(i).iterator(from) : segments.get(i).iterator());
+            }
+            return Iterators.concat(its.iterator());
+        }
+    }
+
+    // snapshot of the DB structure, replaced as a whole
+    private static final class State {
+        final ConcurrentSkipListMap<byte[], byte[]> memTable;
+        final ConcurrentSkipListMap<byte[], byte[]> flushingTable;
+        final List<Run> runs;
+
+        State(ConcurrentSkipListMap<byte[], byte[]> memTable, ConcurrentSkipListMap<byte[], byte[]> flushingTable,
+              List<Run> runs) {
+            this.memTable = memTable;
+            this.flushingTable = flushingTable;
+            this.runs = Collections.unmodifiableList(runs);
+        }
+    }
+
+    private volatile State state;
+    private final Object stateLock = new Object();
+    private final Object writeLock = new Object();
+
+    private WriteAheadLog wal;
+    private long memTableBytes;
+    private final AtomicLong nextFileId = new AtomicLong();
+
+    private ExecutorService flushExecutor;
+    private ExecutorService compactionExecutor;
+    private Future<?> flushing;
+    private Future<?> compacting;
+    // set once the table can't be flushed, the source is read-only since then
+    private volatile Throwable failure;
+
+    // same as for other engines: blocks operations on init/close/reset only
+    private ReadWriteLock resetDbLock = new ReentrantReadWriteLock();
+
+    private final LatencyHistogram getLatency = new LatencyHistogram("get");
+    private final LatencyHistogram updateBatchLatency = new LatencyHistogram("updateBatch");
+    private final LatencyHistogram flushLatency = new LatencyHistogram("flush");
+    private final LatencyHistogram compactionLatency = new LatencyHistogram("compaction");
+
+    public LsmDbDataSource() {
+    }
+
+    public LsmDbDataSource(String name) {
+        this.name = name;
+        logger.debug("New LsmDbDataSource: " + name);
+    }
+
+    static int compareKeys(byte[] a, byte[] b) {
+        return FastByteComparisons.compareTo(a, 0, a.length, b, 0, b.length);
+    }
+
+    /**
+     * Sets the size of updates kept in memory before they are written to a segment
+     */
+    public void setMemTableSize(long memTableSize) {
+        this.memTableSize = memTableSize;
+    }
+
+    /**
+     * Sets the approximate max size of a segment file, up to 1 Gb
+     */
+    public void setSegmentSize(long segmentSize) {
+        if (segmentSize <= 0 || segmentSize > Segment.MAX_SIZE) {
+            throw new IllegalArgumentException("Segment size should be in range (0, " + Segment.MAX_SIZE + "]: " + segmentSize);
+        }
+        this.segmentSize = segmentSize;
+    }
+
+    @Override
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public void init() {
+        init(DbSettings.DEFAULT);
+    }
+
+    @Override
+    public void init(DbSettings settings) {
+        this.settings = settings;
+        resetDbLock.writeLock().lock();
+        try {
+            logger.debug("~> LsmDbDataSource.init(): " + name);
+
+            if (isAlive()) return;
+
+            if (name == null) throw new NullPointerException("no name set to the db");
+
+            try {
+                Path dbPath = getPath();
+                if (!Files.isSymbolicLink(dbPath.getParent())) Files.createDirectories(dbPath.getParent());
+                Files.createDirectories(dbPath);
+
+                failure = null;
+                List<Run> runs = readManifest();
+                deleteOrphans(runs);
+                state = new State(newTable(), null, runs);
+
+                flushExecutor = Executors.newSingleThreadExecutor(
+                        new ThreadFactoryBuilder().setNameFormat("lsm-flush-" + name).setDaemon(true).build());
+                compactionExecutor = Executors.newSingleThreadExecutor(
+                        new ThreadFactoryBuilder().setNameFormat("lsm-compaction-" + name).setDaemon(true).build());
+
+                recover();
+                wal = new WriteAheadLog(filePath(nextFileId.getAndIncrement(), LOG_EXT));
+                scheduleCompaction();
+
+                alive = true;
+            } catch (IOException ioe) {
+                logger.error(ioe.getMessage(), ioe);
+                throw new RuntimeException("Can't initialize database", ioe);
+            }
+            logger.debug("<~ LsmDbDataSource.init(): " + name + ", " + state.runs.size() + " runs");
+        } finally {
+            resetDbLock.writeLock().unlock();
+        }
+    }
+
+    private Path getPath() {
+        return Paths.get(config.databaseDir(), name);
+    }
+
+    private Path filePath(long id, String ext) {
+        return getPath().resolve(String.format("%08d%s", id, ext));
+    }
+
+    private static long fileId(Path path) {
+        String fileName = path.getFileName().toString();
+        return Long.parseLong(fileName.substring(0, fileName.indexOf('.')));
+    }
+
+    private static ConcurrentSkipListMap<byte[], byte[]> newTable() {
+        return new ConcurrentSkipListMap<>(KEY_COMPARATOR);
+    }
+
+    private List<Run> readManifest() throws IOException {
+        List<Run> runs = new ArrayList<>();
+        Path manifest = getPath().resolve(MANIFEST);
+        if (!Files.exists(manifest)) return runs;
+
+        for (String line : Files.readAllLines(manifest, StandardCharsets.UTF_8)) {
+            if (line.trim().isEmpty()) continue;
+            String[] parts = line.trim().split(" ");
+            List<Segment> segments = new ArrayList<>();
+            for (int i = 1; i < parts.length; i++) {
+                long id = Long.parseLong(parts[i]);
+                segments.add(Segment.open(id, filePath(id, SEGMENT_EXT)));
+            }
+            runs.add(new Run(Integer.parseInt(parts[0]), segments));
+        }
+        return runs;
+    }
+
+    // must be called under stateLock
+    private void writeManifest(List<Run> runs) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        for (Run run : runs) {
+            sb.append(run.level);
+            for (Segment segment : run.segments) sb.append(' ').append(segment.getId());
+            sb.append('\n');
+        }
+        Path tmp = getPath().resolve(MANIFEST + ".tmp");
+        Files.write(tmp, sb.toString().getBytes(StandardCharsets.UTF_8));
+        Files.move(tmp, getPath().resolve(MANIFEST), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Removes segments of interrupted flushes and compactions, initializes file id counter
+     */
+    private void deleteOrphans(List<Run> runs) throws IOException {
+        Set<Long> live = new HashSet<>();
+        for (Run run : runs) {
+            for (Segment segment : run.segments) live.add(segment.getId());
+        }
+        long maxId = -1;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(getPath())) {
+            for (Path file : files) {
+                String fileName = file.getFileName().toString();
+                if (!fileName.endsWith(SEGMENT_EXT) && !fileName.endsWith(LOG_EXT)) continue;
+                long id = fileId(file);
+                maxId = Math.max(maxId, id);
+                if (fileName.endsWith(SEGMENT_EXT) && !live.contains(id)) {
+                    logger.info("Removing orphaned segment {} of db {}", fileName, name);
+                    Files.delete(file);
+                }
+            }
+        }
+        nextFileId.set(maxId + 1);
+    }
+
+    /**
+     * Replays logs left from previous run and persists them as a new run
+     */
+    private void recover() throws IOException {
+        List<Path> logs = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(getPath(), "*" + LOG_EXT)) {
+            for (Path file : files) logs.add(file);
+        }
+        if (logs.isEmpty()) return;
+        logs.sort(Comparator.comparingLong(LsmDbDataSource::fileId));
+
+        ConcurrentSkipListMap<byte[], byte[]> table = newTable();
+        int batches = 0;
+        for (Path log : logs) {
+            batches += WriteAheadLog.replay(log, (k, v) -> table.put(k, v == null ? TOMBSTONE : v));
+        }
+        logger.info("Recovered {} update batches of db {} from {} log(s)", batches, name, logs.size());
+
+        if (!table.isEmpty()) {
+            flushTable(table);
+        }
+        for (Path log : logs) {
+            Files.delete(log);
+        }
+    }
+
+    @Override
+    public boolean isAlive() {
+        return alive;
+    }
+
+    @Override
+    public byte[] get(byte[] key) {
+        resetDbLock.readLock().lock();
+        try {
+            if (logger.isTraceEnabled()) logger.trace("~> LsmDbDataSource.get(): " + name + ", key: " + toHexString(key));
+            long start = System.nanoTime();
+            byte[] ret = getInternal(state, key);
+            if (ret == TOMBSTONE) ret = null;
+            getLatency.recordSince(start);
+            if (logger.isTraceEnabled()) logger.trace("<~ LsmDbDataSource.get(): " + name + ", key: " + toHexString(key) + ", " + (ret == null ? "null" : ret.length));
+            return ret;
+        } finally {
+            resetDbLock.readLock().unlock();
+        }
+    }
+
+    private static byte[] getInternal(State state, byte[] key) {
+        byte[] ret = state.memTable.get(key);
+        if (ret != null) return ret;
+        if (state.flushingTable != null) {
+            ret = state.flushingTable.get(key);
+            if (ret != null) return ret;
+        }
+        for (Run run : state.runs) {
+            ret = run.get(key);
+            if (ret != null) return ret;
+        }
+        return null;
+    }
+
+    @Override
+    public void put(byte[] key, byte[] value) {
+        updateBatch(Collections.singletonMap(key, value));
+    }
+
+    @Override
+    public void delete(byte[] key) {
+        updateBatch(Collections.singletonMap(key, null));
+    }
+
+    @Override
+    public void updateBatch(Map<byte[], byte[]> rows) {
+        resetDbLock.readLock().lock();
+        try {
+            if (logger.isTraceEnabled()) logger.trace("~> LsmDbDataSource.updateBatch(): " + name + ", " + rows.size());
+            long start = System.nanoTime();
+            synchronized (writeLock) {
+                checkWritable();
+                // rotating before the write doesn't let a failed flush reject already logged updates
+                if (memTableBytes >= memTableSize) {
+                    rotateTable();
+                }
+                wal.append(rows);
+                ConcurrentSkipListMap<byte[], byte[]> memTable = state.memTable;
+                for (Map.Entry<byte[], byte[]> row : rows.entrySet()) {
+                    byte[] value = row.getValue() == null ? TOMBSTONE : row.getValue();
+                    memTable.put(row.getKey(), value);
+                    memTableBytes += row.getKey().length + value.length + 64;
+                }
+            }
+            updateBatchLatency.recordSince(start);
+            if (logger.isTraceEnabled()) logger.trace("<~ LsmDbDataSource.updateBatch(): " + name + ", " + rows.size());
+        } catch (IOException e) {
+            logger.error("Failed to update db '{}'", name, e);
+            failure = e;
+            throw new RuntimeException(e);
+        } finally {
+            resetDbLock.readLock().unlock();
+        }
+    }
+
+    private void checkWritable() {
+        if (failure != null) {
+            throw new RuntimeException("Db '" + name + "' is read-only after a failed flush", failure);
+        }
+    }
+
+    /**
+     * @return true if the source rejects updates after a failed flush
+     */
+    public boolean isReadOnly() {
+        return failure != null;
+    }
+
+    /**
+     * Switches to a new table and log, the current ones are flushed in background.
+     * Blocks while the previous table is still being flushed to limit memory usage
+     */
+    private void rotateTable() throws IOException {
+        waitFor(flushing);
+        checkWritable();
+
+        WriteAheadLog oldWal = wal;
+        oldWal.close();
+        wal = new WriteAheadLog(filePath(nextFileId.getAndIncrement(), LOG_EXT));
+        memTableBytes = 0;
+
+        final ConcurrentSkipListMap<byte[], byte[]> table;
+        synchronized (stateLock) {
+            table = state.memTable;
+            state = new State(newTable(), table, state.runs);
+        }
+
+        // the table stays readable as the flushing one if it fails
+        flushing = flushExecutor.submit(() -> {
+            try {
+                flushTable(table);
+                Files.delete(oldWal.getPath());
+                scheduleCompaction();
+            } catch (IOException | RuntimeException e) {
+                logger.error("Failed to flush db '{}', updates are kept in log {}, db is read-only", name, oldWal.getPath(), e);
+                failure = e;
+            }
+        });
+    }
+
+    private void flushTable(ConcurrentSkipListMap<byte[], byte[]> table) throws IOException {
+        long start = System.nanoTime();
+        List<Segment> segments = writeSegments(table.entrySet().iterator(), false);
+        synchronized (stateLock) {
+            List<Run> runs = new ArrayList<>(state.runs);
+            runs.add(0, new Run(0, segments));
+            writeManifest(runs);
+            state = new State(state.memTable, state.flushingTable == table ? null : state.flushingTable, runs);
+        }
+        flushLatency.recordSince(start);
+        logger.debug("Flushed {} entries of db {} to {}", table.size(), name, segments);
+    }
+
+    private List<Segment> writeSegments(Iterator<Map.Entry<byte[], byte[]>> entries, boolean dropTombstones) throws IOException {
+        List<Segment> ret = new ArrayList<>();
+        Segment.Writer writer = null;
+        try {
+            while (entries.hasNext()) {
+                Map.Entry<byte[], byte[]> entry = entries.next();
+                if (Thread.currentThread().isInterrupted()) throw new InterruptedIOException("Segment writing interrupted");
+                if (dropTombstones && entry.getValue() == TOMBSTONE) continue;
+                if (writer == null) {
+                    long id = nextFileId.getAndIncrement();
+                    writer = new Segment.Writer(id, filePath(id, SEGMENT_EXT));
+                }
+                writer.add(entry.getKey(), entry.getValue());
+                if (writer.getSize() >= segmentSize) {
+                    ret.add(writer.finish());
+                    writer = null;
+                }
+            }
+            if (writer != null) {
+                ret.add(writer.finish());
+                writer = null;
+            }
+            return ret;
+        } catch (IOException | RuntimeException e) {
+            if (writer != null) writer.abort();
+            for (Segment segment : ret) Files.deleteIfExists(segment.getPath());
+            throw e;
+        }
+    }
+
+    private void scheduleCompaction() {
+        synchronized (stateLock) {
+            if (compacting != null && !compacting.isDone()) return;
+            compacting = compactionExecutor.submit(() -> {
+                try {
+                    while (compact()) {
+                        // repeat while some level is full
+                    }
+                } catch (InterruptedIOException e) {
+                    logger.debug("Compaction of db '{}' interrupted", name);
+                } catch (Exception e) {
+                    logger.error("Failed to compact db '{}'", name, e);
+                }
+            });
+        }
+    }
+
+    /**
+     * Merges runs of the first level having {@link #COMPACTION_FAN_IN} runs
+     * @return false if there was nothing to compact
+     */
+    private boolean compact() throws IOException {
+        List<Run> runs = state.runs;
+        List<Run> toMerge = null;
+        boolean includesOldest = false;
+        for (int i = 0; i < runs.size(); ) {
+            int j = i;
+            while (j < runs.size() && runs.get(j).level == runs.get(i).level) j++;
+            if (j - i >= COMPACTION_FAN_IN) {
+                toMerge = new ArrayList<>(runs.subList(i, j));
+                includesOldest = j == runs.size();
+                break;
+            }
+            i = j;
+        }
+        if (toMerge == null) return false;
+
+        long start = System.nanoTime();
+        List<Iterator<Map.Entry<byte[], byte[]>>> its = new ArrayList<>();
+        for (Run run : toMerge) its.add(run.iterator());
+        // deletions are needed only to shadow older runs
+        List<Segment> merged = writeSegments(new MergeIterator(its), includesOldest);
+        Run result = new Run(toMerge.get(0).level + 1, merged);
+
+        synchronized (stateLock) {
+            // flushes may have added newer runs meanwhile, the merged ones are still together
+            List<Run> newRuns = new ArrayList<>(state.runs);
+            int idx = newRuns.indexOf(toMerge.get(0));
+            newRuns.subList(idx, idx + toMerge.size()).clear();
+            if (!merged.isEmpty()) newRuns.add(idx, result);
+            writeManifest(newRuns);
+            state = new State(state.memTable, state.flushingTable, newRuns);
+        }
+        compactionLatency.recordSince(start);
+
+        long size = 0;
+        for (Run run : toMerge) {
+            size += run.getSize();
+            for (Segment segment : run.segments) {
+                // the mapping stays valid for readers of the previous state until collected
+                Files.deleteIfExists(segment.getPath());
+            }
+        }
+        logger.debug("Compacted {} runs of db {} ({} bytes) into level {} run ({} bytes)",
+                toMerge.size(), name, size, result.level, result.getSize());
+        return true;
+    }
+
+    /**
+     * Merges sorted iterators, for equal keys the entry of the first iterator wins
+     */
+    private static class MergeIterator implements Iterator<Map.Entry<byte[], byte[]>> {
+        private static class Head {
+            final Map.Entry<byte[], byte[]> entry;
+            final int source;
+
+            Head(Map.Entry<byte[], byte[]> entry, int source) {
+                this.entry = entry;
+                this.source = source;
+            }
+        }
+
+        private final List<Iterator<Map.Entry<byte[], byte[]>>> sources;
+        private final PriorityQueue<Head> heads = new PriorityQueue<>((h1, h2) -> {
+            int cmp = compareKeys(h1.entry.getKey(), h2.entry.getKey());
+            return cmp != 0 ? cmp : Integer.compare(h1.source, h2.source);
+        });
+
+        MergeIterator(List<Iterator<Map.Entry<byte[], byte[]>>> sources) {
+            this.sources = sources;
+            for (int i = 0; i < sources.size(); i++) advance(i);
+        }
+
+        private void advance(int source) {
+            if (sources.get(source).hasNext()) {
+                heads.add(new Head(sources.get(source).next(), source));
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !heads.isEmpty();
+        }
+
+        @Override
+        public Map.Entry<byte[], byte[]> next() {
+            Head head = heads.poll();
+            if (head == null) throw new NoSuchElementException();
+            advance(head.source);
+            while (!heads.isEmpty() && compareKeys(heads.peek().entry.getKey(), head.entry.getKey()) == 0) {
+                advance(heads.poll().source);
+            }
+            return head.entry;
+        }
+    }
+
+    @Override
+    public Set<byte[]> keys() throws RuntimeException {
+        resetDbLock.readLock().lock();
+        try {
+            if (logger.isTraceEnabled()) logger.trace("~> LsmDbDataSource.keys(): " + name);
+            State s = state;
+            List<Iterator<Map.Entry<byte[], byte[]>>> its = new ArrayList<>();
+            its.add(s.memTable.entrySet().iterator());
+            if (s.flushingTable != null) its.add(s.flushingTable.entrySet().iterator());
+            for (Run run : s.runs) its.add(run.iterator());
+
+            Set<byte[]> result = new HashSet<>();
+            for (Iterator<Map.Entry<byte[], byte[]>> it = new MergeIterator(its); it.hasNext(); ) {
+                Map.Entry<byte[], byte[]> entry = it.next();
+                if (entry.getValue() != TOMBSTONE) result.add(entry.getKey());
+            }
+            if (logger.isTraceEnabled()) logger.trace("<~ LsmDbDataSource.keys(): " + name + ", " + result.size());
+            return result;
+        } finally {
+            resetDbLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the value of the least key starting with the key's prefix,
+     * the key order is the same as in other engines
+     */
+    @Override
+    public byte[] prefixLookup(byte[] key, int prefixBytes) {
+        resetDbLock.readLock().lock();
+        try {
+            if (logger.isTraceEnabled()) logger.trace("~> LsmDbDataSource.prefixLookup(): " + name + ", key: " + toHexString(key));
+            byte[] prefix = Arrays.copyOf(key, prefixBytes);
+
+            State s = state;
+            List<Iterator<Map.Entry<byte[], byte[]>>> its = new ArrayList<>();
+            its.add(s.memTable.tailMap(prefix).entrySet().iterator());
+            if (s.flushingTable != null) its.add(s.flushingTable.tailMap(prefix).entrySet().iterator());
+            for (Run run : s.runs) its.add(run.iterator(prefix));
+
+            byte[] ret = null;
+            for (Iterator<Map.Entry<byte[], byte[]>> it = new MergeIterator(its); it.hasNext(); ) {
+                Map.Entry<byte[], byte[]> entry = it.next();
+                if (!startsWith(entry.getKey(), prefix)) break;
+                if (entry.getValue() != TOMBSTONE) {
+                    ret = entry.getValue();
+                    break;
+                }
+            }
+            if (logger.isTraceEnabled()) logger.trace("<~ LsmDbDataSource.prefixLookup(): " + name + ", key: " + toHexString(key) + ", " + (ret == null ? "null" : ret.length));
+            return ret;
+        } finally {
+            resetDbLock.readLock().unlock();
+        }
+    }
+
+    private static boolean startsWith(byte[] key, byte[] prefix) {
+        return key.length >= prefix.length &&
+                FastByteComparisons.compareTo(key, 0, prefix.length, prefix, 0, prefix.length) == 0;
+    }
+
+    @Override
+    public boolean flush() {
+        return false;
+    }
+
+    @Override
+    public List<LatencyHistogram> getLatencyStats() {
+        return Arrays.asList(getLatency, updateBatchLatency, flushLatency, compactionLatency);
+    }
+
+    @Override
+    public void reset() {
+        close();
+        FileUtil.recursiveDelete(getPath().toString());
+        init(settings);
+    }
+
+    @Override
+    public void close() {
+        resetDbLock.writeLock().lock();
+        try {
+            if (!isAlive()) return;
+
+            logger.debug("Close db: {}", name);
+            if (logger.isDebugEnabled()) logger.debug("Latency stats of db {}: {}", name, getLatencyStats());
+
+            // not flushed updates stay in the log and are recovered on the next start
+            try {
+                waitFor(flushing);
+            } catch (RuntimeException e) {
+                logger.warn("Last flush of db '{}' failed", name, e);
+            }
+            flushExecutor.shutdown();
+            compactionExecutor.shutdownNow();
+            compactionExecutor.awaitTermination(1, TimeUnit.MINUTES);
+            wal.close();
+
+            state = null;
+            flushing = compacting = null;
+            memTableBytes = 0;
+            alive = false;
+        } catch (Exception e) {
+            logger.error("Error closing db '{}'", name, e);
+        } finally {
+            resetDbLock.writeLock().unlock();
+        }
+    }
+
+    private static void waitFor(Future<?> future) {
+        if (future == null) return;
+        try {
+            future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    /**
+     * @return the number of segment files, for diagnostics
+     */
+    public int getSegmentsCount() {
+        State s = state;
+        int ret = 0;
+        if (s != null) {
+            for (Run run : s.runs) ret += run.segments.size();
+        }
+        return ret;
+    }
+}
@@ -0,0 +1,372 @@
+/*
+ * Copyright (c) [2016] [ <ether.camp> ]
+ * This file is part of the ethereumJ library.
+ *
+ * The ethereumJ library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The ethereumJ library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with the ethereumJ library. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.datasource.lsm;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import static org.ethereum.datasource.lsm.LsmDbDataSource.TOMBSTONE;
+import static org.ethereum.datasource.lsm.LsmDbDataSource.compareKeys;
+
+/**
+ * Immutable sorted file of key-value pairs, memory mapped for reading. <br>
+ *
+ * Layout: data entries {@code [keyLen][key][valLen][val]} sorted by key ({@code valLen == -1} for deletion),
+ * then sparse index of every {@link #INDEX_INTERVAL}-th key {@code [keyLen][key][offset]},
+ * then bloom filter bits and the footer. The sparse index is loaded to the heap,
+ * the data and the bloom filter are read from the mapping. No file descriptor is held
+ * once the file is mapped
+ */
+class Segment {
+
+    // offsets are stored as ints
+    static final long MAX_SIZE = 1024 * 1024 * 1024;
+
+    private static final int MAGIC = 0x4c534d31;
+    private static final int FOOTER_SIZE = 7 * 4;
+    private static final int INDEX_INTERVAL = 16;
+    private static final int BLOOM_BITS_PER_KEY = 10;
+    private static final int BLOOM_HASHES = 7;
+
+    private final long id;
+    private final Path path;
+    private final MappedByteBuffer buf;
+
+    private final int dataEnd;
+    private final byte[][] indexKeys;
+    private final int[] indexOffsets;
+    private final int bloomOffset;
+    private final int bloomBits;
+    private final int count;
+
+    private final byte[] firstKey;
+    private final byte[] lastKey;
+
+    private Segment(long id, Path path) throws IOException {
+        this.id = id;
+        this.path = path;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        int footer = buf.capacity() - FOOTER_SIZE;
+        if (footer < 0 || buf.getInt(footer + 24) != MAGIC) {
+            throw new IOException("Not a segment file or segment is corrupted: " + path);
+        }
+        dataEnd = buf.getInt(footer);
+        int indexCount = buf.getInt(footer + 4);
+        bloomOffset = buf.getInt(footer + 8);
+        bloomBits = buf.getInt(footer + 12) * 64;
+        count = buf.getInt(footer + 20);
+
+        indexKeys = new byte[indexCount][];
+        indexOffsets = new int[indexCount];
+        int pos = dataEnd;
+        for (int i = 0; i < indexCount; i++) {
+            int keyLen = buf.getInt(pos);
+            indexKeys[i] = read(pos + 4, keyLen);
+            indexOffsets[i] = buf.getInt(pos + 4 + keyLen);
+            pos += 8 + keyLen;
+        }
+
+        firstKey = count == 0 ? null : read(4, buf.getInt(0));
+        byte[] last = null;
+        if (indexCount > 0) {
+            for (pos = indexOffsets[indexCount - 1]; pos < dataEnd; ) {
+                int keyLen = buf.getInt(pos);
+                last = read(pos + 4, keyLen);
+                pos = nextEntry(pos);
+            }
+        }
+        lastKey = last;
+    }
+
+    static Segment open(long id, Path path) throws IOException {
+        return new Segment(id, path);
+    }
+
+    long getId() {
+        return id;
+    }
+
+    Path getPath() {
+        return path;
+    }
+
+    long getSize() {
+        return buf.capacity();
+    }
+
+    int getCount() {
+        return count;
+    }
+
+    byte[] getFirstKey() {
+        return firstKey;
+    }
+
+    byte[] getLastKey() {
+        return lastKey;
+    }
+
+    /**
+     * @return value, {@link LsmDbDataSource#TOMBSTONE} if the key was deleted
+     *         or {@code null} if the segment knows nothing about the key
+     */
+    byte[] get(byte[] key) {
+        if (count == 0 || !mayContain(key)) return null;
+
+        int idx = floorIndex(key);
+        if (idx < 0) return null;
+
+        int pos = indexOffsets[idx];
+        for (int i = 0; i < INDEX_INTERVAL && pos < dataEnd; i++) {
+            int keyLen = buf.getInt(pos);
+            int cmp = compareAt(pos + 4, keyLen, key);
+            if (cmp == 0) {
+                int valPos = pos + 4 + keyLen;
+                int valLen = buf.getInt(valPos);
+                return valLen < 0 ? TOMBSTONE : read(valPos + 4, valLen);
+            } else if (cmp > 0) {
+                return null;
+            }
+            pos = nextEntry(pos);
+        }
+        return null;
+    }
+
+    private int floorIndex(byte[] key) {
+        int lo = 0, hi = indexKeys.length - 1, ret = -1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if (compareKeys(indexKeys[mid], key) <= 0) {
+                ret = mid;
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return ret;
+    }
+
+    private boolean mayContain(byte[] key) {
+        long h = hash(key);
+        int h1 = (int) h, h2 = (int) (h >>> 32);
+        for (int i = 0; i < BLOOM_HASHES; i++) {
+            int bit = ((h1 + i * h2) & Integer.MAX_VALUE) % bloomBits;
+            if ((buf.getLong(bloomOffset + (bit >>> 6) * 8) & (1L << bit)) == 0) return false;
+        }
+        return true;
+    }
+
+    private int nextEntry(int pos) {
+        int valPos = pos + 4 + buf.getInt(pos);
+        return valPos + 4 + Math.max(buf.getInt(valPos), 0);
+    }
+
+    private int compareAt(int pos, int len, byte[] key) {
+        int n = Math.min(len, key.length);
+        for (int i = 0; i < n; i++) {
+            int a = buf.get(pos + i) & 0xFF;
+            int b = key[i] & 0xFF;
+            if (a != b) return a - b;
+        }
+        return len - key.length;
+    }
+
+    private byte[] read(int pos, int len) {
+        byte[] ret = new byte[len];
+        ByteBuffer dup = buf.duplicate();
+        dup.position(pos);
+        dup.get(ret);
+        return ret;
+    }
+
+    /**
+     * Iterates entries in the key order, deleted entries have {@link LsmDbDataSource#TOMBSTONE} value
+     */
+    Iterator<Map.Entry<byte[], byte[]>> iterator() {
+        return iterator(0);
+    }
+
+    /**
+     * Same as {@link #iterator()} starting from the first key which is greater or equal to the given one
+     */
+    Iterator<Map.Entry<byte[], byte[]>> iterator(byte[] from) {
+        int idx = floorIndex(from);
+        int pos = idx < 0 ? 0 : indexOffsets[idx];
+        while (pos < dataEnd && compareAt(pos + 4, buf.getInt(pos), from) < 0) {
+            pos = nextEntry(pos);
+        }
+        return iterator(pos);
+    }
+
+    private Iterator<Map.Entry<byte[], byte[]>> iterator(int start) {
+        return new Iterator<Map.Entry<byte[], byte[]>>() {
+            int pos = start;
+
+            @Override
+            public boolean hasNext() {
+                return pos < dataEnd;
+            }
+
+            @Override
+            public Map.Entry<byte[], byte[]> next() {
+                if (!hasNext()) throw new NoSuchElementException();
+                int keyLen = buf.getInt(pos);
+                byte[] key = read(pos + 4, keyLen);
+                int valPos = pos + 4 + keyLen;
+                int valLen = buf.getInt(valPos);
+                byte[] val = valLen < 0 ? TOMBSTONE : read(valPos + 4, valLen);
+                pos = valPos + 4 + Math.max(valLen, 0);
+                return new AbstractMap.SimpleImmutableEntry<>(key, val);
+            }
+        };
+    }
+
+    static long hash(byte[] key) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : key) {
+            h ^= b & 0xFF;
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    @Override
+    public String toString() {
+        return path.getFileName() + " (" + count + " entries, " + getSize() + " bytes)";
+    }
+
+    /**
+     * Writes entries which should come in ascending key order
+     */
+    static class Writer {
+        private final long id;
+        private final Path path;
+        private final FileOutputStream fileOut;
+        private final DataOutputStream out;
+
+        private long size;
+        private int count;
+        private long[] hashes = new long[1024];
+        private final List<byte[]> indexKeys = new ArrayList<>();
+        private final List<Integer> indexOffsets = new ArrayList<>();
+
+        Writer(long id, Path path) throws IOException {
+            this.id = id;
+            this.path = path;
+            this.fileOut = new FileOutputStream(path.toFile());
+            this.out = new DataOutputStream(new BufferedOutputStream(fileOut, 64 * 1024));
+        }
+
+        void add(byte[] key, byte[] value) throws IOException {
+            if (size >= MAX_SIZE) throw new IOException("Segment size limit exceeded: " + path);
+            if (count % INDEX_INTERVAL == 0) {
+                indexKeys.add(key);
+                indexOffsets.add((int) size);
+            }
+            if (count == hashes.length) hashes = Arrays.copyOf(hashes, count * 2);
+            hashes[count++] = hash(key);
+
+            out.writeInt(key.length);
+            out.write(key);
+            if (value == TOMBSTONE) {
+                out.writeInt(-1);
+                size += 8 + key.length;
+            } else {
+                out.writeInt(value.length);
+                out.write(value);
+                size += 8 + key.length + value.length;
+            }
+        }
+
+        long getSize() {
+            return size;
+        }
+
+        int getCount() {
+            return count;
+        }
+
+        Segment finish() throws IOException {
+            int indexOffset = (int) size;
+            for (int i = 0; i < indexKeys.size(); i++) {
+                out.writeInt(indexKeys.get(i).length);
+                out.write(indexKeys.get(i));
+                out.writeInt(indexOffsets.get(i));
+                size += 8 + indexKeys.get(i).length;
+            }
+
+            int bloomLongs = Math.max(1, (count * BLOOM_BITS_PER_KEY + 63) / 64);
+            long[] bloom = new long[bloomLongs];
+            int bits = bloomLongs * 64;
+            for (int i = 0; i < count; i++) {
+                int h1 = (int) hashes[i], h2 = (int) (hashes[i] >>> 32);
+                for (int j = 0; j < BLOOM_HASHES; j++) {
+                    int bit = ((h1 + j * h2) & Integer.MAX_VALUE) % bits;
+                    bloom[bit >>> 6] |= 1L << bit;
+                }
+            }
+            int bloomOffset = (int) size;
+            for (long word : bloom) {
+                out.writeLong(word);
+            }
+
+            out.writeInt(indexOffset);
+            out.writeInt(indexKeys.size());
+            out.writeInt(bloomOffset);
+            out.writeInt(bloomLongs);
+            out.writeInt(BLOOM_HASHES);
+            out.writeInt(count);
+            out.writeInt(MAGIC);
+            out.flush();
+            fileOut.getFD().sync();
+            out.close();
+
+            return Segment.open(id, path);
+        }
+
+        void abort() {
+            try {
+                out.close();
+            } catch (IOException ignored) {
+            }
+            path.toFile().delete();
+        }
+    }
+}
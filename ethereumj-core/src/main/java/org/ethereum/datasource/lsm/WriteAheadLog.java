@@ -0,0 +1,140 @@
+/*
+ * Copyright (c) [2016] [ <ether.camp> ]
+ * This file is part of the ethereumJ library.
+ *
+ * The ethereumJ library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The ethereumJ library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with the ethereumJ library. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.datasource.lsm;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.zip.CRC32;
+
+/**
+ * Append only log of the updates which are not yet persisted to segments. <br>
+ *
+ * Each update batch is a single record: {@code [length][crc32][count]([keyLen][key][valLen][val])*},
+ * deletions have {@code valLen == -1}. On replay the records are applied up to the first
+ * truncated or corrupted one, so a batch is either recovered entirely or not at all
+ */
+class WriteAheadLog implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger("db");
+
+    private static final int HEADER_SIZE = 8;
+
+    private final Path path;
+    private final FileChannel channel;
+
+    WriteAheadLog(Path path) throws IOException {
+        this.path = path;
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+    }
+
+    Path getPath() {
+        return path;
+    }
+
+    /**
+     * Appends the batch, {@code null} values denote deletions
+     */
+    void append(Map<byte[], byte[]> rows) throws IOException {
+        int payloadSize = 4;
+        for (Map.Entry<byte[], byte[]> row : rows.entrySet()) {
+            payloadSize += 8 + row.getKey().length + (row.getValue() == null ? 0 : row.getValue().length);
+        }
+
+        ByteBuffer buf = ByteBuffer.allocate(HEADER_SIZE + payloadSize);
+        buf.position(HEADER_SIZE);
+        buf.putInt(rows.size());
+        for (Map.Entry<byte[], byte[]> row : rows.entrySet()) {
+            buf.putInt(row.getKey().length).put(row.getKey());
+            if (row.getValue() == null) {
+                buf.putInt(-1);
+            } else {
+                buf.putInt(row.getValue().length).put(row.getValue());
+            }
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(buf.array(), HEADER_SIZE, payloadSize);
+        buf.putInt(0, payloadSize);
+        buf.putInt(4, (int) crc.getValue());
+        buf.flip();
+
+        while (buf.hasRemaining()) {
+            channel.write(buf);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.force(false);
+        channel.close();
+    }
+
+    /**
+     * Applies logged updates to the consumer, {@code null} value denotes deletion
+     * @return number of replayed batches
+     */
+    static int replay(Path path, BiConsumer<byte[], byte[]> consumer) throws IOException {
+        ByteBuffer buf = ByteBuffer.wrap(Files.readAllBytes(path));
+        int batches = 0;
+        while (buf.remaining() >= HEADER_SIZE) {
+            int start = buf.position();
+            int payloadSize = buf.getInt();
+            int checksum = buf.getInt();
+            if (payloadSize < 4 || payloadSize > buf.remaining()) {
+                buf.position(start);
+                break;
+            }
+
+            CRC32 crc = new CRC32();
+            crc.update(buf.array(), start + HEADER_SIZE, payloadSize);
+            if ((int) crc.getValue() != checksum) {
+                buf.position(start);
+                break;
+            }
+
+            int count = buf.getInt();
+            for (int i = 0; i < count; i++) {
+                byte[] key = new byte[buf.getInt()];
+                buf.get(key);
+                int valLen = buf.getInt();
+                byte[] val = null;
+                if (valLen >= 0) {
+                    val = new byte[valLen];
+                    buf.get(val);
+                }
+                consumer.accept(key, val);
+            }
+            batches++;
+        }
+
+        if (buf.position() < buf.limit()) {
+            logger.warn("Write ahead log {} has a broken tail, {} bytes discarded", path, buf.limit() - buf.position());
+        }
+        return batches;
+    }
+}
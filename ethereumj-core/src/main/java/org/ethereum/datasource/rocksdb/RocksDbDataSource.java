@@ -22,6 +22,7 @@ import org.ethereum.datasource.DbSettings;
 import org.ethereum.datasource.DbSource;
 import org.ethereum.datasource.NodeKeyCompositor;
 import org.ethereum.util.FileUtil;
+import org.ethereum.util.LatencyHistogram;
 import org.rocksdb.*;
 import org.rocksdb.CompressionType;
 import org.rocksdb.Options;
@@ -65,6 +66,10 @@ public class RocksDbDataSource implements DbSource<byte[]> {
     // however blocks them on init/close/delete operations
     private ReadWriteLock resetDbLock = new ReentrantReadWriteLock();
 
+    private final LatencyHistogram getLatency = new LatencyHistogram("get");
+    private final LatencyHistogram getBatchLatency = new LatencyHistogram("getBatch");
+    private final LatencyHistogram updateBatchLatency = new LatencyHistogram("updateBatch");
+
     static {
         RocksDB.loadLibrary();
     }
@@ -211,6 +216,7 @@ public class RocksDbDataSource implements DbSource<byte[]> {
             if (!isAlive()) return;
 
             logger.debug("Close db: {}", name);
+            if (logger.isDebugEnabled()) logger.debug("Latency stats of db {}: {}", name, getLatencyStats());
             db.close();
             readOpts.close();
 
@@ -262,7 +268,7 @@ public class RocksDbDataSource implements DbSource<byte[]> {
         try {
             if (logger.isTraceEnabled()) logger.trace("~> RocksDbDataSource.updateBatch(): " + name + ", " + rows.size());
             try {
-
+                long start = System.nanoTime();
                 try (WriteBatch batch = new WriteBatch();
                      WriteOptions writeOptions = new WriteOptions()) {
                     for (Map.Entry<byte[], byte[]> entry : rows.entrySet()) {
@@ -274,6 +280,7 @@ public class RocksDbDataSource implements DbSource<byte[]> {
                     }
                     db.write(writeOptions, batch);
                 }
+                updateBatchLatency.recordSince(start);
 
                 if (logger.isTraceEnabled()) logger.trace("<~ RocksDbDataSource.updateBatch(): " + name + ", " + rows.size());
             } catch (RocksDBException e) {
@@ -311,7 +318,9 @@ public class RocksDbDataSource implements DbSource<byte[]> {
         resetDbLock.readLock().lock();
         try {
             if (logger.isTraceEnabled()) logger.trace("~> RocksDbDataSource.get(): " + name + ", key: " + toHexString(key));
+            long start = System.nanoTime();
             byte[] ret = db.get(readOpts, key);
+            getLatency.recordSince(start);
             if (logger.isTraceEnabled()) logger.trace("<~ RocksDbDataSource.get(): " + name + ", key: " + toHexString(key) + ", " + (ret == null ? "null" : ret.length));
             return ret;
         } catch (RocksDBException e) {
@@ -323,6 +332,30 @@ public class RocksDbDataSource implements DbSource<byte[]> {
         }
     }
 
+    @Override
+    public List<byte[]> getBatch(List<byte[]> keys) {
+        resetDbLock.readLock().lock();
+        try {
+            if (logger.isTraceEnabled()) logger.trace("~> RocksDbDataSource.getBatch(): " + name + ", " + keys.size());
+            long start = System.nanoTime();
+            // the result is keyed by the very key instances passed in
+            Map<byte[], byte[]> found = db.multiGet(readOpts, keys);
+            List<byte[]> ret = new ArrayList<>(keys.size());
+            for (byte[] key : keys) {
+                ret.add(found.get(key));
+            }
+            getBatchLatency.recordSince(start);
+            if (logger.isTraceEnabled()) logger.trace("<~ RocksDbDataSource.getBatch(): " + name + ", " + keys.size() + ", found " + found.size());
+            return ret;
+        } catch (RocksDBException e) {
+            logger.error("Failed to get batch from db '{}'", name, e);
+            hintOnTooManyOpenFiles(e);
+            throw new RuntimeException(e);
+        } finally {
+            resetDbLock.readLock().unlock();
+        }
+    }
+
     @Override
     public void delete(byte[] key) {
         resetDbLock.readLock().lock();
@@ -382,6 +415,11 @@ public class RocksDbDataSource implements DbSource<byte[]> {
         return false;
     }
 
+    @Override
+    public List<LatencyHistogram> getLatencyStats() {
+        return Arrays.asList(getLatency, getBatchLatency, updateBatchLatency);
+    }
+
     private void hintOnTooManyOpenFiles(Exception e) {
         if (e.getMessage() != null && e.getMessage().toLowerCase().contains("too many open files")) {
             logger.info("");
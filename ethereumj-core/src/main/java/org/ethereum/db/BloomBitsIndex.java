@@ -0,0 +1,246 @@
+/*
+ * Copyright (c) [2016] [ <ether.camp> ]
+ * This file is part of the ethereumJ library.
+ *
+ * The ethereumJ library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The ethereumJ library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with the ethereumJ library. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.db;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.ethereum.core.Block;
+import org.ethereum.core.BlockHeader;
+import org.ethereum.core.Bloom;
+import org.ethereum.datasource.Source;
+import org.ethereum.listener.LogFilter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.ByteBuffer;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.LongStream;
+
+import static org.ethereum.util.ByteUtil.byteArrayToLong;
+import static org.ethereum.util.ByteUtil.longToBytes;
+
+/**
+ * Storage (section, bloom bit) => bit vector of the section blocks which header bloom has that bit set
+ *
+ * <p>
+ *     The main chain is split into sections of {@link #SECTION_SIZE} blocks. Once a section
+ *     is {@link #CONFIRMATIONS} blocks deep its headers blooms are rotated into 2048 columns,
+ *     one per bloom bit. Candidate blocks for a {@link LogFilter} are found by intersecting
+ *     the columns of the filter bits instead of reading every header of the range.
+ *
+ * <p>
+ *     Sections are indexed in background, blocks of the sections which are not indexed yet
+ *     are all reported as candidates, thus the caller has to check the header bloom anyway
+ */
+public class BloomBitsIndex {
+    private static final Logger logger = LoggerFactory.getLogger("db");
+
+    public static final int SECTION_SIZE = 4096;
+    public static final int CONFIRMATIONS = 256;
+
+    private static final int BLOOM_BITS = 2048;
+    private static final byte[] SECTIONS_KEY = "sections".getBytes();
+
+    private static final byte RAW_VECTOR = 0;
+    private static final byte SPARSE_VECTOR = 1;
+
+    private final Source<byte[], byte[]> source;
+    private final BlockStore blockStore;
+    private final int sectionSize;
+    private final int confirmations;
+
+    private ExecutorService executor;
+    private final AtomicBoolean catchUpScheduled = new AtomicBoolean();
+    private volatile long bestNumber = -1;
+    private volatile long sections;
+
+    /**
+     * Creates the index, null source makes it disabled
+     */
+    public BloomBitsIndex(Source<byte[], byte[]> source, BlockStore blockStore) {
+        this(source, blockStore, SECTION_SIZE, CONFIRMATIONS);
+    }
+
+    public BloomBitsIndex(Source<byte[], byte[]> source, BlockStore blockStore, int sectionSize, int confirmations) {
+        if (sectionSize <= 0 || sectionSize > 0xFFFF) throw new IllegalArgumentException("Invalid section size: " + sectionSize);
+        this.source = source;
+        this.blockStore = blockStore;
+        this.sectionSize = sectionSize;
+        this.confirmations = confirmations;
+
+        if (source != null) {
+            byte[] sectionsBytes = source.get(SECTIONS_KEY);
+            this.sections = sectionsBytes == null ? 0 : byteArrayToLong(sectionsBytes);
+            executor = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder()
+                    .setNameFormat("bloombits-index-%d").setDaemon(true).build());
+        }
+    }
+
+    public boolean isEnabled() {
+        return source != null;
+    }
+
+    /**
+     * Schedules indexing of the sections confirmed by the committed main chain block,
+     * the import is not blocked while the index catches up with the chain
+     */
+    public void blockCommitted(BlockHeader header) {
+        if (!isEnabled()) return;
+
+        if (header.getNumber() > bestNumber) bestNumber = header.getNumber();
+        if (!catchUpScheduled.compareAndSet(false, true)) return;
+
+        executor.submit(() -> {
+            catchUpScheduled.set(false);
+            try {
+                while (bestNumber >= (sections + 1) * sectionSize - 1 + confirmations) {
+                    long start = System.currentTimeMillis();
+                    indexSection(sections);
+                    sections++;
+                    source.put(SECTIONS_KEY, longToBytes(sections));
+                    logger.debug("Bloom bits section #{} indexed in {} ms", sections - 1,
+                            System.currentTimeMillis() - start);
+                }
+            } catch (Exception e) {
+                logger.error("Error indexing bloom bits, section #" + sections, e);
+            }
+        });
+    }
+
+    public long getIndexedSections() {
+        return sections;
+    }
+
+    public int getSectionSize() {
+        return sectionSize;
+    }
+
+    private void indexSection(long section) {
+        BitSet[] columns = new BitSet[BLOOM_BITS];
+        for (int i = 0; i < BLOOM_BITS; i++) {
+            columns[i] = new BitSet(sectionSize);
+        }
+
+        long first = section * sectionSize;
+        for (int i = 0; i < sectionSize; i++) {
+            Block block = blockStore.getChainBlockByNumber(first + i);
+            if (block == null) {
+                // unknown block is matched by any filter
+                for (BitSet column : columns) column.set(i);
+                continue;
+            }
+            byte[] bloom = block.getLogBloom();
+            for (int j = 0; j < bloom.length; j++) {
+                for (int b = 0; b < 8; b++) {
+                    if ((bloom[j] & (1 << b)) != 0) columns[j * 8 + b].set(i);
+                }
+            }
+        }
+
+        for (int bit = 0; bit < BLOOM_BITS; bit++) {
+            if (!columns[bit].isEmpty()) {
+                source.put(columnKey(section, bit), encode(columns[bit]));
+            }
+        }
+    }
+
+    /**
+     * Numbers of the main chain blocks in the range (inclusive) which header bloom may match the filter
+     */
+    public LongStream getCandidates(LogFilter filter, long fromBlock, long toBlock) {
+        Bloom[][] blooms = filter.getFilterBlooms();
+        long indexed = sections;
+
+        return LongStream.rangeClosed(fromBlock / sectionSize, toBlock / sectionSize).flatMap(section -> {
+            long first = section * sectionSize;
+            long from = Math.max(fromBlock, first);
+            long to = Math.min(toBlock, first + sectionSize - 1);
+            if (section >= indexed) return LongStream.rangeClosed(from, to);
+
+            return match(blooms, section).stream()
+                    .mapToLong(i -> first + i)
+                    .filter(n -> n >= from && n <= to);
+        });
+    }
+
+    // each of the outer blooms and any of the inner ones
+    private BitSet match(Bloom[][] blooms, long section) {
+        Map<Integer, BitSet> columns = new HashMap<>();
+        BitSet ret = new BitSet(sectionSize);
+        ret.set(0, sectionSize);
+
+        for (Bloom[] orBlooms : blooms) {
+            BitSet orMatch = new BitSet(sectionSize);
+            for (Bloom bloom : orBlooms) {
+                BitSet andMatch = new BitSet(sectionSize);
+                andMatch.set(0, sectionSize);
+                byte[] data = bloom.getData();
+                for (int j = 0; j < data.length && !andMatch.isEmpty(); j++) {
+                    for (int b = 0; b < 8; b++) {
+                        if ((data[j] & (1 << b)) != 0) {
+                            andMatch.and(columns.computeIfAbsent(j * 8 + b, bit -> getColumn(section, bit)));
+                        }
+                    }
+                }
+                orMatch.or(andMatch);
+            }
+            ret.and(orMatch);
+            if (ret.isEmpty()) break;
+        }
+        return ret;
+    }
+
+    private BitSet getColumn(long section, int bit) {
+        byte[] encoded = source.get(columnKey(section, bit));
+        return encoded == null ? new BitSet() : decode(encoded);
+    }
+
+    private static byte[] columnKey(long section, int bit) {
+        return ByteBuffer.allocate(10).putLong(section).putShort((short) bit).array();
+    }
+
+    /**
+     * Most of the columns are sparse, those are stored as the list of set bit indexes
+     */
+    private static byte[] encode(BitSet column) {
+        byte[] raw = column.toByteArray();
+        int card = column.cardinality();
+        if (card * 2 < raw.length) {
+            ByteBuffer buf = ByteBuffer.allocate(1 + card * 2).put(SPARSE_VECTOR);
+            column.stream().forEach(i -> buf.putShort((short) i));
+            return buf.array();
+        } else {
+            return ByteBuffer.allocate(1 + raw.length).put(RAW_VECTOR).put(raw).array();
+        }
+    }
+
+    private static BitSet decode(byte[] encoded) {
+        ByteBuffer buf = ByteBuffer.wrap(encoded, 1, encoded.length - 1);
+        if (encoded[0] == SPARSE_VECTOR) {
+            BitSet ret = new BitSet();
+            while (buf.hasRemaining()) ret.set(buf.getShort() & 0xFFFF);
+            return ret;
+        } else {
+            return BitSet.valueOf(buf);
+        }
+    }
+}
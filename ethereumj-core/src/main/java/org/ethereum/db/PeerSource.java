@@ -18,6 +18,8 @@
 package org.ethereum.db;
 
 import org.apache.commons.lang3.tuple.Pair;
+import org.ethereum.datasource.BatchSource;
+import org.ethereum.datasource.BatchSourceWriter;
 import org.ethereum.datasource.DataSourceArray;
 import org.ethereum.datasource.DbSource;
 import org.ethereum.datasource.ObjectDataSource;
@@ -29,7 +31,16 @@ import org.ethereum.util.RLP;
 import org.ethereum.util.RLPList;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+
 import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * Source for {@link org.ethereum.net.rlpx.Node} also known as Peers
@@ -70,22 +81,105 @@ public class PeerSource {
         }
     };
 
+    // node key => [index in the nodes array, persisted reputation]
+    private Map<String, int[]> persisted;
+
     public PeerSource(Source<byte[], byte[]> src) {
         this.src = src;
         INST = this;
-        this.nodes = new DataSourceArray<>(
-                new ObjectDataSource<>(src, NODE_SERIALIZER, 512));
+        this.nodes = createNodes();
+    }
+
+    private DataSourceArray<Pair<Node, Integer>> createNodes() {
+        // updates are buffered till flush and then written in a single batch
+        Source<byte[], byte[]> writer = src instanceof BatchSource ?
+                new BatchSourceWriter<>((BatchSource<byte[], byte[]>) src) : src;
+        ObjectDataSource<Pair<Node, Integer>> objects = new ObjectDataSource<>(writer, NODE_SERIALIZER, 512);
+        objects.setFlushSource(true);
+        return new DataSourceArray<>(objects);
     }
 
     public DataSourceArray<Pair<Node, Integer>> getNodes() {
         return nodes;
     }
 
-    public void clear() {
+    /**
+     * Persists reputations of the nodes. Only the nodes which are new or which reputation
+     * has changed since the last update are written, the slots of the persisted nodes
+     * which are absent in the {@code update} are reused for the new ones.
+     * Slots which are left unused are filled with the nodes from the tail and the tail is removed
+     * @return number of written nodes
+     */
+    public synchronized int update(List<Pair<Node, Integer>> update) {
+        if (persisted == null) {
+            persisted = new HashMap<>();
+            for (int i = 0; i < nodes.size(); i++) {
+                Pair<Node, Integer> node = nodes.get(i);
+                persisted.put(getKey(node.getLeft()), new int[] {i, node.getRight()});
+            }
+        }
+
+        Set<String> updated = new HashSet<>();
+        List<Pair<Node, Integer>> added = new ArrayList<>();
+        int written = 0;
+        for (Pair<Node, Integer> node : update) {
+            String key = getKey(node.getLeft());
+            if (!updated.add(key)) continue;
+            int[] slot = persisted.get(key);
+            if (slot == null) {
+                added.add(node);
+            } else if (slot[1] != node.getRight()) {
+                nodes.set(slot[0], node);
+                slot[1] = node.getRight();
+                written++;
+            }
+        }
+
+        List<Integer> freeSlots = new ArrayList<>();
+        for (Iterator<Map.Entry<String, int[]>> it = persisted.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<String, int[]> entry = it.next();
+            if (!updated.contains(entry.getKey())) {
+                freeSlots.add(entry.getValue()[0]);
+                it.remove();
+            }
+        }
+        Collections.sort(freeSlots);
+
+        int nextFree = 0;
+        for (Pair<Node, Integer> node : added) {
+            int idx = nextFree < freeSlots.size() ? freeSlots.get(nextFree++) : nodes.size();
+            nodes.set(idx, node);
+            persisted.put(getKey(node.getLeft()), new int[] {idx, node.getRight()});
+            written++;
+        }
+
+        // compacts the array if some nodes are gone
+        int size = persisted.size();
+        if (nodes.size() > size) {
+            Iterator<Integer> holes = freeSlots.subList(nextFree, freeSlots.size()).iterator();
+            for (int[] slot : persisted.values()) {
+                if (slot[0] < size) continue;
+                int hole = holes.next();
+                nodes.set(hole, nodes.get(slot[0]));
+                slot[0] = hole;
+                written++;
+            }
+            nodes.truncate(size);
+        }
+
+        nodes.flush();
+        return written;
+    }
+
+    private static String getKey(Node node) {
+        return node.getHost() + ":" + node.getPort();
+    }
+
+    public synchronized void clear() {
         if (src instanceof DbSource) {
             ((DbSource) src).reset();
-            this.nodes = new DataSourceArray<>(
-                    new ObjectDataSource<>(src, NODE_SERIALIZER, 512));
+            this.nodes = createNodes();
+            this.persisted = null;
         } else {
             throw new RuntimeException("Not supported");
         }
@@ -0,0 +1,393 @@
+/*
+ * Copyright (c) [2016] [ <ether.camp> ]
+ * This file is part of the ethereumJ library.
+ *
+ * The ethereumJ library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The ethereumJ library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with the ethereumJ library. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.db;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.ethereum.core.Block;
+import org.ethereum.core.BlockSummary;
+import org.ethereum.core.Transaction;
+import org.ethereum.core.TransactionInfo;
+import org.ethereum.core.TransactionReceipt;
+import org.ethereum.datasource.Source;
+import org.ethereum.listener.CompositeEthereumListener;
+import org.ethereum.listener.EthereumListenerAdapter;
+import org.ethereum.vm.DataWord;
+import org.ethereum.vm.LogInfo;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.ethereum.util.ByteUtil.byteArrayToLong;
+import static org.ethereum.util.ByteUtil.longToBytes;
+
+/**
+ * Storage (address or topic) => posting list of (block number, tx index, log index)
+ *
+ * <p>
+ *     An address is indexed for transactions it sends, receives or creates and for logs
+ *     emitted by it, a topic is indexed for logs containing it. Main chain blocks are indexed
+ *     on a separate thread once they are {@link #CONFIRMATIONS} blocks deep, receipts are taken
+ *     from the imported {@link BlockSummary} or from {@link TransactionStore} when the index
+ *     catches up with the existing chain. A block which can't be indexed completely (the block
+ *     or some of its receipts are not found) stops indexing until the next block is imported
+ *
+ * <p>
+ *     The index position only moves forward, so the confirmation depth is the bound for the reorgs:
+ *     blocks replaced by a reorg deeper than that remain in the index
+ *
+ * <p>
+ *     Posting lists are split into chunks of {@link #CHUNK_SIZE} entries, only the last chunk
+ *     is rewritten on update unless a re-indexed block has entries in the preceding ones.
+ *     Entries are stored as varints with block numbers delta-encoded
+ */
+public class ReceiptsIndex {
+    private static final Logger logger = LoggerFactory.getLogger("db");
+
+    public static final int CONFIRMATIONS = 12;
+    public static final int CHUNK_SIZE = 1024;
+
+    private static final byte[] INDEXED_KEY = "indexed".getBytes();
+
+    /**
+     * Index entry, {@link #logIndex} is -1 for the transaction itself
+     */
+    public static class Entry {
+        public final long blockNumber;
+        public final int txIndex;
+        public final int logIndex;
+
+        public Entry(long blockNumber, int txIndex, int logIndex) {
+            this.blockNumber = blockNumber;
+            this.txIndex = txIndex;
+            this.logIndex = logIndex;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Entry entry = (Entry) o;
+            return blockNumber == entry.blockNumber && txIndex == entry.txIndex && logIndex == entry.logIndex;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (31 * Long.hashCode(blockNumber) + txIndex) + logIndex;
+        }
+
+        @Override
+        public String toString() {
+            return "Entry{" + blockNumber + ", tx: " + txIndex + ", log: " + logIndex + "}";
+        }
+    }
+
+    private final Source<byte[], byte[]> source;
+    private final BlockStore blockStore;
+    private final TransactionStore transactionStore;
+    private final int confirmations;
+
+    // summaries of recently imported blocks, saves reading receipts from the store
+    private final Map<ByteArrayWrapper, BlockSummary> recentSummaries = new ConcurrentHashMap<>();
+
+    private ExecutorService executor;
+    private final AtomicBoolean catchUpScheduled = new AtomicBoolean();
+    private volatile long bestNumber = -1;
+    private volatile long indexed;
+
+    /**
+     * Creates the index, null source makes it disabled
+     */
+    public ReceiptsIndex(Source<byte[], byte[]> source, BlockStore blockStore, TransactionStore transactionStore,
+                         int confirmations) {
+        this.source = source;
+        this.blockStore = blockStore;
+        this.transactionStore = transactionStore;
+        this.confirmations = confirmations;
+
+        if (source != null) {
+            byte[] indexedBytes = source.get(INDEXED_KEY);
+            indexed = indexedBytes == null ? -1 : byteArrayToLong(indexedBytes);
+            executor = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder()
+                    .setNameFormat("receipts-index-%d").setDaemon(true).build());
+        }
+    }
+
+    public boolean isEnabled() {
+        return source != null;
+    }
+
+    /**
+     * Subscribes to imported blocks and starts indexing the existing chain
+     */
+    @Autowired
+    public void setEthereumListener(CompositeEthereumListener listener) {
+        if (!isEnabled()) return;
+
+        listener.addListener(new EthereumListenerAdapter() {
+            @Override
+            public void onBlock(BlockSummary blockSummary, boolean best) {
+                blockImported(blockSummary);
+            }
+        });
+        catchUp(blockStore.getMaxNumber());
+    }
+
+    public void blockImported(BlockSummary summary) {
+        if (!isEnabled()) return;
+
+        long number = summary.getBlock().getNumber();
+        recentSummaries.put(new ByteArrayWrapper(summary.getBlock().getHash()), summary);
+        recentSummaries.values().removeIf(s -> s.getBlock().getNumber() < number - 2 * confirmations);
+
+        catchUp(number);
+    }
+
+    private void catchUp(long number) {
+        if (number > bestNumber) bestNumber = number;
+        if (!catchUpScheduled.compareAndSet(false, true)) return;
+
+        executor.submit(() -> {
+            catchUpScheduled.set(false);
+            try {
+                long start = indexed;
+                while (indexed < bestNumber - confirmations) {
+                    if (!indexBlock(indexed + 1)) {
+                        logger.debug("Block #{} can't be indexed yet", indexed + 1);
+                        break;
+                    }
+                    indexed++;
+                    source.put(INDEXED_KEY, longToBytes(indexed));
+                }
+                if (indexed > start) logger.debug("Receipts indexed up to block #{}", indexed);
+            } catch (Exception e) {
+                logger.error("Error indexing receipts, block #" + (indexed + 1), e);
+            }
+        });
+    }
+
+    /**
+     * @return the number of the last indexed block
+     */
+    public long getIndexedBlock() {
+        return indexed;
+    }
+
+    /**
+     * @return false if the block or some of its receipts are not found, nothing is indexed then
+     */
+    boolean indexBlock(long number) {
+        Block block = blockStore.getChainBlockByNumber(number);
+        if (block == null) return false;
+
+        BlockSummary summary = recentSummaries.get(new ByteArrayWrapper(block.getHash()));
+        Map<ByteArrayWrapper, List<Entry>> entries = new LinkedHashMap<>();
+
+        List<Transaction> txs = block.getTransactionsList();
+        for (int i = 0; i < txs.size(); i++) {
+            Transaction tx = txs.get(i);
+            Entry txEntry = new Entry(number, i, -1);
+            addEntry(entries, tx.getSender(), txEntry);
+            if (tx.isContractCreation()) {
+                addEntry(entries, tx.getContractAddress(), txEntry);
+            } else {
+                addEntry(entries, tx.getReceiveAddress(), txEntry);
+            }
+
+            TransactionReceipt receipt = getReceipt(summary, block, i);
+            if (receipt == null) return false;
+            List<LogInfo> logs = receipt.getLogInfoList();
+            for (int j = 0; j < logs.size(); j++) {
+                Entry logEntry = new Entry(number, i, j);
+                addEntry(entries, logs.get(j).getAddress(), logEntry);
+                for (DataWord topic : logs.get(j).getTopics()) {
+                    addEntry(entries, topic.getData(), logEntry);
+                }
+            }
+        }
+
+        for (Map.Entry<ByteArrayWrapper, List<Entry>> e : entries.entrySet()) {
+            append(e.getKey().getData(), e.getValue());
+        }
+        return true;
+    }
+
+    private TransactionReceipt getReceipt(BlockSummary summary, Block block, int txIndex) {
+        if (summary != null && summary.getReceipts().size() > txIndex) {
+            return summary.getReceipts().get(txIndex);
+        }
+        if (transactionStore == null) return null;
+        TransactionInfo info = transactionStore.get(block.getTransactionsList().get(txIndex).getHash(), block.getHash());
+        return info == null ? null : info.getReceipt();
+    }
+
+    private static void addEntry(Map<ByteArrayWrapper, List<Entry>> entries, byte[] key, Entry entry) {
+        if (key == null || key.length == 0) return;
+        List<Entry> list = entries.computeIfAbsent(new ByteArrayWrapper(key), k -> new ArrayList<>());
+        // the same address may both send and receive the transaction
+        if (list.isEmpty() || !list.get(list.size() - 1).equals(entry)) list.add(entry);
+    }
+
+    private void append(byte[] key, List<Entry> newEntries) {
+        Chunk head = Chunk.decode(source.get(key));
+        long firstNew = newEntries.get(0).blockNumber;
+        // the block might be indexed already if the index position was not flushed or the chain
+        // was reorganized, frozen chunks containing its entries are merged back into the last one
+        while (head.frozenChunks > 0 && (head.entries.isEmpty() || head.entries.get(0).blockNumber >= firstNew)) {
+            byte[] frozenKey = chunkKey(key, head.frozenChunks - 1);
+            List<Entry> frozen = Chunk.decodeEntries(source.get(frozenKey));
+            if (!frozen.isEmpty() && frozen.get(frozen.size() - 1).blockNumber < firstNew) break;
+            frozen.addAll(head.entries);
+            head.entries = frozen;
+            head.frozenChunks--;
+            source.delete(frozenKey);
+        }
+        head.entries.removeIf(e -> e.blockNumber >= firstNew);
+        head.entries.addAll(newEntries);
+
+        while (head.entries.size() >= CHUNK_SIZE) {
+            List<Entry> frozen = head.entries.subList(0, CHUNK_SIZE);
+            source.put(chunkKey(key, head.frozenChunks), Chunk.encodeEntries(frozen));
+            head.frozenChunks++;
+            frozen.clear();
+        }
+        source.put(key, head.encode());
+    }
+
+    /**
+     * Returns a page of the entries for the address or topic
+     *
+     * @param key 20 bytes address or 32 bytes topic
+     * @param fromBlock first block number of the range
+     * @param toBlock last block number of the range (inclusive)
+     * @param offset number of the matching entries to skip
+     * @param limit max number of the entries to return
+     * @return entries in the chain order
+     */
+    public List<Entry> getEntries(byte[] key, long fromBlock, long toBlock, int offset, int limit) {
+        List<Entry> ret = new ArrayList<>();
+        if (!isEnabled() || limit <= 0) return ret;
+
+        Chunk head = Chunk.decode(source.get(key));
+        int skip = offset;
+        for (int i = 0; i <= head.frozenChunks; i++) {
+            List<Entry> chunk = i < head.frozenChunks ?
+                    Chunk.decodeEntries(source.get(chunkKey(key, i))) : head.entries;
+            if (chunk.isEmpty() || chunk.get(chunk.size() - 1).blockNumber < fromBlock) continue;
+
+            for (Entry entry : chunk) {
+                if (entry.blockNumber < fromBlock) continue;
+                if (entry.blockNumber > toBlock) return ret;
+                if (skip > 0) {
+                    skip--;
+                } else {
+                    ret.add(entry);
+                    if (ret.size() >= limit) return ret;
+                }
+            }
+        }
+        return ret;
+    }
+
+    private static byte[] chunkKey(byte[] key, int chunk) {
+        return ByteBuffer.allocate(key.length + 4).put(key).putInt(chunk).array();
+    }
+
+    /**
+     * The last chunk of the posting list, it is stored with the number of preceding chunks
+     */
+    private static class Chunk {
+        int frozenChunks;
+        List<Entry> entries = new ArrayList<>();
+
+        static Chunk decode(byte[] data) {
+            Chunk ret = new Chunk();
+            if (data == null) return ret;
+            ByteBuffer buf = ByteBuffer.wrap(data);
+            ret.frozenChunks = (int) readVarInt(buf);
+            ret.entries = decodeEntries(buf);
+            return ret;
+        }
+
+        byte[] encode() {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            writeVarInt(out, frozenChunks);
+            writeEntries(out, entries);
+            return out.toByteArray();
+        }
+
+        static byte[] encodeEntries(List<Entry> entries) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            writeEntries(out, entries);
+            return out.toByteArray();
+        }
+
+        static List<Entry> decodeEntries(byte[] data) {
+            return data == null ? new ArrayList<>() : decodeEntries(ByteBuffer.wrap(data));
+        }
+
+        private static void writeEntries(ByteArrayOutputStream out, List<Entry> entries) {
+            long prevBlock = 0;
+            for (Entry entry : entries) {
+                writeVarInt(out, entry.blockNumber - prevBlock);
+                writeVarInt(out, entry.txIndex);
+                writeVarInt(out, entry.logIndex + 1);
+                prevBlock = entry.blockNumber;
+            }
+        }
+
+        private static List<Entry> decodeEntries(ByteBuffer buf) {
+            List<Entry> ret = new ArrayList<>();
+            long block = 0;
+            while (buf.hasRemaining()) {
+                block += readVarInt(buf);
+                int txIndex = (int) readVarInt(buf);
+                int logIndex = (int) readVarInt(buf) - 1;
+                ret.add(new Entry(block, txIndex, logIndex));
+            }
+            return ret;
+        }
+
+        private static void writeVarInt(ByteArrayOutputStream out, long val) {
+            while ((val & ~0x7FL) != 0) {
+                out.write((int) (val & 0x7F) | 0x80);
+                val >>>= 7;
+            }
+            out.write((int) val);
+        }
+
+        private static long readVarInt(ByteBuffer buf) {
+            long ret = 0;
+            for (int shift = 0; ; shift += 7) {
+                byte b = buf.get();
+                ret |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) return ret;
+            }
+        }
+    }
+}
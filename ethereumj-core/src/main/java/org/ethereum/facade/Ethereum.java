@@ -20,6 +20,7 @@ package org.ethereum.facade;
 import org.ethereum.core.*;
 import org.ethereum.crypto.ECKey;
 import org.ethereum.listener.EthereumListener;
+import org.ethereum.listener.LogFilter;
 import org.ethereum.manager.AdminInfo;
 import org.ethereum.manager.BlockLoader;
 import org.ethereum.mine.BlockMiner;
@@ -27,6 +28,7 @@ import org.ethereum.net.client.PeerClient;
 import org.ethereum.net.rlpx.Node;
 import org.ethereum.net.server.ChannelManager;
 import org.ethereum.net.shh.Whisper;
+import org.ethereum.vm.LogInfo;
 import org.ethereum.vm.program.ProgramResult;
 
 import java.math.BigInteger;
@@ -34,6 +36,7 @@ import java.net.InetAddress;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Future;
+import java.util.stream.Stream;
 
 /**
  * @author Roman Mandeleil
@@ -120,6 +123,27 @@ public interface Ethereum {
      */
     BlockSummary replayBlock(Block block);
 
+    /**
+     * Re-executes the main chain blocks of the range (inclusive) on all available cores
+     * and reports the results to the listener in the chain order, see {@link ParallelBlockReplay}
+     *
+     * <b>Note:</b> requires states of the replayed blocks parents to be presented in the database
+     *
+     * @return the number of the last replayed block
+     */
+    long replayBlocks(long fromBlock, long toBlock, EthereumListener listener) throws InterruptedException;
+
+    /**
+     * Searches the main chain blocks for logs matching the filter.
+     * Blocks are picked with the help of {@link org.ethereum.db.BloomBitsIndex}
+     * and logs are taken from the stored transaction receipts
+     *
+     * @param fromBlock first block number of the range
+     * @param toBlock   last block number of the range (inclusive)
+     * @return lazy stream of the logs in the chain order
+     */
+    Stream<LogInfo> getLogs(LogFilter filter, long fromBlock, long toBlock);
+
     /**
      * Call a contract function locally without sending transaction to the network
      * and without changing contract storage.
@@ -24,9 +24,13 @@ import org.ethereum.core.*;
 import org.ethereum.core.PendingState;
 import org.ethereum.core.Repository;
 import org.ethereum.crypto.ECKey;
+import org.ethereum.db.BlockStore;
+import org.ethereum.db.BloomBitsIndex;
+import org.ethereum.db.TransactionStore;
 import org.ethereum.listener.CompositeEthereumListener;
 import org.ethereum.listener.EthereumListener;
 import org.ethereum.listener.GasPriceTracker;
+import org.ethereum.listener.LogFilter;
 import org.ethereum.manager.AdminInfo;
 import org.ethereum.manager.BlockLoader;
 import org.ethereum.manager.WorldManager;
@@ -39,6 +43,7 @@ import org.ethereum.net.submit.TransactionExecutor;
 import org.ethereum.net.submit.TransactionTask;
 import org.ethereum.sync.SyncManager;
 import org.ethereum.util.ByteUtil;
+import org.ethereum.vm.LogInfo;
 import org.ethereum.vm.hook.VMHook;
 import org.ethereum.vm.program.ProgramResult;
 import org.ethereum.vm.program.invoke.ProgramInvokeFactory;
@@ -58,6 +63,7 @@ import java.util.*;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
+import java.util.stream.Stream;
 
 import static org.ethereum.util.ByteUtil.toHexString;
 
@@ -98,6 +104,12 @@ public class EthereumImpl implements Ethereum, SmartLifecycle {
     @Autowired
     SyncManager syncManager;
 
+    @Autowired
+    TransactionStore transactionStore;
+
+    @Autowired
+    BloomBitsIndex bloomBitsIndex;
+
     @Autowired
     CommonConfig commonConfig = CommonConfig.getDefault();
 
@@ -274,6 +286,24 @@ public class EthereumImpl implements Ethereum, SmartLifecycle {
         return new BlockSummary(block, new HashMap<byte[], BigInteger>(), receipts, summaries);
     }
 
+    @Override
+    public long replayBlocks(long fromBlock, long toBlock, EthereumListener listener) throws InterruptedException {
+        return new ParallelBlockReplay((BlockchainImpl) worldManager.getBlockchain()).replay(fromBlock, toBlock, listener);
+    }
+
+    @Override
+    public Stream<LogInfo> getLogs(LogFilter filter, long fromBlock, long toBlock) {
+        BlockStore blockStore = worldManager.getBlockStore();
+        return bloomBitsIndex.getCandidates(filter, fromBlock, toBlock)
+                .mapToObj(blockStore::getChainBlockByNumber)
+                .filter(block -> block != null && filter.matchBloom(new Bloom(block.getLogBloom())))
+                .flatMap(block -> block.getTransactionsList().stream()
+                        .map(tx -> transactionStore.get(tx.getHash(), block.getHash()))
+                        .filter(Objects::nonNull)
+                        .flatMap(info -> info.getReceipt().getLogInfoList().stream()))
+                .filter(filter::matchesExactly);
+    }
+
     private org.ethereum.core.TransactionExecutor callConstantImpl(Transaction tx, Block block) {
 
         Repository repository = ((Repository) worldManager.getRepository())
@@ -0,0 +1,397 @@
+/*
+ * Copyright (c) [2016] [ <ether.camp> ]
+ * This file is part of the ethereumJ library.
+ *
+ * The ethereumJ library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The ethereumJ library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with the ethereumJ library. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.listener;
+
+import org.ethereum.core.*;
+import org.ethereum.db.ByteArrayWrapper;
+import org.ethereum.net.eth.message.StatusMessage;
+import org.ethereum.net.message.Message;
+import org.ethereum.net.p2p.HelloMessage;
+import org.ethereum.net.rlpx.Node;
+import org.ethereum.net.server.Channel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Delivers events to the wrapped listener from its own queue and thread. <br>
+ *
+ * {@link CompositeEthereumListener} passes events to this listener directly instead of
+ * the shared {@link EventDispatchThread}, so a slow consumer doesn't delay others.
+ * When the queue is full events are handled according to the {@link OverflowPolicy}. <br>
+ *
+ * If the wrapped listener implements {@link BatchListener} consecutive best blocks
+ * and pending transaction updates are delivered in batches
+ */
+public class AsyncEthereumListener implements EthereumListener {
+    private static final Logger logger = LoggerFactory.getLogger("events");
+
+    public enum OverflowPolicy {
+        /**
+         * The thread firing the event waits for the queue space,
+         * use only when the listener must not miss events and is fast enough
+         */
+        BLOCK,
+        /**
+         * New events are dropped
+         */
+        DROP,
+        /**
+         * Queued event is replaced by a newer one superseding it (pending state change,
+         * update of the same pending transaction, status of the same peer),
+         * other events are dropped when the queue is full
+         */
+        COALESCE
+    }
+
+    public interface BatchListener {
+        /**
+         * Receives best blocks instead of {@link EthereumListener#onBlock(BlockSummary, boolean)}
+         */
+        void onBlocks(List<BlockSummary> blocks);
+
+        /**
+         * Receives updates instead of {@link EthereumListener#onPendingTransactionUpdate}
+         */
+        void onPendingTransactionUpdates(List<PendingTransactionUpdate> updates);
+    }
+
+    public static class PendingTransactionUpdate {
+        public final TransactionReceipt receipt;
+        public final PendingTransactionState state;
+        public final Block block;
+
+        public PendingTransactionUpdate(TransactionReceipt receipt, PendingTransactionState state, Block block) {
+            this.receipt = receipt;
+            this.state = state;
+            this.block = block;
+        }
+    }
+
+    private enum Kind {BEST_BLOCK, TX_UPDATE, OTHER}
+
+    private static class Event {
+        final Kind kind;
+        final Object key;
+        final long created = System.nanoTime();
+        Object payload;
+        Consumer<EthereumListener> action;
+
+        Event(Kind kind, Object key, Object payload, Consumer<EthereumListener> action) {
+            this.kind = kind;
+            this.key = key;
+            this.payload = payload;
+            this.action = action;
+        }
+    }
+
+    private final EthereumListener listener;
+    private final String name;
+
+    private int queueLimit = 10_000;
+    private OverflowPolicy policy = OverflowPolicy.COALESCE;
+    private int maxBlocksBatch = 64;
+    private int maxTxUpdatesBatch = 1024;
+
+    // guarded by this
+    private final Deque<Event> queue = new ArrayDeque<>();
+    private final Map<Object, Event> queuedByKey = new HashMap<>();
+    private Thread thread;
+    private boolean stopped;
+
+    private long delivered;
+    private long dropped;
+    private long coalesced;
+    private long lastLagNanos;
+
+    public AsyncEthereumListener(EthereumListener listener) {
+        this.listener = listener;
+        this.name = "listener-" + listener.getClass().getSimpleName();
+    }
+
+    public AsyncEthereumListener withQueueLimit(int queueLimit) {
+        this.queueLimit = queueLimit;
+        return this;
+    }
+
+    public AsyncEthereumListener withOverflowPolicy(OverflowPolicy policy) {
+        this.policy = policy;
+        return this;
+    }
+
+    /**
+     * Sets max numbers of events delivered to {@link BatchListener} at once
+     */
+    public AsyncEthereumListener withBatchSize(int maxBlocks, int maxTxUpdates) {
+        this.maxBlocksBatch = maxBlocks;
+        this.maxTxUpdatesBatch = maxTxUpdates;
+        return this;
+    }
+
+    public EthereumListener getListener() {
+        return listener;
+    }
+
+    /**
+     * Stops the delivery thread, queued events are discarded
+     */
+    public synchronized void stop() {
+        stopped = true;
+        queue.clear();
+        queuedByKey.clear();
+        notifyAll();
+    }
+
+    public synchronized int getQueueSize() {
+        return queue.size();
+    }
+
+    /**
+     * @return time the oldest queued event is waiting for delivery
+     */
+    public synchronized long getLagMillis() {
+        Event head = queue.peek();
+        return head == null ? 0 : (System.nanoTime() - head.created) / 1_000_000;
+    }
+
+    /**
+     * @return time the last delivered event spent in the queue
+     */
+    public synchronized long getLastDeliveryLagMillis() {
+        return lastLagNanos / 1_000_000;
+    }
+
+    public synchronized long getDeliveredEvents() {
+        return delivered;
+    }
+
+    public synchronized long getDroppedEvents() {
+        return dropped;
+    }
+
+    public synchronized long getCoalescedEvents() {
+        return coalesced;
+    }
+
+    private synchronized void enqueue(Kind kind, Object key, Object payload, Consumer<EthereumListener> action) {
+        if (stopped) return;
+
+        if (policy == OverflowPolicy.COALESCE && key != null) {
+            Event queued = queuedByKey.get(key);
+            if (queued != null) {
+                queued.payload = payload;
+                queued.action = action;
+                coalesced++;
+                return;
+            }
+        }
+
+        while (queue.size() >= queueLimit) {
+            if (policy == OverflowPolicy.BLOCK) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    dropped++;
+                    return;
+                }
+                if (stopped) return;
+            } else {
+                if (dropped++ % 1000 == 0) {
+                    logger.warn("{}: queue is full ({} events, lag {} ms), {} events dropped so far",
+                            name, queue.size(), getLagMillis(), dropped);
+                }
+                return;
+            }
+        }
+
+        Event event = new Event(kind, key, payload, action);
+        queue.add(event);
+        if (key != null) queuedByKey.put(key, event);
+
+        if (thread == null) {
+            thread = new Thread(this::deliveryLoop, name);
+            thread.setDaemon(true);
+            thread.start();
+        }
+        notifyAll();
+    }
+
+    private List<Event> takeBatch() throws InterruptedException {
+        synchronized (this) {
+            while (queue.isEmpty() && !stopped) wait();
+            if (stopped) return null;
+
+            Event first = poll();
+            List<Event> ret = new ArrayList<>();
+            ret.add(first);
+
+            int max = 1;
+            if (listener instanceof BatchListener) {
+                if (first.kind == Kind.BEST_BLOCK) max = maxBlocksBatch;
+                if (first.kind == Kind.TX_UPDATE) max = maxTxUpdatesBatch;
+            }
+            while (ret.size() < max && !queue.isEmpty() && queue.peek().kind == first.kind) {
+                ret.add(poll());
+            }
+
+            lastLagNanos = System.nanoTime() - first.created;
+            delivered += ret.size();
+            notifyAll();
+            return ret;
+        }
+    }
+
+    private Event poll() {
+        Event ret = queue.poll();
+        if (ret.key != null) queuedByKey.remove(ret.key);
+        return ret;
+    }
+
+    private void deliveryLoop() {
+        try {
+            List<Event> batch;
+            while ((batch = takeBatch()) != null) {
+                try {
+                    deliver(batch);
+                } catch (Exception e) {
+                    logger.error(name + ": listener exception", e);
+                }
+            }
+        } catch (InterruptedException e) {
+            // stopped
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void deliver(List<Event> batch) {
+        Kind kind = batch.get(0).kind;
+        if (listener instanceof BatchListener && kind != Kind.OTHER) {
+            List<Object> payloads = new ArrayList<>(batch.size());
+            for (Event event : batch) payloads.add(event.payload);
+
+            if (kind == Kind.BEST_BLOCK) {
+                ((BatchListener) listener).onBlocks((List<BlockSummary>) (List<?>) payloads);
+            } else {
+                ((BatchListener) listener).onPendingTransactionUpdates((List<PendingTransactionUpdate>) (List<?>) payloads);
+            }
+        } else {
+            for (Event event : batch) {
+                event.action.accept(listener);
+            }
+        }
+    }
+
+    private void enqueue(Consumer<EthereumListener> action) {
+        enqueue(Kind.OTHER, null, null, action);
+    }
+
+    @Override
+    public void trace(String output) {
+        enqueue(l -> l.trace(output));
+    }
+
+    @Override
+    public void onNodeDiscovered(Node node) {
+        enqueue(l -> l.onNodeDiscovered(node));
+    }
+
+    @Override
+    public void onHandShakePeer(Channel channel, HelloMessage helloMessage) {
+        enqueue(l -> l.onHandShakePeer(channel, helloMessage));
+    }
+
+    @Override
+    public void onEthStatusUpdated(Channel channel, StatusMessage status) {
+        enqueue(Kind.OTHER, "status:" + channel.getPeerId(), null, l -> l.onEthStatusUpdated(channel, status));
+    }
+
+    @Override
+    public void onRecvMessage(Channel channel, Message message) {
+        enqueue(l -> l.onRecvMessage(channel, message));
+    }
+
+    @Override
+    public void onSendMessage(Channel channel, Message message) {
+        enqueue(l -> l.onSendMessage(channel, message));
+    }
+
+    @Override
+    public void onBlock(BlockSummary blockSummary) {
+        enqueue(l -> l.onBlock(blockSummary));
+    }
+
+    @Override
+    public void onBlock(BlockSummary blockSummary, boolean best) {
+        enqueue(best ? Kind.BEST_BLOCK : Kind.OTHER, null, blockSummary, l -> l.onBlock(blockSummary, best));
+    }
+
+    @Override
+    public void onPeerDisconnect(String host, long port) {
+        enqueue(l -> l.onPeerDisconnect(host, port));
+    }
+
+    @Override
+    public void onPendingTransactionsReceived(List<Transaction> transactions) {
+        enqueue(l -> l.onPendingTransactionsReceived(transactions));
+    }
+
+    @Override
+    public void onPendingStateChanged(PendingState pendingState) {
+        enqueue(Kind.OTHER, "pendingState", null, l -> l.onPendingStateChanged(pendingState));
+    }
+
+    @Override
+    public void onPendingTransactionUpdate(TransactionReceipt txReceipt, PendingTransactionState state, Block block) {
+        Object key = new ByteArrayWrapper(txReceipt.getTransaction().getHash());
+        enqueue(Kind.TX_UPDATE, key, new PendingTransactionUpdate(txReceipt, state, block),
+                l -> l.onPendingTransactionUpdate(txReceipt, state, block));
+    }
+
+    @Override
+    public void onSyncDone(SyncState state) {
+        enqueue(l -> l.onSyncDone(state));
+    }
+
+    @Override
+    public void onNoConnections() {
+        enqueue(l -> l.onNoConnections());
+    }
+
+    @Override
+    public void onVMTraceCreated(String transactionHash, String trace) {
+        enqueue(l -> l.onVMTraceCreated(transactionHash, trace));
+    }
+
+    @Override
+    public void onTransactionExecuted(TransactionExecutionSummary summary) {
+        enqueue(l -> l.onTransactionExecuted(summary));
+    }
+
+    @Override
+    public void onPeerAddedToSyncPool(Channel peer) {
+        enqueue(l -> l.onPeerAddedToSyncPool(peer));
+    }
+}
@@ -26,8 +26,10 @@ import org.ethereum.net.server.Channel;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.PreDestroy;
 import java.util.List;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
 
 /**
  * @author Roman Mandeleil
@@ -58,212 +60,129 @@ public class CompositeEthereumListener implements EthereumListener {
     public void addListener(EthereumListener listener) {
         listeners.add(listener);
     }
+    /**
+     * Removes the listener, the delivery thread of {@link AsyncEthereumListener} is stopped
+     */
     public void removeListener(EthereumListener listener) {
-        listeners.remove(listener);
+        if (listeners.remove(listener) && listener instanceof AsyncEthereumListener) {
+            ((AsyncEthereumListener) listener).stop();
+        }
     }
 
-    @Override
-    public void trace(final String output) {
+    /**
+     * Stops delivery threads of {@link AsyncEthereumListener}s
+     */
+    @PreDestroy
+    public void close() {
+        for (EthereumListener listener : listeners) {
+            if (listener instanceof AsyncEthereumListener) {
+                ((AsyncEthereumListener) listener).stop();
+            }
+        }
+    }
+
+    /**
+     * {@link AsyncEthereumListener} queues the event by itself on the calling thread,
+     * other listeners are invoked from the {@link EventDispatchThread}
+     */
+    protected void dispatch(final String info, final Consumer<EthereumListener> event) {
         for (final EthereumListener listener : listeners) {
-            eventDispatchThread.invokeLater(new RunnableInfo(listener, "trace") {
-                @Override
-                public void run() {
-                    listener.trace(output);
-                }
-            });
+            if (listener instanceof AsyncEthereumListener) {
+                event.accept(listener);
+            } else {
+                eventDispatchThread.invokeLater(new RunnableInfo(listener, info) {
+                    @Override
+                    public void run() {
+                        event.accept(listener);
+                    }
+                });
+            }
         }
     }
 
+    @Override
+    public void trace(final String output) {
+        dispatch("trace", listener -> listener.trace(output));
+    }
+
     @Override
     public void onBlock(final BlockSummary blockSummary) {
-        for (final EthereumListener listener : listeners) {
-            eventDispatchThread.invokeLater(new RunnableInfo(listener, "onBlock") {
-                @Override
-                public void run() {
-                    listener.onBlock(blockSummary);
-                }
-            });
-        }
+        dispatch("onBlock", listener -> listener.onBlock(blockSummary));
     }
 
     @Override
     public void onBlock(final BlockSummary blockSummary, final boolean best) {
-        for (final EthereumListener listener : listeners) {
-            eventDispatchThread.invokeLater(new RunnableInfo(listener, "onBlock") {
-                @Override
-                public void run() {
-                    listener.onBlock(blockSummary, best);
-                }
-            });
-        }
+        dispatch("onBlock", listener -> listener.onBlock(blockSummary, best));
     }
 
     @Override
     public void onRecvMessage(final Channel channel, final Message message) {
-        for (final EthereumListener listener : listeners) {
-            eventDispatchThread.invokeLater(new RunnableInfo(listener, "onRecvMessage") {
-                @Override
-                public void run() {
-                    listener.onRecvMessage(channel, message);
-                }
-            });
-        }
+        dispatch("onRecvMessage", listener -> listener.onRecvMessage(channel, message));
     }
 
     @Override
     public void onSendMessage(final Channel channel, final Message message) {
-        for (final EthereumListener listener : listeners) {
-            eventDispatchThread.invokeLater(new RunnableInfo(listener, "onSendMessage") {
-                @Override
-                public void run() {
-                    listener.onSendMessage(channel, message);
-                }
-            });
-        }
+        dispatch("onSendMessage", listener -> listener.onSendMessage(channel, message));
     }
 
     @Override
     public void onPeerDisconnect(final String host, final long port) {
-        for (final EthereumListener listener : listeners) {
-            eventDispatchThread.invokeLater(new RunnableInfo(listener, "onPeerDisconnect") {
-                @Override
-                public void run() {
-                    listener.onPeerDisconnect(host, port);
-                }
-            });
-        }
+        dispatch("onPeerDisconnect", listener -> listener.onPeerDisconnect(host, port));
     }
 
     @Override
     public void onPendingTransactionsReceived(final List<Transaction> transactions) {
-        for (final EthereumListener listener : listeners) {
-            eventDispatchThread.invokeLater(new RunnableInfo(listener, "onPendingTransactionsReceived") {
-                @Override
-                public void run() {
-                    listener.onPendingTransactionsReceived(transactions);
-                }
-            });
-        }
+        dispatch("onPendingTransactionsReceived", listener -> listener.onPendingTransactionsReceived(transactions));
     }
 
     @Override
     public void onPendingStateChanged(final PendingState pendingState) {
-        for (final EthereumListener listener : listeners) {
-            eventDispatchThread.invokeLater(new RunnableInfo(listener, "onPendingStateChanged") {
-                @Override
-                public void run() {
-                    listener.onPendingStateChanged(pendingState);
-                }
-            });
-        }
+        dispatch("onPendingStateChanged", listener -> listener.onPendingStateChanged(pendingState));
     }
 
     @Override
     public void onSyncDone(final SyncState state) {
-        for (final EthereumListener listener : listeners) {
-            eventDispatchThread.invokeLater(new RunnableInfo(listener, "onSyncDone") {
-                @Override
-                public void run() {
-                    listener.onSyncDone(state);
-                }
-            });
-        }
+        dispatch("onSyncDone", listener -> listener.onSyncDone(state));
     }
 
     @Override
     public void onNoConnections() {
-        for (final EthereumListener listener : listeners) {
-            eventDispatchThread.invokeLater(new RunnableInfo(listener, "onNoConnections") {
-                @Override
-                public void run() {
-                    listener.onNoConnections();
-                }
-            });
-        }
+        dispatch("onNoConnections", listener -> listener.onNoConnections());
     }
 
     @Override
     public void onHandShakePeer(final Channel channel, final HelloMessage helloMessage) {
-        for (final EthereumListener listener : listeners) {
-            eventDispatchThread.invokeLater(new RunnableInfo(listener, "onHandShakePeer") {
-                @Override
-                public void run() {
-                    listener.onHandShakePeer(channel, helloMessage);
-                }
-            });
-        }
+        dispatch("onHandShakePeer", listener -> listener.onHandShakePeer(channel, helloMessage));
     }
 
     @Override
     public void onVMTraceCreated(final String transactionHash, final String trace) {
-        for (final EthereumListener listener : listeners) {
-            eventDispatchThread.invokeLater(new RunnableInfo(listener, "onVMTraceCreated") {
-                @Override
-                public void run() {
-                    listener.onVMTraceCreated(transactionHash, trace);
-                }
-            });
-        }
+        dispatch("onVMTraceCreated", listener -> listener.onVMTraceCreated(transactionHash, trace));
     }
 
     @Override
     public void onNodeDiscovered(final Node node) {
-        for (final EthereumListener listener : listeners) {
-            eventDispatchThread.invokeLater(new RunnableInfo(listener, "onNodeDiscovered") {
-                @Override
-                public void run() {
-                    listener.onNodeDiscovered(node);
-                }
-            });
-        }
+        dispatch("onNodeDiscovered", listener -> listener.onNodeDiscovered(node));
     }
 
     @Override
     public void onEthStatusUpdated(final Channel channel, final StatusMessage status) {
-        for (final EthereumListener listener : listeners) {
-            eventDispatchThread.invokeLater(new RunnableInfo(listener, "onEthStatusUpdated") {
-                @Override
-                public void run() {
-                    listener.onEthStatusUpdated(channel, status);
-                }
-            });
-        }
+        dispatch("onEthStatusUpdated", listener -> listener.onEthStatusUpdated(channel, status));
     }
 
     @Override
     public void onTransactionExecuted(final TransactionExecutionSummary summary) {
-        for (final EthereumListener listener : listeners) {
-            eventDispatchThread.invokeLater(new RunnableInfo(listener, "onTransactionExecuted") {
-                @Override
-                public void run() {
-                    listener.onTransactionExecuted(summary);
-                }
-            });
-        }
+        dispatch("onTransactionExecuted", listener -> listener.onTransactionExecuted(summary));
     }
 
     @Override
     public void onPeerAddedToSyncPool(final Channel peer) {
-        for (final EthereumListener listener : listeners) {
-            eventDispatchThread.invokeLater(new RunnableInfo(listener, "onPeerAddedToSyncPool") {
-                @Override
-                public void run() {
-                    listener.onPeerAddedToSyncPool(peer);
-                }
-            });
-        }
+        dispatch("onPeerAddedToSyncPool", listener -> listener.onPeerAddedToSyncPool(peer));
     }
 
     @Override
     public void onPendingTransactionUpdate(final TransactionReceipt txReceipt, final PendingTransactionState state,
                                            final Block block) {
-        for (final EthereumListener listener : listeners) {
-            eventDispatchThread.invokeLater(new RunnableInfo(listener, "onPendingTransactionUpdate") {
-                @Override
-                public void run() {
-                    listener.onPendingTransactionUpdate(txReceipt, state, block);
-                }
-            });
-        }
+        dispatch("onPendingTransactionUpdate", listener -> listener.onPendingTransactionUpdate(txReceipt, state, block));
     }
 }
@@ -66,6 +66,14 @@ public class LogFilter {
         }
     }
 
+    /**
+     * @return blooms the block bloom should match: each of the outer and any of the inner ones
+     */
+    public Bloom[][] getFilterBlooms() {
+        initBlooms();
+        return filterBlooms;
+    }
+
     public boolean matchBloom(Bloom blockBloom) {
         initBlooms();
         for (Bloom[] andBloom : filterBlooms) {
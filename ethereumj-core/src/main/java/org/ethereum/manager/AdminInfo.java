@@ -21,8 +21,10 @@ import org.springframework.stereotype.Component;
 
 import javax.annotation.PostConstruct;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 
 /**
  * @author Roman Mandeleil
@@ -35,6 +37,7 @@ public class AdminInfo {
     private long startupTimeStamp;
     private boolean consensus = true;
     private List<Long> blockExecTime = new LinkedList<>();
+    private volatile Map<String, Integer> peerScores = Collections.emptyMap();
 
 
     @PostConstruct
@@ -76,4 +79,15 @@ public class AdminInfo {
     public List<Long> getBlockExecTime(){
         return blockExecTime;
     }
+
+    /**
+     * @return scores of the active peers by node id, the best first
+     */
+    public Map<String, Integer> getPeerScores() {
+        return peerScores;
+    }
+
+    public void setPeerScores(Map<String, Integer> peerScores) {
+        this.peerScores = Collections.unmodifiableMap(peerScores);
+    }
 }
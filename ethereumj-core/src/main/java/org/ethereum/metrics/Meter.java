@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) [2016] [ <ether.camp> ]
+ * This file is part of the ethereumJ library.
+ *
+ * The ethereumJ library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The ethereumJ library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with the ethereumJ library. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Counts events and tracks their rate per second. <br>
+ *
+ * Marking an event is a single {@link LongAdder} increment, the rate is an exponentially
+ * weighted moving average over the last minute which is brought up to date on read
+ * in {@link #TICK_INTERVAL} steps
+ */
+public class Meter implements Metric {
+
+    static final long TICK_INTERVAL = TimeUnit.SECONDS.toNanos(5);
+    private static final double ALPHA = 1 - Math.exp(-5 / 60d);
+    // the average decays to nothing after that many idle ticks
+    private static final long MAX_TICKS = 256;
+
+    private final LongAdder count = new LongAdder();
+    private final LongSupplier clock;
+    private final long startTime;
+
+    private long lastTick;
+    private long lastCount;
+    private double rate = -1;
+
+    public Meter() {
+        this(System::nanoTime);
+    }
+
+    Meter(LongSupplier clock) {
+        this.clock = clock;
+        this.startTime = clock.getAsLong();
+        this.lastTick = startTime;
+    }
+
+    public void mark() {
+        count.increment();
+    }
+
+    public void mark(long n) {
+        count.add(n);
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * @return events per second averaged over the last minute
+     */
+    public synchronized double getRate() {
+        long ticks = (clock.getAsLong() - lastTick) / TICK_INTERVAL;
+        if (ticks > 0) {
+            lastTick += ticks * TICK_INTERVAL;
+            long cnt = count.sum();
+            double instantRate = (cnt - lastCount) * 1e9 / (ticks * TICK_INTERVAL);
+            lastCount = cnt;
+            if (rate < 0) {
+                rate = instantRate;
+            } else {
+                for (long i = 0; i < Math.min(ticks, MAX_TICKS); i++) {
+                    rate += ALPHA * (instantRate - rate);
+                }
+            }
+        }
+        return Math.max(rate, 0);
+    }
+
+    /**
+     * @return events per second since the meter was created
+     */
+    public double getMeanRate() {
+        long elapsed = clock.getAsLong() - startTime;
+        return elapsed <= 0 ? 0 : getCount() * 1e9 / elapsed;
+    }
+}
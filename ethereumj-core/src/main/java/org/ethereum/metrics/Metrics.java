@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) [2016] [ <ether.camp> ]
+ * This file is part of the ethereumJ library.
+ *
+ * The ethereumJ library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The ethereumJ library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with the ethereumJ library. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.metrics;
+
+import org.ethereum.util.LatencyHistogram;
+
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+
+/**
+ * Node wide registry of metrics. <br>
+ *
+ * Metrics are looked up once by name, normally into a static final field, and updated
+ * through the returned instance thus the hot paths don't touch the registry and don't allocate.
+ * Names are hierarchical paths with '.' delimiters like {@code blockchain.import.execute},
+ * they are exported by {@link MetricsExporter}
+ */
+public final class Metrics {
+
+    private static final ConcurrentMap<String, Metric> metrics = new ConcurrentHashMap<>();
+
+    private Metrics() {
+    }
+
+    public static Counter counter(String name) {
+        return get(name, Counter.class, Counter::new);
+    }
+
+    public static Meter meter(String name) {
+        return get(name, Meter.class, Meter::new);
+    }
+
+    /**
+     * Histogram of latencies in microseconds with power of two buckets
+     */
+    public static LatencyHistogram histogram(String name) {
+        return get(name, LatencyHistogram.class, () -> new LatencyHistogram(name));
+    }
+
+    /**
+     * Registers the gauge replacing a metric with the same name if any
+     */
+    public static void gauge(String name, Gauge gauge) {
+        register(name, gauge);
+    }
+
+    /**
+     * Registers the metric owned by some component replacing a metric with the same name if any.
+     * The component should remove it with {@link #remove(String, Metric)} when closed
+     * since the registry would otherwise keep the component reachable
+     */
+    public static void register(String name, Metric metric) {
+        metrics.put(name, metric);
+    }
+
+    public static void remove(String name) {
+        metrics.remove(name);
+    }
+
+    /**
+     * Removes the metric unless it was already replaced by another one with the same name
+     */
+    public static void remove(String name, Metric metric) {
+        metrics.remove(name, metric);
+    }
+
+    /**
+     * @return snapshot of registered metrics sorted by name
+     */
+    public static SortedMap<String, Metric> getMetrics() {
+        return new TreeMap<>(metrics);
+    }
+
+    private static <T extends Metric> T get(String name, Class<T> type, Supplier<T> factory) {
+        Metric metric = metrics.computeIfAbsent(name, n -> factory.get());
+        if (!type.isInstance(metric)) {
+            throw new IllegalArgumentException("Metric " + name + " is already registered as " +
+                    metric.getClass().getSimpleName());
+        }
+        return type.cast(metric);
+    }
+}
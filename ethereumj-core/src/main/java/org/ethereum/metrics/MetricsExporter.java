@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) [2016] [ <ether.camp> ]
+ * This file is part of the ethereumJ library.
+ *
+ * The ethereumJ library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The ethereumJ library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with the ethereumJ library. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.metrics;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.ethereum.util.LatencyHistogram;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Renders metrics snapshot as JSON or in the Prometheus text exposition format
+ */
+public class MetricsExporter {
+
+    private static final String PROMETHEUS_PREFIX = "ethereumj_";
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    /**
+     * Object per metric keyed by the metric name, latencies are in microseconds
+     */
+    public static String toJson(Map<String, Metric> metrics) {
+        Map<String, Map<String, Object>> ret = new LinkedHashMap<>();
+        for (Map.Entry<String, Metric> entry : metrics.entrySet()) {
+            Map<String, Object> values = new LinkedHashMap<>();
+            Metric metric = entry.getValue();
+            if (metric instanceof Counter) {
+                values.put("type", "counter");
+                values.put("count", ((Counter) metric).getCount());
+            } else if (metric instanceof Meter) {
+                Meter meter = (Meter) metric;
+                values.put("type", "meter");
+                values.put("count", meter.getCount());
+                values.put("rate", meter.getRate());
+                values.put("meanRate", meter.getMeanRate());
+            } else if (metric instanceof Gauge) {
+                values.put("type", "gauge");
+                values.put("value", ((Gauge) metric).getValue());
+            } else if (metric instanceof LatencyHistogram) {
+                LatencyHistogram histogram = (LatencyHistogram) metric;
+                values.put("type", "histogram");
+                values.put("count", histogram.getCount());
+                values.put("mean", histogram.getMeanMicros());
+                values.put("p50", histogram.getPercentileMicros(50));
+                values.put("p90", histogram.getPercentileMicros(90));
+                values.put("p99", histogram.getPercentileMicros(99));
+                values.put("p999", histogram.getPercentileMicros(99.9));
+            } else {
+                continue;
+            }
+            ret.put(entry.getKey(), values);
+        }
+
+        try {
+            return mapper.writeValueAsString(ret);
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Counters and meters are exported as {@code _total} counters, meter rates as {@code _rate} gauges,
+     * latency histograms as summaries in seconds
+     */
+    public static String toPrometheus(Map<String, Metric> metrics) {
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, Metric> entry : metrics.entrySet()) {
+            String name = PROMETHEUS_PREFIX + entry.getKey().replaceAll("[^a-zA-Z0-9_]", "_");
+            Metric metric = entry.getValue();
+            if (metric instanceof Counter) {
+                sample(sb, name + "_total", "counter", ((Counter) metric).getCount());
+            } else if (metric instanceof Meter) {
+                Meter meter = (Meter) metric;
+                sample(sb, name + "_total", "counter", meter.getCount());
+                sample(sb, name + "_rate", "gauge", meter.getRate());
+            } else if (metric instanceof Gauge) {
+                sample(sb, name, "gauge", ((Gauge) metric).getValue());
+            } else if (metric instanceof LatencyHistogram) {
+                LatencyHistogram histogram = (LatencyHistogram) metric;
+                name += "_seconds";
+                sb.append("# TYPE ").append(name).append(" summary\n");
+                for (double q : QUANTILES) {
+                    sb.append(name).append("{quantile=\"").append(q).append("\"} ")
+                            .append(format(histogram.getPercentileMicros(q * 100) / 1e6)).append('\n');
+                }
+                sb.append(name).append("_sum ").append(format(histogram.getTotalNanos() / 1e9)).append('\n');
+                sb.append(name).append("_count ").append(histogram.getCount()).append('\n');
+            }
+        }
+        return sb.toString();
+    }
+
+    private static void sample(StringBuilder sb, String name, String type, double value) {
+        sb.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+        sb.append(name).append(' ').append(format(value)).append('\n');
+    }
+
+    private static String format(double value) {
+        return value == Math.rint(value) && !Double.isInfinite(value) ?
+                Long.toString((long) value) : String.format(Locale.ROOT, "%.6g", value);
+    }
+}
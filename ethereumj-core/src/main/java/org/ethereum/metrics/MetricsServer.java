@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) [2016] [ <ether.camp> ]
+ * This file is part of the ethereumJ library.
+ *
+ * The ethereumJ library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The ethereumJ library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with the ethereumJ library. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.metrics;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.ethereum.config.SystemProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Serves {@link Metrics} on the loopback interface: <br>
+ * {@code /metrics} in the Prometheus text format, <br>
+ * {@code /metrics.json} as a JSON snapshot
+ */
+@Component
+public class MetricsServer {
+    private static final Logger logger = LoggerFactory.getLogger("general");
+
+    private HttpServer server;
+
+    public MetricsServer() {
+    }
+
+    @Autowired
+    public MetricsServer(SystemProperties config) {
+        if (config.metricsPort() > 0) {
+            try {
+                start(config.metricsPort());
+            } catch (IOException e) {
+                logger.error("Failed to start metrics endpoint on port " + config.metricsPort(), e);
+            }
+        }
+    }
+
+    /**
+     * @param port the port to listen to, 0 binds to any free port
+     */
+    public synchronized void start(int port) throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.createContext("/metrics", exchange ->
+                respond(exchange, "text/plain; version=0.0.4", MetricsExporter::toPrometheus));
+        server.createContext("/metrics.json", exchange ->
+                respond(exchange, "application/json", MetricsExporter::toJson));
+        server.start();
+        logger.info("Metrics endpoint is listening on {}", server.getAddress());
+    }
+
+    public synchronized int getPort() {
+        return server == null ? 0 : server.getAddress().getPort();
+    }
+
+    private void respond(HttpExchange exchange, String contentType,
+                         Function<Map<String, Metric>, String> exporter) throws IOException {
+        try {
+            byte[] body = exporter.apply(Metrics.getMetrics()).getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", contentType);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        } catch (RuntimeException e) {
+            logger.warn("Failed to export metrics", e);
+            exchange.sendResponseHeaders(500, -1);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    @PreDestroy
+    public synchronized void close() {
+        if (server != null) {
+            server.stop(0);
+            server = null;
+        }
+    }
+}
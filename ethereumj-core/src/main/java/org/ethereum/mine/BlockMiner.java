@@ -19,7 +19,6 @@ package org.ethereum.mine;
 
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.MoreExecutors;
-import org.apache.commons.collections4.CollectionUtils;
 import org.ethereum.config.SystemProperties;
 import org.ethereum.core.*;
 import org.ethereum.db.BlockStore;
@@ -74,6 +73,9 @@ public class BlockMiner {
 
     private volatile boolean isLocalMining;
     private Block miningBlock;
+    // candidate on top of the PendingState best block, extended by new pending transactions
+    private BlockBuilder blockBuilder;
+    private final Object builderLock = new Object();
     private volatile MinerIfc externalMiner;
 
     private final Queue<ListenableFuture<MiningResult>> currentMiningTasks = new ConcurrentLinkedQueue<>();
@@ -149,8 +151,8 @@ public class BlockMiner {
     }
 
     protected List<Transaction> getAllPendingTransactions() {
-        PendingStateImpl.TransactionSortedSet ret = new PendingStateImpl.TransactionSortedSet();
-        ret.addAll(pendingState.getPendingTransactions());
+        // pending transactions go the most expensive first keeping the nonce order of each sender
+        List<Transaction> ret = new ArrayList<>(pendingState.getPendingTransactions());
         Iterator<Transaction> it = ret.iterator();
         while(it.hasNext()) {
             Transaction tx = it.next();
@@ -159,7 +161,7 @@ public class BlockMiner {
                 it.remove();
             }
         }
-        return new ArrayList<>(ret);
+        return ret;
     }
 
     private void onPendingStateChanged() {
@@ -171,8 +173,8 @@ public class BlockMiner {
         } else if (miningBlock.getNumber() <= ((PendingStateImpl) pendingState).getBestBlock().getNumber()) {
             logger.debug("Restart mining: new best block: " + blockchain.getBestBlock().getShortDescr());
             restartMining();
-        } else if (!CollectionUtils.isEqualCollection(miningBlock.getTransactionsList(), getAllPendingTransactions())) {
-            logger.debug("Restart mining: pending transactions changed");
+        } else if (hasNewPendingTransactions()) {
+            logger.debug("Restart mining: new pending transactions");
             restartMining();
         } else {
             if (logger.isDebugEnabled()) {
@@ -185,6 +187,12 @@ public class BlockMiner {
         }
     }
 
+    private boolean hasNewPendingTransactions() {
+        synchronized (builderLock) {
+            return blockBuilder == null || blockBuilder.hasNew(getAllPendingTransactions());
+        }
+    }
+
     protected boolean isAcceptableTx(Transaction tx) {
         return minGasPrice.compareTo(new BigInteger(1, tx.getGasPrice())) <= 0;
     }
@@ -246,9 +254,16 @@ public class BlockMiner {
         logger.debug("getNewBlockForMining best blocks: PendingState: " + bestPendingState.getShortDescr() +
                 ", Blockchain: " + bestBlockchain.getShortDescr());
 
-        Block newMiningBlock = blockchain.createNewBlock(bestPendingState, getAllPendingTransactions(),
-                getUncles(bestPendingState));
-        return newMiningBlock;
+        synchronized (builderLock) {
+            // transactions already applied to the candidate are not executed again,
+            // the candidate is recreated only when the best block changes
+            if (blockBuilder == null || !Arrays.equals(blockBuilder.getParent().getHash(), bestPendingState.getHash())) {
+                blockBuilder = ((BlockchainImpl) blockchain).createBlockBuilder(bestPendingState,
+                        getUncles(bestPendingState));
+            }
+            blockBuilder.addAll(getAllPendingTransactions());
+            return blockBuilder.build();
+        }
     }
 
     protected void restartMining() {
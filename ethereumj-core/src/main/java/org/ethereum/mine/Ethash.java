@@ -36,6 +36,8 @@ import java.util.Random;
 import java.util.Set;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import static org.ethereum.crypto.HashUtil.sha3;
 import static org.ethereum.mine.EthashListener.DatasetStatus.DATASET_READY;
@@ -69,6 +71,15 @@ public class Ethash {
 
     public static boolean fileCacheEnabled = true;
 
+    // full datasets only, light caches are shared with the validation
+    private static final Pattern DATASET_FILE = Pattern.compile("mine-dag-(\\d+)\\.dat");
+
+    private static ExecutorService backgroundExecutor = Executors.newSingleThreadExecutor(
+            new ThreadFactoryBuilder().setNameFormat("ethash-next-epoch-%d").setDaemon(true)
+                    .setPriority(Thread.MIN_PRIORITY).build());
+    private static long nextEpoch = -1;
+    private static Future<?> nextEpochTask;
+
     private Set<EthashListener> listeners = new CopyOnWriteArraySet <>();
 
     /**
@@ -99,7 +110,7 @@ public class Ethash {
 
     private long blockNumber;
     private int[] cacheLight = null;
-    private int[] fullData = null;
+    private EthashDataset fullData = null;
     private SystemProperties config;
     private long startNonce = -1;
 
@@ -129,20 +140,20 @@ public class Ethash {
      */
     private synchronized int[] getCacheLightImpl() {
         if (cacheLight == null) {
-            File file = new File(config.ethashDir(), "mine-dag-light.dat");
+            long cacheSize = getEthashAlgo().getParams().getCacheSize(blockNumber);
+            File file = getCacheLightFile(config.ethashDir(), epoch);
             if (fileCacheEnabled && file.canRead()) {
                 fireDatatasetStatusUpdate(LIGHT_DATASET_LOAD_START);
-                try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(file))) {
+                try {
                     logger.info("Loading light dataset from " + file.getAbsolutePath());
-                    long bNum = ois.readLong();
-                    if (bNum == blockNumber) {
-                        cacheLight = (int[]) ois.readObject();
+                    cacheLight = loadCacheLight(config.ethashDir(), epoch, cacheSize);
+                    if (cacheLight != null) {
                         fireDatatasetStatusUpdate(LIGHT_DATASET_LOADED);
                         logger.info("Dataset loaded.");
                     } else {
-                        logger.info("Dataset block number miss: " + bNum + " != " + blockNumber);
+                        logger.info("Dataset file doesn't match epoch " + epoch + " or size " + cacheSize);
                     }
-                } catch (IOException | ClassNotFoundException e) {
+                } catch (IOException e) {
                     throw new RuntimeException(e);
                 }
             }
@@ -150,16 +161,13 @@ public class Ethash {
             if (cacheLight == null) {
                 logger.info("Calculating light dataset...");
                 fireDatatasetStatusUpdate(LIGHT_DATASET_GENERATE_START);
-                cacheLight = getEthashAlgo().makeCache(getEthashAlgo().getParams().getCacheSize(blockNumber),
-                        getEthashAlgo().getSeedHash(blockNumber));
+                cacheLight = getEthashAlgo().makeCache(cacheSize, getEthashAlgo().getSeedHash(blockNumber));
                 logger.info("Light dataset calculated.");
 
                 if (fileCacheEnabled) {
-                    file.getParentFile().mkdirs();
-                    try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(file))){
+                    try {
                         logger.info("Writing light dataset to " + file.getAbsolutePath());
-                        oos.writeLong(blockNumber);
-                        oos.writeObject(cacheLight);
+                        saveCacheLight(config.ethashDir(), epoch, cacheLight);
                     } catch (IOException e) {
                         throw new RuntimeException(e);
                     }
@@ -170,53 +178,133 @@ public class Ethash {
         return cacheLight;
     }
 
-    public synchronized int[] getFullDataset() {
+    static File getCacheLightFile(String dir, long epoch) {
+        return new File(dir, "mine-dag-light-" + epoch + ".dat");
+    }
+
+    /**
+     * Loads light cache of the epoch persisted either by miner or by {@link EthashValidationHelper}
+     * @return null if there is no valid cache file
+     */
+    static int[] loadCacheLight(String dir, long epoch, long cacheSize) throws IOException {
+        EthashDataset dataset = EthashDataset.load(getCacheLightFile(dir, epoch),
+                epoch * ethashParams.getEPOCH_LENGTH(), cacheSize);
+        return dataset == null ? null : dataset.toArray();
+    }
+
+    static void saveCacheLight(String dir, long epoch, int[] cacheLight) throws IOException {
+        EthashDataset.write(getCacheLightFile(dir, epoch), epoch * ethashParams.getEPOCH_LENGTH(), cacheLight);
+    }
+
+    /**
+     * Returns full dataset mapped from the file, generates it if the file doesn't exist.
+     * When file cache is enabled the dataset for the next epoch is generated in background
+     */
+    public synchronized EthashDataset getFullDataset() {
         if (fullData == null) {
             fireDatatasetStatusUpdate(DATASET_PREPARE);
-            File file = new File(config.ethashDir(), "mine-dag.dat");
+            fullData = loadOrGenerateFullDataset(Runtime.getRuntime().availableProcessors(), true);
+            fireDatatasetStatusUpdate(DATASET_READY);
+
+            if (fileCacheEnabled) {
+                removeOutdatedFiles();
+                preGenerateNextEpoch();
+            }
+        }
+        return fullData;
+    }
+
+    private EthashDataset loadOrGenerateFullDataset(int threads, boolean waitBackground) {
+        File file = new File(config.ethashDir(), "mine-dag-" + epoch + ".dat");
+
+        if (waitBackground) {
+            Future<?> background;
+            synchronized (Ethash.class) {
+                background = nextEpoch == epoch ? nextEpochTask : null;
+            }
+            if (background != null && !background.isDone()) {
+                logger.info("Waiting for the background dataset generation...");
+                try {
+                    background.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new RuntimeException(e);
+                } catch (ExecutionException e) {
+                    logger.warn("Background dataset generation failed", e.getCause());
+                }
+            }
+        }
+
+        try {
             if (fileCacheEnabled && file.canRead()) {
                 fireDatatasetStatusUpdate(FULL_DATASET_LOAD_START);
-                try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(file))) {
-                    logger.info("Loading dataset from " + file.getAbsolutePath());
-                    long bNum = ois.readLong();
-                    if (bNum == blockNumber) {
-                        fullData = (int[]) ois.readObject();
-                        logger.info("Dataset loaded.");
-                        fireDatatasetStatusUpdate(FULL_DATASET_LOADED);
-                    } else {
-                        logger.info("Dataset block number miss: " + bNum + " != " + blockNumber);
-                    }
-                } catch (IOException | ClassNotFoundException e) {
-                    throw new RuntimeException(e);
+                logger.info("Loading dataset from " + file.getAbsolutePath());
+                EthashDataset dataset = EthashDataset.load(file, blockNumber, getFullSize());
+                if (dataset != null) {
+                    logger.info("Dataset loaded.");
+                    fireDatatasetStatusUpdate(FULL_DATASET_LOADED);
+                    return dataset;
                 }
+                logger.info("Dataset file doesn't match block number " + blockNumber + " or size " + getFullSize());
             }
 
-            if (fullData == null){
+            logger.info("Calculating full dataset on " + threads + " threads...");
+            fireDatatasetStatusUpdate(FULL_DATASET_GENERATE_START);
+            int[] cacheLight = getCacheLightImpl();
+            EthashDataset dataset = fileCacheEnabled ?
+                    EthashDataset.create(file, blockNumber, getFullSize()) : EthashDataset.allocate(getFullSize());
+            try {
+                getEthashAlgo().calcDataset(cacheLight, dataset, threads, this::fireDatasetGenerateProgress);
+                dataset.commit();
+            } catch (Exception e) {
+                dataset.discard();
+                throw e;
+            }
+            logger.info("Full dataset calculated" + (fileCacheEnabled ? " and written to " + file.getAbsolutePath() : ""));
+            fireDatatasetStatusUpdate(FULL_DATASET_GENERATED);
+            return dataset;
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+    }
 
-                logger.info("Calculating full dataset...");
-                fireDatatasetStatusUpdate(FULL_DATASET_GENERATE_START);
-                int[] cacheLight = getCacheLightImpl();
-                fullData = getEthashAlgo().calcDataset(getFullSize(), cacheLight);
-                logger.info("Full dataset calculated.");
+    /**
+     * Generates dataset file for the next epoch to switch to it without a delay
+     */
+    private void preGenerateNextEpoch() {
+        final long next = epoch + 1;
+        synchronized (Ethash.class) {
+            if (nextEpoch >= next) return;
+            nextEpoch = next;
+            final Ethash nextEthash = new Ethash(config, next * ethashParams.getEPOCH_LENGTH());
+            int threads = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+            nextEpochTask = backgroundExecutor.submit(() -> {
+                logger.info("Generating dataset for the next epoch " + next + " in background");
+                nextEthash.loadOrGenerateFullDataset(threads, false);
+            });
+        }
+    }
 
-                if (fileCacheEnabled) {
-                    file.getParentFile().mkdirs();
-                    try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(file))) {
-                        logger.info("Writing dataset to " + file.getAbsolutePath());
-                        oos.writeLong(blockNumber);
-                        oos.writeObject(fullData);
-                    } catch (IOException e) {
-                        throw new RuntimeException(e);
-                    }
-                }
-                fireDatatasetStatusUpdate(FULL_DATASET_GENERATED);
+    /**
+     * Removes files of previous epochs and the files in obsolete format
+     */
+    private void removeOutdatedFiles() {
+        File[] files = new File(config.ethashDir()).listFiles();
+        if (files == null) return;
+        for (File file : files) {
+            Matcher m = DATASET_FILE.matcher(file.getName());
+            boolean outdated = m.matches() ? Long.parseLong(m.group(1)) < epoch :
+                    file.getName().equals("mine-dag.dat");
+            if (outdated && file.delete()) {
+                logger.info("Outdated dataset file removed: " + file.getAbsolutePath());
             }
-            fireDatatasetStatusUpdate(DATASET_READY);
         }
-        return fullData;
     }
 
-    int[] getFullData() {
+    EthashDataset getFullData() {
         return fullData;
     }
 
@@ -265,13 +353,13 @@ public class Ethash {
      */
     public ListenableFuture<MiningResult> mine(final Block block, int nThreads) {
         return new MineTask(block, nThreads,  new Callable<MiningResult>() {
-            AtomicLong taskStartNonce = new AtomicLong(startNonce >= 0 ? startNonce : new Random().nextLong());
+            // shared by mining threads, each takes the next batch of nonces when done with the previous one
+            AtomicLong nextNonce = new AtomicLong(startNonce >= 0 ? startNonce + 1 : new Random().nextLong());
+            byte[] headerHash = sha3(block.getHeader().getEncodedWithoutNonce());
+            byte[] boundary = EthashAlgo.getBoundary(ByteUtil.byteArrayToLong(block.getHeader().getDifficulty()));
             @Override
             public MiningResult call() throws Exception {
-                long threadStartNonce = taskStartNonce.getAndAdd(0x100000000L);
-                long nonce = getEthashAlgo().mine(getFullSize(), getFullDataset(),
-                        sha3(block.getHeader().getEncodedWithoutNonce()),
-                        ByteUtil.byteArrayToLong(block.getHeader().getDifficulty()), threadStartNonce);
+                long nonce = getEthashAlgo().mine(getFullSize(), getFullDataset(), headerHash, boundary, nextNonce);
                 final Pair<byte[], byte[]> pair = hashimotoLight(block.getHeader(), nonce);
                 return new MiningResult(nonce, pair.getLeft(), block);
             }
@@ -295,13 +383,12 @@ public class Ethash {
      */
     public ListenableFuture<MiningResult> mineLight(final Block block, int nThreads) {
         return new MineTask(block, nThreads,  new Callable<MiningResult>() {
-            AtomicLong taskStartNonce = new AtomicLong(startNonce >= 0 ? startNonce : new Random().nextLong());
+            AtomicLong nextNonce = new AtomicLong(startNonce >= 0 ? startNonce + 1 : new Random().nextLong());
+            byte[] headerHash = sha3(block.getHeader().getEncodedWithoutNonce());
+            byte[] boundary = EthashAlgo.getBoundary(ByteUtil.byteArrayToLong(block.getHeader().getDifficulty()));
             @Override
             public MiningResult call() throws Exception {
-                long threadStartNonce = taskStartNonce.getAndAdd(0x100000000L);
-                final long nonce = getEthashAlgo().mineLight(getFullSize(), getCacheLight(),
-                        sha3(block.getHeader().getEncodedWithoutNonce()),
-                        ByteUtil.byteArrayToLong(block.getHeader().getDifficulty()), threadStartNonce);
+                final long nonce = getEthashAlgo().mineLight(getFullSize(), getCacheLight(), headerHash, boundary, nextNonce);
                 final Pair<byte[], byte[]> pair = hashimotoLight(block.getHeader(), nonce);
                 return new MiningResult(nonce, pair.getLeft(), block);
             }
@@ -324,6 +411,13 @@ public class Ethash {
         }
     }
 
+    private void fireDatasetGenerateProgress(int percent) {
+        logger.info("Full dataset generation: " + percent + "%");
+        for (EthashListener l : listeners) {
+            l.onDatasetGenerateProgress(percent);
+        }
+    }
+
     class MineTask extends AnyFuture<MiningResult> {
         Block block;
         int nThreads;
@@ -17,20 +17,30 @@
  */
 package org.ethereum.mine;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.apache.commons.lang3.tuple.Pair;
 import org.ethereum.crypto.HashUtil;
-import org.spongycastle.util.Arrays;
+import org.spongycastle.util.BigIntegers;
 
 import java.math.BigInteger;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntConsumer;
 
 import static java.lang.System.arraycopy;
 import static java.math.BigInteger.valueOf;
 import static org.ethereum.crypto.HashUtil.sha3;
 import static org.ethereum.util.ByteUtil.*;
-import static org.spongycastle.util.Arrays.reverse;
 
 /**
  * The Ethash algorithm described in https://github.com/ethereum/wiki/wiki/Ethash
@@ -38,14 +48,35 @@ import static org.spongycastle.util.Arrays.reverse;
  * Created by Anton Nashatyrev on 27.11.2015.
  */
 public class EthashAlgo {
+
+    // words in a dataset item
+    static final int HASH_WORDS = 16;
+
+    // dataset items calculated by a thread at once
+    private static final int DATASET_CHUNK = 1 << 14;
+
+    // nonces taken by a mining thread at once
+    static final int MINE_BATCH = 1 << 10;
+    static final int MINE_LIGHT_BATCH = 1 << 4;
+
+    /**
+     * Source of the dataset items for the hashimoto loop
+     */
+    public interface DatasetLookup {
+        void getItem(int itemIdx, int[] dest, int destOff);
+    }
+
     EthashParams params;
 
+    private final ThreadLocal<Hashimoto> engines;
+
     public EthashAlgo() {
         this(new EthashParams());
     }
 
     public EthashAlgo(EthashParams params) {
         this.params = params;
+        this.engines = ThreadLocal.withInitial(() -> new Hashimoto(params));
     }
 
     public EthashParams getParams() {
@@ -109,90 +140,92 @@ public class EthashAlgo {
         return ret;
     }
 
-    private static final int FNV_PRIME = 0x01000193;
-    private static int fnv(int v1, int v2) {
-        return (v1 * FNV_PRIME) ^ v2;
-    }
-
-    int[] sha512(int[] arr, boolean bigEndian) {
-        byte[] bytesTmp = new byte[arr.length << 2];
-        intsToBytes(arr, bytesTmp, bigEndian);
-        bytesTmp = HashUtil.sha512(bytesTmp);
-        bytesToInts(bytesTmp, arr, bigEndian);
-        return arr;
-    }
-
     public final int[] calcDatasetItem(final int[] cache, final int i) {
-        final int r = params.getHASH_BYTES() / params.getWORD_BYTES();
-        final int n = cache.length / r;
-        int[] mix = Arrays.copyOfRange(cache, i % n * r, (i % n + 1) * r);
-
-        mix[0] = i ^ mix[0];
-        mix = sha512(mix, false);
-        final int dsParents = (int) params.getDATASET_PARENTS();
-        final int mixLen = mix.length;
-        for (int j = 0; j < dsParents; j++) {
-            int cacheIdx = fnv(i ^ j, mix[j % r]);
-            cacheIdx = remainderUnsigned(cacheIdx, n);
-            int off = cacheIdx * r;
-            for (int k = 0; k < mixLen; k++) {
-                mix[k] = fnv(mix[k], cache[off + k]);
-            }
-        }
-        return sha512(mix, false);
+        int[] ret = new int[params.getHASH_BYTES() / params.getWORD_BYTES()];
+        engines.get().calcDatasetItem(cache, i, ret, 0);
+        return ret;
     }
 
     public int[] calcDataset(long fullSize, int[] cache) {
         int hashesCount = (int) (fullSize / params.getHASH_BYTES());
-        int[] ret = new int[hashesCount * (params.getHASH_BYTES() / 4)];
+        int[] ret = new int[hashesCount * HASH_WORDS];
+        Hashimoto engine = engines.get();
         for (int i = 0; i < hashesCount; i++) {
-            int[] item = calcDatasetItem(cache, i);
-            arraycopy(item, 0, ret, i * (params.getHASH_BYTES() / 4), item.length);
+            engine.calcDatasetItem(cache, i, ret, i * HASH_WORDS);
         }
         return ret;
     }
 
-    public Pair<byte[], byte[]> hashimoto(byte[] blockHeaderTruncHash, byte[] nonce, long fullSize,
-                                          int[] cacheOrDataset, boolean full) {
-        if (nonce.length != 8) throw new RuntimeException("nonce.length != 8");
+    /**
+     * Calculates the full dataset on several threads writing items directly to the destination
+     *
+     * @param progress receives percentage of calculated items each time it changes
+     * @throws InterruptedException if the calling thread is interrupted, the dataset is incomplete then
+     */
+    public void calcDataset(final int[] cache, final EthashDataset dest, int threads,
+                            final IntConsumer progress) throws InterruptedException {
+        final int hashesCount = (int) (dest.getSize() / params.getHASH_BYTES());
+        final AtomicInteger nextChunk = new AtomicInteger();
+        final AtomicLong calculated = new AtomicLong();
+        final AtomicInteger lastPercent = new AtomicInteger();
 
-        int hashWords = params.getHASH_BYTES() / 4;
-        int w = params.getMIX_BYTES() / params.getWORD_BYTES();
-        int mixhashes = params.getMIX_BYTES() / params.getHASH_BYTES();
-        int[] s = bytesToInts(HashUtil.sha512(merge(blockHeaderTruncHash, reverse(nonce))), false);
-        int[] mix = new int[params.getMIX_BYTES() / 4];
-        for (int i = 0; i < mixhashes; i++) {
-            arraycopy(s, 0, mix, i * s.length, s.length);
-        }
+        ExecutorService executor = Executors.newFixedThreadPool(threads,
+                new ThreadFactoryBuilder().setNameFormat("ethash-dataset-%d").setDaemon(true).build());
+        try {
+            List<Future<?>> futures = new ArrayList<>(threads);
+            for (int t = 0; t < threads; t++) {
+                futures.add(executor.submit(() -> {
+                    Hashimoto engine = engines.get();
+                    int[] item = new int[HASH_WORDS];
+                    int chunk;
+                    while ((chunk = nextChunk.getAndIncrement()) * (long) DATASET_CHUNK < hashesCount) {
+                        if (Thread.currentThread().isInterrupted()) return;
 
-        int numFullPages = (int) (fullSize / params.getMIX_BYTES());
-        for (int i = 0; i < params.getACCESSES(); i++) {
-            int p = remainderUnsigned(fnv(i ^ s[0], mix[i % w]), numFullPages);
-            int[] newData = new int[mix.length];
-            int off = p * mixhashes;
-            for (int j = 0; j < mixhashes; j++) {
-                int itemIdx = off + j;
-                if (!full) {
-                    int[] lookup1 = calcDatasetItem(cacheOrDataset, itemIdx);
-                    arraycopy(lookup1, 0, newData, j * lookup1.length, lookup1.length);
-                } else {
-                    arraycopy(cacheOrDataset, itemIdx * hashWords, newData, j * hashWords, hashWords);
-                }
+                        int end = (int) Math.min(hashesCount, (chunk + 1L) * DATASET_CHUNK);
+                        for (int i = chunk * DATASET_CHUNK; i < end; i++) {
+                            engine.calcDatasetItem(cache, i, item, 0);
+                            dest.setItem(i, item);
+                        }
+
+                        int percent = (int) (calculated.addAndGet(end - chunk * DATASET_CHUNK) * 100 / hashesCount);
+                        int last = lastPercent.get();
+                        if (percent > last && lastPercent.compareAndSet(last, percent)) {
+                            progress.accept(percent);
+                        }
+                    }
+                }));
             }
-            for (int i1 = 0; i1 < mix.length; i1++) {
-                mix[i1] = fnv(mix[i1], newData[i1]);
+            for (Future<?> future : futures) {
+                future.get();
             }
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        } finally {
+            executor.shutdownNow();
+            executor.awaitTermination(1, TimeUnit.MINUTES);
         }
+    }
 
-        int[] cmix = new int[mix.length / 4];
-        for (int i = 0; i < mix.length; i += 4 /* ? */) {
-            int fnv1 = fnv(mix[i], mix[i + 1]);
-            int fnv2 = fnv(fnv1, mix[i + 2]);
-            int fnv3 = fnv(fnv2, mix[i + 3]);
-            cmix[i >> 2] = fnv3;
-        }
+    public Pair<byte[], byte[]> hashimoto(byte[] blockHeaderTruncHash, byte[] nonce, long fullSize,
+                                          final int[] cacheOrDataset, boolean full) {
+        return hashimoto(blockHeaderTruncHash, nonce, fullSize,
+                full ? fullLookup(cacheOrDataset) : engines.get().light(cacheOrDataset));
+    }
 
-        return Pair.of(intsToBytes(cmix, false), sha3(merge(intsToBytes(s, false), intsToBytes(cmix, false))));
+    public Pair<byte[], byte[]> hashimoto(byte[] blockHeaderTruncHash, byte[] nonce, long fullSize,
+                                          DatasetLookup lookup) {
+        if (nonce.length != 8) throw new RuntimeException("nonce.length != 8");
+
+        long n = 0;
+        for (byte b : nonce) n = n << 8 | (b & 0xFF);
+
+        Hashimoto engine = engines.get();
+        engine.run(blockHeaderTruncHash, n, fullSize, lookup);
+        return Pair.of(engine.getMixHash(), engine.getResult().clone());
+    }
+
+    private static DatasetLookup fullLookup(final int[] dataset) {
+        return (itemIdx, dest, destOff) -> arraycopy(dataset, itemIdx * HASH_WORDS, dest, destOff, HASH_WORDS);
     }
 
     public Pair<byte[], byte[]> hashimotoLight(long fullSize, final int[] cache, byte[] blockHeaderTruncHash,
@@ -205,20 +238,43 @@ public class EthashAlgo {
         return hashimoto(blockHeaderTruncHash, nonce, fullSize, dataset, true);
     }
 
+    public Pair<byte[], byte[]> hashimotoFull(long fullSize, final EthashDataset dataset, byte[] blockHeaderTruncHash,
+                                              byte[]  nonce) {
+        return hashimoto(blockHeaderTruncHash, nonce, fullSize, dataset);
+    }
+
+    /**
+     * Returns 2^256 / difficulty as 32 bytes to be compared with hashimoto results,
+     * null for the difficulty 1 which is met by any result
+     */
+    public static byte[] getBoundary(long difficulty) {
+        if (difficulty <= 1) return null;
+        return BigIntegers.asUnsignedByteArray(32, BigInteger.ONE.shiftLeft(256).divide(valueOf(difficulty)));
+    }
+
     public long mine(long fullSize, int[] dataset, byte[] blockHeaderTruncHash, long difficulty) {
         return mine(fullSize, dataset, blockHeaderTruncHash, difficulty, new Random().nextLong());
     }
 
     public long mine(long fullSize, int[] dataset, byte[] blockHeaderTruncHash, long difficulty, long startNonce) {
-        long nonce = startNonce;
-        BigInteger target = valueOf(2).pow(256).divide(valueOf(difficulty));
-        while (!Thread.currentThread().isInterrupted()) {
-            nonce++;
-            Pair<byte[], byte[]> pair = hashimotoFull(fullSize, dataset, blockHeaderTruncHash, longToBytes(nonce));
-            BigInteger h = new BigInteger(1, pair.getRight() /* ?? */);
-            if (h.compareTo(target) < 0) break;
-        }
-        return nonce;
+        return mine(engines.get(), fullSize, fullLookup(dataset), blockHeaderTruncHash, getBoundary(difficulty),
+                new AtomicLong(startNonce + 1), MINE_BATCH);
+    }
+
+    public long mine(long fullSize, EthashDataset dataset, byte[] blockHeaderTruncHash, long difficulty, long startNonce) {
+        return mine(fullSize, dataset, blockHeaderTruncHash, getBoundary(difficulty), new AtomicLong(startNonce + 1));
+    }
+
+    /**
+     * Searches for the nonce taking batches of nonces from the shared counter,
+     * thus several threads may search concurrently without splitting the nonce space in advance
+     *
+     * @param boundary see {@link #getBoundary(long)}
+     * @param nextNonce the next nonce to be checked, shared between mining threads
+     */
+    public long mine(long fullSize, EthashDataset dataset, byte[] blockHeaderTruncHash, byte[] boundary,
+                     AtomicLong nextNonce) {
+        return mine(engines.get(), fullSize, dataset, blockHeaderTruncHash, boundary, nextNonce, MINE_BATCH);
     }
 
     /**
@@ -230,13 +286,25 @@ public class EthashAlgo {
     }
 
     public long mineLight(long fullSize, final int[] cache, byte[] blockHeaderTruncHash, long difficulty, long startNonce) {
-        long nonce = startNonce;
-        BigInteger target = valueOf(2).pow(256).divide(valueOf(difficulty));
-        while(!Thread.currentThread().isInterrupted()) {
-            nonce++;
-            Pair<byte[], byte[]> pair = hashimotoLight(fullSize, cache, blockHeaderTruncHash, longToBytes(nonce));
-            BigInteger h = new BigInteger(1, pair.getRight() /* ?? */);
-            if (h.compareTo(target) < 0) break;
+        return mineLight(fullSize, cache, blockHeaderTruncHash, getBoundary(difficulty), new AtomicLong(startNonce + 1));
+    }
+
+    /**
+     * Light version of {@link #mine(long, EthashDataset, byte[], byte[], AtomicLong)}
+     */
+    public long mineLight(long fullSize, final int[] cache, byte[] blockHeaderTruncHash, byte[] boundary,
+                          AtomicLong nextNonce) {
+        Hashimoto engine = engines.get();
+        return mine(engine, fullSize, engine.light(cache), blockHeaderTruncHash, boundary, nextNonce, MINE_LIGHT_BATCH);
+    }
+
+    private long mine(Hashimoto engine, long fullSize, DatasetLookup lookup, byte[] blockHeaderTruncHash,
+                      byte[] boundary, AtomicLong nextNonce, int batch) {
+        long nonce = nextNonce.get();
+        while (!Thread.currentThread().isInterrupted()) {
+            nonce = nextNonce.getAndAdd(batch);
+            int found = engine.search(blockHeaderTruncHash, fullSize, lookup, boundary, nonce, batch);
+            if (found >= 0) return nonce + found;
         }
         return nonce;
     }
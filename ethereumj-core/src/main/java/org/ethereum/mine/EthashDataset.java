@@ -0,0 +1,221 @@
+/*
+ * Copyright (c) [2016] [ <ether.camp> ]
+ * This file is part of the ethereumJ library.
+ *
+ * The ethereumJ library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The ethereumJ library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with the ethereumJ library. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.mine;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Ethash dataset (full DAG or light cache) kept out of the Java heap <br>
+ *
+ * File layout: 32 bytes header [magic, block number, data size in bytes, reserved]
+ * followed by the dataset words in little-endian order. Files are memory mapped, thus
+ * an existing dataset is available instantly and its pages are shared between processes. <br>
+ *
+ * A new file is written under a temporary name and renamed by {@link #commit()},
+ * so an existing file is always complete
+ */
+public class EthashDataset implements EthashAlgo.DatasetLookup {
+
+    private static final long MAGIC = 0x457468446167_0001L; // "EthDag" v1
+    private static final int HEADER_SIZE = 32;
+
+    // 1 GiB segments, a single buffer can't address the whole DAG
+    private static final int SEGMENT_SHIFT = 28;
+    private static final int SEGMENT_MASK = (1 << SEGMENT_SHIFT) - 1;
+    private static final long SEGMENT_WORDS = 1L << SEGMENT_SHIFT;
+
+    private final IntBuffer[] segments;
+    private final MappedByteBuffer[] mapped;
+    private final long size;
+
+    private final File file;
+    private final File tmpFile;
+    private final long blockNumber;
+
+    private EthashDataset(long size, File file, File tmpFile, long blockNumber) {
+        this.size = size;
+        this.file = file;
+        this.tmpFile = tmpFile;
+        this.blockNumber = blockNumber;
+        int segmentsCnt = (int) ((size / 4 + SEGMENT_WORDS - 1) / SEGMENT_WORDS);
+        this.segments = new IntBuffer[segmentsCnt];
+        this.mapped = new MappedByteBuffer[segmentsCnt];
+    }
+
+    /**
+     * Creates dataset in the direct memory which is not persisted
+     */
+    public static EthashDataset allocate(long size) {
+        EthashDataset ret = new EthashDataset(size, null, null, 0);
+        for (int i = 0; i < ret.segments.length; i++) {
+            ByteBuffer buf = ByteBuffer.allocateDirect((int) ret.segmentBytes(i)).order(ByteOrder.LITTLE_ENDIAN);
+            ret.segments[i] = buf.asIntBuffer();
+        }
+        return ret;
+    }
+
+    /**
+     * Maps existing dataset file
+     * @return null if the file doesn't exist or contains another dataset
+     */
+    public static EthashDataset load(File file, long blockNumber, long size) throws IOException {
+        if (!file.canRead() || file.length() != HEADER_SIZE + size) return null;
+
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            FileChannel channel = raf.getChannel();
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            while (header.hasRemaining() && channel.read(header) >= 0);
+            header.flip();
+            if (header.remaining() < HEADER_SIZE || header.getLong() != MAGIC ||
+                    header.getLong() != blockNumber || header.getLong() != size) {
+                return null;
+            }
+
+            EthashDataset ret = new EthashDataset(size, file, null, blockNumber);
+            ret.map(channel, FileChannel.MapMode.READ_ONLY);
+            return ret;
+        }
+    }
+
+    /**
+     * Creates a temporary file for the new dataset, the dataset is available
+     * under the target file name after {@link #commit()}
+     */
+    public static EthashDataset create(File file, long blockNumber, long size) throws IOException {
+        file.getAbsoluteFile().getParentFile().mkdirs();
+        File tmpFile = File.createTempFile(file.getName(), ".tmp", file.getAbsoluteFile().getParentFile());
+        tmpFile.deleteOnExit();
+
+        try (RandomAccessFile raf = new RandomAccessFile(tmpFile, "rw")) {
+            raf.setLength(HEADER_SIZE + size);
+            EthashDataset ret = new EthashDataset(size, file, tmpFile, blockNumber);
+            ret.map(raf.getChannel(), FileChannel.MapMode.READ_WRITE);
+            return ret;
+        } catch (IOException | RuntimeException e) {
+            tmpFile.delete();
+            throw e;
+        }
+    }
+
+    /**
+     * Writes dataset file at once
+     */
+    public static void write(File file, long blockNumber, int[] words) throws IOException {
+        EthashDataset dataset = create(file, blockNumber, words.length * 4L);
+        try {
+            dataset.segments[0].put(words, 0, words.length);
+            dataset.commit();
+        } catch (IOException | RuntimeException e) {
+            dataset.discard();
+            throw e;
+        }
+    }
+
+    private void map(FileChannel channel, FileChannel.MapMode mode) throws IOException {
+        for (int i = 0; i < segments.length; i++) {
+            mapped[i] = channel.map(mode, HEADER_SIZE + i * SEGMENT_WORDS * 4, segmentBytes(i));
+            mapped[i].order(ByteOrder.LITTLE_ENDIAN);
+            segments[i] = mapped[i].asIntBuffer();
+        }
+    }
+
+    private long segmentBytes(int segment) {
+        return Math.min(SEGMENT_WORDS * 4, size - segment * SEGMENT_WORDS * 4);
+    }
+
+    /**
+     * Flushes the data, writes the header and moves the file to its target name
+     */
+    public void commit() throws IOException {
+        if (tmpFile == null) return;
+
+        for (MappedByteBuffer buf : mapped) {
+            buf.force();
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(tmpFile, "rw")) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putLong(MAGIC).putLong(blockNumber).putLong(size).putLong(0).flip();
+            raf.getChannel().write(header, 0);
+            raf.getChannel().force(true);
+        }
+        Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Removes uncommitted temporary file
+     */
+    public void discard() {
+        if (tmpFile != null) tmpFile.delete();
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public int getWord(long idx) {
+        return segments[(int) (idx >>> SEGMENT_SHIFT)].get((int) idx & SEGMENT_MASK);
+    }
+
+    public void setWord(long idx, int word) {
+        segments[(int) (idx >>> SEGMENT_SHIFT)].put((int) idx & SEGMENT_MASK, word);
+    }
+
+    /**
+     * Items don't cross segment boundaries since the segment size is a multiple of the item size
+     */
+    @Override
+    public void getItem(int itemIdx, int[] dest, int destOff) {
+        long idx = (long) itemIdx * EthashAlgo.HASH_WORDS;
+        IntBuffer segment = segments[(int) (idx >>> SEGMENT_SHIFT)];
+        int off = (int) idx & SEGMENT_MASK;
+        for (int i = 0; i < EthashAlgo.HASH_WORDS; i++) {
+            dest[destOff + i] = segment.get(off + i);
+        }
+    }
+
+    public void setItem(int itemIdx, int[] src) {
+        long idx = (long) itemIdx * EthashAlgo.HASH_WORDS;
+        IntBuffer segment = segments[(int) (idx >>> SEGMENT_SHIFT)];
+        int off = (int) idx & SEGMENT_MASK;
+        for (int i = 0; i < EthashAlgo.HASH_WORDS; i++) {
+            segment.put(off + i, src[i]);
+        }
+    }
+
+    /**
+     * Copies the dataset to the heap, applicable to the light cache
+     */
+    public int[] toArray() {
+        if (segments.length > 1) throw new IllegalStateException("Dataset is too large: " + size);
+
+        int[] ret = new int[(int) (size / 4)];
+        IntBuffer segment = segments[0].duplicate();
+        segment.rewind();
+        segment.get(ret);
+        return ret;
+    }
+}
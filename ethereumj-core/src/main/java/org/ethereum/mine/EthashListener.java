@@ -77,4 +77,11 @@ public interface EthashListener extends MinerListener {
     }
 
     void onDatasetUpdate(DatasetStatus datasetStatus);
+
+    /**
+     * Reports progress of the full dataset generation
+     * between {@link DatasetStatus#FULL_DATASET_GENERATE_START} and {@link DatasetStatus#FULL_DATASET_GENERATED}
+     * @param percent  percentage of generated dataset items
+     */
+    default void onDatasetGenerateProgress(int percent) {}
 }
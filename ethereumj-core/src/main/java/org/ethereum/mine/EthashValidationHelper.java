@@ -17,18 +17,28 @@
  */
 package org.ethereum.mine;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.apache.commons.lang3.tuple.Pair;
 import org.ethereum.config.Constants;
 import org.ethereum.core.BlockHeader;
 import org.ethereum.crypto.HashUtil;
+import org.ethereum.db.ByteArrayWrapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.ethereum.util.ByteUtil.merge;
 
 /**
  * Maintains datasets of {@link EthashAlgo} for verification purposes.
@@ -39,17 +49,28 @@ import java.util.concurrent.Executors;
  *     full dataset usage increases verification speed dramatically.
  *
  * <p>
- *     Entry point is {@link #ethashWorkFor(BlockHeader, byte[], boolean)}
+ *     Entry point is {@link #ethashWorkFor(BlockHeader, byte[], boolean)},
+ *     a batch of headers is verified on all cores by {@link #ethashWorkFor(List, boolean)},
+ *     header sync uses it through {@link org.ethereum.validator.EthashRule#validateBatch(List)}
+ *
+ * <p>
+ *     Results are kept in a bounded cache keyed by header hash without nonce and the nonce,
+ *     thus a header received repeatedly from several peers is verified once
  *
  * <p>
- *     Cache management interface: {@link #preCache(long)}, {@link CacheOrder}
+ *     Cache management interface: {@link #preCache(long)}, {@link CacheOrder}.
+ *     Light caches are persisted in the ethash dir when the directory is supplied,
+ *     the files are shared with {@link Ethash}
  *
  * @author Mikhail Kalinin
  * @since 20.06.2018
  */
 public class EthashValidationHelper {
 
-    private static final int MAX_CACHED_EPOCHS = 2;
+    public static final int DEFAULT_CACHED_EPOCHS = 2;
+    // the current and the adjacent epoch
+    public static final int MIN_CACHED_EPOCHS = 2;
+    public static final int DEFAULT_VERIFIED_CACHE_SIZE = 8192;
 
     private static final Logger logger = LoggerFactory.getLogger("ethash");
 
@@ -63,11 +84,30 @@ public class EthashValidationHelper {
     long lastCachedEpoch = -1;
 
     private CacheStrategy cacheStrategy;
+    private final int maxCachedEpochs;
+    private final String cacheDir;
+    private final VerifiedCache verified;
 
     private static ExecutorService executor;
+    private static ExecutorService verifyExecutor;
 
     public EthashValidationHelper(CacheOrder cacheOrder) {
+        this(cacheOrder, DEFAULT_CACHED_EPOCHS, DEFAULT_VERIFIED_CACHE_SIZE, null);
+    }
+
+    /**
+     * @param maxCachedEpochs number of light caches kept in memory, at least {@link #MIN_CACHED_EPOCHS}
+     * @param verifiedCacheSize number of verification results kept in memory
+     * @param cacheDir directory to persist light caches to, null if they shouldn't be persisted
+     */
+    public EthashValidationHelper(CacheOrder cacheOrder, int maxCachedEpochs, int verifiedCacheSize, String cacheDir) {
+        if (maxCachedEpochs < MIN_CACHED_EPOCHS) {
+            throw new IllegalArgumentException("At least " + MIN_CACHED_EPOCHS + " cached epochs are needed: " + maxCachedEpochs);
+        }
         this.cacheStrategy = createCacheStrategy(cacheOrder);
+        this.maxCachedEpochs = maxCachedEpochs;
+        this.cacheDir = cacheDir;
+        this.verified = new VerifiedCache(verifiedCacheSize);
 
         if (executor == null)
             executor = Executors.newSingleThreadExecutor((r) -> {
@@ -76,6 +116,10 @@ public class EthashValidationHelper {
                 t.setDaemon(true);
                 return t;
             });
+
+        if (verifyExecutor == null)
+            verifyExecutor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(),
+                    new ThreadFactoryBuilder().setNameFormat("ethash-verify-%d").setDaemon(true).build());
     }
 
     /**
@@ -87,8 +131,48 @@ public class EthashValidationHelper {
      */
     public Pair<byte[], byte[]> ethashWorkFor(BlockHeader header, byte[] nonce, boolean cachedOnly) throws Exception {
 
-        long fullSize = ethashAlgo.getParams().getFullSize(header.getNumber());
         byte[] hashWithoutNonce = HashUtil.sha3(header.getEncodedWithoutNonce());
+        ByteArrayWrapper key = new ByteArrayWrapper(merge(hashWithoutNonce, nonce));
+
+        Pair<byte[], byte[]> ret = verified.get(key);
+        if (ret == null) {
+            ret = calcWork(header, hashWithoutNonce, nonce, cachedOnly);
+            if (ret != null) verified.put(key, ret);
+        }
+
+        return ret;
+    }
+
+    /**
+     * Calculates ethash results for a batch of headers and their nonces, runs calculations on all cores
+     *
+     * @param cachedOnly see {@link #ethashWorkFor(BlockHeader, byte[], boolean)}
+     * @return results in the order of headers, null results for those headers whose epoch is not cached
+     *         if cachedOnly is set
+     */
+    public List<Pair<byte[], byte[]>> ethashWorkFor(List<BlockHeader> headers, boolean cachedOnly) throws Exception {
+        List<Future<Pair<byte[], byte[]>>> futures = new ArrayList<>(headers.size());
+        for (BlockHeader header : headers) {
+            futures.add(verifyExecutor.submit(() -> ethashWorkFor(header, header.getNonce(), cachedOnly)));
+        }
+
+        List<Pair<byte[], byte[]>> ret = new ArrayList<>(headers.size());
+        try {
+            for (Future<Pair<byte[], byte[]>> future : futures) {
+                ret.add(future.get());
+            }
+        } catch (ExecutionException e) {
+            for (Future<?> future : futures) future.cancel(false);
+            throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+        }
+
+        return ret;
+    }
+
+    private Pair<byte[], byte[]> calcWork(BlockHeader header, byte[] hashWithoutNonce, byte[] nonce,
+                                          boolean cachedOnly) throws Exception {
+
+        long fullSize = ethashAlgo.getParams().getFullSize(header.getNumber());
 
         // lookup with full dataset if it's available
         Ethash cachedInstance = Ethash.cachedInstance;
@@ -139,12 +223,34 @@ public class EthashValidationHelper {
             long size = ethashAlgo.getParams().getCacheSize(blockNumber);
 
             this.dataset = new CompletableFuture<>();
+            this.epoch = epoch(blockNumber);
             executor.submit(() -> {
-                int[] cache = ethashAlgo.makeCache(size, seed);
+                int[] cache = load(size);
+                if (cache == null) {
+                    cache = ethashAlgo.makeCache(size, seed);
+                    save(cache);
+                }
                 this.dataset.complete(cache);
             });
+        }
 
-            this.epoch = epoch(blockNumber);
+        private int[] load(long size) {
+            if (cacheDir == null) return null;
+            try {
+                return Ethash.loadCacheLight(cacheDir, epoch, size);
+            } catch (IOException e) {
+                logger.warn("Failed to load light cache for epoch {}: {}", epoch, e.toString());
+                return null;
+            }
+        }
+
+        private void save(int[] cache) {
+            if (cacheDir == null) return;
+            try {
+                Ethash.saveCacheLight(cacheDir, epoch, cache);
+            } catch (IOException e) {
+                logger.warn("Failed to save light cache for epoch {}: {}", epoch, e.toString());
+            }
         }
 
         boolean isFor(long blockNumber) {
@@ -156,6 +262,34 @@ public class EthashValidationHelper {
         }
     }
 
+    /**
+     * Least recently used results of verification
+     */
+    static class VerifiedCache {
+        private final Map<ByteArrayWrapper, Pair<byte[], byte[]>> map;
+
+        VerifiedCache(final int maxSize) {
+            this.map = new LinkedHashMap<ByteArrayWrapper, Pair<byte[], byte[]>>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<ByteArrayWrapper, Pair<byte[], byte[]>> eldest) {
+                    return size() > maxSize;
+                }
+            };
+        }
+
+        synchronized Pair<byte[], byte[]> get(ByteArrayWrapper key) {
+            return map.get(key);
+        }
+
+        synchronized void put(ByteArrayWrapper key, Pair<byte[], byte[]> value) {
+            map.put(key, value);
+        }
+
+        synchronized int size() {
+            return map.size();
+        }
+    }
+
     private CacheStrategy createCacheStrategy(CacheOrder order) {
         switch (order) {
             case direct:    return new DirectCache();
@@ -194,7 +328,7 @@ public class EthashValidationHelper {
                 lastCachedEpoch -= 1;
 
                 // remove redundant caches
-                while (caches.size() > MAX_CACHED_EPOCHS)
+                while (caches.size() > maxCachedEpochs)
                     caches.remove(0);
 
                 logger.info("Kept caches: cnt: {} epochs: {}...{}",
@@ -248,7 +382,7 @@ public class EthashValidationHelper {
                 lastCachedEpoch += 1;
 
                 // remove redundant caches
-                while (caches.size() > MAX_CACHED_EPOCHS)
+                while (caches.size() > maxCachedEpochs)
                     caches.remove(0);
 
                 logger.info("Kept caches: cnt: {} epochs: {}...{}",
@@ -0,0 +1,202 @@
+/*
+ * Copyright (c) [2016] [ <ether.camp> ]
+ * This file is part of the ethereumJ library.
+ *
+ * The ethereumJ library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The ethereumJ library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with the ethereumJ library. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.mine;
+
+import org.ethereum.crypto.cryptohash.Keccak256;
+import org.ethereum.crypto.cryptohash.Keccak512;
+import org.ethereum.util.FastByteComparisons;
+
+import java.util.Arrays;
+
+import static java.lang.System.arraycopy;
+import static org.ethereum.mine.EthashAlgo.remainderUnsigned;
+
+/**
+ * Hashimoto calculation which reuses its buffers and digests between invocations. <br>
+ *
+ * Words are converted to bytes in place, the access loop doesn't allocate and the result
+ * is checked against the boundary bytes, so nonce search runs without garbage. <br>
+ *
+ * The instance is not thread safe, {@link EthashAlgo} keeps one per thread
+ */
+class Hashimoto {
+
+    private static final int FNV_PRIME = 0x01000193;
+
+    private final int hashWords;
+    private final int mixWords;
+    private final int mixHashes;
+    private final int mixBytes;
+    private final int accesses;
+    private final int datasetParents;
+
+    private final Keccak512 keccak512 = new Keccak512();
+    private final Keccak256 keccak256 = new Keccak256();
+
+    private final byte[] seed = new byte[32 + 8];
+    private final byte[] hashBytes;
+    private final int[] s;
+    private final int[] mix;
+    private final int[] newData;
+    private final int[] cmix;
+    // s and cmix bytes, the input of the final hash
+    private final byte[] resultInput;
+    private final byte[] result = new byte[32];
+
+    private int[] lightCache;
+    private final EthashAlgo.DatasetLookup lightLookup =
+            (itemIdx, dest, destOff) -> calcDatasetItem(lightCache, itemIdx, dest, destOff);
+
+    Hashimoto(EthashParams params) {
+        this.hashWords = params.getHASH_BYTES() / params.getWORD_BYTES();
+        this.mixWords = params.getMIX_BYTES() / params.getWORD_BYTES();
+        this.mixHashes = params.getMIX_BYTES() / params.getHASH_BYTES();
+        this.mixBytes = params.getMIX_BYTES();
+        this.accesses = (int) params.getACCESSES();
+        this.datasetParents = (int) params.getDATASET_PARENTS();
+
+        this.hashBytes = new byte[params.getHASH_BYTES()];
+        this.s = new int[hashWords];
+        this.mix = new int[mixWords];
+        this.newData = new int[mixWords];
+        this.cmix = new int[mixWords / 4];
+        this.resultInput = new byte[(s.length + cmix.length) * 4];
+    }
+
+    private static int fnv(int v1, int v2) {
+        return (v1 * FNV_PRIME) ^ v2;
+    }
+
+    /**
+     * Lookup which calculates dataset items from the light cache using buffers of this instance
+     */
+    EthashAlgo.DatasetLookup light(int[] cache) {
+        this.lightCache = cache;
+        return lightLookup;
+    }
+
+    void calcDatasetItem(int[] cache, int i, int[] dest, int destOff) {
+        int n = cache.length / hashWords;
+        arraycopy(cache, i % n * hashWords, dest, destOff, hashWords);
+
+        dest[destOff] ^= i;
+        sha512(dest, destOff);
+        for (int j = 0; j < datasetParents; j++) {
+            int off = remainderUnsigned(fnv(i ^ j, dest[destOff + j % hashWords]), n) * hashWords;
+            for (int k = 0; k < hashWords; k++) {
+                dest[destOff + k] = fnv(dest[destOff + k], cache[off + k]);
+            }
+        }
+        sha512(dest, destOff);
+    }
+
+    /**
+     * Calculates hashimoto for the nonce, the results are available
+     * via {@link #getResult()} and {@link #getMixHash()} until the next run
+     */
+    void run(byte[] headerHash, long nonce, long fullSize, EthashAlgo.DatasetLookup lookup) {
+        if (headerHash.length != 32) throw new IllegalArgumentException("headerHash.length != 32");
+
+        arraycopy(headerHash, 0, seed, 0, 32);
+        for (int k = 0; k < 8; k++) {
+            seed[32 + k] = (byte) (nonce >>> (k << 3));
+        }
+        keccak512.update(seed, 0, seed.length);
+        keccak512.digest(hashBytes, 0, hashBytes.length);
+        toInts(hashBytes, 0, s, 0, hashWords);
+
+        for (int i = 0; i < mixHashes; i++) {
+            arraycopy(s, 0, mix, i * hashWords, hashWords);
+        }
+
+        int numFullPages = (int) (fullSize / mixBytes);
+        for (int i = 0; i < accesses; i++) {
+            int off = remainderUnsigned(fnv(i ^ s[0], mix[i % mixWords]), numFullPages) * mixHashes;
+            for (int j = 0; j < mixHashes; j++) {
+                lookup.getItem(off + j, newData, j * hashWords);
+            }
+            for (int k = 0; k < mixWords; k++) {
+                mix[k] = fnv(mix[k], newData[k]);
+            }
+        }
+
+        for (int i = 0; i < mixWords; i += 4) {
+            cmix[i >> 2] = fnv(fnv(fnv(mix[i], mix[i + 1]), mix[i + 2]), mix[i + 3]);
+        }
+
+        toBytes(s, 0, s.length, resultInput, 0);
+        toBytes(cmix, 0, cmix.length, resultInput, s.length * 4);
+        keccak256.update(resultInput, 0, resultInput.length);
+        keccak256.digest(result, 0, result.length);
+    }
+
+    /**
+     * Runs hashimoto for nonces starting from the specified one
+     *
+     * @param boundary see {@link EthashAlgo#getBoundary(long)}
+     * @return index of the first matching nonce in the range or -1 if there is no such
+     */
+    int search(byte[] headerHash, long fullSize, EthashAlgo.DatasetLookup lookup, byte[] boundary,
+               long startNonce, int count) {
+        for (int i = 0; i < count; i++) {
+            run(headerHash, startNonce + i, fullSize, lookup);
+            if (isBelow(boundary)) return i;
+        }
+        return -1;
+    }
+
+    boolean isBelow(byte[] boundary) {
+        return boundary == null || FastByteComparisons.compareTo(result, 0, 32, boundary, 0, 32) < 0;
+    }
+
+    /**
+     * @return the result of the last run, the array is reused by the next run
+     */
+    byte[] getResult() {
+        return result;
+    }
+
+    byte[] getMixHash() {
+        return Arrays.copyOfRange(resultInput, s.length * 4, resultInput.length);
+    }
+
+    private void sha512(int[] words, int off) {
+        toBytes(words, off, hashWords, hashBytes, 0);
+        keccak512.update(hashBytes, 0, hashBytes.length);
+        keccak512.digest(hashBytes, 0, hashBytes.length);
+        toInts(hashBytes, 0, words, off, hashWords);
+    }
+
+    // Little-Endian
+    private static void toBytes(int[] src, int srcOff, int len, byte[] dest, int destOff) {
+        for (int i = 0; i < len; i++) {
+            int w = src[srcOff + i];
+            dest[destOff++] = (byte) w;
+            dest[destOff++] = (byte) (w >>> 8);
+            dest[destOff++] = (byte) (w >>> 16);
+            dest[destOff++] = (byte) (w >>> 24);
+        }
+    }
+
+    private static void toInts(byte[] src, int srcOff, int[] dest, int destOff, int len) {
+        for (int i = 0; i < len; i++) {
+            dest[destOff + i] = (src[srcOff++] & 0xFF) | (src[srcOff++] & 0xFF) << 8 |
+                    (src[srcOff++] & 0xFF) << 16 | (src[srcOff++] & 0xFF) << 24;
+        }
+    }
+}
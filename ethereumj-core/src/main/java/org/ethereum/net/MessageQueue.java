@@ -19,20 +19,29 @@ package org.ethereum.net;
 
 import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelHandlerContext;
+import org.ethereum.config.SystemProperties;
+import org.ethereum.core.Transaction;
 import org.ethereum.listener.EthereumListener;
+import org.ethereum.metrics.Meter;
+import org.ethereum.metrics.Metrics;
 import org.ethereum.net.eth.message.EthMessage;
+import org.ethereum.net.eth.message.EthMessageCodes;
+import org.ethereum.net.eth.message.TransactionsMessage;
 import org.ethereum.net.message.Message;
 import org.ethereum.net.message.ReasonCode;
 import org.ethereum.net.p2p.DisconnectMessage;
 import org.ethereum.net.p2p.PingMessage;
 import org.ethereum.net.p2p.PongMessage;
 import org.ethereum.net.server.Channel;
+import org.ethereum.net.server.WireTrafficStats;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Scope;
 import org.springframework.stereotype.Component;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Queue;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -52,6 +61,12 @@ import static org.ethereum.net.message.StaticMessages.DISCONNECT_MESSAGE;
  * The following messages will not be answered:
  *      PONG, PEERS, HELLO, STATUS, TRANSACTIONS, BLOCKS
  *
+ * Outbound messages are written in batches: every {@code peer.outbound.flushInterval} ms
+ * queued messages are written to the channel and flushed at once.
+ * Responses to peer requests go first, gossip (NEW_BLOCK, NEW_BLOCK_HASHES, TRANSACTIONS)
+ * is sent with the rest of the batch budget; consecutive TRANSACTIONS messages
+ * are merged into a single one. Outbound traffic is limited by {@code peer.outbound.maxBytesPerSec}
+ *
  * @author Roman Mandeleil
  */
 @Component
@@ -68,12 +83,29 @@ public class MessageQueue {
         }
     });
 
+    // TRANSACTIONS messages are merged while the result fits this size
+    static final int MAX_MERGED_TXS_SIZE = 64 * 1024;
+
+    private static final Meter inMessages = Metrics.meter("net.messages.in");
+    private static final Meter outMessages = Metrics.meter("net.messages.out");
+
     private Queue<MessageRoundtrip> requestQueue = new ConcurrentLinkedQueue<>();
     private Queue<MessageRoundtrip> respondQueue = new ConcurrentLinkedQueue<>();
+    private Queue<MessageRoundtrip> gossipQueue = new ConcurrentLinkedQueue<>();
     private ChannelHandlerContext ctx = null;
 
     @Autowired
     EthereumListener ethereumListener;
+    @Autowired
+    SystemProperties config;
+    @Autowired
+    WireTrafficStats stats;
+
+    private int maxBatchSize = 256 * 1024;
+    private long maxBytesPerSec = 0;
+    // bytes allowed to be sent by rate limiter, might go negative after a large message
+    private long sendAllowance;
+    private long lastAllowanceUpdate;
     boolean hasPing = false;
     private ScheduledFuture<?> timerTask;
     private Channel channel;
@@ -83,13 +115,21 @@ public class MessageQueue {
 
     public void activate(ChannelHandlerContext ctx) {
         this.ctx = ctx;
+        int flushInterval = 10;
+        if (config != null) {
+            flushInterval = config.peerOutboundFlushInterval();
+            maxBatchSize = config.peerOutboundMaxBatchSize();
+            maxBytesPerSec = config.peerOutboundMaxBytesPerSec();
+        }
+        sendAllowance = maxBytesPerSec;
+        lastAllowanceUpdate = System.currentTimeMillis();
         timerTask = timer.scheduleAtFixedRate(() -> {
             try {
                 nudgeQueue();
             } catch (Throwable t) {
                 logger.error("Unhandled exception", t);
             }
-        }, 10, 10, TimeUnit.MILLISECONDS);
+        }, flushInterval, flushInterval, TimeUnit.MILLISECONDS);
     }
 
     public void setChannel(Channel channel) {
@@ -107,12 +147,21 @@ public class MessageQueue {
             hasPing = true;
         }
 
+        outMessages.mark();
         if (msg.getAnswerMessage() != null)
             requestQueue.add(new MessageRoundtrip(msg));
+        else if (isGossip(msg))
+            gossipQueue.add(new MessageRoundtrip(msg));
         else
             respondQueue.add(new MessageRoundtrip(msg));
     }
 
+    private static boolean isGossip(Message msg) {
+        return msg.getCommand() == EthMessageCodes.TRANSACTIONS ||
+                msg.getCommand() == EthMessageCodes.NEW_BLOCK ||
+                msg.getCommand() == EthMessageCodes.NEW_BLOCK_HASHES;
+    }
+
     public void disconnect() {
         disconnect(DISCONNECT_MESSAGE);
     }
@@ -128,6 +177,7 @@ public class MessageQueue {
 
     public void receivedMessage(Message msg) throws InterruptedException {
 
+        inMessages.mark();
         ethereumListener.trace("[Recv: " + msg + "]");
 
         if (requestQueue.peek() != null) {
@@ -152,15 +202,67 @@ public class MessageQueue {
             requestQueue.remove();
     }
 
-    private void nudgeQueue() {
+    void nudgeQueue() {
         // remove last answered message on the queue
         removeAnsweredMessage(requestQueue.peek());
-        // Now send the next message
-        sendToWire(respondQueue.poll());
-        sendToWire(requestQueue.peek());
+
+        int budget = maxBatchSize;
+        if (maxBytesPerSec > 0) {
+            long now = System.currentTimeMillis();
+            sendAllowance = Math.min(maxBytesPerSec, sendAllowance + maxBytesPerSec * (now - lastAllowanceUpdate) / 1000);
+            lastAllowanceUpdate = now;
+            if (sendAllowance <= 0) return;
+            budget = (int) Math.min(budget, sendAllowance);
+        }
+
+        // Now send the next messages, responses go first
+        int written = 0;
+        while (written < budget && !respondQueue.isEmpty()) {
+            written += sendToWire(respondQueue.poll());
+        }
+        if (written < budget) {
+            written += sendToWire(requestQueue.peek());
+        }
+        while (written < budget && !gossipQueue.isEmpty()) {
+            written += sendToWire(mergeTransactions(gossipQueue.poll()));
+        }
+
+        if (written > 0) {
+            ctx.flush();
+            if (maxBytesPerSec > 0) sendAllowance -= written;
+        }
+    }
+
+    /**
+     * Merges TRANSACTIONS messages following the given one in the gossip queue
+     */
+    private MessageRoundtrip mergeTransactions(MessageRoundtrip first) {
+        if (!(first.getMsg() instanceof TransactionsMessage)) return first;
+        MessageRoundtrip next = gossipQueue.peek();
+        if (next == null || !(next.getMsg() instanceof TransactionsMessage)) return first;
+
+        List<Transaction> txs = new ArrayList<>(((TransactionsMessage) first.getMsg()).getTransactions());
+        int size = first.getMsg().getEncoded().length;
+        int merged = 1;
+        while (next != null && next.getMsg() instanceof TransactionsMessage &&
+                size + next.getMsg().getEncoded().length <= MAX_MERGED_TXS_SIZE) {
+            gossipQueue.poll();
+            txs.addAll(((TransactionsMessage) next.getMsg()).getTransactions());
+            size += next.getMsg().getEncoded().length;
+            ++merged;
+            next = gossipQueue.peek();
+        }
+        if (merged == 1) return first;
+
+        if (stats != null) stats.messagesMerged(merged);
+        return new MessageRoundtrip(new TransactionsMessage(txs));
     }
 
-    private void sendToWire(MessageRoundtrip messageRoundtrip) {
+    /**
+     * Writes the message to the channel without flushing
+     * @return number of bytes written
+     */
+    private int sendToWire(MessageRoundtrip messageRoundtrip) {
 
         if (messageRoundtrip != null && messageRoundtrip.getRetryTimes() == 0) {
             // TODO: retry logic || messageRoundtrip.hasToRetry()){
@@ -169,13 +271,15 @@ public class MessageQueue {
 
             ethereumListener.onSendMessage(channel, msg);
 
-            ctx.writeAndFlush(msg).addListener(ChannelFutureListener.FIRE_EXCEPTION_ON_FAILURE);
+            ctx.write(msg).addListener(ChannelFutureListener.FIRE_EXCEPTION_ON_FAILURE);
 
             if (msg.getAnswerMessage() != null) {
                 messageRoundtrip.incRetryTimes();
                 messageRoundtrip.saveTime();
             }
+            return msg.getEncoded().length;
         }
+        return 0;
     }
 
     public void close() {
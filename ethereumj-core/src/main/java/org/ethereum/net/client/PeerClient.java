@@ -22,6 +22,7 @@ import org.ethereum.listener.EthereumListener;
 import org.ethereum.net.server.EthereumChannelInitializer;
 
 import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.PooledByteBufAllocator;
 import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelOption;
 import io.netty.channel.DefaultMessageSizeEstimator;
@@ -117,6 +118,7 @@ public class PeerClient {
         b.option(ChannelOption.SO_KEEPALIVE, true);
         b.option(ChannelOption.MESSAGE_SIZE_ESTIMATOR, DefaultMessageSizeEstimator.DEFAULT);
         b.option(ChannelOption.CONNECT_TIMEOUT_MILLIS, config.peerConnectionTimeout());
+        b.option(ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT);
         b.remoteAddress(host, port);
 
         b.handler(ethereumChannelInitializer);
@@ -51,6 +51,7 @@ import static java.lang.Math.min;
 import static java.util.Collections.singletonList;
 import static org.ethereum.datasource.MemSizeEstimator.ByteArrayEstimator;
 import static org.ethereum.net.eth.EthVersion.V62;
+import static org.ethereum.net.eth.handler.EthMessageExecutor.Type.*;
 import static org.ethereum.net.message.ReasonCode.USELESS_PEER;
 import static org.ethereum.sync.PeerState.*;
 import static org.ethereum.sync.PeerState.BLOCK_RETRIEVING;
@@ -86,6 +87,9 @@ public class Eth62 extends EthHandler {
     @Autowired
     protected NodeManager nodeManager;
 
+    @Autowired
+    protected EthMessageExecutor messageExecutor;
+
     protected EthState ethState = EthState.INIT;
 
     protected PeerState peerState = IDLE;
@@ -147,31 +151,61 @@ public class Eth62 extends EthHandler {
                 processStatus((StatusMessage) msg, ctx);
                 break;
             case NEW_BLOCK_HASHES:
-                processNewBlockHashes((NewBlockHashesMessage) msg);
+                processAsync(BLOCK_ANNOUNCE, () -> processNewBlockHashes((NewBlockHashesMessage) msg));
                 break;
             case TRANSACTIONS:
-                processTransactions((TransactionsMessage) msg);
+                processAsync(TX_INGEST, () -> processTransactions((TransactionsMessage) msg));
                 break;
             case GET_BLOCK_HEADERS:
-                processGetBlockHeaders((GetBlockHeadersMessage) msg);
+                processAsync(SERVE_HEADERS, () -> processGetBlockHeaders((GetBlockHeadersMessage) msg));
                 break;
             case BLOCK_HEADERS:
-                processBlockHeaders((BlockHeadersMessage) msg);
+                // responses share the peer's queue with announces to be processed in the order received
+                processAsync(BLOCK_ANNOUNCE, () -> processBlockHeaders((BlockHeadersMessage) msg), false);
                 break;
             case GET_BLOCK_BODIES:
-                processGetBlockBodies((GetBlockBodiesMessage) msg);
+                processAsync(SERVE_BODIES, () -> processGetBlockBodies((GetBlockBodiesMessage) msg));
                 break;
             case BLOCK_BODIES:
-                processBlockBodies((BlockBodiesMessage) msg);
+                processAsync(BLOCK_ANNOUNCE, () -> processBlockBodies((BlockBodiesMessage) msg), false);
                 break;
             case NEW_BLOCK:
-                processNewBlock((NewBlockMessage) msg);
+                processAsync(BLOCK_ANNOUNCE, () -> processNewBlock((NewBlockMessage) msg));
                 break;
             default:
                 break;
         }
     }
 
+    /**
+     * Passes message processing to {@link EthMessageExecutor} workers,
+     * processes it in the caller thread if there is no executor
+     */
+    protected void processAsync(EthMessageExecutor.Type type, Runnable task) {
+        processAsync(type, task, true);
+    }
+
+    protected void processAsync(EthMessageExecutor.Type type, Runnable task, boolean droppable) {
+        if (messageExecutor == null) {
+            task.run();
+            return;
+        }
+
+        boolean queued = messageExecutor.submit(type, channel, () -> {
+            if (channel.isDisconnected()) return;
+            try {
+                task.run();
+            } catch (Throwable t) {
+                logger.warn("Peer {}: eth message processing failed", channel.getPeerIdShort(), t);
+                dropConnection();
+            }
+        }, droppable);
+        if (!queued && logger.isDebugEnabled()) {
+            logger.debug("Peer {}: too many {} messages waiting for processing, message dropped",
+                    channel.getPeerIdShort(), type);
+        }
+    }
+
     /*************************
      *    Message Sending    *
      *************************/
@@ -403,6 +437,7 @@ public class Eth62 extends EthHandler {
         }
 
         List<Transaction> txSet = msg.getTransactions();
+        channel.markTxsKnown(txSet);
         List<Transaction> newPending = pendingState.addPendingTransactions(txSet);
         if (!newPending.isEmpty()) {
             TransactionTask transactionTask = new TransactionTask(newPending, channel.getChannelManager(), channel);
@@ -410,18 +445,14 @@ public class Eth62 extends EthHandler {
         }
     }
 
-    protected synchronized void processGetBlockHeaders(GetBlockHeadersMessage msg) {
-        Iterator<BlockHeader> headersIterator = blockchain.getIteratorOfHeadersStartFrom(
+    protected void processGetBlockHeaders(GetBlockHeadersMessage msg) {
+        byte[] encodedHeaders = blockchain.getEncodedHeadersStartFrom(
                 msg.getBlockIdentifier(),
                 msg.getSkipBlocks(),
                 min(msg.getMaxHeaders(), MAX_HASHES_TO_SEND),
                 msg.isReverse()
         );
-        List<BlockHeader> blockHeaders = new ArrayList<>();
-        while (headersIterator.hasNext()) {
-            blockHeaders.add(headersIterator.next());
-        }
-        BlockHeadersMessage response = new BlockHeadersMessage(blockHeaders);
+        BlockHeadersMessage response = new BlockHeadersMessage(encodedHeaders);
         sendMessage(response);
     }
 
@@ -448,6 +479,7 @@ public class Eth62 extends EthHandler {
             processInitHeaders(received);
         else {
             syncStats.addHeaders(received.size());
+            if (lastReqSentTime > 0) syncStats.addResponse(System.currentTimeMillis() - lastReqSentTime);
             request.getFutureHeaders().set(received);
         }
 
@@ -456,7 +488,7 @@ public class Eth62 extends EthHandler {
         peerState = IDLE;
     }
 
-    protected synchronized void processGetBlockBodies(GetBlockBodiesMessage msg) {
+    protected void processGetBlockBodies(GetBlockBodiesMessage msg) {
         Iterator<byte[]> bodiesIterator = blockchain.getIteratorOfBodiesByHashes(msg.getBlockHashes());
         List<byte[]> bodies = new ArrayList<>();
         int sizeSum = 0;
@@ -502,6 +534,7 @@ public class Eth62 extends EthHandler {
         futureBlocks.set(blocks);
         futureBlocks = null;
 
+        syncStats.addResponse(System.currentTimeMillis() - lastReqSentTime, blocks.size());
         processingTime += (System.currentTimeMillis() - lastReqSentTime);
         lastReqSentTime = 0;
         peerState = IDLE;
@@ -866,6 +899,7 @@ public class Eth62 extends EthHandler {
     @Override
     public synchronized void dropConnection() {
         logger.info("Peer {}: is a bad one, drop", channel.getPeerIdShort());
+        channel.getNodeStatistics().ethInvalidData.add();
         disconnect(USELESS_PEER);
     }
 
@@ -48,6 +48,7 @@ import java.util.Set;
 
 import static org.ethereum.crypto.HashUtil.sha3;
 import static org.ethereum.net.eth.EthVersion.V63;
+import static org.ethereum.net.eth.handler.EthMessageExecutor.Type.SERVE_BODIES;
 import static org.ethereum.util.ByteUtil.toHexString;
 
 /**
@@ -85,13 +86,13 @@ public class Eth63 extends Eth62 {
         // Only commands that were added in V63, V62 are handled in child
         switch (msg.getCommand()) {
             case GET_NODE_DATA:
-                processGetNodeData((GetNodeDataMessage) msg);
+                processAsync(SERVE_BODIES, () -> processGetNodeData((GetNodeDataMessage) msg));
                 break;
             case NODE_DATA:
                 processNodeData((NodeDataMessage) msg);
                 break;
             case GET_RECEIPTS:
-                processGetReceipts((GetReceiptsMessage) msg);
+                processAsync(SERVE_BODIES, () -> processGetReceipts((GetReceiptsMessage) msg));
                 break;
             case RECEIPTS:
                 processReceipts((ReceiptsMessage) msg);
@@ -101,7 +102,7 @@ public class Eth63 extends Eth62 {
         }
     }
 
-    protected synchronized void processGetNodeData(GetNodeDataMessage msg) {
+    protected void processGetNodeData(GetNodeDataMessage msg) {
 
         if (logger.isTraceEnabled()) logger.trace(
                 "Peer {}: processing GetNodeData, size [{}]",
@@ -123,7 +124,7 @@ public class Eth63 extends Eth62 {
         sendMessage(new NodeDataMessage(nodeValues));
     }
 
-    protected synchronized void processGetReceipts(GetReceiptsMessage msg) {
+    protected void processGetReceipts(GetReceiptsMessage msg) {
 
         if (logger.isTraceEnabled()) logger.trace(
                 "Peer {}: processing GetReceipts, size [{}]",
@@ -191,6 +192,7 @@ public class Eth63 extends Eth62 {
             String err = String.format("Received NodeDataMessage contains empty node data. Dropping peer %s", channel);
             logger.debug(err);
             requestNodesFuture.setException(new RuntimeException(err));
+            channel.getNodeStatistics().ethInvalidData.add();
             // Not fatal but let us touch it later
             channel.getChannelManager().disconnect(channel, ReasonCode.TOO_MANY_PEERS);
             return;
@@ -209,6 +211,7 @@ public class Eth63 extends Eth62 {
 
         requestedNodes = null;
         requestNodesFuture = null;
+        syncStats.addResponse(System.currentTimeMillis() - lastReqSentTime, ret.size());
         processingTime += (System.currentTimeMillis() - lastReqSentTime);
         lastReqSentTime = 0;
         peerState = PeerState.IDLE;
@@ -233,6 +236,7 @@ public class Eth63 extends Eth62 {
 
         requestedReceipts = null;
         requestReceiptsFuture = null;
+        syncStats.addResponse(System.currentTimeMillis() - lastReqSentTime, receipts.size());
         processingTime += (System.currentTimeMillis() - lastReqSentTime);
         lastReqSentTime = 0;
         peerState = PeerState.IDLE;
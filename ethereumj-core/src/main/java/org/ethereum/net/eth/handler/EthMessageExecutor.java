@@ -0,0 +1,247 @@
+/*
+ * Copyright (c) [2016] [ <ether.camp> ]
+ * This file is part of the ethereumJ library.
+ *
+ * The ethereumJ library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The ethereumJ library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with the ethereumJ library. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.net.eth.handler;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.ethereum.config.SystemProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayDeque;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Processes inbound eth messages out of the Netty I/O threads. <br>
+ *
+ * Each message {@link Type} has its own pool of workers, thus slow block serving
+ * doesn't delay transaction or new block processing and vice versa. <br>
+ *
+ * Messages of the same type from the same peer are processed one by one in the order they were received.
+ * A peer has at most one task in the pool queue at a time, that gives each peer a fair share of workers
+ * regardless of how many requests it has sent. When peer's queue exceeds {@code peer.eth.workers.maxPeerQueue}
+ * new messages of that type are dropped unless they are submitted as not droppable,
+ * like responses to our own requests which are bounded by the number of requests in flight
+ */
+@Component
+public class EthMessageExecutor {
+
+    private static final Logger logger = LoggerFactory.getLogger("net");
+
+    public enum Type {
+        SERVE_HEADERS("serveHeaders"),
+        SERVE_BODIES("serveBodies"),
+        TX_INGEST("txIngest"),
+        BLOCK_ANNOUNCE("blockAnnounce");
+
+        private final String configName;
+
+        Type(String configName) {
+            this.configName = configName;
+        }
+    }
+
+    private final Map<Type, Worker> workers = new EnumMap<>(Type.class);
+    private final ScheduledExecutorService statsLogger;
+
+    @Autowired
+    public EthMessageExecutor(final SystemProperties config) {
+        int maxPeerQueue = config.ethWorkersMaxPeerQueue();
+        for (Type type : Type.values()) {
+            workers.put(type, new Worker(type, config.ethWorkersThreads(type.configName), maxPeerQueue));
+        }
+
+        statsLogger = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                .setNameFormat("EthMessageExecutorStats-%d").setDaemon(true).build());
+        statsLogger.scheduleAtFixedRate(() -> {
+            if (logger.isDebugEnabled()) {
+                for (Worker worker : workers.values()) {
+                    logger.debug("Eth workers: " + worker.stats());
+                }
+            }
+        }, 60, 60, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Queues the task for processing
+     *
+     * @param type message type
+     * @param peer key identifying the peer
+     * @return false if the task is dropped due to full peer queue
+     */
+    public boolean submit(Type type, Object peer, Runnable task) {
+        return submit(type, peer, task, true);
+    }
+
+    /**
+     * Queues the task for processing
+     *
+     * @param type message type
+     * @param peer key identifying the peer
+     * @param droppable whether the task may be dropped due to full peer queue
+     * @return false if the task is dropped due to full peer queue
+     */
+    public boolean submit(Type type, Object peer, Runnable task, boolean droppable) {
+        return workers.get(type).submit(peer, task, droppable);
+    }
+
+    public Stats getStats(Type type) {
+        return workers.get(type).stats;
+    }
+
+    @PreDestroy
+    public void close() {
+        statsLogger.shutdownNow();
+        for (Worker worker : workers.values()) {
+            worker.executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Accumulated processing times, in nanoseconds
+     */
+    public static class Stats {
+        final AtomicLong processed = new AtomicLong();
+        final AtomicLong dropped = new AtomicLong();
+        final AtomicLong queueTime = new AtomicLong();
+        final AtomicLong handleTime = new AtomicLong();
+        final AtomicLong maxQueueTime = new AtomicLong();
+
+        public long getProcessed() {
+            return processed.get();
+        }
+
+        public long getDropped() {
+            return dropped.get();
+        }
+
+        public long getAvgQueueTime() {
+            long cnt = processed.get();
+            return cnt > 0 ? queueTime.get() / cnt : 0;
+        }
+
+        public long getAvgHandleTime() {
+            long cnt = processed.get();
+            return cnt > 0 ? handleTime.get() / cnt : 0;
+        }
+
+        public long getMaxQueueTime() {
+            return maxQueueTime.get();
+        }
+
+        void processed(long queueNanos, long handleNanos) {
+            processed.incrementAndGet();
+            queueTime.addAndGet(queueNanos);
+            handleTime.addAndGet(handleNanos);
+            long max;
+            while ((max = maxQueueTime.get()) < queueNanos && !maxQueueTime.compareAndSet(max, queueNanos));
+        }
+    }
+
+    private static class Task {
+        final Runnable runnable;
+        final long queuedAt = System.nanoTime();
+
+        Task(Runnable runnable) {
+            this.runnable = runnable;
+        }
+    }
+
+    private static class PeerQueue {
+        final Queue<Task> tasks = new ArrayDeque<>();
+        boolean scheduled = false;
+        boolean closed = false;
+    }
+
+    private static class Worker {
+        final Type type;
+        final int maxPeerQueue;
+        final ExecutorService executor;
+        final ConcurrentMap<Object, PeerQueue> peerQueues = new ConcurrentHashMap<>();
+        final Stats stats = new Stats();
+
+        Worker(Type type, int threads, int maxPeerQueue) {
+            this.type = type;
+            this.maxPeerQueue = maxPeerQueue;
+            this.executor = Executors.newFixedThreadPool(threads, new ThreadFactoryBuilder()
+                    .setNameFormat("EthWorker-" + type.configName + "-%d").setDaemon(true).build());
+        }
+
+        boolean submit(Object peer, Runnable runnable, boolean droppable) {
+            while (true) {
+                PeerQueue queue = peerQueues.computeIfAbsent(peer, p -> new PeerQueue());
+                synchronized (queue) {
+                    // queue has been just disposed by the worker, take a fresh one
+                    if (queue.closed) continue;
+
+                    if (droppable && queue.tasks.size() >= maxPeerQueue) {
+                        stats.dropped.incrementAndGet();
+                        return false;
+                    }
+                    queue.tasks.add(new Task(runnable));
+                    if (!queue.scheduled) {
+                        queue.scheduled = true;
+                        executor.execute(() -> runNext(peer, queue));
+                    }
+                    return true;
+                }
+            }
+        }
+
+        private void runNext(Object peer, PeerQueue queue) {
+            Task task;
+            synchronized (queue) {
+                task = queue.tasks.poll();
+            }
+
+            if (task != null) {
+                long startedAt = System.nanoTime();
+                try {
+                    task.runnable.run();
+                } catch (Throwable t) {
+                    logger.warn("Eth message processing failed", t);
+                }
+                stats.processed(startedAt - task.queuedAt, System.nanoTime() - startedAt);
+            }
+
+            synchronized (queue) {
+                if (queue.tasks.isEmpty()) {
+                    queue.scheduled = false;
+                    queue.closed = true;
+                    peerQueues.remove(peer, queue);
+                } else {
+                    // go to the tail of the pool queue letting other peers be served
+                    executor.execute(() -> runNext(peer, queue));
+                }
+            }
+        }
+
+        String stats() {
+            return String.format("%s: processed %d, dropped %d, avg queue/handle time %.2f/%.2f ms, max queue time %.2f ms, peers waiting %d",
+                    type.configName, stats.getProcessed(), stats.getDropped(),
+                    stats.getAvgQueueTime() / 1_000_000d, stats.getAvgHandleTime() / 1_000_000d,
+                    stats.getMaxQueueTime() / 1_000_000d, peerQueues.size());
+        }
+    }
+}
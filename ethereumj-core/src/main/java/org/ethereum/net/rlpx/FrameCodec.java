@@ -17,9 +17,8 @@
  */
 package org.ethereum.net.rlpx;
 
+import com.google.common.io.ByteStreams;
 import io.netty.buffer.ByteBuf;
-import io.netty.buffer.ByteBufInputStream;
-import io.netty.buffer.ByteBufOutputStream;
 import org.ethereum.net.swarm.Util;
 import org.ethereum.util.RLP;
 import org.ethereum.util.RLPList;
@@ -33,6 +32,7 @@ import org.spongycastle.crypto.params.ParametersWithIV;
 
 import java.io.*;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 
@@ -42,29 +42,50 @@ import static org.ethereum.util.RLP.decode2OneItem;
  * Created by devrandom on 2015-04-11.
  */
 public class FrameCodec {
+
+    private static final int HEADER_SIZE = 32;
+    private static final int MAC_SIZE = 16;
+    // size of the scratch buffer used when the wire buffer has no accessible backing array
+    private static final int CHUNK_SIZE = 4096;
+    // header-data of a regular (not chunked) frame: [capability-id = 0]
+    private static final byte[] EMPTY_HEADER_DATA = RLP.encodeList(RLP.encodeInt(0));
+
     private final StreamCipher enc;
     private final StreamCipher dec;
-    private final KeccakDigest egressMac;
-    private final KeccakDigest ingressMac;
-    private final byte[] mac;
+    private final MacState egressMac;
+    private final MacState ingressMac;
+    // AESEngine keeps per-block state, thus egress and ingress sides get own instances
+    private final AESEngine egressMacCipher;
+    private final AESEngine ingressMacCipher;
     boolean isHeadRead;
     private int totalBodySize;
     private int contextId = -1;
     private int totalFrameSize = -1;
     private int protocol;
 
+    // scratch buffers reused between frames to keep the codec allocation free on the hot path
+    private final byte[] egressHead = new byte[HEADER_SIZE];
+    private final byte[] egressMacBlock = new byte[32];
+    private final byte[] egressMacSeed = new byte[32];
+    private final byte[] egressChunk = new byte[CHUNK_SIZE];
+    private final byte[] ingressHead = new byte[HEADER_SIZE];
+    private final byte[] ingressMacBlock = new byte[32];
+    private final byte[] ingressMacSeed = new byte[32];
+    private final byte[] ingressChunk = new byte[CHUNK_SIZE];
+
     public FrameCodec(EncryptionHandshake.Secrets secrets) {
-        this.mac = secrets.mac;
         BlockCipher cipher;
         enc = new SICBlockCipher(cipher = new AESEngine());
         enc.init(true, new ParametersWithIV(new KeyParameter(secrets.aes), new byte[cipher.getBlockSize()]));
         dec = new SICBlockCipher(cipher = new AESEngine());
         dec.init(false, new ParametersWithIV(new KeyParameter(secrets.aes), new byte[cipher.getBlockSize()]));
-        egressMac = secrets.egressMac;
-        ingressMac = secrets.ingressMac;
+        egressMac = new MacState(secrets.egressMac);
+        ingressMac = new MacState(secrets.ingressMac);
+        egressMacCipher = makeMacCipher(secrets.mac);
+        ingressMacCipher = makeMacCipher(secrets.mac);
     }
 
-    private AESEngine makeMacCipher() {
+    private static AESEngine makeMacCipher(byte[] mac) {
         // Stateless AES encryption
         AESEngine macc = new AESEngine();
         macc.init(true, new KeyParameter(mac));
@@ -76,6 +97,10 @@ public class FrameCodec {
         int size;
         InputStream payload;
 
+        // backing array of the payload if it's known, allows consumers to skip stream copying
+        byte[] data;
+        int offset;
+
         int totalFrameSize = -1;
         int contextId = -1;
 
@@ -86,9 +111,15 @@ public class FrameCodec {
         }
 
         public Frame(int type, byte[] payload) {
+            this(type, payload, 0, payload.length);
+        }
+
+        public Frame(long type, byte[] payload, int offset, int size) {
             this.type = type;
-            this.size = payload.length;
-            this.payload = new ByteArrayInputStream(payload);
+            this.size = size;
+            this.data = payload;
+            this.offset = offset;
+            this.payload = new ByteArrayInputStream(payload, offset, size);
         }
 
         public int getSize() {
@@ -100,39 +131,101 @@ public class FrameCodec {
         public InputStream getStream() {
             return payload;
         }
+
         public boolean isChunked() {
             return contextId >= 0;
         }
 
-    }
+        /**
+         * Returns frame payload as a byte array.
+         * Backing array is returned as is when it exactly matches the payload,
+         * in that case the array must be treated as read only
+         */
+        public byte[] getPayload() throws IOException {
+            if (data != null) {
+                if (offset == 0 && size == data.length) return data;
+                return Arrays.copyOfRange(data, offset, offset + size);
+            }
+            byte[] ret = new byte[size];
+            ByteStreams.readFully(payload, ret);
+            return ret;
+        }
 
-    public void writeFrame(Frame frame, ByteBuf buf) throws IOException {
-        writeFrame(frame, new ByteBufOutputStream(buf));
+        /**
+         * Copies frame payload to the destination array
+         * @return number of bytes copied
+         */
+        public int copyPayload(byte[] dest, int destPos) throws IOException {
+            if (data != null) {
+                System.arraycopy(data, offset, dest, destPos, size);
+                return size;
+            }
+            return ByteStreams.read(payload, dest, destPos, size);
+        }
     }
 
-    public void writeFrame(Frame frame, OutputStream out) throws IOException {
-        byte[] headBuffer = new byte[32];
+    /**
+     * Encrypts the frame directly into the buffer.
+     * Cipher output goes straight to the buffer's backing array when it's available,
+     * otherwise a chunk buffer reused between frames is involved
+     */
+    public void writeFrame(Frame frame, ByteBuf buf) throws IOException {
         byte[] ptype = RLP.encodeInt((int) frame.type); // FIXME encodeLong
         int totalSize = frame.size + ptype.length;
-        headBuffer[0] = (byte)(totalSize >> 16);
-        headBuffer[1] = (byte)(totalSize >> 8);
-        headBuffer[2] = (byte)(totalSize);
+        int padding = 16 - (totalSize % 16);
+        if (padding == 16) padding = 0;
 
-        List<byte[]> headerDataElems = new ArrayList<>();
-        headerDataElems.add(RLP.encodeInt(0));
-        if (frame.contextId >= 0) headerDataElems.add(RLP.encodeInt(frame.contextId));
-        if (frame.totalFrameSize >= 0) headerDataElems.add(RLP.encodeInt(frame.totalFrameSize));
+        buf.ensureWritable(HEADER_SIZE + totalSize + padding + MAC_SIZE);
 
-        byte[] headerData = RLP.encodeList(headerDataElems.toArray(new byte[0][]));
-        System.arraycopy(headerData, 0, headBuffer, 3, headerData.length);
+        writeHeader(frame, totalSize);
+        buf.writeBytes(egressHead);
 
-        enc.processBytes(headBuffer, 0, 16, headBuffer, 0);
+        encryptTo(buf, ptype, 0, ptype.length);
+        if (frame.data != null) {
+            encryptTo(buf, frame.data, frame.offset, frame.size);
+        } else {
+            while (true) {
+                int n = frame.payload.read(egressChunk);
+                if (n <= 0) break;
+                encryptTo(buf, egressChunk, 0, n);
+            }
+        }
+        if (padding > 0) {
+            Arrays.fill(egressChunk, 0, padding, (byte) 0);
+            encryptTo(buf, egressChunk, 0, padding);
+        }
 
-        // Header MAC
-        updateMac(egressMac, headBuffer, 0, headBuffer, 16, true);
+        writeFrameMac();
+        buf.writeBytes(egressMacBlock, 0, MAC_SIZE);
+    }
+
+    private void encryptTo(ByteBuf buf, byte[] src, int srcPos, int len) {
+        if (buf.hasArray()) {
+            // in place encryption into the buffer region
+            int pos = buf.arrayOffset() + buf.writerIndex();
+            enc.processBytes(src, srcPos, len, buf.array(), pos);
+            egressMac.update(buf.array(), pos, len);
+            buf.writerIndex(buf.writerIndex() + len);
+        } else {
+            while (len > 0) {
+                int n = Math.min(len, egressChunk.length);
+                enc.processBytes(src, srcPos, n, egressChunk, 0);
+                egressMac.update(egressChunk, 0, n);
+                buf.writeBytes(egressChunk, 0, n);
+                srcPos += n;
+                len -= n;
+            }
+        }
+    }
 
-        byte[] buff = new byte[256];
-        out.write(headBuffer);
+    public void writeFrame(Frame frame, OutputStream out) throws IOException {
+        byte[] ptype = RLP.encodeInt((int) frame.type); // FIXME encodeLong
+        int totalSize = frame.size + ptype.length;
+
+        writeHeader(frame, totalSize);
+        out.write(egressHead);
+
+        byte[] buff = egressChunk;
         enc.processBytes(ptype, 0, ptype.length, buff, 0);
         out.write(buff, 0, ptype.length);
         egressMac.update(buff, 0, ptype.length);
@@ -144,115 +237,222 @@ public class FrameCodec {
             out.write(buff, 0, n);
         }
         int padding = 16 - (totalSize % 16);
-        byte[] pad = new byte[16];
         if (padding < 16) {
-            enc.processBytes(pad, 0, padding, buff, 0);
+            Arrays.fill(buff, 0, padding, (byte) 0);
+            enc.processBytes(buff, 0, padding, buff, 0);
             egressMac.update(buff, 0, padding);
             out.write(buff, 0, padding);
         }
 
+        writeFrameMac();
+        out.write(egressMacBlock, 0, MAC_SIZE);
+    }
+
+    private void writeHeader(Frame frame, int totalSize) throws IOException {
+        byte[] headBuffer = egressHead;
+        Arrays.fill(headBuffer, (byte) 0);
+        headBuffer[0] = (byte)(totalSize >> 16);
+        headBuffer[1] = (byte)(totalSize >> 8);
+        headBuffer[2] = (byte)(totalSize);
+
+        byte[] headerData;
+        if (frame.contextId < 0 && frame.totalFrameSize < 0) {
+            headerData = EMPTY_HEADER_DATA;
+        } else {
+            List<byte[]> headerDataElems = new ArrayList<>();
+            headerDataElems.add(RLP.encodeInt(0));
+            if (frame.contextId >= 0) headerDataElems.add(RLP.encodeInt(frame.contextId));
+            if (frame.totalFrameSize >= 0) headerDataElems.add(RLP.encodeInt(frame.totalFrameSize));
+            headerData = RLP.encodeList(headerDataElems.toArray(new byte[0][]));
+        }
+        System.arraycopy(headerData, 0, headBuffer, 3, headerData.length);
+
+        enc.processBytes(headBuffer, 0, 16, headBuffer, 0);
+
+        // Header MAC
+        updateMac(egressMac, egressMacCipher, egressMacBlock, headBuffer, 0, headBuffer, 16, true);
+    }
+
+    private void writeFrameMac() throws IOException {
         // Frame MAC
-        byte[] macBuffer = new byte[egressMac.getDigestSize()];
-        doSum(egressMac, macBuffer); // fmacseed
-        updateMac(egressMac, macBuffer, 0, macBuffer, 0, true);
-        out.write(macBuffer, 0, 16);
+        egressMac.sum(egressMacSeed); // fmacseed
+        updateMac(egressMac, egressMacCipher, egressMacBlock, egressMacSeed, 0, egressMacBlock, 0, true);
     }
 
+    /**
+     * Decodes the next frame straight from the buffer.
+     * Ciphertext is fed to the MAC and decrypted chunk by chunk,
+     * the only array allocated per frame is the exactly sized payload
+     *
+     * @return the decoded frame or null if the buffer doesn't contain a complete frame yet
+     */
     public List<Frame> readFrames(ByteBuf buf) throws IOException {
-        try (ByteBufInputStream bufInputStream = new ByteBufInputStream(buf)) {
-            return readFrames(bufInputStream);
+        if (!isHeadRead) {
+            if (buf.readableBytes() < HEADER_SIZE) return null;
+            buf.readBytes(ingressHead);
+            readHeader();
         }
+
+        int padding = 16 - (totalBodySize % 16);
+        if (padding == 16) padding = 0;
+        int frameSize = totalBodySize + padding;
+        if (buf.readableBytes() < frameSize + MAC_SIZE) return null;
+
+        byte[] chunk = ingressChunk;
+        byte[] payload = null;
+        long type = 0;
+        int payloadPos = 0;
+        int bodyPos = 0;
+        while (bodyPos < frameSize) {
+            int n = Math.min(frameSize - bodyPos, chunk.length);
+            buf.readBytes(chunk, 0, n);
+            ingressMac.update(chunk, 0, n);
+            dec.processBytes(chunk, 0, n, chunk, 0);
+
+            int from = 0;
+            if (payload == null) {
+                // packet-type is the leading RLP item, it always fits into the first chunk
+                type = RLP.decodeLong(chunk, 0);
+                from = RLP.getNextElementIndex(chunk, 0);
+                payload = new byte[totalBodySize - from];
+            }
+            int len = Math.min(n, totalBodySize - bodyPos) - from;
+            if (len > 0) {
+                System.arraycopy(chunk, from, payload, payloadPos, len);
+                payloadPos += len;
+            }
+            bodyPos += n;
+        }
+
+        // Frame MAC
+        buf.readBytes(chunk, 0, MAC_SIZE);
+        ingressMac.sum(ingressMacSeed); // fmacseed
+        updateMac(ingressMac, ingressMacCipher, ingressMacBlock, ingressMacSeed, 0, chunk, 0, false);
+
+        isHeadRead = false;
+        Frame frame = new Frame(type, payload, 0, payload.length);
+        frame.contextId = contextId;
+        frame.totalFrameSize = totalFrameSize;
+        return Collections.singletonList(frame);
     }
 
     public List<Frame> readFrames(DataInput inp) throws IOException {
         if (!isHeadRead) {
-            byte[] headBuffer = new byte[32];
             try {
-                inp.readFully(headBuffer);
+                inp.readFully(ingressHead);
             } catch (EOFException e) {
                 return null;
             }
-
-            // Header MAC
-            updateMac(ingressMac, headBuffer, 0, headBuffer, 16, false);
-
-            dec.processBytes(headBuffer, 0, 16, headBuffer, 0);
-            totalBodySize = headBuffer[0] & 0xFF;
-            totalBodySize = (totalBodySize << 8) + (headBuffer[1] & 0xFF);
-            totalBodySize = (totalBodySize << 8) + (headBuffer[2] & 0xFF);
-
-            RLPList rlpList = (RLPList) decode2OneItem(headBuffer, 3);
-
-            protocol = Util.rlpDecodeInt(rlpList.get(0));
-            contextId = -1;
-            totalFrameSize = -1;
-            if (rlpList.size() > 1) {
-                contextId = Util.rlpDecodeInt(rlpList.get(1));
-                if (rlpList.size() > 2) {
-                    totalFrameSize = Util.rlpDecodeInt(rlpList.get(2));
-                }
-            }
-
-            isHeadRead = true;
+            readHeader();
         }
 
         int padding = 16 - (totalBodySize % 16);
         if (padding == 16) padding = 0;
-        int macSize = 16;
-        byte[] buffer = new byte[totalBodySize + padding + macSize];
+        byte[] buffer = new byte[totalBodySize + padding + MAC_SIZE];
         try {
             inp.readFully(buffer);
         } catch (EOFException e) {
             return null;
         }
-        int frameSize = buffer.length - macSize;
+        int frameSize = buffer.length - MAC_SIZE;
         ingressMac.update(buffer, 0, frameSize);
         dec.processBytes(buffer, 0, frameSize, buffer, 0);
         int pos = 0;
         long type = RLP.decodeLong(buffer, pos);
         pos = RLP.getNextElementIndex(buffer, pos);
-        InputStream payload = new ByteArrayInputStream(buffer, pos, totalBodySize - pos);
         int size = totalBodySize - pos;
-        byte[] macBuffer = new byte[ingressMac.getDigestSize()];
 
         // Frame MAC
-        doSum(ingressMac, macBuffer); // fmacseed
-        updateMac(ingressMac, macBuffer, 0, buffer, frameSize, false);
+        ingressMac.sum(ingressMacSeed); // fmacseed
+        updateMac(ingressMac, ingressMacCipher, ingressMacBlock, ingressMacSeed, 0, buffer, frameSize, false);
 
         isHeadRead = false;
-        Frame frame = new Frame(type, size, payload);
+        Frame frame = new Frame(type, buffer, pos, size);
         frame.contextId = contextId;
         frame.totalFrameSize = totalFrameSize;
         return Collections.singletonList(frame);
     }
 
-    private byte[] updateMac(KeccakDigest mac, byte[] seed, int offset, byte[] out, int outOffset, boolean egress) throws IOException {
-        byte[] aesBlock = new byte[mac.getDigestSize()];
-        doSum(mac, aesBlock);
-        makeMacCipher().processBlock(aesBlock, 0, aesBlock, 0);
+    private void readHeader() throws IOException {
+        byte[] headBuffer = ingressHead;
+
+        // Header MAC
+        updateMac(ingressMac, ingressMacCipher, ingressMacBlock, headBuffer, 0, headBuffer, 16, false);
+
+        dec.processBytes(headBuffer, 0, 16, headBuffer, 0);
+        totalBodySize = headBuffer[0] & 0xFF;
+        totalBodySize = (totalBodySize << 8) + (headBuffer[1] & 0xFF);
+        totalBodySize = (totalBodySize << 8) + (headBuffer[2] & 0xFF);
+
+        RLPList rlpList = (RLPList) decode2OneItem(headBuffer, 3);
+
+        protocol = Util.rlpDecodeInt(rlpList.get(0));
+        contextId = -1;
+        totalFrameSize = -1;
+        if (rlpList.size() > 1) {
+            contextId = Util.rlpDecodeInt(rlpList.get(1));
+            if (rlpList.size() > 2) {
+                totalFrameSize = Util.rlpDecodeInt(rlpList.get(2));
+            }
+        }
+
+        isHeadRead = true;
+    }
+
+    /**
+     * Updates the MAC with the seed and either writes (egress)
+     * or verifies (ingress) the resulting 16 bytes of the MAC.
+     * The result is left in the aesBlock
+     */
+    private void updateMac(MacState mac, AESEngine macCipher, byte[] aesBlock, byte[] seed, int offset,
+                           byte[] out, int outOffset, boolean egress) throws IOException {
+        mac.sum(aesBlock);
+        macCipher.processBlock(aesBlock, 0, aesBlock, 0);
         // Note that although the mac digest size is 32 bytes, we only use 16 bytes in the computation
         int length = 16;
         for (int i = 0; i < length; i++) {
             aesBlock[i] ^= seed[i + offset];
         }
         mac.update(aesBlock, 0, length);
-        byte[] result = new byte[mac.getDigestSize()];
-        doSum(mac, result);
+        mac.sum(aesBlock);
         if (egress) {
-            System.arraycopy(result, 0, out, outOffset, length);
+            System.arraycopy(aesBlock, 0, out, outOffset, length);
         } else {
             for (int i = 0; i < length; i++) {
-                if (out[i + outOffset] != result[i]) {
+                if (out[i + outOffset] != aesBlock[i]) {
                     throw new IOException("MAC mismatch");
                 }
             }
         }
-        return result;
     }
 
-    private void doSum(KeccakDigest mac, byte[] out) {
-        // doFinal without resetting the MAC by using clone of digest state
-        new KeccakDigest(mac).doFinal(out, 0);
-    }
+    /**
+     * Keccak MAC which is able to take intermediate digest
+     * without resetting its state and without allocating a digest copy each time
+     */
+    private static class MacState extends KeccakDigest {
+        private MacState snapshot;
+
+        MacState(KeccakDigest source) {
+            super(source);
+        }
 
+        private MacState(MacState source) {
+            super(source);
+        }
+
+        void sum(byte[] out) {
+            if (snapshot == null) {
+                snapshot = new MacState(this);
+            } else {
+                System.arraycopy(state, 0, snapshot.state, 0, state.length);
+                System.arraycopy(dataQueue, 0, snapshot.dataQueue, 0, dataQueue.length);
+                snapshot.rate = rate;
+                snapshot.bitsInQueue = bitsInQueue;
+                snapshot.fixedOutputLength = fixedOutputLength;
+                snapshot.squeezing = squeezing;
+            }
+            snapshot.doFinal(out, 0);
+        }
+    }
 }
@@ -40,6 +40,8 @@ public class FrameCodecHandler extends NettyByteToMessageCodec<FrameCodec.Frame>
     public Channel channel;
 
     public FrameCodecHandler(FrameCodec frameCodec, Channel channel) {
+        // heap buffers let FrameCodec encrypt right into the buffer array
+        super(false);
         this.frameCodec = frameCodec;
         this.channel = channel;
     }
@@ -17,7 +17,6 @@
  */
 package org.ethereum.net.rlpx;
 
-import com.google.common.io.ByteStreams;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.MessageToMessageCodec;
 import org.apache.commons.collections4.map.LRUMap;
@@ -145,10 +144,16 @@ public class MessageCodec extends MessageToMessageCodec<Frame, Message> {
     private Message decodeMessage(ChannelHandlerContext ctx, List<Frame> frames) throws IOException {
         long frameType = frames.get(0).getType();
 
-        byte[] payload = new byte[frames.size() == 1 ? frames.get(0).getSize() : frames.get(0).totalFrameSize];
-        int pos = 0;
-        for (Frame frame : frames) {
-            pos += ByteStreams.read(frame.getStream(), payload, pos, frame.getSize());
+        byte[] payload;
+        if (frames.size() == 1) {
+            // frame payload is already an exactly sized array, no need to copy it
+            payload = frames.get(0).getPayload();
+        } else {
+            payload = new byte[frames.get(0).totalFrameSize];
+            int pos = 0;
+            for (Frame frame : frames) {
+                pos += frame.copyPayload(payload, pos);
+            }
         }
 
         if (loggerWire.isDebugEnabled())
@@ -199,9 +204,8 @@ public class MessageCodec extends MessageToMessageCodec<Frame, Message> {
         int curPos = 0;
         while(curPos < bytes.length) {
             int newPos = min(curPos + maxFramePayloadSize, bytes.length);
-            byte[] frameBytes = curPos == 0 && newPos == bytes.length ? bytes :
-                    Arrays.copyOfRange(bytes, curPos, newPos);
-            ret.add(new Frame(code, frameBytes));
+            // frames are views of the encoded message, no copying
+            ret.add(new Frame(code, bytes, curPos, newPos - curPos));
             curPos = newPos;
         }
 
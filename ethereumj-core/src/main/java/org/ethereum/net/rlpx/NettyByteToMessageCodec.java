@@ -47,6 +47,16 @@ public abstract class NettyByteToMessageCodec<I> extends ByteToMessageCodec<I> {
         }
     };
 
+    protected NettyByteToMessageCodec() {
+    }
+
+    /**
+     * @param preferDirect whether encoder output should be allocated as a direct buffer
+     */
+    protected NettyByteToMessageCodec(boolean preferDirect) {
+        super(preferDirect);
+    }
+
     @Override
     public void channelReadComplete(ChannelHandlerContext ctx) throws Exception {
         decoder.channelReadComplete(ctx);
@@ -63,21 +63,22 @@ public class SnappyCodec extends MessageToMessageCodec<FrameCodec.Frame, FrameCo
             return;
         }
 
-        byte[] in = new byte[msg.size];
-        msg.payload.read(in);
+        byte[] in = msg.data != null ? msg.data : msg.getPayload();
+        int offset = msg.data != null ? msg.offset : 0;
 
-        byte[] compressed = Snappy.rawCompress(in, in.length);
+        byte[] compressed = new byte[Snappy.maxCompressedLength(msg.size)];
+        int compressedSize = Snappy.rawCompress(in, offset, msg.size, compressed, 0);
 
-        out.add(new FrameCodec.Frame((int) msg.type, compressed));
+        out.add(new FrameCodec.Frame(msg.type, compressed, 0, compressedSize));
     }
 
     @Override
     protected void decode(ChannelHandlerContext ctx, FrameCodec.Frame msg, List<Object> out) throws Exception {
 
-        byte[] in = new byte[msg.size];
-        msg.payload.read(in);
+        byte[] in = msg.data != null ? msg.data : msg.getPayload();
+        int offset = msg.data != null ? msg.offset : 0;
 
-        long uncompressedLength = Snappy.uncompressedLength(in) & 0xFFFFFFFFL;
+        long uncompressedLength = Snappy.uncompressedLength(in, offset, msg.size) & 0xFFFFFFFFL;
         if (uncompressedLength > MAX_SIZE) {
             logger.info("{}: uncompressed frame size exceeds the limit ({} bytes), drop the peer", channel, uncompressedLength);
             channel.disconnect(ReasonCode.BAD_PROTOCOL);
@@ -86,7 +87,7 @@ public class SnappyCodec extends MessageToMessageCodec<FrameCodec.Frame, FrameCo
 
         byte[] uncompressed = new byte[(int) uncompressedLength];
         try {
-            Snappy.rawUncompress(in, 0, in.length, uncompressed, 0);
+            Snappy.rawUncompress(in, offset, msg.size, uncompressed, 0);
         } catch (IOException e) {
             String detailMessage = e.getMessage();
             // 5 - error code for framed snappy
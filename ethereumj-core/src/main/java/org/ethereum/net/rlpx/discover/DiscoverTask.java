@@ -32,7 +32,11 @@ import org.slf4j.LoggerFactory;
 
 import java.net.InetSocketAddress;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 public class DiscoverTask implements Runnable {
     private static final Logger logger = LoggerFactory.getLogger("discover");
@@ -51,51 +55,59 @@ public class DiscoverTask implements Runnable {
         discover(nodeId, 0, new ArrayList<Node>());
     }
 
+    /**
+     * Iterative lookup: each round sends FindNode to {@link KademliaOptions#ALPHA} closest
+     * not yet queried nodes at once and waits until all of them reply or
+     * the {@link KademliaOptions#REQ_TIMEOUT} deadline passes
+     */
     public synchronized void discover(byte[] nodeId, int round, List<Node> prevTried) {
 
         try {
-//        if (!channel.isOpen() || round == KademliaOptions.MAX_STEPS) {
-//            logger.info("{}", String.format("Nodes discovered %d ", table.getAllNodes().size()));
-//            return;
-//        }
-
-            if (round == KademliaOptions.MAX_STEPS) {
-                logger.debug("Node table contains [{}] peers", nodeManager.getTable().getNodesCount());
-                logger.debug("{}", String.format("(KademliaOptions.MAX_STEPS) Terminating discover after %d rounds.", round));
-                logger.trace("{}\n{}", String.format("Nodes discovered %d ", nodeManager.getTable().getNodesCount()), dumpNodes());
-                return;
+            Set<String> tried = new HashSet<>();
+            for (Node n : prevTried) {
+                tried.add(n.getHexId());
             }
+            for (; round < KademliaOptions.MAX_STEPS; round++) {
+                List<NodeHandler> queried = new ArrayList<>();
+                for (Node n : nodeManager.getTable().getClosestNodes(nodeId)) {
+                    if (tried.add(n.getHexId())) {
+                        queried.add(nodeManager.getNodeHandler(n));
+                    }
+                    if (queried.size() == KademliaOptions.ALPHA) {
+                        break;
+                    }
+                }
 
-            List<Node> closest = nodeManager.getTable().getClosestNodes(nodeId);
-            List<Node> tried = new ArrayList<>();
+                if (queried.isEmpty()) {
+                    logger.debug("{}", String.format("(tried.isEmpty()) Terminating discover after %d rounds.", round));
+                    logger.trace("{}\n{}", String.format("Nodes discovered %d ", nodeManager.getTable().getNodesCount()), dumpNodes());
+                    return;
+                }
 
-            for (Node n : closest) {
-                if (!tried.contains(n) && !prevTried.contains(n)) {
+                CountDownLatch replies = new CountDownLatch(queried.size());
+                for (NodeHandler handler : queried) {
                     try {
-                        nodeManager.getNodeHandler(n).sendFindNode(nodeId);
-                        tried.add(n);
-                        Thread.sleep(50);
-                    }catch (InterruptedException e) {
+                        handler.sendFindNode(nodeId, replies);
                     } catch (Exception ex) {
                         logger.error("Unexpected Exception " + ex, ex);
+                        replies.countDown();
                     }
                 }
-                if (tried.size() == KademliaOptions.ALPHA) {
-                    break;
+                try {
+                    replies.await(KademliaOptions.REQ_TIMEOUT, TimeUnit.MILLISECONDS);
+                } finally {
+                    // the nodes which didn't reply shouldn't keep the latch
+                    for (NodeHandler handler : queried) {
+                        handler.cancelFindNode(replies);
+                    }
                 }
             }
 
-//            channel.flush();
-
-            if (tried.isEmpty()) {
-                logger.debug("{}", String.format("(tried.isEmpty()) Terminating discover after %d rounds.", round));
-                logger.trace("{}\n{}", String.format("Nodes discovered %d ", nodeManager.getTable().getNodesCount()), dumpNodes());
-                return;
-            }
-
-            tried.addAll(prevTried);
-
-            discover(nodeId, round + 1, tried);
+            logger.debug("Node table contains [{}] peers", nodeManager.getTable().getNodesCount());
+            logger.debug("{}", String.format("(KademliaOptions.MAX_STEPS) Terminating discover after %d rounds.", round));
+            logger.trace("{}\n{}", String.format("Nodes discovered %d ", nodeManager.getTable().getNodesCount()), dumpNodes());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         } catch (Exception ex) {
             logger.info("{}", ex);
         }
@@ -25,6 +25,9 @@ import org.spongycastle.util.encoders.Hex;
 
 import java.net.InetSocketAddress;
 import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -126,7 +129,9 @@ public class NodeHandler {
     boolean waitForPong = false;
     long pingSent;
     int pingTrials = 3;
-    boolean waitForNeighbors = false;
+    volatile boolean waitForNeighbors = false;
+    // latches of the outstanding FindNode requests, all are counted down when the Neighbours reply arrives
+    private final Queue<CountDownLatch> neighborsLatches = new ConcurrentLinkedQueue<>();
     NodeHandler replaceCandidate;
 
     public NodeHandler(Node node, NodeManager nodeManager) {
@@ -247,6 +252,10 @@ public class NodeHandler {
             for (Node n : msg.getNodes()) {
                 nodeManager.getNodeHandler(n);
             }
+            CountDownLatch latch;
+            while ((latch = neighborsLatches.poll()) != null) {
+                latch.countDown();
+            }
         }
     }
 
@@ -323,14 +332,32 @@ public class NodeHandler {
     }
 
     void sendFindNode(byte[] target) {
+        sendFindNode(target, null);
+    }
+
+    /**
+     * Sends FindNode, the {@code neighborsLatch} if any is counted down
+     * when the Neighbours reply is handled
+     */
+    void sendFindNode(byte[] target, CountDownLatch neighborsLatch) {
 //        logMessage("<===  [FIND_NODE] " + this);
         Message findNode = FindNodeMessage.create(target, nodeManager.key);
         logMessage(findNode, false);
+        if (neighborsLatch != null) {
+            neighborsLatches.add(neighborsLatch);
+        }
         waitForNeighbors = true;
         sendMessage(findNode);
         getNodeStatistics().discoverOutFind.add();
     }
 
+    /**
+     * Forgets the latch of the FindNode which reply is no more awaited
+     */
+    void cancelFindNode(CountDownLatch neighborsLatch) {
+        neighborsLatches.remove(neighborsLatch);
+    }
+
     private void sendMessage(Message msg) {
         nodeManager.sendOutbound(new DiscoveryEvent(msg, getInetSocketAddress()));
     }
@@ -17,6 +17,7 @@
  */
 package org.ethereum.net.rlpx.discover;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.apache.commons.lang3.tuple.Pair;
 import org.ethereum.config.SystemProperties;
 import org.ethereum.crypto.ECKey;
@@ -33,8 +34,10 @@ import org.springframework.stereotype.Component;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 import java.util.function.Predicate;
 
@@ -68,7 +71,9 @@ public class NodeManager implements Consumer<DiscoveryEvent>{
     Consumer<DiscoveryEvent> messageSender;
 
     NodeTable table;
-    private Map<String, NodeHandler> nodeHandlerMap = new HashMap<>();
+    // read lock free by the inbound messages handling, new handlers are created under nodeHandlerLock
+    private final Map<String, NodeHandler> nodeHandlerMap = new ConcurrentHashMap<>();
+    private final Object nodeHandlerLock = new Object();
     final ECKey key;
     final Node homeNode;
     private List<Node> bootNodes;
@@ -81,8 +86,8 @@ public class NodeManager implements Consumer<DiscoveryEvent>{
     private Map<DiscoverListener, ListenerHandler> listeners = new IdentityHashMap<>();
 
     private boolean inited = false;
-    private Timer logStatsTimer = new Timer();
-    private Timer nodeManagerTasksTimer = new Timer("NodeManagerTasks");;
+    private ScheduledExecutorService nodeManagerTasks = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setDaemon(true).setNameFormat("NodeManagerTasks-%d").build());
     private ScheduledExecutorService pongTimer;
 
     @Autowired
@@ -100,12 +105,8 @@ public class NodeManager implements Consumer<DiscoveryEvent>{
         homeNode = new Node(config.nodeId(), config.externalIp(), config.listenPort());
         table = new NodeTable(homeNode, config.isPublicHomeNode());
 
-        logStatsTimer.scheduleAtFixedRate(new TimerTask() {
-            @Override
-            public void run() {
-                logger.trace("Statistics:\n {}", dumpAllStatistics());
-            }
-        }, 1 * 1000, 60 * 1000);
+        nodeManagerTasks.scheduleAtFixedRate(() -> logger.trace("Statistics:\n {}", dumpAllStatistics()),
+                1 * 1000, 60 * 1000, TimeUnit.MILLISECONDS);
 
         this.pongTimer = Executors.newSingleThreadScheduledExecutor();
         for (Node node : config.peerActive()) {
@@ -130,21 +131,18 @@ public class NodeManager implements Consumer<DiscoveryEvent>{
             // this task is done asynchronously with some fixed rate
             // to avoid any overhead in the NodeStatistics classes keeping them lightweight
             // (which might be critical since they might be invoked from time critical sections)
-            nodeManagerTasksTimer.scheduleAtFixedRate(new TimerTask() {
-                @Override
-                public void run() {
-                    processListeners();
-                }
-            }, LISTENER_REFRESH_RATE, LISTENER_REFRESH_RATE);
+            nodeManagerTasks.scheduleAtFixedRate(this::processListeners,
+                    LISTENER_REFRESH_RATE, LISTENER_REFRESH_RATE, TimeUnit.MILLISECONDS);
 
             if (PERSIST) {
                 dbRead();
-                nodeManagerTasksTimer.scheduleAtFixedRate(new TimerTask() {
-                    @Override
-                    public void run() {
+                nodeManagerTasks.scheduleAtFixedRate(() -> {
+                    try {
                         dbWrite();
+                    } catch (Exception e) {
+                        logger.error("Error writing Node statistics to DB", e);
                     }
-                }, DB_COMMIT_RATE, DB_COMMIT_RATE);
+                }, DB_COMMIT_RATE, DB_COMMIT_RATE, TimeUnit.MILLISECONDS);
             }
 
             for (Node node : bootNodes) {
@@ -162,17 +160,11 @@ public class NodeManager implements Consumer<DiscoveryEvent>{
 
     private void dbWrite() {
         List<Pair<Node, Integer>> batch = new ArrayList<>();
-        synchronized (this) {
-            for (NodeHandler handler : nodeHandlerMap.values()) {
-                batch.add(Pair.of(handler.getNode(), handler.getNodeStatistics().getPersistedReputation()));
-            }
-        }
-        peerSource.clear();
-        for (Pair<Node, Integer> nodeElement : batch) {
-            peerSource.getNodes().add(nodeElement);
+        for (NodeHandler handler : nodeHandlerMap.values()) {
+            batch.add(Pair.of(handler.getNode(), handler.getNodeStatistics().getPersistedReputation()));
         }
-        peerSource.getNodes().flush();
-        logger.info("Write Node statistics to DB: " + peerSource.getNodes().size() + " nodes.");
+        int written = peerSource.update(batch);
+        logger.info("Write Node statistics to DB: " + written + " of " + batch.size() + " nodes changed.");
     }
 
     public void setMessageSender(Consumer<DiscoveryEvent> messageSender) {
@@ -189,21 +181,32 @@ public class NodeManager implements Consumer<DiscoveryEvent>{
         return (addr == null ? address.getHostString() : addr.getHostAddress()) + ":" + address.getPort();
     }
 
-    public synchronized NodeHandler getNodeHandler(Node n) {
+    public NodeHandler getNodeHandler(Node n) {
         String key = getKey(n);
         NodeHandler ret = nodeHandlerMap.get(key);
         if (ret == null) {
-            trimTable();
-            ret = new NodeHandler(n ,this);
-            nodeHandlerMap.put(key, ret);
-            logger.debug(" +++ New node: " + ret + " " + n);
-            if (!n.isDiscoveryNode() && !n.getHexId().equals(homeNode.getHexId())) {
-                ethereumListener.onNodeDiscovered(ret.getNode());
+            synchronized (nodeHandlerLock) {
+                ret = nodeHandlerMap.get(key);
+                if (ret == null) {
+                    trimTable();
+                    ret = new NodeHandler(n, this);
+                    nodeHandlerMap.put(key, ret);
+                    logger.debug(" +++ New node: " + ret + " " + n);
+                    if (!n.isDiscoveryNode() && !n.getHexId().equals(homeNode.getHexId())) {
+                        ethereumListener.onNodeDiscovered(ret.getNode());
+                    }
+                    return ret;
+                }
+            }
+        }
+
+        if (ret.getNode().isDiscoveryNode() && !n.isDiscoveryNode()) {
+            synchronized (ret) {
+                if (!ret.getNode().isDiscoveryNode()) return ret;
+                // we found discovery node with same host:port,
+                // replace node with correct nodeId
+                ret.node = n;
             }
-        } else if (ret.getNode().isDiscoveryNode() && !n.isDiscoveryNode()) {
-            // we found discovery node with same host:port,
-            // replace node with correct nodeId
-            ret.node = n;
             if (!n.getHexId().equals(homeNode.getHexId())) {
                 ethereumListener.onNodeDiscovered(ret.getNode());
             }
@@ -216,12 +219,16 @@ public class NodeManager implements Consumer<DiscoveryEvent>{
     private void trimTable() {
         if (nodeHandlerMap.size() > NODES_TRIM_THRESHOLD) {
 
-            List<NodeHandler> sorted = new ArrayList<>(nodeHandlerMap.values());
+            // reputations are changing concurrently, so they are taken once before sorting
+            List<Pair<String, Integer>> sorted = new ArrayList<>();
+            for (Map.Entry<String, NodeHandler> entry : nodeHandlerMap.entrySet()) {
+                sorted.add(Pair.of(entry.getKey(), entry.getValue().getNodeStatistics().getReputation()));
+            }
             // reverse sort by reputation
-            sorted.sort((o1, o2) -> o1.getNodeStatistics().getReputation() - o2.getNodeStatistics().getReputation());
+            sorted.sort((o1, o2) -> o1.getRight() - o2.getRight());
 
-            for (NodeHandler handler : sorted) {
-                nodeHandlerMap.remove(getKey(handler.getNode()));
+            for (Pair<String, Integer> handler : sorted) {
+                nodeHandlerMap.remove(handler.getLeft());
                 if (nodeHandlerMap.size() <= MAX_NODES) break;
             }
         }
@@ -300,7 +307,7 @@ public class NodeManager implements Consumer<DiscoveryEvent>{
         }
     }
 
-    public synchronized List<NodeHandler> getNodes(int minReputation) {
+    public List<NodeHandler> getNodes(int minReputation) {
         List<NodeHandler> ret = new ArrayList<>();
         for (NodeHandler nodeHandler : nodeHandlerMap.values()) {
             if (nodeHandler.getNodeStatistics().getReputation() >= minReputation) {
@@ -323,11 +330,9 @@ public class NodeManager implements Consumer<DiscoveryEvent>{
             Predicate<NodeHandler> predicate,
             int limit    ) {
         ArrayList<NodeHandler> filtered = new ArrayList<>();
-        synchronized (this) {
-            for (NodeHandler handler : nodeHandlerMap.values()) {
-                if (predicate.test(handler)) {
-                    filtered.add(handler);
-                }
+        for (NodeHandler handler : nodeHandlerMap.values()) {
+            if (predicate.test(handler)) {
+                filtered.add(handler);
             }
         }
         filtered.sort((o1, o2) -> o2.getNodeStatistics().getEthTotalDifficulty().compareTo(
@@ -357,7 +362,7 @@ public class NodeManager implements Consumer<DiscoveryEvent>{
         listeners.remove(listener);
     }
 
-    public synchronized String dumpAllStatistics() {
+    public String dumpAllStatistics() {
         List<NodeHandler> l = new ArrayList<>(nodeHandlerMap.values());
         l.sort((o1, o2) -> -(o1.getNodeStatistics().getReputation() - o2.getNodeStatistics().getReputation()));
 
@@ -387,7 +392,7 @@ public class NodeManager implements Consumer<DiscoveryEvent>{
     public void close() {
         peerConnectionManager.close();
         try {
-            nodeManagerTasksTimer.cancel();
+            nodeManagerTasks.shutdownNow();
             if (PERSIST) {
                 try {
                     dbWrite();
@@ -398,7 +403,7 @@ public class NodeManager implements Consumer<DiscoveryEvent>{
                 }
             }
         } catch (Exception e) {
-            logger.warn("Problems canceling nodeManagerTasksTimer", e);
+            logger.warn("Problems canceling nodeManagerTasks", e);
         }
         try {
             logger.info("Cancelling pongTimer");
@@ -406,11 +411,6 @@ public class NodeManager implements Consumer<DiscoveryEvent>{
         } catch (Exception e) {
             logger.warn("Problems cancelling pongTimer", e);
         }
-        try {
-            logStatsTimer.cancel();
-        } catch (Exception e) {
-            logger.warn("Problems canceling logStatsTimer", e);
-        }
     }
 
     private class ListenerHandler {
@@ -58,6 +58,9 @@ public class NodeStatistics {
 
     private int persistedReputation = 0;
 
+    // score of the last sync session with the node, see {@link org.ethereum.sync.PeerScore}
+    private volatile int syncScore = -1;
+
     // discovery stat
     public final StatHandler discoverOutPing = new StatHandler();
     public final StatHandler discoverInPong = new StatHandler();
@@ -94,6 +97,8 @@ public class NodeStatistics {
     public final StatHandler ethHandshake = new StatHandler();
     public final StatHandler ethInbound = new StatHandler();
     public final StatHandler ethOutbound = new StatHandler();
+    // responses which failed validation
+    public final StatHandler ethInvalidData = new StatHandler();
     private StatusMessage ethLastInboundStatusMsg = null;
     private BigInteger ethTotalDifficulty = BigInteger.ZERO;
 
@@ -222,6 +227,17 @@ public class NodeStatistics {
         return "ethj.discover.nodes." + node.getHost() + ":" + node.getPort();
     }
 
+    /**
+     * @return score measured on the last connection with the node, or -1 if it was never measured
+     */
+    public int getSyncScore() {
+        return syncScore;
+    }
+
+    public void setSyncScore(int syncScore) {
+        this.syncScore = syncScore;
+    }
+
     public int getPersistedReputation() {
         return isReputationPenalized() ? 0 : (persistedReputation + getSessionFairReputation()) / 2;
     }
@@ -240,7 +256,7 @@ public class NodeStatistics {
                 ((int)discoverMessageLatency.getAvrg()) + "ms" +
                 ", rlpx: " + rlpxHandshake + "/" + rlpxAuthMessagesSent + "/" + rlpxConnectionAttempts + " " +
                 rlpxInMessages + "/" + rlpxOutMessages +
-                ", eth: " + ethHandshake + "/" + ethInbound + "/" + ethOutbound + " " +
+                ", eth: " + ethHandshake + "/" + ethInbound + "/" + ethOutbound + "/" + ethInvalidData + " " +
                 (ethLastInboundStatusMsg != null ? ByteUtil.toHexString(ethLastInboundStatusMsg.getTotalDifficulty()) : "-") + " " +
                 (wasDisconnected() ? "X " : "") +
                 (rlpxLastLocalDisconnectReason != null ? ("<=" + rlpxLastLocalDisconnectReason) : " ") +
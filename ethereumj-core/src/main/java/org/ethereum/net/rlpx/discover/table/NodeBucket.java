@@ -19,7 +19,6 @@ package org.ethereum.net.rlpx.discover.table;
 
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.LinkedList;
 import java.util.List;
 
 /**
@@ -38,6 +37,10 @@ public class NodeBucket {
         return depth;
     }
 
+    /**
+     * Adds the entry unless the bucket is full
+     * @return the eviction candidate if the bucket is full, or {@code null}
+     */
     public synchronized NodeEntry addNode(NodeEntry e) {
         if (!nodes.contains(e)) {
             if (nodes.size() >= KademliaOptions.BUCKET_SIZE) {
@@ -51,9 +54,8 @@ public class NodeBucket {
     }
 
     private NodeEntry getLastSeen() {
-        List<NodeEntry> sorted = nodes;
-        Collections.sort(sorted, new TimeComparator());
-        return sorted.get(0);
+        // entries may be touched concurrently, so the bucket is not sorted in place
+        return Collections.min(nodes, new TimeComparator());
     }
 
     public synchronized void dropNode(NodeEntry entry) {
@@ -65,15 +67,14 @@ public class NodeBucket {
         }
     }
 
-    public int getNodesCount() {
+    public synchronized int getNodesCount() {
         return nodes.size();
     }
 
-    public List<NodeEntry> getNodes() {
-//        List<NodeEntry> nodes = new ArrayList<>();
-//        for (NodeEntry e : this.nodes) {
-//            nodes.add(e);
-//        }
-        return nodes;
+    /**
+     * @return snapshot of the bucket entries
+     */
+    public synchronized List<NodeEntry> getNodes() {
+        return new ArrayList<>(nodes);
     }
 }
@@ -29,7 +29,7 @@ public class NodeEntry {
     Node node;
     private String entryId;
     private int distance;
-    private long modified;
+    private volatile long modified;
 
     public NodeEntry(Node n) {
         this.node = n;
@@ -19,18 +19,27 @@ package org.ethereum.net.rlpx.discover.table;
 
 import org.ethereum.net.rlpx.Node;
 
-import java.util.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
+ * Kademlia table of the discovered nodes. <br>
+ *
+ * The table is accessed concurrently by the inbound discovery messages handling
+ * and by the lookup tasks, so instead of a single table lock each bucket guards
+ * its own entries and the entries are additionally indexed by id for lock free
+ * {@link #contains} and {@link #touchNode} lookups
+ *
  * Created by kest on 5/25/15.
  */
 public class NodeTable {
 
     private final Node node;  // our node
     private transient NodeBucket[] buckets;
-    private transient List<NodeEntry> nodes;
-    private Map<Node, Node> evictedCandidates = new HashMap<>();
-    private Map<Node, Date> expectedPongs = new HashMap<>();
+    private transient Map<String, NodeEntry> nodes;
 
     public NodeTable(Node n) {
         this(n, true);
@@ -50,7 +59,7 @@ public class NodeTable {
 
     public final void initialize()
     {
-        nodes = new ArrayList<>();
+        nodes = new ConcurrentHashMap<>();
         buckets = new NodeBucket[KademliaOptions.BINS];
         for (int i = 0; i < KademliaOptions.BINS; i++)
         {
@@ -58,41 +67,37 @@ public class NodeTable {
         }
     }
 
-    public synchronized Node addNode(Node n) {
+    public Node addNode(Node n) {
         NodeEntry e = new NodeEntry(node.getId(), n);
-        NodeEntry lastSeen = buckets[getBucketId(e)].addNode(e);
-        if (lastSeen != null) {
-            return lastSeen.getNode();
-        }
-        if (!nodes.contains(e)) {
-            nodes.add(e);
+        NodeBucket bucket = buckets[getBucketId(e)];
+        // the index is updated under the bucket lock to stay consistent with the bucket
+        synchronized (bucket) {
+            NodeEntry lastSeen = bucket.addNode(e);
+            if (lastSeen != null) {
+                return lastSeen.getNode();
+            }
+            nodes.putIfAbsent(e.getId(), e);
         }
         return null;
     }
 
-    public synchronized void dropNode(Node n) {
+    public void dropNode(Node n) {
         NodeEntry e = new NodeEntry(node.getId(), n);
-        buckets[getBucketId(e)].dropNode(e);
-        nodes.remove(e);
+        NodeBucket bucket = buckets[getBucketId(e)];
+        synchronized (bucket) {
+            bucket.dropNode(e);
+            nodes.remove(e.getId());
+        }
     }
 
-    public synchronized boolean contains(Node n) {
-        NodeEntry e = new NodeEntry(node.getId(), n);
-        for (NodeBucket b : buckets) {
-            if (b.getNodes().contains(e)) {
-                return true;
-            }
-        }
-        return false;
+    public boolean contains(Node n) {
+        return nodes.containsKey(n.toString());
     }
 
-    public synchronized void touchNode(Node n) {
-        NodeEntry e = new NodeEntry(node.getId(), n);
-        for (NodeBucket b : buckets) {
-            if (b.getNodes().contains(e)) {
-                b.getNodes().get(b.getNodes().indexOf(e)).touch();
-                break;
-            }
+    public void touchNode(Node n) {
+        NodeEntry e = nodes.get(n.toString());
+        if (e != null) {
+            e.touch();
         }
     }
 
@@ -106,7 +111,7 @@ public class NodeTable {
         return i;
     }
 
-    public synchronized NodeBucket[] getBuckets() {
+    public NodeBucket[] getBuckets() {
         return buckets;
     }
 
@@ -115,17 +120,16 @@ public class NodeTable {
         return id < 0 ? 0 : id;
     }
 
-    public synchronized int getNodesCount() {
+    public int getNodesCount() {
         return nodes.size();
     }
 
-    public synchronized List<NodeEntry> getAllNodes()
+    public List<NodeEntry> getAllNodes()
     {
         List<NodeEntry> nodes = new ArrayList<>();
 
         for (NodeBucket b : buckets)
         {
-//            nodes.addAll(b.getNodes());
             for (NodeEntry e : b.getNodes())
             {
                 if (!e.getNode().equals(node)) {
@@ -134,21 +138,26 @@ public class NodeTable {
             }
         }
 
-//        boolean res = nodes.remove(node);
         return nodes;
     }
 
-    public synchronized List<Node> getClosestNodes(byte[] targetId) {
-        List<NodeEntry> closestEntries = getAllNodes();
-        List<Node> closestNodes = new ArrayList<>();
-        Collections.sort(closestEntries, new DistanceComparator(targetId));
-        if (closestEntries.size() > KademliaOptions.BUCKET_SIZE) {
-            closestEntries = closestEntries.subList(0, KademliaOptions.BUCKET_SIZE);
+    public List<Node> getClosestNodes(byte[] targetId) {
+        List<NodeEntry> entries = getAllNodes();
+
+        // the distance is calculated once per entry rather than on each comparison
+        int[] distances = new int[entries.size()];
+        Integer[] order = new Integer[entries.size()];
+        for (int i = 0; i < order.length; i++) {
+            distances[i] = NodeEntry.distance(targetId, entries.get(i).getNode().getId());
+            order[i] = i;
         }
+        Arrays.sort(order, (i1, i2) -> Integer.compare(distances[i1], distances[i2]));
 
-        for (NodeEntry e : closestEntries) {
-            if (!e.getNode().isDiscoveryNode()) {
-                closestNodes.add(e.getNode());
+        List<Node> closestNodes = new ArrayList<>();
+        for (int i = 0; i < Math.min(order.length, KademliaOptions.BUCKET_SIZE); i++) {
+            Node n = entries.get(order[i]).getNode();
+            if (!n.isDiscoveryNode()) {
+                closestNodes.add(n);
             }
         }
         return closestNodes;
@@ -50,6 +50,7 @@ import org.ethereum.net.shh.ShhMessageFactory;
 import org.ethereum.net.swarm.bzz.BzzHandler;
 import org.ethereum.net.swarm.bzz.BzzMessageFactory;
 import org.ethereum.util.CollectionUtils;
+import org.ethereum.util.RollingHashFilter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -124,6 +125,12 @@ public class Channel {
 
     public static final int MAX_SAFE_TXS = 192;
 
+    // number of recent transactions remembered as known to the peer
+    public static final int KNOWN_TXS_CAPACITY = 32768;
+
+    // transactions the peer has sent us or we have sent to the peer
+    private final RollingHashFilter knownTxs = new RollingHashFilter(KNOWN_TXS_CAPACITY);
+
     public void init(ChannelPipeline pipeline, String remoteId, boolean discoveryMode, ChannelManager channelManager) {
         this.channelManager = channelManager;
         this.remoteId = remoteId;
@@ -382,6 +389,7 @@ public class Channel {
      * @param txs   Transactions
      */
     public void sendTransactions(List<Transaction> txs) {
+        markTxsKnown(txs);
         eth.sendTransaction(txs);
     }
 
@@ -397,9 +405,27 @@ public class Channel {
         } else {
             slicedTxs = CollectionUtils.truncateRand(txs, MAX_SAFE_TXS);
         }
+        markTxsKnown(slicedTxs);
         eth.sendTransaction(slicedTxs);
     }
 
+    public void markTxsKnown(List<Transaction> txs) {
+        for (Transaction tx : txs) {
+            markTxKnown(tx);
+        }
+    }
+
+    public void markTxKnown(Transaction tx) {
+        knownTxs.add(tx.getHash());
+    }
+
+    /**
+     * @return {@code false} if the peer surely doesn't know the transaction
+     */
+    public boolean isTxKnown(Transaction tx) {
+        return knownTxs.mightContain(tx.getHash());
+    }
+
     public void sendNewBlock(Block block) {
         eth.sendNewBlock(block);
     }
@@ -28,6 +28,7 @@ import org.ethereum.db.ByteArrayWrapper;
 import org.ethereum.facade.Ethereum;
 import org.ethereum.net.message.ReasonCode;
 import org.ethereum.net.rlpx.Node;
+import org.ethereum.sync.PeerScore;
 import org.ethereum.sync.SyncManager;
 import org.ethereum.sync.SyncPool;
 import org.slf4j.Logger;
@@ -79,6 +80,8 @@ public class ChannelManager {
     private Thread blockDistributeThread;
     private Thread txDistributeThread;
 
+    private final TransactionGossip txGossip = new TransactionGossip();
+
     Random rnd = new Random();  // Used for distributing new blocks / hashes logic
 
     @Autowired
@@ -161,6 +164,8 @@ public class ChannelManager {
 
             List<Channel> processed = new ArrayList<>();
             int addCnt = 0;
+            // at most one active peer is replaced per round
+            boolean evicted = false;
             for (Channel peer : newPeers) {
 
                 logger.debug("Processing new peer: " + peer);
@@ -175,8 +180,20 @@ public class ChannelManager {
                                 !trustedPeers.accept(peer.getNode())) {
 
                             // restricting inbound connections unless this is a trusted peer
-
-                            noLockTasks.add(() -> disconnect(peer, TOO_MANY_PEERS));
+                            // or it's expected to be better than the worst of active peers
+
+                            Channel worst = evicted ? null : syncPool.getEvictionCandidate();
+                            if (worst != null &&
+                                    PeerScore.of(peer.getNodeStatistics()) > PeerScore.of(worst)) {
+                                logger.info("Peer {}: evicted in favor of inbound peer {}",
+                                        worst.getPeerIdShort(), peer.getPeerIdShort());
+                                noLockTasks.add(() -> disconnect(worst, TOO_MANY_PEERS));
+                                evicted = true;
+                                addCnt++;
+                                process(peer);
+                            } else {
+                                noLockTasks.add(() -> disconnect(peer, TOO_MANY_PEERS));
+                            }
                         } else {
                             addCnt++;
                             process(peer);
@@ -245,18 +262,14 @@ public class ChannelManager {
     }
 
     /**
-     * Propagates the transactions message across active peers with exclusion of
-     * 'receivedFrom' peer.
+     * Propagates the transactions across active peers with exclusion of
+     * 'receivedFrom' peer, see {@link TransactionGossip} for the peers selection.
      * @param txs  transactions to be sent
      * @param receivedFrom the peer which sent original message or null if
      *                     the transactions were originated by this peer
      */
     public void sendTransaction(List<Transaction> txs, Channel receivedFrom) {
-        for (Channel channel : activePeers.values()) {
-            if (channel != receivedFrom) {
-                channel.sendTransactionsCapped(txs);
-            }
-        }
+        txGossip.propagate(txs, activePeers.values(), receivedFrom);
     }
 
     /**
@@ -393,6 +406,7 @@ public class ChannelManager {
 
             logger.info("Shutting down ChannelManager worker thread...");
             mainWorker.shutdownNow();
+            txGossip.close();
             mainWorker.awaitTermination(5, TimeUnit.SECONDS);
         } catch (Exception e) {
             logger.warn("Problems shutting down", e);
@@ -0,0 +1,137 @@
+/*
+ * Copyright (c) [2016] [ <ether.camp> ]
+ * This file is part of the ethereumJ library.
+ *
+ * The ethereumJ library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The ethereumJ library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with the ethereumJ library. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.net.server;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.ethereum.core.Transaction;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static java.lang.Math.min;
+
+/**
+ * Propagates transactions across peers. <br>
+ *
+ * Transactions received from the network are sent to a random {@code sqrt(N)} subset of the
+ * N peers only, the rest of the network gets them from those peers in turn.
+ * Own transactions are sent to all peers. In both cases peers which are known to have
+ * the transaction (see {@link Channel#isTxKnown(Transaction)}) are skipped. <br>
+ *
+ * Transactions are queued per peer and sent in batches every {@link #BATCH_INTERVAL} millis,
+ * so a burst of transactions results in few messages rather than a message per transaction
+ */
+public class TransactionGossip {
+
+    private static final Logger logger = LoggerFactory.getLogger("net");
+
+    static final long BATCH_INTERVAL = 100;
+
+    private final Random random = new Random();
+
+    private Map<Channel, List<Transaction>> queued = new IdentityHashMap<>();
+    private final Object sendLock = new Object();
+
+    private final ScheduledExecutorService sender = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setDaemon(true).setNameFormat("tx-gossip-%d").build());
+
+    public TransactionGossip() {
+        sender.scheduleWithFixedDelay(() -> {
+            try {
+                flush();
+            } catch (Throwable t) {
+                logger.error("Error sending transactions", t);
+            }
+        }, BATCH_INTERVAL, BATCH_INTERVAL, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Queues transactions for sending
+     * @param txs  transactions to be sent
+     * @param peers  peers to send transactions to
+     * @param receivedFrom  the peer which sent the transactions or null
+     *                      if the transactions were originated by this peer
+     */
+    public void propagate(List<Transaction> txs, Collection<Channel> peers, Channel receivedFrom) {
+        List<Channel> candidates = new ArrayList<>(peers);
+        candidates.remove(receivedFrom);
+        if (candidates.isEmpty()) return;
+
+        int fanOut = receivedFrom == null ? candidates.size() : (int) Math.ceil(Math.sqrt(candidates.size()));
+
+        synchronized (this) {
+            List<Channel> unaware = new ArrayList<>(candidates.size());
+            for (Transaction tx : txs) {
+                unaware.clear();
+                for (Channel peer : candidates) {
+                    if (!peer.isTxKnown(tx)) unaware.add(peer);
+                }
+
+                // random subset of fanOut peers in the head of the list
+                int count = min(fanOut, unaware.size());
+                for (int i = 0; i < count; i++) {
+                    int j = i + random.nextInt(unaware.size() - i);
+                    Channel peer = unaware.get(j);
+                    unaware.set(j, unaware.get(i));
+                    unaware.set(i, peer);
+
+                    peer.markTxKnown(tx);
+                    queued.computeIfAbsent(peer, p -> new ArrayList<>()).add(tx);
+                }
+            }
+        }
+    }
+
+    /**
+     * Sends queued transactions, {@link Channel#MAX_SAFE_TXS} per message
+     */
+    void flush() {
+        // keeps batches in order when flushed from different threads
+        synchronized (sendLock) {
+            Map<Channel, List<Transaction>> batch;
+            synchronized (this) {
+                if (queued.isEmpty()) return;
+                batch = queued;
+                queued = new IdentityHashMap<>();
+            }
+
+            for (Map.Entry<Channel, List<Transaction>> entry : batch.entrySet()) {
+                Channel peer = entry.getKey();
+                if (peer.isDisconnected()) continue;
+
+                List<Transaction> txs = entry.getValue();
+                for (int i = 0; i < txs.size(); i += Channel.MAX_SAFE_TXS) {
+                    peer.sendTransactions(txs.subList(i, min(i + Channel.MAX_SAFE_TXS, txs.size())));
+                }
+            }
+        }
+    }
+
+    public void close() {
+        sender.shutdownNow();
+    }
+}
@@ -24,6 +24,8 @@ import io.netty.channel.ChannelHandler;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelPromise;
 import io.netty.channel.socket.DatagramPacket;
+import org.ethereum.metrics.Meter;
+import org.ethereum.metrics.Metrics;
 import org.ethereum.util.Utils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -45,8 +47,8 @@ public class WireTrafficStats  implements Runnable  {
     private final static Logger logger = LoggerFactory.getLogger("net");
 
     private ScheduledExecutorService executor;
-    public final TrafficStatHandler tcp = new TrafficStatHandler();
-    public final TrafficStatHandler udp = new TrafficStatHandler();
+    public final TrafficStatHandler tcp = new TrafficStatHandler("tcp");
+    public final TrafficStatHandler udp = new TrafficStatHandler("udp");
 
     public WireTrafficStats() {
         executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder().setNameFormat("WireTrafficStats-%d").build());
@@ -59,6 +61,13 @@ public class WireTrafficStats  implements Runnable  {
         logger.info("UDP: " + udp.stats());
     }
 
+    /**
+     * Reports number of outbound messages that were merged into a single one
+     */
+    public void messagesMerged(int count) {
+        tcp.mergedMessages.addAndGet(count);
+    }
+
     @PreDestroy
     public void close() {
         executor.shutdownNow();
@@ -72,13 +81,24 @@ public class WireTrafficStats  implements Runnable  {
         AtomicLong inSize = new AtomicLong();
         AtomicLong outPackets = new AtomicLong();
         AtomicLong inPackets = new AtomicLong();
+        AtomicLong outFlushes = new AtomicLong();
+        AtomicLong mergedMessages = new AtomicLong();
         long lastTime = System.currentTimeMillis();
+        final Meter inBytes;
+        final Meter outBytes;
+
+        TrafficStatHandler(String protocol) {
+            inBytes = Metrics.meter("net." + protocol + ".bytes.in");
+            outBytes = Metrics.meter("net." + protocol + ".bytes.out");
+        }
 
         public String stats() {
             long out = outSize.getAndSet(0);
             long outPac = outPackets.getAndSet(0);
             long in = inSize.getAndSet(0);
             long inPac = inPackets.getAndSet(0);
+            long flushes = outFlushes.getAndSet(0);
+            long merged = mergedMessages.getAndSet(0);
             outSizeTot += out;
             inSizeTot += in;
             long curTime = System.currentTimeMillis();
@@ -88,6 +108,9 @@ public class WireTrafficStats  implements Runnable  {
             lastTime = curTime;
             return "Speed in/out " + sizeToStr(inSpeed) + " / " + sizeToStr(outSpeed) +
                     "(sec), packets in/out " + inPac + "/" + outPac +
+                    ", out flushes " + flushes + " (" + String.format("%.2f", flushes > 0 ? (double) outPac / flushes : 0d) +
+                    " packets, " + sizeToStr(flushes > 0 ? out / flushes : 0) + " per flush)" +
+                    (merged > 0 ? ", merged msgs " + merged : "") +
                     ", total in/out: " + sizeToStr(inSizeTot) + " / " + sizeToStr(outSizeTot);
         }
 
@@ -97,8 +120,10 @@ public class WireTrafficStats  implements Runnable  {
             inPackets.incrementAndGet();
             if (msg instanceof ByteBuf) {
                 inSize.addAndGet(((ByteBuf) msg).readableBytes());
+                inBytes.mark(((ByteBuf) msg).readableBytes());
             } else if (msg instanceof DatagramPacket) {
                 inSize.addAndGet(((DatagramPacket) msg).content().readableBytes());
+                inBytes.mark(((DatagramPacket) msg).content().readableBytes());
             }
             super.channelRead(ctx, msg);
         }
@@ -108,10 +133,18 @@ public class WireTrafficStats  implements Runnable  {
             outPackets.incrementAndGet();
             if (msg instanceof ByteBuf) {
                 outSize.addAndGet(((ByteBuf) msg).readableBytes());
+                outBytes.mark(((ByteBuf) msg).readableBytes());
             } else if (msg instanceof DatagramPacket) {
                 outSize.addAndGet(((DatagramPacket) msg).content().readableBytes());
+                outBytes.mark(((DatagramPacket) msg).content().readableBytes());
             }
             super.write(ctx, msg, promise);
         }
+
+        @Override
+        public void flush(ChannelHandlerContext ctx) throws Exception {
+            outFlushes.incrementAndGet();
+            super.flush(ctx);
+        }
     }
 }
@@ -374,19 +374,18 @@ public abstract class BlockDownloader {
 
         if (headers.isEmpty()) return true;
 
-        List<BlockHeaderWrapper> wrappers = new ArrayList<>(headers.size());
-
-        for (BlockHeader header : headers) {
-
-            if (!isValid(header)) {
+        if (!isValid(headers)) {
 
-                if (logger.isDebugEnabled()) {
-                    logger.debug("{}: Invalid header RLP: {}", toHexString(header.getEncoded()), name);
-                }
-
-                return false;
+            if (logger.isDebugEnabled()) {
+                logger.debug("{}: Invalid headers {} - {}", name, headers.get(0).getShortDescr(),
+                        headers.get(headers.size() - 1).getShortDescr());
             }
 
+            return false;
+        }
+
+        List<BlockHeaderWrapper> wrappers = new ArrayList<>(headers.size());
+        for (BlockHeader header : headers) {
             wrappers.add(new BlockHeaderWrapper(header, nodeId));
         }
 
@@ -437,6 +436,17 @@ public abstract class BlockDownloader {
         return headerValidator.validateAndLog(header, logger);
     }
 
+    /**
+     * Same as {@link #isValid(BlockHeader)} for a batch of headers,
+     * lets the validator verify headers of the batch in parallel
+     *
+     * @param headers block headers
+     * @return true if all headers are valid, false otherwise
+     */
+    protected boolean isValid(List<BlockHeader> headers) {
+        return headerValidator.validateBatchAndLog(headers, logger);
+    }
+
     Channel getAnyPeer() {
         return pool.getAnyIdle();
     }
@@ -143,4 +143,9 @@ public class HeadersDownloader extends BlockDownloader {
     protected boolean isValid(BlockHeader header) {
         return super.isValid(header) && reverseEthashRule.validateAndLog(header, logger);
     }
+
+    @Override
+    protected boolean isValid(List<BlockHeader> headers) {
+        return super.isValid(headers) && reverseEthashRule.validateBatchAndLog(headers, logger);
+    }
 }
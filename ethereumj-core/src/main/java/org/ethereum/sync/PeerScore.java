@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) [2016] [ <ether.camp> ]
+ * This file is part of the ethereumJ library.
+ *
+ * The ethereumJ library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The ethereumJ library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with the ethereumJ library. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.sync;
+
+import org.ethereum.net.rlpx.discover.NodeStatistics;
+import org.ethereum.net.server.Channel;
+
+import static java.lang.Math.min;
+
+/**
+ * Rates peers by their usefulness for the sync, the score is in range [0, 100]: <br>
+ * - up to 50 points for the rolling sync throughput, i.e. bodies, state nodes or receipts per second <br>
+ * - up to 30 points for the rolling response latency, falls back to the ping latency <br>
+ * - up to 20 points for the {@link NodeStatistics#getReputation()} <br>
+ * The sum is divided by {@code 1 + N} where N is the number of invalid responses the node has sent. <br>
+ *
+ * Peers which have nothing measured yet get the half of the throughput and latency points,
+ * so new peers are neither preferred nor evicted before they had a chance to serve anything. <br>
+ *
+ * The score of connected peer is remembered in {@link NodeStatistics#setSyncScore(int)}
+ * and is used to rate the node when it's not connected
+ */
+public class PeerScore {
+
+    public static final int MAX_SCORE = 100;
+
+    private static final int THROUGHPUT_POINTS = 50;
+    private static final int LATENCY_POINTS = 30;
+    private static final int REPUTATION_POINTS = 20;
+
+    // items per second giving the full throughput points
+    private static final double REFERENCE_THROUGHPUT = 100;
+    // latency giving the half of latency points, millis
+    private static final double REFERENCE_LATENCY = 1000;
+    // reputation of the node which has passed rlpx and eth handshakes and exchanged few messages
+    private static final int REFERENCE_REPUTATION = 5000;
+
+    private PeerScore() {
+    }
+
+    /**
+     * Scores connected peer and updates the score remembered for its node
+     */
+    public static int of(Channel channel) {
+        SyncStatistics stats = channel.getSyncStats();
+        NodeStatistics nodeStats = channel.getNodeStatistics();
+
+        double throughput = stats.getAvgThroughput();
+        double latency = stats.getAvgResponseTime();
+        if (latency < 0 && channel.getPeerStats().getAvgLatency() > 0) {
+            latency = channel.getPeerStats().getAvgLatency();
+        }
+
+        double score = throughput < 0 ? THROUGHPUT_POINTS / 2d :
+                THROUGHPUT_POINTS * min(1, throughput / REFERENCE_THROUGHPUT);
+        score += latency < 0 ? LATENCY_POINTS / 2d :
+                LATENCY_POINTS * REFERENCE_LATENCY / (REFERENCE_LATENCY + latency);
+        score += reputationPoints(nodeStats);
+
+        nodeStats.setSyncScore((int) Math.round(score));
+        return penalize(score, nodeStats);
+    }
+
+    /**
+     * Scores the node by the score of the last connection or by its reputation
+     * if the node was never connected
+     */
+    public static int of(NodeStatistics nodeStats) {
+        if (nodeStats.getSyncScore() >= 0) {
+            return penalize(nodeStats.getSyncScore(), nodeStats);
+        }
+        return penalize((THROUGHPUT_POINTS + LATENCY_POINTS) / 2d + reputationPoints(nodeStats), nodeStats);
+    }
+
+    private static double reputationPoints(NodeStatistics nodeStats) {
+        return REPUTATION_POINTS * min(1d, (double) nodeStats.getReputation() / REFERENCE_REPUTATION);
+    }
+
+    private static int penalize(double score, NodeStatistics nodeStats) {
+        return (int) Math.round(score / (1 + nodeStats.ethInvalidData.get()));
+    }
+}
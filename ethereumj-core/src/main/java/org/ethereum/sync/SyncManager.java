@@ -23,6 +23,8 @@ import org.ethereum.core.Blockchain;
 import org.ethereum.facade.SyncStatus;
 import org.ethereum.listener.CompositeEthereumListener;
 import org.ethereum.listener.EthereumListener;
+import org.ethereum.metrics.Gauge;
+import org.ethereum.metrics.Metrics;
 import org.ethereum.net.server.Channel;
 import org.ethereum.net.server.ChannelManager;
 import org.ethereum.util.ExecutorPipeline;
@@ -38,8 +40,10 @@ import java.text.DecimalFormatSymbols;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
@@ -112,6 +116,7 @@ public class SyncManager extends BlockDownloader {
     private long importStart;
     private EthereumListener.SyncState syncDoneType = EthereumListener.SyncState.COMPLETE;
     private ScheduledExecutorService logExecutor = Executors.newSingleThreadScheduledExecutor();
+    private final Map<String, Gauge> gauges = new HashMap<>();
     private LocalDateTime initRegularTime;
 
     private AtomicInteger blocksInMem = new AtomicInteger(0);
@@ -141,6 +146,12 @@ public class SyncManager extends BlockDownloader {
                     logger.error("Unexpected", e);
                 }
             }, 10, 10, TimeUnit.SECONDS);
+
+            gauge("sync.block.best", () -> blockchain.getBestBlock().getNumber());
+            gauge("sync.block.lastKnown", this::getLastKnownBlockNumber);
+            gauge("sync.queue.blocks", () -> blockQueue.size());
+            gauge("sync.queue.headers", () -> syncQueue == null ? 0 : syncQueue.getHeadersCount());
+            gauge("sync.peers.active", () -> pool.getActivePeers().size());
         }
 
         if (!config.isSyncEnabled()) {
@@ -456,9 +467,15 @@ public class SyncManager extends BlockDownloader {
                 syncQueueThread.join(10 * 1000);
             }
             if (config.isFastSyncEnabled()) fastSyncManager.close();
+            gauges.forEach(Metrics::remove);
         } catch (Exception e) {
             logger.warn("Problems closing SyncManager", e);
         }
         super.close();
     }
+
+    private void gauge(String name, Gauge gauge) {
+        gauges.put(name, gauge);
+        Metrics.gauge(name, gauge);
+    }
 }
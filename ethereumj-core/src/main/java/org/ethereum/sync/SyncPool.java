@@ -17,15 +17,18 @@
  */
 package org.ethereum.sync;
 
+import org.apache.commons.lang3.tuple.Pair;
 import org.ethereum.config.SystemProperties;
 import org.ethereum.core.Blockchain;
 import org.ethereum.listener.EthereumListener;
+import org.ethereum.manager.AdminInfo;
 import org.ethereum.net.message.ReasonCode;
 import org.ethereum.net.rlpx.Node;
 import org.ethereum.net.rlpx.discover.NodeHandler;
 import org.ethereum.net.rlpx.discover.NodeManager;
 import org.ethereum.net.server.Channel;
 import org.ethereum.net.server.ChannelManager;
+import org.ethereum.util.CollectionUtils;
 import org.ethereum.util.Utils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -75,6 +78,9 @@ public class SyncPool {
     @Autowired
     private NodeManager nodeManager;
 
+    @Autowired
+    private AdminInfo adminInfo;
+
     private ChannelManager channelManager;
 
     private Blockchain blockchain;
@@ -86,6 +92,8 @@ public class SyncPool {
     private Predicate<NodeHandler> nodesSelector;
     private ScheduledExecutorService logExecutor = Executors.newSingleThreadScheduledExecutor();
 
+    private long lastEvictTime = System.currentTimeMillis();
+
     @Autowired
     public SyncPool(final SystemProperties config) {
         this.config = config;
@@ -102,6 +110,8 @@ public class SyncPool {
                 heartBeat();
                 updateLowerUsefulDifficulty();
                 prepareActive();
+                scorePeers();
+                evictPeer();
                 fillUp();
                 cleanupActive();
             } catch (Throwable t) {
@@ -270,9 +280,9 @@ public class SyncPool {
         nodesInUse.add(Hex.toHexString(config.nodeId()));   // exclude home node
 
         List<NodeHandler> newNodes;
-        newNodes = nodeManager.getNodes(new NodeSelector(lowerUsefulDifficulty, nodesInUse), lackSize);
+        newNodes = getBestScored(new NodeSelector(lowerUsefulDifficulty, nodesInUse), lackSize);
         if (lackSize > 0 && newNodes.isEmpty()) {
-            newNodes = nodeManager.getNodes(new NodeSelector(BigInteger.ZERO, nodesInUse), lackSize);
+            newNodes = getBestScored(new NodeSelector(BigInteger.ZERO, nodesInUse), lackSize);
         }
 
         if (logger.isTraceEnabled()) {
@@ -284,6 +294,74 @@ public class SyncPool {
         }
     }
 
+    /**
+     * Nodes matching the selector are ordered by their {@link PeerScore},
+     * nodes with the same score are left in the total difficulty order
+     */
+    private List<NodeHandler> getBestScored(Predicate<NodeHandler> selector, int limit) {
+        List<NodeHandler> nodes = nodeManager.getNodes(selector, Integer.MAX_VALUE);
+        Map<NodeHandler, Integer> scores = new IdentityHashMap<>();
+        for (NodeHandler node : nodes) {
+            scores.put(node, PeerScore.of(node.getNodeStatistics()));
+        }
+        nodes.sort((n1, n2) -> scores.get(n2) - scores.get(n1));
+        return CollectionUtils.truncate(nodes, limit);
+    }
+
+    private void scorePeers() {
+        List<Pair<String, Integer>> scores = new ArrayList<>();
+        for (Channel channel : channelManager.getActivePeers()) {
+            scores.add(Pair.of(channel.getPeerId(), PeerScore.of(channel)));
+        }
+        scores.sort((s1, s2) -> s2.getRight() - s1.getRight());
+
+        Map<String, Integer> ret = new LinkedHashMap<>();
+        for (Pair<String, Integer> score : scores) {
+            ret.put(score.getLeft(), score.getRight());
+        }
+        if (adminInfo != null) adminInfo.setPeerScores(ret);
+    }
+
+    /**
+     * @return the lowest scored idle peer which has been connected long enough to be rated
+     * and whose score is below {@link SystemProperties#peerEvictScore()}, or null if there is no such peer
+     */
+    @Nullable
+    public Channel getEvictionCandidate() {
+        if (config.peerEvictInterval() <= 0) return null;
+
+        Channel ret = null;
+        int minScore = config.peerEvictScore();
+        for (Channel channel : channelManager.getActivePeers()) {
+            if (!channel.isIdle() || channel.getNodeStatistics().isPredefined()) continue;
+            if (channel.getSyncStats().millisSinceCreated() < config.peerEvictInterval() * 1000L) continue;
+
+            int score = PeerScore.of(channel);
+            if (score < minScore) {
+                minScore = score;
+                ret = channel;
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Drops the worst peer once per {@link SystemProperties#peerEvictInterval()}
+     * when there are no free slots, the slot is then taken by {@link #fillUp()}
+     */
+    private void evictPeer() {
+        if (config.peerEvictInterval() <= 0 ||
+                System.currentTimeMillis() - lastEvictTime < config.peerEvictInterval() * 1000L) return;
+        if (channelManager.getActivePeers().size() < config.maxActivePeers()) return;
+
+        lastEvictTime = System.currentTimeMillis();
+        Channel worst = getEvictionCandidate();
+        if (worst != null) {
+            logger.info("Peer {}: evicted due to low score {}", worst.getPeerIdShort(), PeerScore.of(worst));
+            channelManager.disconnect(worst, ReasonCode.TOO_MANY_PEERS);
+        }
+    }
+
     private synchronized void prepareActive() {
         List<Channel> managerActive = new ArrayList<>(channelManager.getActivePeers());
         if (logger.isTraceEnabled())
@@ -21,8 +21,7 @@ import org.ethereum.core.Block;
 import org.ethereum.core.BlockHeader;
 import org.ethereum.core.BlockHeaderWrapper;
 import org.ethereum.core.Blockchain;
-import org.ethereum.db.ByteArrayWrapper;
-import org.ethereum.util.ByteArrayMap;
+import org.ethereum.util.FastByteComparisons;
 import org.ethereum.validator.DependentBlockHeaderRule;
 
 import java.util.*;
@@ -146,42 +145,81 @@ public class SyncQueueImpl implements SyncQueueIfc {
         }
     }
 
+    /**
+     * Compact record of a queued header: the RLP encoded header is kept as is
+     * and decoded to {@link BlockHeaderWrapper} only when it is handed out,
+     * the parent hash is compared right in the encoded bytes
+     */
     class HeaderElement {
-        BlockHeaderWrapper header;
+        final long number;
+        final byte[] hash;
+        final byte[] nodeId;
+        final byte[] encoded;
         Block block;
         boolean exported;
 
+        // next element of the same level
+        HeaderElement sibling;
+        // the element is chained to the dark zone while it equals to the queue chainEpoch
+        int chainEpoch;
+
         public HeaderElement(BlockHeaderWrapper header) {
-            this.header = header;
+            this.number = header.getNumber();
+            this.hash = header.getHash();
+            this.nodeId = header.getNodeId();
+            this.encoded = header.getHeader().getEncoded();
+        }
+
+        public BlockHeaderWrapper getHeader() {
+            return new BlockHeaderWrapper(new BlockHeader(encoded), nodeId);
+        }
+
+        public long getNumber() {
+            return number;
+        }
+
+        boolean isChildOf(HeaderElement parent) {
+            // encoded header is a long RLP list starting with the parent hash item
+            int offset = (encoded[0] & 0xFF) - 0xF7 + 1;
+            int len = (encoded[offset] & 0xFF) - 0x80;
+            return FastByteComparisons.compareTo(encoded, offset + 1, len, parent.hash, 0, parent.hash.length) == 0;
+        }
+
+        boolean isChained() {
+            return chainEpoch == SyncQueueImpl.this.chainEpoch;
         }
 
         public HeaderElement getParent() {
-            Map<ByteArrayWrapper, HeaderElement> genHeaders = headers.get(header.getNumber() - 1);
-            if (genHeaders == null) return null;
-            return genHeaders.get(new ByteArrayWrapper(header.getHeader().getParentHash()));
+            for (HeaderElement el = level(number - 1); el != null; el = el.sibling) {
+                if (isChildOf(el)) return el;
+            }
+            return null;
         }
 
         public List<HeaderElement> getChildren() {
             List<HeaderElement> ret = new ArrayList<>();
-            Map<ByteArrayWrapper, HeaderElement> childGenHeaders = headers.get(header.getNumber() + 1);
-            if (childGenHeaders != null) {
-                for (HeaderElement child : childGenHeaders.values()) {
-                    if (Arrays.equals(child.header.getHeader().getParentHash(), header.getHash())) {
-                        ret.add(child);
-                    }
+            for (HeaderElement child = level(number + 1); child != null; child = child.sibling) {
+                if (child.isChildOf(this)) {
+                    ret.add(child);
                 }
             }
             return ret;
         }
     }
 
-    Map<Long, Map<ByteArrayWrapper, HeaderElement>> headers = new HashMap<>();
+    // levels of the header tree in a ring indexed by block number,
+    // the ring covers [minNum, maxNum] and each slot holds the first element of the level
+    private HeaderElement[] levels = new HeaderElement[1024];
 
     long minNum = Integer.MAX_VALUE;
     long maxNum = 0;
     long darkZoneNum = 0;
     Long endBlockNumber = null;
 
+    // the deepest element chained to the dark zone, null when it should be looked up again
+    private HeaderElement chainHead;
+    private int chainEpoch = 0;
+
     Random rnd = new Random(); // ;)
 
     DependentBlockHeaderRule parentHeaderValidator = null;
@@ -219,63 +257,124 @@ public class SyncQueueImpl implements SyncQueueIfc {
         }
         for (Block block : initBlocks) {
             addHeaderPriv(new BlockHeaderWrapper(block.getHeader(), null));
-            addBlock(block).exported = true;
+            // init blocks are already in the blockchain, only their headers are kept
+            findHeaderElement(block.getHeader()).exported = true;
         }
         darkZoneNum = initBlocks.get(0).getNumber();
+        chainHead = null;
     }
 
-    private void putGenHeaders(long num, Map<ByteArrayWrapper, HeaderElement> genHeaders) {
-        minNum = min(minNum, num);
-        maxNum = Math.max(maxNum, num);
-        headers.put(num, genHeaders);
+    private int slot(long num) {
+        return (int) (num & (levels.length - 1));
     }
 
-    List<HeaderElement> getLongestChain() {
-        Map<ByteArrayWrapper, HeaderElement> lastValidatedGen = headers.get(darkZoneNum);
-        assert lastValidatedGen.size() == 1;
-        HeaderElement lastHeader = lastValidatedGen.values().iterator().next();
-
-        Map<byte[], HeaderElement> chainedParents = new ByteArrayMap<>();
-        chainedParents.put(lastHeader.header.getHash(), lastHeader);
-
-        for(long curNum = darkZoneNum + 1; ; curNum++) {
-            // keep track of blocks chained to lastHeader until no children
-            Map<byte[], HeaderElement> chainedBlocks = new ByteArrayMap<>();
-            Map<ByteArrayWrapper, HeaderElement> curLevel = headers.get(curNum);
-            if (curLevel == null) break;
-            for (HeaderElement element : curLevel.values()) {
-                if (chainedParents.containsKey(element.header.getHeader().getParentHash())) {
-                    chainedBlocks.put(element.header.getHash(), element);
+    private HeaderElement level(long num) {
+        if (num < minNum || num > maxNum) return null;
+        return levels[slot(num)];
+    }
+
+    private void putLevel(long num, HeaderElement first) {
+        long newMin = min(minNum, num);
+        long newMax = Math.max(maxNum, num);
+        if (newMax - newMin >= levels.length) {
+            HeaderElement[] old = levels;
+            int capacity = old.length;
+            while (newMax - newMin >= capacity) capacity <<= 1;
+            levels = new HeaderElement[capacity];
+            for (long i = minNum; i <= maxNum; i++) {
+                levels[slot(i)] = old[(int) (i & (old.length - 1))];
+            }
+        }
+        minNum = newMin;
+        maxNum = newMax;
+        levels[slot(num)] = first;
+    }
+
+    private void removeFromLevel(HeaderElement element) {
+        HeaderElement first = level(element.number);
+        if (first == element) {
+            levels[slot(element.number)] = element.sibling;
+        } else {
+            for (HeaderElement el = first; el != null; el = el.sibling) {
+                if (el.sibling == element) {
+                    el.sibling = element.sibling;
+                    break;
                 }
             }
-            if (chainedBlocks.isEmpty()) break;
-            chainedParents = chainedBlocks;
         }
+        element.sibling = null;
+    }
+
+    private HeaderElement getChainHead() {
+        if (chainHead == null) {
+            HeaderElement lastHeader = level(darkZoneNum);
+            assert lastHeader != null && lastHeader.sibling == null;
+            chainEpoch++;
+            lastHeader.chainEpoch = chainEpoch;
+            chainHead = lastHeader;
+            extendChain(lastHeader);
+        }
+        return chainHead;
+    }
+
+    /**
+     * Marks descendants of the just chained element as chained level by level
+     * until a level brings no new chained elements
+     */
+    private void extendChain(HeaderElement from) {
+        for (long num = from.number + 1; ; num++) {
+            boolean extended = false;
+            for (HeaderElement el = level(num); el != null; el = el.sibling) {
+                if (el.isChained()) continue;
+                HeaderElement parent = el.getParent();
+                if (parent != null && parent.isChained()) {
+                    el.chainEpoch = chainEpoch;
+                    extended = true;
+                    if (num > chainHead.number) chainHead = el;
+                }
+            }
+            if (!extended) break;
+        }
+    }
+
+    List<HeaderElement> getLongestChain() {
+        HeaderElement head = getChainHead();
 
         // reconstruct the chain back from the last block in the longest path
-        List<HeaderElement> ret = new ArrayList<>();
-        for (HeaderElement el = chainedParents.values().iterator().next(); el != lastHeader.getParent(); el = el.getParent()) {
-            ret.add(0, el);
+        List<HeaderElement> ret = new ArrayList<>((int) (head.number - darkZoneNum + 1));
+        for (HeaderElement el = head; ; el = el.getParent()) {
+            ret.add(el);
+            if (el.number == darkZoneNum) break;
         }
+        Collections.reverse(ret);
         return ret;
     }
 
+    private int getLongestChainSize() {
+        return (int) (getChainHead().number - darkZoneNum + 1);
+    }
+
     private boolean hasGaps() {
-        List<HeaderElement> longestChain = getLongestChain();
-        return longestChain.get(longestChain.size() - 1).header.getNumber() < maxNum;
+        return getChainHead().number < maxNum;
     }
 
     private void trimChain() {
-        List<HeaderElement> longestChain = getLongestChain();
-        trimChainImpl(longestChain);
+        if (getLongestChainSize() > MAX_CHAIN_LEN) {
+            trimChainImpl(getLongestChain());
+        }
     }
 
     private void trimChainImpl(List<HeaderElement> longestChain) {
         if (longestChain.size() > MAX_CHAIN_LEN) {
-            long newTrimNum = getLongestChain().get(longestChain.size() - MAX_CHAIN_LEN).header.getNumber();
+            long newTrimNum = longestChain.get(longestChain.size() - MAX_CHAIN_LEN).number;
             for (int i = 0; darkZoneNum < newTrimNum; darkZoneNum++, i++) {
-                ByteArrayWrapper wHash = new ByteArrayWrapper(longestChain.get(i).header.getHash());
-                putGenHeaders(darkZoneNum, Collections.singletonMap(wHash, longestChain.get(i)));
+                HeaderElement element = longestChain.get(i);
+                for (HeaderElement el = level(darkZoneNum); el != null; el = el.sibling) {
+                    // descendants of a dropped chained fork are not chained anymore
+                    if (el != element && el.isChained()) chainHead = null;
+                }
+                element.sibling = null;
+                putLevel(darkZoneNum, element);
             }
             darkZoneNum--;
         }
@@ -283,11 +382,10 @@ public class SyncQueueImpl implements SyncQueueIfc {
 
     private void trimExported() {
         for (; minNum < darkZoneNum; minNum++) {
-            Map<ByteArrayWrapper, HeaderElement> genHeaders = headers.get(minNum);
-            assert genHeaders.size() == 1;
-            HeaderElement headerElement = genHeaders.values().iterator().next();
+            HeaderElement headerElement = level(minNum);
+            assert headerElement.sibling == null;
             if (headerElement.exported) {
-                headers.remove(minNum);
+                levels[slot(minNum)] = null;
             } else {
                 break;
             }
@@ -305,17 +403,23 @@ public class SyncQueueImpl implements SyncQueueIfc {
 
     private boolean addHeaderPriv(BlockHeaderWrapper header) {
         long num = header.getNumber();
-        Map<ByteArrayWrapper, HeaderElement> genHeaders = headers.get(num);
-        if (genHeaders == null) {
-            genHeaders = new HashMap<>();
-            putGenHeaders(num, genHeaders);
+        HeaderElement first = level(num);
+        for (HeaderElement el = first; el != null; el = el.sibling) {
+            if (Arrays.equals(el.hash, header.getHash())) return false;
         }
-        ByteArrayWrapper wHash = new ByteArrayWrapper(header.getHash());
-        HeaderElement headerElement = genHeaders.get(wHash);
-        if (headerElement != null) return false;
 
-        headerElement = new HeaderElement(header);
-        genHeaders.put(wHash, headerElement);
+        HeaderElement headerElement = new HeaderElement(header);
+        headerElement.sibling = first;
+        putLevel(num, headerElement);
+
+        if (chainHead != null) {
+            HeaderElement parent = headerElement.getParent();
+            if (parent != null && parent.isChained()) {
+                headerElement.chainEpoch = chainEpoch;
+                if (num > chainHead.number) chainHead = headerElement;
+                extendChain(headerElement);
+            }
+        }
 
         return true;
     }
@@ -330,8 +434,7 @@ public class SyncQueueImpl implements SyncQueueIfc {
 
         long startNumber;
         if (hasGaps()) {
-            List<HeaderElement> longestChain = getLongestChain();
-            startNumber = longestChain.get(longestChain.size() - 1).header.getNumber();
+            startNumber = getChainHead().number;
             boolean reverse = rnd.nextBoolean();
             ret.add(new HeadersRequestImpl(startNumber, MAX_CHAIN_LEN, reverse));
             startNumber += reverse ? 1 : MAX_CHAIN_LEN;
@@ -351,7 +454,7 @@ public class SyncQueueImpl implements SyncQueueIfc {
     }
 
     private HeadersRequestImpl getNextReq(long startFrom, int maxCount) {
-        while(headers.containsKey(startFrom)) startFrom++;
+        while(level(startFrom) != null) startFrom++;
         if (endBlockNumber != null && maxCount > endBlockNumber - startFrom + 1) {
             maxCount = (int) (endBlockNumber - startFrom + 1);
         }
@@ -373,10 +476,9 @@ public class SyncQueueImpl implements SyncQueueIfc {
             addHeader(header);
         }
 
-        List<HeaderElement> longestChain = getLongestChain();
-
         // do not run the payload if chain is too short
-        if (longestChain.size() > MAX_CHAIN_LEN) {
+        if (getLongestChainSize() > MAX_CHAIN_LEN) {
+            List<HeaderElement> longestChain = getLongestChain();
             ValidatedHeaders result = validateChain(longestChain);
             if (result.isValid()) {
                 trimChainImpl(longestChain);
@@ -398,13 +500,14 @@ public class SyncQueueImpl implements SyncQueueIfc {
         if (parentHeaderValidator == null)
             return ValidatedHeaders.Empty;
 
+        BlockHeaderWrapper parent = chain.isEmpty() ? null : chain.get(0).getHeader();
         for (int i = 1; i < chain.size(); i++) {
-            BlockHeaderWrapper parent = chain.get(i - 1).header;
-            BlockHeaderWrapper header = chain.get(i).header;
+            BlockHeaderWrapper header = chain.get(i).getHeader();
             if (!parentHeaderValidator.validate(header.getHeader(), parent.getHeader())) {
                 return new ValidatedHeaders(Collections.singletonList(header), false,
                         parentHeaderValidator.getErrors().isEmpty() ? "" : parentHeaderValidator.getErrors().get(0));
             }
+            parent = header;
         }
 
         return ValidatedHeaders.Empty;
@@ -420,25 +523,18 @@ public class SyncQueueImpl implements SyncQueueIfc {
         HeaderElement head = chain.get(chain.size() - 1);
         for (int i = chain.size() - 1; i >= 0; i--) {
             HeaderElement el = chain.get(i);
-            if (el.header.getNumber() < startFrom) break; // erase up to startFrom number
-            Map<ByteArrayWrapper, HeaderElement> gen = headers.get(el.header.getNumber());
-            gen.remove(new ByteArrayWrapper(el.header.getHash()));
-            // clean empty gens
-            if (gen.isEmpty()) {
-                headers.remove(el.header.getNumber());
-            }
+            if (el.number < startFrom) break; // erase up to startFrom number
+            removeFromLevel(el);
         }
+        chainHead = null;
 
         // adjust maxNum
-        if (head.header.getNumber() == maxNum) {
-            Map<ByteArrayWrapper, HeaderElement> lastValidatedGen = headers.get(darkZoneNum);
-            assert lastValidatedGen.size() == 1;
-            long maxNotEmptyGen = lastValidatedGen.values().iterator().next().header.getNumber();
+        if (head.number == maxNum) {
+            long maxNotEmptyGen = darkZoneNum;
 
             // find new maxNum after chain has been erased
-            for (long num = head.header.getNumber(); num >= darkZoneNum; num--) {
-                Map<ByteArrayWrapper, HeaderElement> gen = headers.get(num);
-                if (gen != null && !gen.isEmpty() && num > maxNotEmptyGen) {
+            for (long num = head.number; num > darkZoneNum; num--) {
+                if (level(num) != null) {
                     maxNotEmptyGen = num;
                     break;
                 }
@@ -458,13 +554,10 @@ public class SyncQueueImpl implements SyncQueueIfc {
 
         outer:
         for (long i = minNum; i <= maxNum; i++) {
-            Map<ByteArrayWrapper, HeaderElement> gen = headers.get(i);
-            if (gen != null) {
-                for (HeaderElement element : gen.values()) {
-                    if (element.block == null) {
-                        ret.getBlockHeaders().add(element.header);
-                        if (ret.getBlockHeaders().size() >= maxSize) break outer;
-                    }
+            for (HeaderElement element = level(i); element != null; element = element.sibling) {
+                if (element.block == null && !element.exported) {
+                    ret.getBlockHeaders().add(element.getHeader());
+                    if (ret.getBlockHeaders().size() >= maxSize) break outer;
                 }
             }
         }
@@ -472,14 +565,16 @@ public class SyncQueueImpl implements SyncQueueIfc {
     }
 
     HeaderElement findHeaderElement(BlockHeader bh) {
-        Map<ByteArrayWrapper, HeaderElement> genHeaders = headers.get(bh.getNumber());
-        if (genHeaders == null) return null;
-        return genHeaders.get(new ByteArrayWrapper(bh.getHash()));
+        byte[] hash = bh.getHash();
+        for (HeaderElement el = level(bh.getNumber()); el != null; el = el.sibling) {
+            if (Arrays.equals(el.hash, hash)) return el;
+        }
+        return null;
     }
 
     private HeaderElement addBlock(Block block) {
         HeaderElement headerElement = findHeaderElement(block.getHeader());
-        if (headerElement != null) {
+        if (headerElement != null && !headerElement.exported) {
             headerElement.block = block;
         }
         return headerElement;
@@ -496,18 +591,22 @@ public class SyncQueueImpl implements SyncQueueIfc {
     private List<Block> exportBlocks() {
         List<Block> ret = new ArrayList<>();
         for (long i = minNum; i <= maxNum; i++) {
-            Map<ByteArrayWrapper, HeaderElement> gen = headers.get(i);
-            if (gen == null) break;
+            HeaderElement first = level(i);
+            if (first == null) break;
 
             boolean hasAny = false;
-            for (HeaderElement element : gen.values()) {
+            for (HeaderElement element = first; element != null; element = element.sibling) {
+                if (element.exported) {
+                    hasAny = true;
+                    continue;
+                }
                 HeaderElement parent = element.getParent();
                 if (element.block != null && (i == minNum || parent != null && parent.exported)) {
-                    if (!element.exported) {
-                        exportNewBlock(element.block);
-                        ret.add(element.block);
-                        element.exported = true;
-                    }
+                    exportNewBlock(element.block);
+                    ret.add(element.block);
+                    element.exported = true;
+                    // exported block is not needed anymore, its header is enough to chain the children
+                    element.block = null;
                     hasAny = true;
                 }
             }
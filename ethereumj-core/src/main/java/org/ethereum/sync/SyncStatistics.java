@@ -24,11 +24,19 @@ package org.ethereum.sync;
  * @since 20.08.2015
  */
 public class SyncStatistics {
+    // weight of the latest sample in the rolling averages
+    private static final double AVG_WEIGHT = 0.2;
+
+    private final long createdAt = System.currentTimeMillis();
     private long updatedAt;
     private long blocksCount;
     private long headersCount;
     private int headerBunchesCount;
 
+    // rolling averages, negative until the first sample
+    private volatile double avgResponseTime = -1;
+    private volatile double avgThroughput = -1;
+
     public SyncStatistics() {
         reset();
     }
@@ -55,6 +63,45 @@ public class SyncStatistics {
         updatedAt = System.currentTimeMillis();
     }
 
+    /**
+     * Accounts response which is useful by its latency only, like headers
+     * @param responseTime millis passed since the request
+     */
+    public synchronized void addResponse(long responseTime) {
+        avgResponseTime = avg(avgResponseTime, responseTime);
+    }
+
+    /**
+     * Accounts response delivering {@code itemsCount} sync items: block bodies, state nodes, receipts
+     * @param responseTime millis passed since the request
+     */
+    public synchronized void addResponse(long responseTime, long itemsCount) {
+        addResponse(responseTime);
+        avgThroughput = avg(avgThroughput, itemsCount * 1000d / Math.max(responseTime, 1));
+    }
+
+    private static double avg(double avg, double sample) {
+        return avg < 0 ? sample : avg + AVG_WEIGHT * (sample - avg);
+    }
+
+    /**
+     * @return rolling average of the response time in millis, or -1 if there were no responses
+     */
+    public double getAvgResponseTime() {
+        return avgResponseTime;
+    }
+
+    /**
+     * @return rolling average of the sync items delivered per second, or -1 if nothing was delivered
+     */
+    public double getAvgThroughput() {
+        return avgThroughput;
+    }
+
+    public long millisSinceCreated() {
+        return System.currentTimeMillis() - createdAt;
+    }
+
     public long getBlocksCount() {
         return blocksCount;
     }
@@ -714,6 +714,7 @@ public class TrieImpl implements Trie<byte[]> {
         if (node.getType() == NodeType.BranchNode) {
             if (node.branchNodeGetValue() != null)
                 scanAction.doOnValue(node.hash, node, k.toNormal(), node.branchNodeGetValue());
+            resolveChildren(node);
             for (int i = 0; i < 16; i++) {
                 scanTree(node.branchNodeGetChild(i), k.concat(TrieKey.singleHex(i)), scanAction);
             }
@@ -725,6 +726,29 @@ public class TrieImpl implements Trie<byte[]> {
     }
 
 
+    /**
+     * Fetches branch node children referenced by hash with a single {@link Source#getBatch(List)}
+     * call instead of one lookup per child. Children missing in the source are left
+     * unresolved and fail as usual when accessed
+     */
+    private void resolveChildren(Node branch) {
+        List<Node> unresolved = new ArrayList<>(16);
+        List<byte[]> hashes = new ArrayList<>(16);
+        for (int i = 0; i < 16; i++) {
+            Node child = branch.branchNodeGetChild(i);
+            if (child != null && child.hash != null && child.rlp == null && child.parsedRlp == null) {
+                unresolved.add(child);
+                hashes.add(child.hash);
+            }
+        }
+        if (unresolved.size() < 2) return;
+
+        List<byte[]> rlps = cache.getBatch(hashes);
+        for (int i = 0; i < unresolved.size(); i++) {
+            unresolved.get(i).rlp = rlps.get(i);
+        }
+    }
+
     private static String hash2str(byte[] hash, boolean shortHash) {
         String ret = Hex.toHexString(hash);
         return "0x" + (shortHash ? ret.substring(0,8) : ret);
@@ -0,0 +1,296 @@
+/*
+ * Copyright (c) [2016] [ <ether.camp> ]
+ * This file is part of the ethereumJ library.
+ *
+ * The ethereumJ library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The ethereumJ library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with the ethereumJ library. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.util;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Map with byte[] keys optimized for the keys of a fixed length, e.g. 32 byte hashes or 20 byte addresses. <br>
+ *
+ * Keys of that length are copied into a single flat array of an open addressing table with linear probing,
+ * thus neither {@link org.ethereum.db.ByteArrayWrapper} nor map entry is allocated per key,
+ * the hash is taken from the key bytes directly (first and last 8 bytes) which suits well
+ * for Keccak hashes and doesn't degrade on big-endian numbers. Keys of other lengths are
+ * kept in a regular {@link ByteArrayMap}. <br>
+ *
+ * Key arrays returned by iterators are copies. The map is not thread safe
+ */
+public class FlatByteArrayMap<V> extends AbstractMap<byte[], V> {
+
+    private static final byte EMPTY = 0;
+    private static final byte FULL = 1;
+    private static final byte REMOVED = 2;
+
+    private static final int MIN_CAPACITY = 16;
+
+    private final int keyLength;
+
+    private byte[] keys;
+    private Object[] values;
+    private byte[] states;
+    private int mask;
+
+    private int size;
+    // full and removed slots
+    private int used;
+
+    private ByteArrayMap<V> other;
+
+    private Set<Entry<byte[], V>> entrySet;
+
+    public FlatByteArrayMap(int keyLength) {
+        this(keyLength, MIN_CAPACITY);
+    }
+
+    public FlatByteArrayMap(int keyLength, int expectedSize) {
+        if (keyLength < 8) throw new IllegalArgumentException("Key length should be at least 8 bytes");
+        this.keyLength = keyLength;
+        allocate(capacityFor(expectedSize));
+    }
+
+    private static int capacityFor(int expectedSize) {
+        int capacity = MIN_CAPACITY;
+        while (capacity * 7 < expectedSize * 10) capacity <<= 1;
+        return capacity;
+    }
+
+    private void allocate(int capacity) {
+        keys = new byte[capacity * keyLength];
+        values = new Object[capacity];
+        states = new byte[capacity];
+        mask = capacity - 1;
+        used = 0;
+    }
+
+    private int hash(byte[] b, int off) {
+        long h = readLong(b, off) ^ readLong(b, off + keyLength - 8);
+        h *= 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    private static long readLong(byte[] b, int off) {
+        return (b[off] & 0xFFL) << 56 | (b[off + 1] & 0xFFL) << 48 | (b[off + 2] & 0xFFL) << 40 |
+                (b[off + 3] & 0xFFL) << 32 | (b[off + 4] & 0xFFL) << 24 | (b[off + 5] & 0xFFL) << 16 |
+                (b[off + 6] & 0xFFL) << 8 | (b[off + 7] & 0xFFL);
+    }
+
+    private boolean keyEquals(int slot, byte[] key) {
+        return FastByteComparisons.compareTo(keys, slot * keyLength, keyLength, key, 0, keyLength) == 0;
+    }
+
+    /**
+     * @return slot of the key or {@code -(insertion slot) - 1} if the key is absent
+     */
+    private int find(byte[] key) {
+        int slot = hash(key, 0) & mask;
+        int firstRemoved = -1;
+        while (true) {
+            byte state = states[slot];
+            if (state == EMPTY) {
+                return -(firstRemoved >= 0 ? firstRemoved : slot) - 1;
+            } else if (state == FULL) {
+                if (keyEquals(slot, key)) return slot;
+            } else if (firstRemoved < 0) {
+                firstRemoved = slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    private boolean isFlat(Object key) {
+        return ((byte[]) key).length == keyLength;
+    }
+
+    @Override
+    public int size() {
+        return size + (other == null ? 0 : other.size());
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        if (!isFlat(key)) return other != null && other.containsKey(key);
+        return find((byte[]) key) >= 0;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V get(Object key) {
+        if (!isFlat(key)) return other == null ? null : other.get(key);
+        int slot = find((byte[]) key);
+        return slot >= 0 ? (V) values[slot] : null;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V put(byte[] key, V value) {
+        if (!isFlat(key)) {
+            if (other == null) other = new ByteArrayMap<>();
+            return other.put(key, value);
+        }
+
+        int slot = find(key);
+        if (slot >= 0) {
+            V old = (V) values[slot];
+            values[slot] = value;
+            return old;
+        }
+
+        slot = -slot - 1;
+        if (states[slot] == EMPTY) used++;
+        System.arraycopy(key, 0, keys, slot * keyLength, keyLength);
+        values[slot] = value;
+        states[slot] = FULL;
+        size++;
+
+        if (used * 10 > states.length * 7) {
+            rehash(size * 10 > states.length * 4 ? states.length << 1 : states.length);
+        }
+        return null;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V remove(Object key) {
+        if (!isFlat(key)) return other == null ? null : other.remove(key);
+
+        int slot = find((byte[]) key);
+        if (slot < 0) return null;
+
+        V old = (V) values[slot];
+        removeSlot(slot);
+        return old;
+    }
+
+    private void removeSlot(int slot) {
+        values[slot] = null;
+        states[slot] = REMOVED;
+        size--;
+    }
+
+    private void rehash(int capacity) {
+        byte[] oldKeys = keys;
+        Object[] oldValues = values;
+        byte[] oldStates = states;
+
+        allocate(capacity);
+        for (int i = 0; i < oldStates.length; i++) {
+            if (oldStates[i] != FULL) continue;
+
+            int slot = hash(oldKeys, i * keyLength) & mask;
+            while (states[slot] != EMPTY) slot = (slot + 1) & mask;
+
+            System.arraycopy(oldKeys, i * keyLength, keys, slot * keyLength, keyLength);
+            values[slot] = oldValues[i];
+            states[slot] = FULL;
+            used++;
+        }
+    }
+
+    @Override
+    public void clear() {
+        if (used > 0) {
+            Arrays.fill(values, null);
+            Arrays.fill(states, EMPTY);
+            used = 0;
+        }
+        size = 0;
+        other = null;
+    }
+
+    @Override
+    public Set<Entry<byte[], V>> entrySet() {
+        if (entrySet == null) {
+            entrySet = new AbstractSet<Entry<byte[], V>>() {
+                @Override
+                public Iterator<Entry<byte[], V>> iterator() {
+                    return new EntryIterator();
+                }
+
+                @Override
+                public int size() {
+                    return FlatByteArrayMap.this.size();
+                }
+
+                @Override
+                public void clear() {
+                    FlatByteArrayMap.this.clear();
+                }
+            };
+        }
+        return entrySet;
+    }
+
+    private class EntryIterator implements Iterator<Entry<byte[], V>> {
+        private final byte[] iterStates = states;
+        private int next = -1;
+        private int current = -1;
+        private Iterator<Entry<byte[], V>> otherIt;
+
+        EntryIterator() {
+            advance();
+        }
+
+        private void advance() {
+            next++;
+            while (next < iterStates.length && iterStates[next] != FULL) next++;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (next < iterStates.length) return true;
+            if (otherIt == null && other != null) otherIt = other.entrySet().iterator();
+            return otherIt != null && otherIt.hasNext();
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public Entry<byte[], V> next() {
+            if (iterStates != states) throw new IllegalStateException("Map was rehashed during iteration");
+
+            if (next < iterStates.length) {
+                current = next;
+                advance();
+                byte[] key = new byte[keyLength];
+                System.arraycopy(keys, current * keyLength, key, 0, keyLength);
+                return new SimpleImmutableEntry<>(key, (V) values[current]);
+            }
+
+            current = -1;
+            if (!hasNext()) throw new NoSuchElementException();
+            return otherIt.next();
+        }
+
+        @Override
+        public void remove() {
+            if (current >= 0) {
+                if (states[current] != FULL) throw new IllegalStateException();
+                removeSlot(current);
+            } else if (otherIt != null) {
+                otherIt.remove();
+            } else {
+                throw new IllegalStateException();
+            }
+        }
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright (c) [2016] [ <ether.camp> ]
+ * This file is part of the ethereumJ library.
+ *
+ * The ethereumJ library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The ethereumJ library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with the ethereumJ library. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.util;
+
+import java.util.AbstractSet;
+import java.util.Iterator;
+
+/**
+ * Set of byte[] optimized for the elements of a fixed length,
+ * see {@link FlatByteArrayMap} for details
+ */
+public class FlatByteArraySet extends AbstractSet<byte[]> {
+
+    private final FlatByteArrayMap<Boolean> map;
+
+    public FlatByteArraySet(int keyLength) {
+        map = new FlatByteArrayMap<>(keyLength);
+    }
+
+    public FlatByteArraySet(int keyLength, int expectedSize) {
+        map = new FlatByteArrayMap<>(keyLength, expectedSize);
+    }
+
+    @Override
+    public int size() {
+        return map.size();
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return map.containsKey(o);
+    }
+
+    @Override
+    public boolean add(byte[] bytes) {
+        return map.put(bytes, Boolean.TRUE) == null;
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        return map.remove(o) != null;
+    }
+
+    @Override
+    public void clear() {
+        map.clear();
+    }
+
+    @Override
+    public Iterator<byte[]> iterator() {
+        return map.keySet().iterator();
+    }
+}
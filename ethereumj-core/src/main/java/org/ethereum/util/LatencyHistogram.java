@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) [2016] [ <ether.camp> ]
+ * This file is part of the ethereumJ library.
+ *
+ * The ethereumJ library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The ethereumJ library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with the ethereumJ library. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.util;
+
+import org.ethereum.metrics.Metric;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock free histogram of operation latencies. <br>
+ *
+ * Buckets are powers of two of microseconds: [0, 1), [1, 2), [2, 4) ... [2^30, inf),
+ * thus percentiles are precise within factor of two which is enough
+ * to tell a cache hit from a disk read
+ */
+public class LatencyHistogram implements Metric {
+
+    private static final int BUCKETS = 32;
+
+    private final String name;
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+
+    public LatencyHistogram(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Records operation which started at {@code startNanos} obtained by {@link System#nanoTime()}
+     */
+    public void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    public void record(long nanos) {
+        long micros = Math.max(nanos, 0) / 1000;
+        int bucket = Math.min(64 - Long.numberOfLeadingZeros(micros), BUCKETS - 1);
+        buckets.incrementAndGet(bucket);
+        count.increment();
+        totalNanos.add(nanos);
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public long getTotalNanos() {
+        return totalNanos.sum();
+    }
+
+    public long getMeanMicros() {
+        long cnt = getCount();
+        return cnt == 0 ? 0 : totalNanos.sum() / cnt / 1000;
+    }
+
+    /**
+     * @param percentile value in the range (0, 100]
+     * @return upper bound of the bucket the percentile falls into, in microseconds
+     */
+    public long getPercentileMicros(double percentile) {
+        long cnt = 0;
+        long[] snapshot = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = buckets.get(i);
+            cnt += snapshot[i];
+        }
+        if (cnt == 0) return 0;
+
+        long threshold = (long) Math.ceil(cnt * percentile / 100);
+        long acc = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            acc += snapshot[i];
+            if (acc >= threshold) return 1L << i;
+        }
+        return 1L << (BUCKETS - 1);
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets.set(i, 0);
+        }
+        count.reset();
+        totalNanos.reset();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: count %d, mean %dus, p50 %dus, p99 %dus, p99.9 %dus", name, getCount(),
+                getMeanMicros(), getPercentileMicros(50), getPercentileMicros(99), getPercentileMicros(99.9));
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright (c) [2016] [ <ether.camp> ]
+ * This file is part of the ethereumJ library.
+ *
+ * The ethereumJ library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The ethereumJ library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with the ethereumJ library. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.util;
+
+import java.util.Arrays;
+
+/**
+ * Bounded probabilistic set of hashes, like transaction hashes known to a peer. <br>
+ *
+ * Two bloom filters are kept: new hashes are added to the current one and once it
+ * holds {@code capacity} hashes it replaces the previous one, thus the filter
+ * remembers at least the last {@code capacity} hashes and never takes more than
+ * {@code 2 * capacity * BITS_PER_HASH} bits. <br>
+ *
+ * Hashes are expected to be uniformly distributed (e.g. Keccak output) and at least
+ * 16 bytes long, so the bit positions are taken right from the hash bytes
+ */
+public class RollingHashFilter {
+
+    private static final int BITS_PER_HASH = 10;
+    private static final int HASH_FUNCTIONS = 7;
+
+    private final int capacity;
+    private final int bits;
+
+    private long[] current;
+    private long[] previous;
+    private int count;
+
+    public RollingHashFilter(int capacity) {
+        this.capacity = capacity;
+        this.bits = ((capacity * BITS_PER_HASH + 63) / 64) * 64;
+        this.current = new long[bits / 64];
+        this.previous = new long[bits / 64];
+    }
+
+    public synchronized void add(byte[] hash) {
+        if (contains(current, hash)) return;
+
+        long h1 = getLong(hash, 0), h2 = getLong(hash, 8);
+        for (int i = 0; i < HASH_FUNCTIONS; i++) {
+            int bit = bit(h1, h2, i);
+            current[bit >>> 6] |= 1L << bit;
+        }
+
+        if (++count >= capacity) {
+            long[] recycled = previous;
+            Arrays.fill(recycled, 0);
+            previous = current;
+            current = recycled;
+            count = 0;
+        }
+    }
+
+    /**
+     * @return {@code false} if the hash was not added for sure,
+     *         {@code true} if it was added recently or on a false positive
+     */
+    public synchronized boolean mightContain(byte[] hash) {
+        return contains(current, hash) || contains(previous, hash);
+    }
+
+    private boolean contains(long[] filter, byte[] hash) {
+        long h1 = getLong(hash, 0), h2 = getLong(hash, 8);
+        for (int i = 0; i < HASH_FUNCTIONS; i++) {
+            int bit = bit(h1, h2, i);
+            if ((filter[bit >>> 6] & (1L << bit)) == 0) return false;
+        }
+        return true;
+    }
+
+    private int bit(long h1, long h2, int i) {
+        return (int) (((h1 + i * h2) & Long.MAX_VALUE) % bits);
+    }
+
+    private static long getLong(byte[] b, int off) {
+        long ret = 0;
+        for (int i = off; i < off + 8; i++) {
+            ret = (ret << 8) | (b[i] & 0xFF);
+        }
+        return ret;
+    }
+}
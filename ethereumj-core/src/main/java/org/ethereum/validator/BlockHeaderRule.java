@@ -20,6 +20,8 @@ package org.ethereum.validator;
 import org.ethereum.core.BlockHeader;
 import org.slf4j.Logger;
 
+import java.util.List;
+
 /**
  * Parent class for {@link BlockHeader} validators
  *
@@ -40,6 +42,22 @@ public abstract class BlockHeaderRule extends AbstractValidationRule {
      */
     abstract public ValidationResult validate(BlockHeader header);
 
+    /**
+     * Runs validation of a batch of headers, a rule may process the whole batch at once
+     *
+     * @param headers block headers
+     * @return result of the first header failed validation or {@link #Success}
+     */
+    public ValidationResult validateBatch(List<BlockHeader> headers) {
+        for (BlockHeader header : headers) {
+            ValidationResult result = validate(header);
+            if (!result.success) {
+                return result;
+            }
+        }
+        return Success;
+    }
+
     protected ValidationResult fault(String error) {
         return new ValidationResult(false, error);
     }
@@ -54,6 +72,14 @@ public abstract class BlockHeaderRule extends AbstractValidationRule {
         return result.success;
     }
 
+    public boolean validateBatchAndLog(List<BlockHeader> headers, Logger logger) {
+        ValidationResult result = validateBatch(headers);
+        if (!result.success && logger.isErrorEnabled()) {
+            logger.warn("{} invalid {}", getEntityClass(), result.error);
+        }
+        return result.success;
+    }
+
     /**
      * Validation result is either success or fault
      */
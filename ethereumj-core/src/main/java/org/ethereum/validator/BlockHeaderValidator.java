@@ -51,4 +51,15 @@ public class BlockHeaderValidator extends BlockHeaderRule {
         }
         return Success;
     }
+
+    @Override
+    public ValidationResult validateBatch(List<BlockHeader> headers) {
+        for (BlockHeaderRule rule : rules) {
+            ValidationResult result = rule.validateBatch(headers);
+            if (!result.success) {
+                return result;
+            }
+        }
+        return Success;
+    }
 }
@@ -23,11 +23,14 @@ import org.ethereum.core.BlockHeader;
 import org.ethereum.core.BlockSummary;
 import org.ethereum.listener.CompositeEthereumListener;
 import org.ethereum.listener.EthereumListenerAdapter;
+import org.ethereum.mine.Ethash;
 import org.ethereum.mine.EthashValidationHelper;
 import org.ethereum.util.FastByteComparisons;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Random;
 
 import static org.ethereum.validator.EthashRule.ChainType.main;
@@ -90,20 +93,30 @@ public class EthashRule extends BlockHeaderRule {
 
     // two most common settings
     public static EthashRule createRegular(SystemProperties systemProperties, CompositeEthereumListener listener) {
-        return new EthashRule(Mode.parse(systemProperties.getEthashMode(), mixed), main, listener);
+        return new EthashRule(Mode.parse(systemProperties.getEthashMode(), mixed), main, listener, systemProperties);
     }
 
     public static EthashRule createReverse(SystemProperties systemProperties) {
-        return new EthashRule(Mode.parse(systemProperties.getEthashMode(), mixed), reverse, null);
+        return new EthashRule(Mode.parse(systemProperties.getEthashMode(), mixed), reverse, null, systemProperties);
     }
 
     public EthashRule(Mode mode, ChainType chain, CompositeEthereumListener listener) {
+        this(mode, chain, listener, null);
+    }
+
+    /**
+     * @param config source of ethash cache settings, defaults are used if it's null
+     */
+    public EthashRule(Mode mode, ChainType chain, CompositeEthereumListener listener, SystemProperties config) {
         this.mode = mode;
         this.chain = chain;
 
         if (this.mode != fake) {
-            this.ethashHelper = new EthashValidationHelper(
-                    chain == reverse ? EthashValidationHelper.CacheOrder.reverse : EthashValidationHelper.CacheOrder.direct);
+            EthashValidationHelper.CacheOrder order =
+                    chain == reverse ? EthashValidationHelper.CacheOrder.reverse : EthashValidationHelper.CacheOrder.direct;
+            this.ethashHelper = config == null ? new EthashValidationHelper(order) :
+                    new EthashValidationHelper(order, config.getEthashCachedEpochs(), config.getEthashVerifiedCacheSize(),
+                            Ethash.fileCacheEnabled ? config.ethashDir() : null);
 
             if (this.chain == main && listener != null) {
                 listener.addListener(new EthereumListenerAdapter() {
@@ -139,24 +152,71 @@ public class EthashRule extends BlockHeaderRule {
             return powRule.validate(header);
 
         try {
-            Pair<byte[], byte[]> res = ethashHelper.ethashWorkFor(header, header.getNonce(), true);
-            // no cache for the epoch? fallback into fake rule
-            if (res == null) {
-                return powRule.validate(header);
-            }
+            return checkWork(header, ethashHelper.ethashWorkFor(header, header.getNonce(), true));
+        } catch (Exception e) {
+            logger.error("Failed to verify ethash work for block {}", header.getShortDescr(), e);
+            return fault("Failed to verify ethash work for block " + header.getShortDescr());
+        }
+    }
 
-            if (!FastByteComparisons.equal(res.getLeft(), header.getMixHash())) {
-                return fault(String.format("#%d: mixHash doesn't match", header.getNumber()));
-            }
+    /**
+     * Same as {@link #validate(BlockHeader)} for each header,
+     * ethash work of the headers picked for the full check is calculated on all cores
+     */
+    @Override
+    public ValidationResult validateBatch(List<BlockHeader> headers) {
 
-            if (FastByteComparisons.compareTo(res.getRight(), 0, 32, header.getPowBoundary(), 0, 32) > 0) {
-                return fault(String.format("#%d: proofValue > header.getPowBoundary()", header.getNumber()));
-            }
+        if (ethashHelper == null)
+            return super.validateBatch(headers);
 
+        List<BlockHeader> toVerify = new ArrayList<>(headers.size());
+        for (BlockHeader header : headers) {
+            if (header.isGenesis())
+                continue;
+
+            if (chain.isSide())
+                ethashHelper.preCache(header.getNumber());
+
+            if (mode == mixed && !syncDone && rnd.nextInt(100) % MIX_DENOMINATOR > 0) {
+                ValidationResult result = powRule.validate(header);
+                if (!result.success) return result;
+            } else {
+                toVerify.add(header);
+            }
+        }
+        if (toVerify.isEmpty())
             return Success;
+
+        List<Pair<byte[], byte[]>> results;
+        try {
+            results = ethashHelper.ethashWorkFor(toVerify, true);
         } catch (Exception e) {
-            logger.error("Failed to verify ethash work for block {}", header.getShortDescr(), e);
-            return fault("Failed to verify ethash work for block " + header.getShortDescr());
+            logger.error("Failed to verify ethash work for blocks {} - {}", toVerify.get(0).getShortDescr(),
+                    toVerify.get(toVerify.size() - 1).getShortDescr(), e);
+            return fault("Failed to verify ethash work for block " + toVerify.get(0).getShortDescr());
         }
+
+        for (int i = 0; i < toVerify.size(); i++) {
+            ValidationResult result = checkWork(toVerify.get(i), results.get(i));
+            if (!result.success) return result;
+        }
+        return Success;
+    }
+
+    private ValidationResult checkWork(BlockHeader header, Pair<byte[], byte[]> res) {
+        // no cache for the epoch? fallback into fake rule
+        if (res == null) {
+            return powRule.validate(header);
+        }
+
+        if (!FastByteComparisons.equal(res.getLeft(), header.getMixHash())) {
+            return fault(String.format("#%d: mixHash doesn't match", header.getNumber()));
+        }
+
+        if (FastByteComparisons.compareTo(res.getRight(), 0, 32, header.getPowBoundary(), 0, 32) > 0) {
+            return fault(String.format("#%d: proofValue > header.getPowBoundary()", header.getNumber()));
+        }
+
+        return Success;
     }
 }
@@ -19,12 +19,18 @@ package org.ethereum.vm;
 
 import org.apache.commons.lang3.tuple.Pair;
 import org.ethereum.config.BlockchainConfig;
+import org.ethereum.config.SystemProperties;
 import org.ethereum.crypto.ECKey;
 import org.ethereum.crypto.HashUtil;
 import org.ethereum.crypto.zksnark.*;
+import org.ethereum.db.ByteArrayWrapper;
+import org.ethereum.metrics.Metrics;
 import org.ethereum.util.BIUtil;
 
 import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static org.ethereum.util.BIUtil.addSafely;
 import static org.ethereum.util.BIUtil.isLessThan;
@@ -56,23 +62,58 @@ public class PrecompiledContracts {
     private static final DataWord altBN128MulAddr =     DataWord.of("0000000000000000000000000000000000000000000000000000000000000007");
     private static final DataWord altBN128PairingAddr = DataWord.of("0000000000000000000000000000000000000000000000000000000000000008");
 
+    // sized by init() from the node config
+    private static final PrecompiledResultCache resultCache =
+            new PrecompiledResultCache(PrecompiledResultCache.DEFAULT_MAX_SIZE);
+
+    private static final CachedContract cachedEcRecover = new CachedContract(ecRecover, ecRecoverAddr);
+    private static final CachedContract cachedModExp = new CachedContract(modExp, modExpAddr);
+    private static final CachedContract cachedAltBN128Mul = new CachedContract(altBN128Mul, altBN128MulAddr);
+    private static final CachedContract cachedAltBN128Pairing = new CachedContract(altBN128Pairing, altBN128PairingAddr);
+
+    static {
+        for (CachedContract contract : getCachedContracts()) {
+            String name = "precompiled." + contract.getName();
+            Metrics.gauge(name + ".hits", contract::getHits);
+            Metrics.gauge(name + ".misses", contract::getMisses);
+        }
+    }
+
     public static PrecompiledContract getContractForAddress(DataWord address, BlockchainConfig config) {
 
         if (address == null) return identity;
-        if (address.equals(ecRecoverAddr)) return ecRecover;
+        if (address.equals(ecRecoverAddr)) return cachedEcRecover;
         if (address.equals(sha256Addr)) return sha256;
         if (address.equals(ripempd160Addr)) return ripempd160;
         if (address.equals(identityAddr)) return identity;
 
         // Byzantium precompiles
-        if (address.equals(modExpAddr) && config.eip198()) return modExp;
+        if (address.equals(modExpAddr) && config.eip198()) return cachedModExp;
         if (address.equals(altBN128AddAddr) && config.eip213()) return altBN128Add;
-        if (address.equals(altBN128MulAddr) && config.eip213()) return altBN128Mul;
-        if (address.equals(altBN128PairingAddr) && config.eip212()) return altBN128Pairing;
+        if (address.equals(altBN128MulAddr) && config.eip213()) return cachedAltBN128Mul;
+        if (address.equals(altBN128PairingAddr) && config.eip212()) return cachedAltBN128Pairing;
 
         return null;
     }
 
+    /**
+     * Applies the node config to the shared {@link PrecompiledResultCache}
+     */
+    public static void init(SystemProperties config) {
+        resultCache.setMaxSize(config.precompiledCacheSize());
+    }
+
+    /**
+     * Cache of results shared by {@link CachedContract}s
+     */
+    public static PrecompiledResultCache getResultCache() {
+        return resultCache;
+    }
+
+    public static List<CachedContract> getCachedContracts() {
+        return Arrays.asList(cachedEcRecover, cachedModExp, cachedAltBN128Mul, cachedAltBN128Pairing);
+    }
+
     private static byte[] encodeRes(byte[] w1, byte[] w2) {
 
         byte[] res = new byte[64];
@@ -92,6 +133,75 @@ public class PrecompiledContracts {
         public abstract Pair<Boolean, byte[]> execute(byte[] data);
     }
 
+    /**
+     * Memoizes results of the deterministic contracts which are expensive to execute,
+     * the same input is often executed several times: by pending state, constant calls and block import. <br>
+     * Results are kept in the shared {@link PrecompiledResultCache} keyed by the contract address and the input hash
+     */
+    public static class CachedContract extends PrecompiledContract {
+
+        private final PrecompiledContract contract;
+        private final byte address;
+
+        private final AtomicLong hits = new AtomicLong();
+        private final AtomicLong misses = new AtomicLong();
+
+        CachedContract(PrecompiledContract contract, DataWord address) {
+            this.contract = contract;
+            this.address = address.getData()[31];
+        }
+
+        @Override
+        public long getGasForData(byte[] data) {
+            return contract.getGasForData(data);
+        }
+
+        @Override
+        public Pair<Boolean, byte[]> execute(byte[] data) {
+
+            if (data == null || !resultCache.isEnabled())
+                return contract.execute(data);
+
+            byte[] key = new byte[33];
+            key[0] = address;
+            System.arraycopy(HashUtil.sha3(data), 0, key, 1, 32);
+            ByteArrayWrapper wrapper = new ByteArrayWrapper(key);
+
+            Pair<Boolean, byte[]> res = resultCache.get(wrapper);
+            if (res != null) {
+                hits.incrementAndGet();
+                return res;
+            }
+
+            misses.incrementAndGet();
+            res = contract.execute(data);
+            resultCache.put(wrapper, res);
+
+            return res;
+        }
+
+        public PrecompiledContract getContract() {
+            return contract;
+        }
+
+        public String getName() {
+            return contract.getClass().getSimpleName();
+        }
+
+        public long getHits() {
+            return hits.get();
+        }
+
+        public long getMisses() {
+            return misses.get();
+        }
+
+        @Override
+        public String toString() {
+            return getName() + ": hits " + hits + ", misses " + misses;
+        }
+    }
+
     public static class Identity extends PrecompiledContract {
 
         public Identity() {
@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) [2016] [ <ether.camp> ]
+ * This file is part of the ethereumJ library.
+ *
+ * The ethereumJ library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The ethereumJ library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with the ethereumJ library. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.vm;
+
+import org.apache.commons.lang3.tuple.Pair;
+import org.ethereum.db.ByteArrayWrapper;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Results of precompiled contract executions kept in LRU order within a byte budget. <br>
+ *
+ * Keys are built by the caller from the contract address and the input hash,
+ * the cache is shared by all executions: block import, pending state and constant calls.
+ * Zero budget or {@link #setEnabled(boolean)} with {@code false} turns memoization off,
+ * e.g. to benchmark the consensus critical code itself
+ */
+public class PrecompiledResultCache {
+
+    // rough size of the map entry, the key wrapper and the result pair
+    private static final int ENTRY_OVERHEAD = 128;
+
+    // matches default cache.precompiledCacheSize
+    public static final long DEFAULT_MAX_SIZE = 4 * 1024 * 1024;
+
+    private final LinkedHashMap<ByteArrayWrapper, Pair<Boolean, byte[]>> entries =
+            new LinkedHashMap<>(256, 0.75f, true);
+
+    private long maxSize;
+    private long size;
+    private volatile boolean enabled = true;
+
+    public PrecompiledResultCache(long maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    public boolean isEnabled() {
+        return enabled && maxSize > 0;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+        if (!enabled) clear();
+    }
+
+    public synchronized Pair<Boolean, byte[]> get(ByteArrayWrapper key) {
+        return entries.get(key);
+    }
+
+    public synchronized void put(ByteArrayWrapper key, Pair<Boolean, byte[]> result) {
+        Pair<Boolean, byte[]> old = entries.put(key, result);
+        if (old != null) size -= entrySize(key, old);
+        size += entrySize(key, result);
+        evict();
+    }
+
+    public synchronized void setMaxSize(long maxSize) {
+        this.maxSize = maxSize;
+        evict();
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        size = 0;
+    }
+
+    /**
+     * @return estimated size of cached data in bytes
+     */
+    public synchronized long getSize() {
+        return size;
+    }
+
+    public synchronized int getEntriesCount() {
+        return entries.size();
+    }
+
+    private void evict() {
+        Iterator<Map.Entry<ByteArrayWrapper, Pair<Boolean, byte[]>>> it = entries.entrySet().iterator();
+        while (size > maxSize && it.hasNext()) {
+            Map.Entry<ByteArrayWrapper, Pair<Boolean, byte[]>> eldest = it.next();
+            size -= entrySize(eldest.getKey(), eldest.getValue());
+            it.remove();
+        }
+    }
+
+    private static long entrySize(ByteArrayWrapper key, Pair<Boolean, byte[]> result) {
+        return ENTRY_OVERHEAD + key.getData().length + (result.getRight() == null ? 0 : result.getRight().length);
+    }
+}
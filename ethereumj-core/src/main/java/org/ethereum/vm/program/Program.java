@@ -22,6 +22,7 @@ import org.ethereum.config.BlockchainConfig;
 import org.ethereum.config.CommonConfig;
 import org.ethereum.config.SystemProperties;
 import org.ethereum.core.AccountState;
+import org.ethereum.core.ExecutionProfile;
 import org.ethereum.core.Repository;
 import org.ethereum.core.Transaction;
 import org.ethereum.crypto.HashUtil;
@@ -37,6 +38,7 @@ import org.ethereum.vm.program.invoke.ProgramInvoke;
 import org.ethereum.vm.program.invoke.ProgramInvokeFactory;
 import org.ethereum.vm.program.invoke.ProgramInvokeFactoryImpl;
 import org.ethereum.vm.program.listener.CompositeProgramListener;
+import org.ethereum.vm.program.listener.ProgramListener;
 import org.ethereum.vm.program.listener.ProgramListenerAware;
 import org.ethereum.vm.program.listener.ProgramStorageChangeListener;
 import org.ethereum.vm.trace.ProgramTraceListener;
@@ -106,6 +108,7 @@ public class Program {
     private ProgramPrecompile programPrecompile;
 
     CommonConfig commonConfig = CommonConfig.getDefault();
+    private ExecutionProfile profile = ExecutionProfile.FULL;
 
     private final SystemProperties config;
 
@@ -167,6 +170,21 @@ public class Program {
         return this;
     }
 
+    /**
+     * Internal transactions and storage diff are not collected
+     * unless {@link ExecutionProfile#FULL} profile is used
+     */
+    public Program withExecutionProfile(ExecutionProfile profile) {
+        this.profile = profile;
+        if (profile != ExecutionProfile.FULL) {
+            programListener.removeListener(storageDiffListener);
+            if (!config.vmTrace()) {
+                programListener.removeListener(traceListener);
+            }
+        }
+        return this;
+    }
+
     public int getCallDeep() {
         return invoke.getCallDeep();
     }
@@ -175,7 +193,7 @@ public class Program {
                                               BigInteger value, byte[] data, String note) {
 
         InternalTransaction result = null;
-        if (transaction != null) {
+        if (transaction != null && profile == ExecutionProfile.FULL) {
             byte[] senderNonce = isEmpty(nonce) ? getStorage().getNonce(senderAddress).toByteArray() : nonce;
 
             data = config.recordInternalTransactionsData() ? data : null;
@@ -531,7 +549,9 @@ public class Program {
             result.setException(new BytecodeExecutionException("Trying to create a contract with existing contract address: 0x" + toHexString(newAddress)));
         } else if (isNotEmpty(programCode)) {
             VM vm = new VM(config, vmHook);
-            Program program = new Program(programCode, programInvoke, internalTx, config, vmHook).withCommonConfig(commonConfig);
+            Program program = new Program(programCode, programInvoke, internalTx, config, vmHook)
+                    .withCommonConfig(commonConfig)
+                    .withExecutionProfile(profile);
             vm.play(program);
             result = program.getResult();
         }
@@ -563,7 +583,7 @@ public class Program {
                     toHexString(newAddress),
                     result.getException());
 
-            internalTx.reject();
+            if (internalTx != null) internalTx.reject();
             result.rejectInternalTransactions();
 
             track.rollback();
@@ -664,7 +684,8 @@ public class Program {
 
             VM vm = new VM(config, vmHook);
             Program program = new Program(getStorage().getCodeHash(codeAddress), programCode, programInvoke, internalTx, config, vmHook)
-                    .withCommonConfig(commonConfig);
+                    .withCommonConfig(commonConfig)
+                    .withExecutionProfile(profile);
             vm.play(program);
             result = program.getResult();
 
@@ -676,7 +697,7 @@ public class Program {
                         toHexString(contextAddress),
                         result.getException());
 
-                internalTx.reject();
+                if (internalTx != null) internalTx.reject();
                 result.rejectInternalTransactions();
 
                 track.rollback();
@@ -693,7 +714,7 @@ public class Program {
 
             if (byTestingSuite()) {
                 logger.info("Testing run, skipping storage diff listener");
-            } else if (Arrays.equals(transaction.getReceiveAddress(), internalTx.getReceiveAddress())) {
+            } else if (profile == ExecutionProfile.FULL && Arrays.equals(transaction.getReceiveAddress(), internalTx.getReceiveAddress())) {
                 storageDiffListener.merge(program.getStorageDiff());
             }
         } else {
@@ -1209,6 +1230,13 @@ public class Program {
         this.listener = listener;
     }
 
+    /**
+     * Subscribes the listener to the memory, stack and storage changes of this program
+     */
+    public void addProgramListener(ProgramListener listener) {
+        programListener.addListener(listener);
+    }
+
     public int verifyJumpDest(DataWord nextPC) {
         if (nextPC.bytesOccupied() > 4) {
             throw Program.Exception.badJumpDestination(-1);
@@ -170,7 +170,8 @@ public class ProgramResult {
     }
 
     public void rejectInternalTransactions() {
-        for (InternalTransaction internalTx : getInternalTransactions()) {
+        if (internalTransactions == null) return;
+        for (InternalTransaction internalTx : internalTransactions) {
             internalTx.reject();
         }
     }
@@ -188,7 +189,9 @@ public class ProgramResult {
     }
 
     public void merge(ProgramResult another) {
-        addInternalTransactions(another.getInternalTransactions());
+        if (another.internalTransactions != null) {
+            addInternalTransactions(another.internalTransactions);
+        }
         if (another.getException() == null && !another.isRevert()) {
             addDeleteAccounts(another.getDeleteAccounts());
             addLogInfos(another.getLogInfoList());
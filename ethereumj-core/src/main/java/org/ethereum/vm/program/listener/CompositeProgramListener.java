@@ -80,6 +80,10 @@ public class CompositeProgramListener implements ProgramListener {
         listeners.add(listener);
     }
 
+    public void removeListener(ProgramListener listener) {
+        listeners.remove(listener);
+    }
+
     public boolean isEmpty() {
         return listeners.isEmpty();
     }
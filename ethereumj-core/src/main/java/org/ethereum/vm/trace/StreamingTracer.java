@@ -0,0 +1,276 @@
+/*
+ * Copyright (c) [2016] [ <ether.camp> ]
+ * This file is part of the ethereumJ library.
+ *
+ * The ethereumJ library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The ethereumJ library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with the ethereumJ library. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.vm.trace;
+
+import org.ethereum.vm.DataWord;
+import org.ethereum.vm.OpCode;
+import org.ethereum.vm.hook.VMHook;
+import org.ethereum.vm.program.Program;
+import org.ethereum.vm.program.listener.ProgramListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+import static org.ethereum.util.ByteUtil.toHexString;
+
+/**
+ * VM tracer writing the trace as newline delimited JSON while the program is executed,
+ * as opposed to {@link ProgramTrace} which keeps the whole trace in memory. <br>
+ *
+ * Each executed op is written as a single line once the op is complete:
+ * <pre>
+ *   {"depth":0,"pc":2,"op":"PUSH1","gas":78997,"push":["0x40"]}
+ * </pre>
+ * "gas" is the gas left after the op cost is charged. Depending on the {@link Detail} level
+ * the line also contains stack changes ("pop" count, "push" values, "swap" positions),
+ * memory changes ("extend" size, "write" address and data pairs) and storage changes
+ * ("put" key value map, "clear" flag). Ops of a nested call are complete before
+ * the CALL/CREATE op spawning them, thus they precede it in the output.
+ * Top level executions are wrapped with {"contract":..} and {"result":..,"error":..} lines. <br>
+ *
+ * Memory usage is bounded by the changes of a single op per call depth.
+ * The tracer is supposed to be used by one execution thread at a time,
+ * it is attached as a {@link VMHook}, e.g. via a Spring bean or {@code StandaloneBlockchain.withVmHook}
+ */
+public class StreamingTracer implements VMHook, ProgramListener, Closeable {
+    private static final Logger logger = LoggerFactory.getLogger("VM");
+
+    public enum Detail {
+        OPS,
+        STACK,
+        MEMORY,
+        STORAGE
+    }
+
+    private static class Frame {
+        final StringBuilder op = new StringBuilder();
+        int pops;
+        StringBuilder push;
+        StringBuilder swap;
+        int extend;
+        StringBuilder write;
+        StringBuilder put;
+        boolean clear;
+
+        void reset() {
+            op.setLength(0);
+            pops = 0;
+            push = swap = write = put = null;
+            extend = 0;
+            clear = false;
+        }
+    }
+
+    private final Writer out;
+    private final boolean stack;
+    private final boolean memory;
+    private final boolean storage;
+
+    private final Deque<Frame> frames = new ArrayDeque<>();
+    private final Deque<Frame> spareFrames = new ArrayDeque<>();
+
+    public StreamingTracer(OutputStream out, Detail detail) {
+        this(new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 1 << 16), detail);
+    }
+
+    public StreamingTracer(Writer out, Detail detail) {
+        this.out = out;
+        this.stack = detail.compareTo(Detail.STACK) >= 0;
+        this.memory = detail.compareTo(Detail.MEMORY) >= 0;
+        this.storage = detail.compareTo(Detail.STORAGE) >= 0;
+    }
+
+    public static StreamingTracer toFile(String fileName, Detail detail) throws IOException {
+        return new StreamingTracer(new FileOutputStream(fileName, true), detail);
+    }
+
+    @Override
+    public void startPlay(Program program) {
+        if (frames.isEmpty()) {
+            writeLine(new StringBuilder("{\"contract\":\"")
+                    .append(hex(program.getOwnerAddress().getLast20Bytes())).append("\"}"));
+        }
+        Frame frame = spareFrames.isEmpty() ? new Frame() : spareFrames.pop();
+        frames.push(frame);
+        if (stack || memory || storage) {
+            program.addProgramListener(this);
+        }
+    }
+
+    @Override
+    public void step(Program program, OpCode opcode) {
+        Frame frame = frames.peek();
+        if (frame == null) return;
+
+        flush(frame);
+        frame.op.append("{\"depth\":").append(program.getCallDeep())
+                .append(",\"pc\":").append(program.getPC())
+                .append(",\"op\":\"").append(opcode.name())
+                .append("\",\"gas\":").append(program.getGasLong());
+    }
+
+    @Override
+    public void stopPlay(Program program) {
+        Frame frame = frames.poll();
+        if (frame == null) return;
+
+        flush(frame);
+        spareFrames.push(frame);
+
+        if (frames.isEmpty()) {
+            RuntimeException error = program.getResult().getException();
+            StringBuilder line = new StringBuilder("{\"result\":\"")
+                    .append(hex(program.getResult().getHReturn())).append('"');
+            if (error != null) {
+                line.append(",\"error\":\"").append(escape(error.getClass().getSimpleName() + ": " + error.getMessage()))
+                        .append('"');
+            }
+            writeLine(line.append('}'));
+            try {
+                out.flush();
+            } catch (IOException e) {
+                logger.error("Failed to flush VM trace", e);
+            }
+        }
+    }
+
+    private void flush(Frame frame) {
+        StringBuilder line = frame.op;
+        if (line.length() == 0) return;
+
+        if (frame.pops > 0) line.append(",\"pop\":").append(frame.pops);
+        if (frame.push != null) line.append(",\"push\":[").append(frame.push).append(']');
+        if (frame.swap != null) line.append(",\"swap\":[").append(frame.swap).append(']');
+        if (frame.extend > 0) line.append(",\"extend\":").append(frame.extend);
+        if (frame.write != null) line.append(",\"write\":[").append(frame.write).append(']');
+        if (frame.clear) line.append(",\"clear\":true");
+        if (frame.put != null) line.append(",\"put\":{").append(frame.put).append('}');
+        writeLine(line.append('}'));
+
+        frame.reset();
+    }
+
+    private void writeLine(CharSequence line) {
+        try {
+            out.append(line).append('\n');
+        } catch (IOException e) {
+            logger.error("Failed to write VM trace", e);
+        }
+    }
+
+    private static StringBuilder append(StringBuilder sb, String value) {
+        if (sb == null) {
+            sb = new StringBuilder();
+        } else {
+            sb.append(',');
+        }
+        return sb.append(value);
+    }
+
+    private static String hex(byte[] data) {
+        return data == null || data.length == 0 ? "0x" : "0x" + toHexString(data);
+    }
+
+    private static String hex(DataWord value) {
+        if (value.isZero()) return "0x0";
+        String hex = toHexString(value.getNoLeadZeroesData());
+        return hex.charAt(0) == '0' ? "0x" + hex.substring(1) : "0x" + hex;
+    }
+
+    /**
+     * Escapes the string to be put into JSON quotes, control characters are written as unicode escapes
+     */
+    static String escape(String s) {
+        StringBuilder ret = new StringBuilder(s.length());
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '\\' || c == '"') {
+                ret.append('\\').append(c);
+            } else if (c == '\n') {
+                ret.append("\\n");
+            } else if (c < 0x20) {
+                ret.append(String.format("\\u%04x", (int) c));
+            } else {
+                ret.append(c);
+            }
+        }
+        return ret.toString();
+    }
+
+    @Override
+    public void onStackPop() {
+        Frame frame = frames.peek();
+        if (stack && frame != null) frame.pops++;
+    }
+
+    @Override
+    public void onStackPush(DataWord value) {
+        Frame frame = frames.peek();
+        if (stack && frame != null) frame.push = append(frame.push, "\"" + hex(value) + "\"");
+    }
+
+    @Override
+    public void onStackSwap(int from, int to) {
+        Frame frame = frames.peek();
+        if (stack && frame != null) frame.swap = append(frame.swap, from + "," + to);
+    }
+
+    @Override
+    public void onMemoryExtend(int delta) {
+        Frame frame = frames.peek();
+        if (memory && frame != null) frame.extend += delta;
+    }
+
+    @Override
+    public void onMemoryWrite(int address, byte[] data, int size) {
+        Frame frame = frames.peek();
+        if (!memory || frame == null) return;
+
+        int len = Math.min(size, data == null ? 0 : data.length);
+        byte[] written = new byte[len];
+        if (len > 0) System.arraycopy(data, 0, written, 0, len);
+        frame.write = append(frame.write, address + ",\"" + hex(written) + "\"");
+    }
+
+    @Override
+    public void onStoragePut(DataWord key, DataWord value) {
+        Frame frame = frames.peek();
+        if (storage && frame != null) frame.put = append(frame.put, "\"" + hex(key) + "\":\"" + hex(value) + "\"");
+    }
+
+    @Override
+    public void onStorageClear() {
+        Frame frame = frames.peek();
+        if (storage && frame != null) frame.clear = true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+}
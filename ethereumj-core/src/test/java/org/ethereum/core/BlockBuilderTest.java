@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) [2016] [ <ether.camp> ]
+ * This file is part of the ethereumJ library.
+ *
+ * The ethereumJ library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The ethereumJ library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with the ethereumJ library. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.core;
+
+import org.ethereum.config.SystemProperties;
+import org.ethereum.mine.Ethash;
+import org.ethereum.util.blockchain.StandaloneBlockchain;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Testing {@link BlockBuilder} produces the same blocks as {@link BlockchainImpl#createNewBlock}
+ */
+public class BlockBuilderTest {
+
+    @Test
+    public void testIncrementalBuild() throws Exception {
+        StandaloneBlockchain bc = new StandaloneBlockchain();
+        Block b1 = bc.createBlock();
+        Block b2 = bc.createBlock();
+        Block fork = bc.createForkBlock(b1);
+        Block parent = bc.getBlockchain().getBestBlock();
+        Block uncle = Arrays.equals(parent.getHash(), b2.getHash()) ? fork : b2;
+        List<BlockHeader> uncles = Collections.singletonList(uncle.getHeader());
+
+        Transaction tx0 = bc.createTransaction(0, new byte[20], 1000, new byte[0]);
+        Transaction tx1 = bc.createTransaction(1, new byte[20], 1000, new byte[0]);
+        Transaction tx2 = bc.createTransaction(2, new byte[20], 1000, new byte[0]);
+        Transaction tx3 = bc.createTransaction(3, new byte[20], 1000, new byte[0]);
+
+        BlockBuilder builder = bc.getBlockchain().createBlockBuilder(parent, uncles);
+        assertTrue(builder.add(tx0));
+        assertTrue(builder.add(tx1));
+        assertFalse(builder.add(tx1));
+        assertBlocksEqual(bc, parent, Arrays.asList(tx0, tx1), uncles, builder.build());
+
+        // nonce gap, retried after the gap is filled
+        assertFalse(builder.add(tx3));
+        assertFalse(builder.hasNew(Arrays.asList(tx0, tx1, tx3)));
+        assertTrue(builder.add(tx2));
+        assertTrue(builder.hasNew(Arrays.asList(tx0, tx1, tx2, tx3)));
+        assertEquals(1, builder.addAll(Arrays.asList(tx0, tx1, tx2, tx3)));
+        assertEquals(Arrays.asList(tx0, tx1, tx2, tx3), builder.getTransactions());
+
+        Block block = builder.build();
+        assertBlocksEqual(bc, parent, Arrays.asList(tx0, tx1, tx2, tx3), uncles, block);
+
+        Ethash.getForBlock(SystemProperties.getDefault(), block.getNumber()).mineLight(block).get();
+        assertEquals(ImportResult.IMPORTED_BEST, bc.getBlockchain().tryToConnect(block));
+    }
+
+    private void assertBlocksEqual(StandaloneBlockchain bc, Block parent, List<Transaction> txs,
+                                   List<BlockHeader> uncles, Block built) {
+        Block expected = bc.getBlockchain().createNewBlock(parent, txs, uncles, built.getTimestamp());
+
+        assertArrayEquals(expected.getStateRoot(), built.getStateRoot());
+        assertArrayEquals(expected.getReceiptsRoot(), built.getReceiptsRoot());
+        assertArrayEquals(expected.getTxTrieRoot(), built.getTxTrieRoot());
+        assertArrayEquals(expected.getLogBloom(), built.getLogBloom());
+        assertArrayEquals(expected.getUnclesHash(), built.getUnclesHash());
+        assertEquals(expected.getGasUsed(), built.getGasUsed());
+        assertArrayEquals(expected.getEncoded(), built.getEncoded());
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright (c) [2016] [ <ether.camp> ]
+ * This file is part of the ethereumJ library.
+ *
+ * The ethereumJ library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The ethereumJ library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with the ethereumJ library. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.core;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Testing {@link BlockServingCache}
+ */
+public class BlockServingCacheTest {
+
+    @Test
+    public void testHeaders() {
+        BlockServingCache cache = new BlockServingCache(4000);
+        BlockIdentifier byNumber = new BlockIdentifier(null, 100);
+        BlockIdentifier byHash = new BlockIdentifier(new byte[] {1, 2, 3}, 0);
+
+        long version = cache.getHeadersVersion();
+        cache.putHeaders(byNumber, 0, 10, false, new byte[100], version);
+        cache.putHeaders(byHash, 0, 10, false, new byte[200], version);
+
+        assertEquals(100, cache.getHeaders(new BlockIdentifier(null, 100), 0, 10, false).length);
+        assertEquals(200, cache.getHeaders(new BlockIdentifier(new byte[] {1, 2, 3}, 0), 0, 10, false).length);
+        assertNull(cache.getHeaders(byNumber, 1, 10, false));
+        assertNull(cache.getHeaders(byNumber, 0, 10, true));
+
+        cache.onReBranch();
+        assertNull(cache.getHeaders(byNumber, 0, 10, false));
+
+        // headers read before the rebranch are not cached
+        cache.putHeaders(byNumber, 0, 10, false, new byte[100], version);
+        assertNull(cache.getHeaders(byNumber, 0, 10, false));
+    }
+
+    @Test
+    public void testEviction() {
+        // 3000 bytes are given to bodies
+        BlockServingCache cache = new BlockServingCache(4000);
+        for (byte i = 0; i < 3; i++) {
+            cache.putBody(new byte[] {i}, new byte[1000]);
+        }
+        // make body #0 recently used
+        assertNotNull(cache.getBody(new byte[] {0}));
+
+        cache.putBody(new byte[] {3}, new byte[1000]);
+        assertNotNull(cache.getBody(new byte[] {0}));
+        assertNull(cache.getBody(new byte[] {1}));
+        assertNotNull(cache.getBody(new byte[] {3}));
+        assertTrue(cache.getSize() <= 4000);
+
+        // bodies survive rebranch
+        cache.onReBranch();
+        assertNotNull(cache.getBody(new byte[] {3}));
+    }
+}
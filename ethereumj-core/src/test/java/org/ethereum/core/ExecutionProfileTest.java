@@ -0,0 +1,143 @@
+/*
+ * Copyright (c) [2016] [ <ether.camp> ]
+ * This file is part of the ethereumJ library.
+ *
+ * The ethereumJ library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The ethereumJ library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with the ethereumJ library. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.core;
+
+import org.ethereum.util.ByteUtil;
+import org.ethereum.util.blockchain.StandaloneBlockchain;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.spongycastle.util.encoders.Hex;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Testing {@link ExecutionProfile#RECEIPTS} execution yields the same state and receipts
+ */
+public class ExecutionProfileTest {
+
+    // stores the caller under the block number key
+    private static final String STORE_CODE = "334355" + "00";
+    // same as above, then calls the contract from the call data
+    private static final String CALL_CODE = "334355" + "600060006000600060006000" + "35" + "5a" + "f1" + "00";
+
+    private StandaloneBlockchain bc;
+    private long nonce;
+
+    private static byte[] deployCode(String runtime) {
+        int len = runtime.length() / 2;
+        // PUSH1 len DUP1 PUSH1 0x0b PUSH1 0 CODECOPY PUSH1 0 RETURN
+        return Hex.decode(String.format("60%02x80600b6000396000f3", len) + runtime);
+    }
+
+    private Transaction submitTx(byte[] to, byte[] data) {
+        Transaction tx = bc.createTransaction(nonce++, to, 0, data);
+        bc.submitTransaction(tx);
+        return tx;
+    }
+
+    private void createChain(int blocks, int callsPerBlock) {
+        bc = new StandaloneBlockchain().withGasLimit(5_000_000);
+        nonce = 0;
+
+        byte[] store = submitTx(new byte[0], deployCode(STORE_CODE)).getContractAddress();
+        byte[] call = submitTx(new byte[0], deployCode(CALL_CODE)).getContractAddress();
+        bc.createBlock();
+
+        byte[] callData = ByteUtil.merge(new byte[12], store);
+        for (int i = 0; i < blocks; i++) {
+            for (int j = 0; j < callsPerBlock; j++) {
+                submitTx(call, callData);
+            }
+            bc.createBlock();
+        }
+    }
+
+    private List<TransactionExecutionSummary> execute(Block block, ExecutionProfile profile, boolean verify) {
+        BlockchainImpl blockchain = bc.getBlockchain();
+        Block parent = blockchain.getBlockByHash(block.getParentHash());
+        Repository track = blockchain.getRepository().getSnapshotTo(parent.getStateRoot());
+
+        List<TransactionExecutionSummary> ret = new ArrayList<>();
+        long gasUsed = 0;
+        for (Transaction tx : block.getTransactionsList()) {
+            Repository txTrack = track.startTracking();
+            TransactionExecutor executor = blockchain.createTransactionExecutor(tx, txTrack, block, gasUsed)
+                    .withExecutionProfile(profile);
+            executor.init();
+            executor.execute();
+            executor.go();
+            ret.add(executor.finalization());
+            txTrack.commit();
+            gasUsed += executor.getGasUsed();
+            if (!verify) continue;
+
+            TransactionReceipt expected = blockchain.getTransactionInfo(tx.getHash()).getReceipt();
+            TransactionReceipt receipt = executor.getReceipt();
+            assertArrayEquals(expected.getCumulativeGas(), receipt.getCumulativeGas());
+            assertArrayEquals(expected.getBloomFilter().getData(), receipt.getBloomFilter().getData());
+            assertTrue(receipt.isSuccessful());
+        }
+        blockchain.addReward(track, block, ret);
+        if (verify) assertArrayEquals(block.getStateRoot(), track.getRoot());
+        return ret;
+    }
+
+    @Test
+    public void testSameResults() {
+        createChain(3, 4);
+
+        for (long i = 2; i <= 4; i++) {
+            Block block = bc.getBlockchain().getBlockByNumber(i);
+            List<TransactionExecutionSummary> full = execute(block, ExecutionProfile.FULL, true);
+            List<TransactionExecutionSummary> receipts = execute(block, ExecutionProfile.RECEIPTS, true);
+
+            assertEquals(4, full.size());
+            for (int j = 0; j < full.size(); j++) {
+                assertEquals(1, full.get(j).getInternalTransactions().size());
+                assertTrue(receipts.get(j).getInternalTransactions().isEmpty());
+                assertEquals(full.get(j).getFee(), receipts.get(j).getFee());
+                assertEquals(full.get(j).getGasUsed(), receipts.get(j).getGasUsed());
+                // the internal call target is reported without internal transactions
+                byte[] callee = full.get(j).getInternalTransactions().get(0).getReceiveAddress();
+                assertTrue(receipts.get(j).getTouchedAccounts().stream().anyMatch(a -> Arrays.equals(a, callee)));
+            }
+        }
+    }
+
+    @Ignore("Allocation benchmark")
+    @Test
+    public void allocationBenchmark() {
+        createChain(20, 50);
+        com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        for (int round = 0; round < 5; round++) {
+            for (ExecutionProfile profile : ExecutionProfile.values()) {
+                long bytes = bean.getThreadAllocatedBytes(Thread.currentThread().getId());
+                for (long i = 2; i <= 21; i++) {
+                    execute(bc.getBlockchain().getBlockByNumber(i), profile, false);
+                }
+                bytes = bean.getThreadAllocatedBytes(Thread.currentThread().getId()) - bytes;
+                System.out.printf("%s: %d KB per block%n", profile, bytes / 20 / 1024);
+            }
+        }
+    }
+}
@@ -0,0 +1,195 @@
+/*
+ * Copyright (c) [2016] [ <ether.camp> ]
+ * This file is part of the ethereumJ library.
+ *
+ * The ethereumJ library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The ethereumJ library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with the ethereumJ library. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.core;
+
+import org.ethereum.crypto.ECKey;
+import org.ethereum.datasource.inmem.HashMapDB;
+import org.ethereum.db.ByteArrayWrapper;
+import org.ethereum.db.StateSource;
+import org.ethereum.listener.EthereumListenerAdapter;
+import org.ethereum.util.blockchain.StandaloneBlockchain;
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Testing {@link ParallelBlockReplay} reproduces the imported blocks in order
+ */
+public class ParallelBlockReplayTest {
+
+    private static class CollectingListener extends EthereumListenerAdapter {
+        List<BlockSummary> blocks = new ArrayList<>();
+        List<TransactionExecutionSummary> txs = new ArrayList<>();
+
+        @Override
+        public void onBlock(BlockSummary blockSummary) {
+            blocks.add(blockSummary);
+        }
+
+        @Override
+        public void onTransactionExecuted(TransactionExecutionSummary summary) {
+            txs.add(summary);
+        }
+    }
+
+    @Test
+    public void testReplay() throws Exception {
+        StandaloneBlockchain bc = new StandaloneBlockchain();
+        List<BlockSummary> imported = new ArrayList<>();
+        bc.addEthereumListener(new EthereumListenerAdapter() {
+            @Override
+            public void onBlock(BlockSummary blockSummary) {
+                imported.add(blockSummary);
+            }
+        });
+
+        for (int i = 0; i < 30; i++) {
+            for (int j = 0; j < i % 3; j++) {
+                bc.sendEther(new ECKey().getAddress(), BigInteger.valueOf(1000 + i));
+            }
+            bc.createBlock();
+        }
+
+        CollectingListener listener = new CollectingListener();
+        ParallelBlockReplay replay = new ParallelBlockReplay(bc.getBlockchain())
+                .withThreads(3).withSegmentSize(7);
+        assertEquals(30, replay.replay(0, 30, listener));
+
+        assertEquals(30, listener.blocks.size());
+        int txCount = 0;
+        for (int i = 0; i < 30; i++) {
+            BlockSummary expected = imported.get(i);
+            BlockSummary actual = listener.blocks.get(i);
+            assertEquals(i + 1, actual.getBlock().getNumber());
+            assertArrayEquals(expected.getBlock().getHash(), actual.getBlock().getHash());
+            assertEquals(expected.getReceipts().size(), actual.getReceipts().size());
+            for (int j = 0; j < expected.getReceipts().size(); j++) {
+                assertArrayEquals(expected.getReceipts().get(j).getEncoded(), actual.getReceipts().get(j).getEncoded());
+                assertArrayEquals(actual.getBlock().getTransactionsList().get(j).getHash(),
+                        listener.txs.get(txCount++).getTransactionHash());
+            }
+        }
+        assertEquals(txCount, listener.txs.size());
+    }
+
+    @Test
+    public void testSnapshotReset() throws Exception {
+        StandaloneBlockchain bc = new StandaloneBlockchain();
+        for (int i = 0; i < 20; i++) {
+            bc.sendEther(new ECKey().getAddress(), BigInteger.valueOf(1000 + i));
+            bc.createBlock();
+        }
+        BlockchainImpl blockchain = bc.getBlockchain();
+        StateSource stateSource = spy(new StateSource(bc.getStateDS(), false));
+        blockchain.stateDataSource = stateSource;
+
+        CollectingListener listener = new CollectingListener();
+        ParallelBlockReplay replay = new ParallelBlockReplay(blockchain)
+                .withThreads(2).withSegmentSize(10).withSnapshotResetInterval(3);
+        assertEquals(20, replay.replay(1, 20, listener));
+
+        // 3 resets per segment, the replay goes on from the stored states
+        verify(stateSource, times(6)).get(any(byte[].class));
+        assertEquals(20, listener.blocks.size());
+        for (int i = 0; i < 20; i++) {
+            Block expected = blockchain.getBlockByNumber(i + 1);
+            assertArrayEquals(expected.getHash(), listener.blocks.get(i).getBlock().getHash());
+        }
+    }
+
+    @Test
+    public void testSegmentsRunAhead() throws Exception {
+        StandaloneBlockchain bc = new StandaloneBlockchain();
+        // states older than the prune depth are not complete
+        for (int i = 0; i < 150; i++) {
+            bc.createBlock();
+        }
+        BlockchainImpl blockchain = bc.getBlockchain();
+        // the state of each replayed block is looked up for the snapshot reset
+        Set<ByteArrayWrapper> replayedRoots = ConcurrentHashMap.newKeySet();
+        blockchain.stateDataSource = new StateSource(bc.getStateDS(), false) {
+            @Override
+            public byte[] get(byte[] key) {
+                replayedRoots.add(new ByteArrayWrapper(key));
+                return super.get(key);
+            }
+        };
+        ByteArrayWrapper lastRoot = new ByteArrayWrapper(blockchain.getBlockByNumber(150).getStateRoot());
+
+        AtomicBoolean ranAhead = new AtomicBoolean();
+        CollectingListener listener = new CollectingListener() {
+            @Override
+            public void onBlock(BlockSummary blockSummary) {
+                if (blocks.isEmpty()) {
+                    // the head segment is not drained until the next one is replayed completely
+                    long timeout = System.currentTimeMillis() + 10000;
+                    while (!replayedRoots.contains(lastRoot) && System.currentTimeMillis() < timeout) {
+                        Thread.yield();
+                    }
+                    ranAhead.set(replayedRoots.contains(lastRoot));
+                }
+                super.onBlock(blockSummary);
+            }
+        };
+        ParallelBlockReplay replay = new ParallelBlockReplay(blockchain)
+                .withThreads(2).withSegmentSize(75).withSnapshotResetInterval(1);
+        assertEquals(150, replay.replay(1, 150, listener));
+
+        assertTrue(ranAhead.get());
+        assertEquals(150, listener.blocks.size());
+    }
+
+    @Test
+    public void testCheckpoint() throws Exception {
+        StandaloneBlockchain bc = new StandaloneBlockchain();
+        for (int i = 0; i < 20; i++) {
+            bc.sendEther(new ECKey().getAddress(), BigInteger.valueOf(1000));
+            bc.createBlock();
+        }
+
+        HashMapDB<byte[]> checkpoints = new HashMapDB<>();
+        byte[] key = "test".getBytes();
+
+        CollectingListener listener = new CollectingListener();
+        new ParallelBlockReplay(bc.getBlockchain()).withThreads(2).withSegmentSize(4)
+                .withCheckpoint(checkpoints, key)
+                .replay(1, 10, listener);
+        assertEquals(10, listener.blocks.size());
+
+        // resumed after the checkpoint
+        listener = new CollectingListener();
+        ParallelBlockReplay replay = new ParallelBlockReplay(bc.getBlockchain()).withThreads(2).withSegmentSize(4)
+                .withCheckpoint(checkpoints, key);
+        assertEquals(10, replay.getCheckpoint());
+        assertEquals(20, replay.replay(1, 20, listener));
+        assertEquals(10, listener.blocks.size());
+        assertEquals(11, listener.blocks.get(0).getBlock().getNumber());
+        assertEquals(20, replay.getCheckpoint());
+    }
+}
@@ -26,11 +26,13 @@ import org.ethereum.crypto.ECKey;
 import org.ethereum.db.ByteArrayWrapper;
 import org.ethereum.listener.EthereumListener;
 import org.ethereum.listener.EthereumListenerAdapter;
+import org.ethereum.util.ByteUtil;
 import org.ethereum.util.blockchain.SolidityContract;
 import org.ethereum.util.blockchain.StandaloneBlockchain;
 import org.junit.*;
 
 import java.math.BigInteger;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -619,6 +621,107 @@ public class PendingStateTest {
         Assert.assertTrue(l.getQueueFor(tx1).isEmpty());
     }
 
+    @Test
+    public void testQueuedAndReplaced() throws InterruptedException {
+        StandaloneBlockchain bc = new StandaloneBlockchain().withGasPrice(50_000_000_000L);
+        PendingListener l = new PendingListener();
+        bc.addEthereumListener(l);
+        PendingStateImpl pendingState = (PendingStateImpl) bc.getBlockchain().getPendingState();
+
+        ECKey alice = new ECKey();
+        ECKey bob = new ECKey();
+
+        bc.sendEther(bob.getAddress(), convert(100, ETHER));
+        bc.createBlock();
+
+        Transaction tx0 = bc.createTransaction(bob, 0, alice.getAddress(), BigInteger.valueOf(1000000), new byte[0]);
+        Transaction tx1 = bc.createTransaction(bob, 1, alice.getAddress(), BigInteger.valueOf(1000000), new byte[0]);
+        Transaction tx2 = bc.createTransaction(bob, 2, alice.getAddress(), BigInteger.valueOf(1000000), new byte[0]);
+
+        // waiting for the missing nonce
+        pendingState.addPendingTransaction(tx2);
+        pendingState.addPendingTransaction(tx1);
+        Assert.assertEquals(2, pendingState.getPool().getQueuedSize());
+        Assert.assertTrue(pendingState.getPendingTransactions().isEmpty());
+
+        pendingState.addPendingTransaction(tx0);
+        Assert.assertEquals(l.pollTxUpdateState(tx0), NEW_PENDING);
+        Assert.assertEquals(l.pollTxUpdateState(tx1), NEW_PENDING);
+        Assert.assertEquals(l.pollTxUpdateState(tx2), NEW_PENDING);
+        Assert.assertEquals(Arrays.asList(tx0, tx1, tx2), pendingState.getPendingTransactions());
+        Assert.assertEquals(BigInteger.valueOf(3000000), pendingState.getRepository().getBalance(alice.getAddress()));
+
+        // not enough gas price bump
+        Transaction tx1Cheap = bc.withGasPrice(51_000_000_000L)
+                .createTransaction(bob, 1, alice.getAddress(), BigInteger.valueOf(2000000), new byte[0]);
+        pendingState.addPendingTransaction(tx1Cheap);
+        Assert.assertEquals(l.pollTxUpdateState(tx1Cheap), DROPPED);
+
+        Transaction tx1_ = bc.withGasPrice(60_000_000_000L)
+                .createTransaction(bob, 1, alice.getAddress(), BigInteger.valueOf(2000000), new byte[0]);
+        pendingState.addPendingTransaction(tx1_);
+        Assert.assertEquals(l.pollTxUpdateState(tx1), DROPPED);
+        Assert.assertEquals(l.pollTxUpdateState(tx1_), NEW_PENDING);
+        Assert.assertEquals(Arrays.asList(tx0, tx1_, tx2), pendingState.getPendingTransactions());
+        Assert.assertEquals(BigInteger.valueOf(4000000), pendingState.getRepository().getBalance(alice.getAddress()));
+
+        // only tx0 is included, the rest are still pending
+        bc.submitTransaction(tx0);
+        bc.createBlock();
+        Assert.assertEquals(l.pollTxUpdateState(tx0), INCLUDED);
+        Assert.assertEquals(l.pollTxUpdateState(tx1_), PENDING);
+        Assert.assertEquals(l.pollTxUpdateState(tx2), PENDING);
+        Assert.assertEquals(Arrays.asList(tx1_, tx2), pendingState.getPendingTransactions());
+        Assert.assertEquals(BigInteger.valueOf(4000000), pendingState.getRepository().getBalance(alice.getAddress()));
+    }
+
+    @Test
+    public void testInternalTransferTouched() throws InterruptedException {
+        checkInternalTransferTouched();
+    }
+
+    @Test
+    public void testInternalTransferTouchedWithoutSummaries() throws InterruptedException {
+        // internal transactions are not recorded
+        SystemProperties.getDefault().overrideParams("record.execution.summaries", "false");
+        try {
+            checkInternalTransferTouched();
+        } finally {
+            SystemProperties.getDefault().overrideParams("record.execution.summaries", "true");
+        }
+    }
+
+    private void checkInternalTransferTouched() throws InterruptedException {
+        StandaloneBlockchain bc = new StandaloneBlockchain();
+        PendingListener l = new PendingListener();
+        bc.addEthereumListener(l);
+        PendingStateImpl pendingState = (PendingStateImpl) bc.getBlockchain().getPendingState();
+
+        ECKey alice = new ECKey();
+        bc.sendEther(alice.getAddress(), convert(1, ETHER));
+        bc.createBlock();
+
+        // tx1 can't be paid until alice gets more funds
+        Transaction tx0 = bc.createTransaction(alice, 0, new byte[20], convert(1, ETHER).shiftRight(1), new byte[0]);
+        Transaction tx1 = bc.createTransaction(alice, 1, new byte[20], convert(1, ETHER), new byte[0]);
+        pendingState.addPendingTransaction(tx1);
+        pendingState.addPendingTransaction(tx0);
+        Assert.assertEquals(l.pollTxUpdateState(tx0), NEW_PENDING);
+        Assert.assertEquals(1, pendingState.getPool().getQueuedSize());
+
+        // contract init code sends its value to alice: PUSH20 <alice> SELFDESTRUCT
+        byte[] initCode = ByteUtil.merge(new byte[] {0x73}, alice.getAddress(), new byte[] {(byte) 0xff});
+        bc.submitTransaction(bc.createTransaction(bc.getSender(),
+                bc.getBlockchain().getRepository().getNonce(bc.getSender().getAddress()).longValue(),
+                new byte[0], convert(2, ETHER), initCode));
+        bc.createBlock();
+
+        // alice isn't a sender nor a recipient of the block transactions
+        Assert.assertEquals(l.pollTxUpdateState(tx1), NEW_PENDING);
+        Assert.assertEquals(0, pendingState.getPool().getQueuedSize());
+        Assert.assertEquals(Arrays.asList(tx0, tx1), pendingState.getPendingTransactions());
+    }
+
     @Test
     public void testInvalidTransaction() throws InterruptedException {
         StandaloneBlockchain bc = new StandaloneBlockchain();
@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) [2016] [ <ether.camp> ]
+ * This file is part of the ethereumJ library.
+ *
+ * The ethereumJ library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The ethereumJ library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with the ethereumJ library. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.core;
+
+import org.ethereum.crypto.ECKey;
+import org.ethereum.db.ByteArrayWrapper;
+import org.ethereum.util.ByteUtil;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Testing {@link TransactionPool}
+ */
+public class TransactionPoolTest {
+
+    private static Transaction tx(ECKey sender, long nonce, long gasPrice) {
+        Transaction tx = new Transaction(ByteUtil.longToBytesNoLeadZeroes(nonce),
+                ByteUtil.longToBytesNoLeadZeroes(gasPrice),
+                ByteUtil.longToBytesNoLeadZeroes(21000),
+                new byte[20], ByteUtil.longToBytesNoLeadZeroes(1), new byte[0], null);
+        tx.sign(sender);
+        return tx;
+    }
+
+    private static TransactionPool.Entry add(TransactionPool pool, Transaction tx, boolean queued) {
+        pool.add(new PendingTransaction(tx), null, queued);
+        return pool.get(tx.getHash());
+    }
+
+    @Test
+    public void testBlockOrder() {
+        TransactionPool pool = new TransactionPool();
+        ECKey alice = new ECKey();
+        ECKey bob = new ECKey();
+
+        Transaction a0 = tx(alice, 0, 10);
+        Transaction a1 = tx(alice, 1, 50);
+        Transaction a3 = tx(alice, 3, 100);
+        Transaction b0 = tx(bob, 0, 20);
+        Transaction b1 = tx(bob, 1, 5);
+
+        add(pool, a1, false);
+        add(pool, b1, false);
+        add(pool, a0, false);
+        add(pool, a3, true);
+        add(pool, b0, false);
+
+        assertEquals(5, pool.size());
+        assertEquals(1, pool.getQueuedSize());
+        assertEquals(4, pool.getPendingSize());
+
+        // most expensive first unless sender's nonce order requires otherwise, queued are skipped
+        List<Transaction> txs = pool.getPendingTransactions();
+        assertEquals(4, txs.size());
+        assertEquals(b0, txs.get(0));
+        assertEquals(a0, txs.get(1));
+        assertEquals(a1, txs.get(2));
+        assertEquals(b1, txs.get(3));
+    }
+
+    @Test
+    public void testReplaceAndRemove() {
+        TransactionPool pool = new TransactionPool();
+        ECKey alice = new ECKey();
+        ByteArrayWrapper sender = new ByteArrayWrapper(alice.getAddress());
+
+        Transaction a0 = tx(alice, 0, 10);
+        Transaction a0_ = tx(alice, 0, 20);
+        Transaction a2 = tx(alice, 2, 10);
+
+        TransactionPool.Entry e0 = add(pool, a0, false);
+        TransactionPool.Entry e2 = add(pool, a2, true);
+        assertSame(e0, pool.add(new PendingTransaction(a0_), null, false));
+        assertNull(pool.get(a0.getHash()));
+        assertEquals(2, pool.getSenderSize(sender));
+        assertSame(e2, pool.get(sender, 2));
+
+        pool.setQueued(e2, false);
+        assertEquals(0, pool.getQueuedSize());
+
+        assertTrue(pool.remove(pool.get(a0_.getHash())));
+        assertTrue(pool.remove(e2));
+        assertFalse(pool.remove(e2));
+        assertFalse(pool.hasSender(sender));
+        assertEquals(0, pool.size());
+        assertNull(pool.getCheapest());
+    }
+
+    @Test
+    public void testCheapest() {
+        TransactionPool pool = new TransactionPool();
+        ECKey alice = new ECKey();
+        ECKey bob = new ECKey();
+
+        add(pool, tx(alice, 0, 30), false);
+        TransactionPool.Entry b0 = add(pool, tx(bob, 0, 10), false);
+        TransactionPool.Entry b1 = add(pool, tx(bob, 1, 10), false);
+
+        // the latest of equally priced is evicted first
+        assertSame(b1, pool.getCheapest());
+        pool.remove(b1);
+        assertSame(b0, pool.getCheapest());
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) [2016] [ <ether.camp> ]
+ * This file is part of the ethereumJ library.
+ *
+ * The ethereumJ library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The ethereumJ library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with the ethereumJ library. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.crypto.zksnark;
+
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.util.Random;
+
+import static org.ethereum.crypto.zksnark.Params.P;
+import static org.ethereum.crypto.zksnark.Params.R;
+import static org.junit.Assert.*;
+
+/**
+ * Testing Montgomery form {@link Fp} arithmetic against {@link BigInteger}
+ * and the pairing built on top of it
+ */
+public class FpTest {
+
+    private static final BigInteger G2_X_IM = new BigInteger("11559732032986387107991004021392285783925812861821192530917403151452391805634");
+    private static final BigInteger G2_X_RE = new BigInteger("10857046999023057135944570762232829481370756359578518086990519993285655852781");
+    private static final BigInteger G2_Y_IM = new BigInteger("4082367875863433681332203403145435568316851327593401208105741076214120093531");
+    private static final BigInteger G2_Y_RE = new BigInteger("8495653923123431417604973247489272438418190587263600148770280649306958101930");
+
+    @Test
+    public void testArithmetic() {
+        Random rnd = new Random(0);
+        BigInteger[] values = new BigInteger[100];
+        values[0] = BigInteger.ZERO;
+        values[1] = BigInteger.ONE;
+        values[2] = P.subtract(BigInteger.ONE);
+        for (int i = 3; i < values.length; i++) {
+            values[i] = new BigInteger(P.bitLength(), rnd).mod(P);
+        }
+
+        for (int i = 0; i < values.length; i++) {
+            BigInteger a = values[i];
+            BigInteger b = values[(i * 7 + 3) % values.length];
+            Fp fa = Fp.create(a);
+            Fp fb = Fp.create(b);
+
+            assertEquals(a, fa.toBigInteger());
+            assertEquals(a.add(b).mod(P), fa.add(fb).toBigInteger());
+            assertEquals(a.subtract(b).mod(P), fa.sub(fb).toBigInteger());
+            assertEquals(a.multiply(b).mod(P), fa.mul(fb).toBigInteger());
+            assertEquals(a.multiply(a).mod(P), fa.squared().toBigInteger());
+            assertEquals(a.shiftLeft(1).mod(P), fa.dbl().toBigInteger());
+            assertEquals(a.negate().mod(P), fa.negate().toBigInteger());
+            if (a.signum() != 0) {
+                assertEquals(a.modInverse(P), fa.inverse().toBigInteger());
+            }
+            assertEquals(a.signum() == 0, fa.isZero());
+            assertArrayEquals(a.toByteArray(), fa.bytes());
+            assertEquals(fa, Fp.create(a.toByteArray()));
+        }
+    }
+
+    @Test
+    public void testInvalid() {
+        assertTrue(Fp.create(P.subtract(BigInteger.ONE)).isValid());
+
+        Fp p = Fp.create(P);
+        assertFalse(p.isValid());
+        assertFalse(p.isZero());
+        assertEquals(P, p.toBigInteger());
+
+        Fp max = Fp.create(BigInteger.ONE.shiftLeft(256).subtract(BigInteger.ONE));
+        assertFalse(max.isValid());
+
+        // p must not be reduced to zero, (p; p) is not the point at infinity
+        assertNull(BN128Fp.create(P.toByteArray(), P.toByteArray()));
+        assertNull(BN128Fp.create(P.toByteArray(), BigInteger.valueOf(2).toByteArray()));
+    }
+
+    @Test
+    public void testPairing() {
+        BN128G1 g1 = BN128G1.create(BigInteger.ONE.toByteArray(), BigInteger.valueOf(2).toByteArray());
+        BN128G2 g2 = BN128G2.create(G2_X_RE.toByteArray(), G2_X_IM.toByteArray(),
+                G2_Y_RE.toByteArray(), G2_Y_IM.toByteArray());
+        assertNotNull(g1);
+        assertNotNull(g2);
+
+        BigInteger a = new BigInteger("123456789");
+        BigInteger b = new BigInteger("987654321");
+
+        BN128G1 aG1 = new BN128G1(g1.mul(a));
+        BN128G2 bG2 = new BN128G2(g2.mul(b));
+        BN128G1 abG1Neg = new BN128G1(g1.mul(R.subtract(a.multiply(b))));
+
+        // e(a * G1, b * G2) * e(-ab * G1, G2) == 1, run twice to hit the cached coefficients
+        for (int i = 0; i < 2; i++) {
+            PairingCheck check = PairingCheck.create();
+            check.addPair(aG1, bG2);
+            check.addPair(abG1Neg, g2);
+            check.run();
+            assertEquals(1, check.result());
+        }
+
+        PairingCheck check = PairingCheck.create();
+        check.addPair(aG1, bG2);
+        check.addPair(new BN128G1(g1.mul(R.subtract(a.multiply(b)).add(BigInteger.ONE))), g2);
+        check.run();
+        assertEquals(0, check.result());
+
+        assertSame(PairingCheck.ellCoeffs(bG2.toAffine()), PairingCheck.ellCoeffs(bG2.toAffine()));
+    }
+}
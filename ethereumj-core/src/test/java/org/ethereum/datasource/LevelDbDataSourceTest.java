@@ -21,12 +21,13 @@ import org.ethereum.datasource.leveldb.LevelDbDataSource;
 import org.junit.Ignore;
 import org.junit.Test;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import static org.ethereum.TestUtils.randomBytes;
-import static org.junit.Assert.assertEquals;
-import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.*;
 
 @Ignore
 public class LevelDbDataSourceTest {
@@ -60,6 +61,28 @@ public class LevelDbDataSourceTest {
         dataSource.close();
     }
 
+    @Test
+    public void testGetBatch() {
+        LevelDbDataSource dataSource = new LevelDbDataSource("test");
+        dataSource.init(DbSettings.DEFAULT);
+
+        Map<byte[], byte[]> batch = createBatch(100);
+        dataSource.updateBatch(batch);
+
+        List<byte[]> keys = new ArrayList<>(batch.keySet());
+        keys.add(randomBytes(32));
+        List<byte[]> values = dataSource.getBatch(keys);
+
+        assertEquals(keys.size(), values.size());
+        for (int i = 0; i < batch.size(); i++) {
+            assertArrayEquals(batch.get(keys.get(i)), values.get(i));
+        }
+        assertNull(values.get(batch.size()));
+        assertEquals(1, dataSource.getBatch(keys.subList(0, 1)).size());
+
+        dataSource.close();
+    }
+
     private static Map<byte[], byte[]> createBatch(int batchSize) {
         HashMap<byte[], byte[]> result = new HashMap<>();
         for (int i = 0; i < batchSize; i++) {
@@ -0,0 +1,277 @@
+/*
+ * Copyright (c) [2016] [ <ether.camp> ]
+ * This file is part of the ethereumJ library.
+ *
+ * The ethereumJ library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The ethereumJ library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with the ethereumJ library. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.datasource;
+
+import org.ethereum.config.SystemProperties;
+import org.ethereum.datasource.leveldb.LevelDbDataSource;
+import org.ethereum.datasource.lsm.LsmDbDataSource;
+import org.ethereum.datasource.rocksdb.RocksDbDataSource;
+import org.ethereum.util.ByteArrayMap;
+import org.ethereum.util.FileUtil;
+import org.junit.After;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.ethereum.crypto.HashUtil.sha3;
+import static org.ethereum.util.ByteUtil.intToBytes;
+import static org.junit.Assert.*;
+
+/**
+ * Testing {@link LsmDbDataSource}
+ */
+public class LsmDbDataSourceTest {
+
+    private static final String NAME = "lsm-test";
+
+    private LsmDbDataSource dataSource;
+
+    @After
+    public void tearDown() {
+        if (dataSource != null) dataSource.close();
+        FileUtil.recursiveDelete(Paths.get(SystemProperties.getDefault().databaseDir(), NAME).toString());
+    }
+
+    private LsmDbDataSource open(long memTableSize) {
+        LsmDbDataSource ret = new LsmDbDataSource(NAME);
+        ret.setMemTableSize(memTableSize);
+        ret.setSegmentSize(16 * 1024);
+        ret.init();
+        return ret;
+    }
+
+    private static byte[] key(int i) {
+        return sha3(intToBytes(i));
+    }
+
+    @Test
+    public void testPutGetDelete() {
+        dataSource = open(1024 * 1024);
+        dataSource.reset();
+
+        dataSource.put(key(1), intToBytes(1));
+        dataSource.put(key(2), new byte[0]);
+        assertArrayEquals(intToBytes(1), dataSource.get(key(1)));
+        assertArrayEquals(new byte[0], dataSource.get(key(2)));
+        assertNull(dataSource.get(key(3)));
+
+        dataSource.delete(key(1));
+        dataSource.put(key(2), null);
+        assertNull(dataSource.get(key(1)));
+        assertNull(dataSource.get(key(2)));
+        assertTrue(dataSource.keys().isEmpty());
+    }
+
+    @Test
+    public void testAgainstModel() {
+        dataSource = open(8 * 1024);
+        dataSource.reset();
+
+        Random rnd = new Random(0);
+        Map<byte[], byte[]> model = new ByteArrayMap<>();
+        for (int i = 0; i < 3000; i++) {
+            Map<byte[], byte[]> batch = new ByteArrayMap<>();
+            for (int j = rnd.nextInt(10); j >= 0; j--) {
+                byte[] k = key(rnd.nextInt(2000));
+                byte[] v = rnd.nextInt(4) == 0 ? null : intToBytes(i);
+                batch.put(k, v);
+                if (v == null) {
+                    model.remove(k);
+                } else {
+                    model.put(k, v);
+                }
+            }
+            dataSource.updateBatch(batch);
+
+            byte[] k = key(rnd.nextInt(2000));
+            assertArrayEquals(model.get(k), dataSource.get(k));
+        }
+        assertTrue(dataSource.getSegmentsCount() > 0);
+        checkContent(model);
+
+        // reopening restores both flushed and logged updates
+        dataSource.close();
+        dataSource = open(8 * 1024);
+        checkContent(model);
+    }
+
+    private void checkContent(Map<byte[], byte[]> model) {
+        for (int i = 0; i < 2000; i++) {
+            assertArrayEquals(model.get(key(i)), dataSource.get(key(i)));
+        }
+        assertEquals(model.size(), dataSource.keys().size());
+    }
+
+    @Test
+    public void testTornLog() throws IOException {
+        dataSource = open(1024 * 1024);
+        dataSource.reset();
+        for (int i = 0; i < 100; i++) {
+            dataSource.put(key(i), intToBytes(i));
+        }
+        dataSource.close();
+
+        // partially written batch at the end of the log
+        File dir = Paths.get(SystemProperties.getDefault().databaseDir(), NAME).toFile();
+        File[] logs = dir.listFiles((d, name) -> name.endsWith(".log"));
+        assertNotNull(logs);
+        assertEquals(1, logs.length);
+        try (FileOutputStream out = new FileOutputStream(logs[0], true)) {
+            out.write(new byte[] {0, 0, 1, 0, 1, 2, 3, 4, 0, 0, 0, 1});
+        }
+
+        dataSource = open(1024 * 1024);
+        for (int i = 0; i < 100; i++) {
+            assertArrayEquals(intToBytes(i), dataSource.get(key(i)));
+        }
+        assertEquals(100, dataSource.keys().size());
+        // the log is replayed to a segment
+        assertEquals(1, dataSource.getSegmentsCount());
+    }
+
+    @Test
+    public void testPrefixLookup() {
+        dataSource = open(8 * 1024);
+        dataSource.reset();
+
+        // composed like trie node keys, spread over the tables and segments
+        byte[] addrHash = sha3(new byte[] {1});
+        for (int i = 0; i < 1000; i++) {
+            dataSource.put(NodeKeyCompositor.compose(key(i), addrHash), intToBytes(i));
+        }
+        for (int i = 0; i < 1000; i += 10) {
+            dataSource.delete(NodeKeyCompositor.compose(key(i), addrHash));
+        }
+        assertTrue(dataSource.getSegmentsCount() > 1);
+
+        for (int i = 0; i < 1000; i++) {
+            byte[] expected = i % 10 == 0 ? null : intToBytes(i);
+            assertArrayEquals(expected, dataSource.prefixLookup(key(i), NodeKeyCompositor.PREFIX_BYTES));
+        }
+        assertNull(dataSource.prefixLookup(key(1000), NodeKeyCompositor.PREFIX_BYTES));
+    }
+
+    @Test
+    public void testFailedFlush() throws IOException {
+        dataSource = open(1024);
+        dataSource.reset();
+
+        // fresh db uses file 0 for the log, the first rotation takes 1 for the next log and 2 for the segment
+        Path blocker = Paths.get(SystemProperties.getDefault().databaseDir(), NAME, "00000002.seg");
+        Files.createDirectory(blocker);
+
+        int accepted = 0;
+        for (; accepted < 1000; accepted++) {
+            try {
+                dataSource.put(key(accepted), intToBytes(accepted));
+            } catch (RuntimeException e) {
+                break;
+            }
+        }
+        assertTrue(accepted < 1000);
+        assertTrue(dataSource.isReadOnly());
+        try {
+            dataSource.put(key(accepted), intToBytes(accepted));
+            fail("Read-only db accepted an update");
+        } catch (RuntimeException expected) {
+        }
+
+        // updates accepted before the failure are readable and survive restart
+        for (int i = 0; i < accepted; i++) {
+            assertArrayEquals(intToBytes(i), dataSource.get(key(i)));
+        }
+        assertNull(dataSource.get(key(accepted)));
+
+        dataSource.close();
+        Files.delete(blocker);
+        dataSource = open(1024);
+        assertFalse(dataSource.isReadOnly());
+        for (int i = 0; i < accepted; i++) {
+            assertArrayEquals(intToBytes(i), dataSource.get(key(i)));
+        }
+        assertEquals(accepted, dataSource.keys().size());
+    }
+
+    @Ignore("Compares LSM, LevelDB and RocksDB sources on the same workload")
+    @Test
+    public void benchmark() {
+        for (int round = 0; round < 2; round++) {
+            for (String engine : new String[] {"lsm", "leveldb", "rocksdb"}) {
+                DbSource<byte[]> db = engine.equals("lsm") ? new LsmDbDataSource("bench-" + engine) :
+                        engine.equals("leveldb") ? new LevelDbDataSource("bench-" + engine) :
+                                new RocksDbDataSource("bench-" + engine);
+                db.init();
+                db.reset();
+                benchmark(engine, db);
+                db.close();
+                FileUtil.recursiveDelete(Paths.get(SystemProperties.getDefault().databaseDir(), "bench-" + engine).toString());
+            }
+        }
+    }
+
+    private void benchmark(String engine, DbSource<byte[]> db) {
+        int count = 500_000;
+        Random rnd = new Random(1);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < count; ) {
+            Map<byte[], byte[]> batch = new HashMap<>();
+            for (int j = 0; j < 1000; j++, i++) {
+                byte[] value = new byte[100 + rnd.nextInt(100)];
+                rnd.nextBytes(value);
+                batch.put(key(i), value);
+            }
+            db.updateBatch(batch);
+        }
+        long write = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < 200_000; i++) {
+            assertNotNull(db.get(key(rnd.nextInt(count))));
+        }
+        long read = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < 200_000; i++) {
+            db.get(key(count + i));
+        }
+        long miss = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < 2_000; i++) {
+            List<byte[]> keys = new ArrayList<>();
+            for (int j = 0; j < 100; j++) keys.add(key(rnd.nextInt(count)));
+            db.getBatch(keys);
+        }
+        long batchRead = System.nanoTime() - start;
+
+        System.out.printf("%-8s write %d: %5d ms, 200K random gets: %5d ms, 200K missing: %5d ms, 2K getBatch(100): %5d ms%n",
+                engine, count, write / 1_000_000, read / 1_000_000, miss / 1_000_000, batchRead / 1_000_000);
+    }
+}
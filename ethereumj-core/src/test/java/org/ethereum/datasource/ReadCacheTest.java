@@ -22,6 +22,9 @@ import org.ethereum.vm.DataWord;
 import org.junit.Test;
 import org.spongycastle.util.encoders.Hex;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import static org.ethereum.crypto.HashUtil.sha3;
 import static org.ethereum.util.ByteUtil.longToBytes;
 import static org.junit.Assert.*;
@@ -88,4 +91,47 @@ public class ReadCacheTest {
         assertEquals(str(intToValue(9_901)), str(readCache.getCached(intToKey(9_901)).value()));
         assertNull(readCache.getCached(intToKey(9_900)));
     }
+
+    @Test
+    public void testGetBatch() {
+        final List<Integer> batches = new ArrayList<>();
+        Source<byte[], byte[]> src = new HashMapDB<byte[]>() {
+            @Override
+            public List<byte[]> getBatch(List<byte[]> keys) {
+                batches.add(keys.size());
+                return super.getBatch(keys);
+            }
+        };
+        ReadCache<byte[], byte[]> readCache = new ReadCache.BytesKey<>(src);
+        WriteCache<byte[], byte[]> writeCache = new WriteCache.BytesKey<>(readCache, WriteCache.CacheType.SIMPLE);
+        for (int i = 0; i < 10; ++i) {
+            src.put(intToKey(i), intToValue(i));
+        }
+        readCache.get(intToKey(0));
+        writeCache.put(intToKey(1), intToValue(100));
+        writeCache.delete(intToKey(2));
+
+        List<byte[]> keys = new ArrayList<>();
+        for (int i = 0; i < 12; ++i) {
+            keys.add(intToKey(i));
+        }
+        List<byte[]> values = writeCache.getBatch(keys);
+
+        // cached, written and deleted keys are not requested from the source
+        assertEquals(1, batches.size());
+        assertEquals(9, (int) batches.get(0));
+        assertEquals(str(intToValue(0)), str(values.get(0)));
+        assertEquals(str(intToValue(100)), str(values.get(1)));
+        assertNull(values.get(2));
+        for (int i = 3; i < 10; ++i) {
+            assertEquals(str(intToValue(i)), str(values.get(i)));
+        }
+        assertNull(values.get(10));
+        assertNull(values.get(11));
+
+        // both found and absent values are cached now
+        writeCache.getBatch(keys);
+        assertEquals(1, batches.size());
+        assertNull(readCache.getCached(intToKey(10)).value());
+    }
 }
@@ -22,7 +22,9 @@ import org.junit.Ignore;
 import org.junit.Test;
 import org.spongycastle.util.encoders.Hex;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import static org.ethereum.TestUtils.randomBytes;
@@ -131,6 +133,28 @@ public class RocksDbDataSourceTest {
         dataSource.close();
     }
 
+    @Test
+    public void testGetBatch() {
+        RocksDbDataSource dataSource = new RocksDbDataSource("test");
+        dataSource.reset();
+
+        Map<byte[], byte[]> batch = createBatch(100);
+        dataSource.updateBatch(batch);
+
+        List<byte[]> keys = new ArrayList<>(batch.keySet());
+        keys.add(randomBytes(32));
+        List<byte[]> values = dataSource.getBatch(keys);
+
+        assertEquals(keys.size(), values.size());
+        for (int i = 0; i < batch.size(); i++) {
+            assertArrayEquals(batch.get(keys.get(i)), values.get(i));
+        }
+        assertNull(values.get(batch.size()));
+        assertEquals(1, dataSource.getBatch(keys.subList(0, 1)).size());
+
+        dataSource.close();
+    }
+
     private static Map<byte[], byte[]> createBatch(int batchSize) {
         HashMap<byte[], byte[]> result = new HashMap<>();
         for (int i = 0; i < batchSize; i++) {
@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) [2016] [ <ether.camp> ]
+ * This file is part of the ethereumJ library.
+ *
+ * The ethereumJ library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The ethereumJ library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with the ethereumJ library. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.db;
+
+import org.ethereum.core.Block;
+import org.ethereum.core.Bloom;
+import org.ethereum.datasource.inmem.HashMapDB;
+import org.ethereum.listener.LogFilter;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import static org.ethereum.crypto.HashUtil.sha3;
+import static org.junit.Assert.*;
+
+/**
+ * Testing {@link BloomBitsIndex}
+ */
+public class BloomBitsIndexTest {
+
+    private static final byte[] ADDRESS = new byte[] {1, 2, 3};
+    private static final byte[] TOPIC = new byte[] {4, 5, 6};
+
+    private static final int SECTION_SIZE = 64;
+    private static final int CONFIRMATIONS = 8;
+    private static final int BLOCKS = 200;
+
+    private List<Block> blocks = new ArrayList<>();
+
+    private BlockStore blockStore = new BlockStoreDummy() {
+        @Override
+        public Block getChainBlockByNumber(long blockNumber) {
+            return blockNumber < blocks.size() ? blocks.get((int) blockNumber) : null;
+        }
+    };
+
+    private static Block createBlock(long number) {
+        Bloom bloom = new Bloom();
+        if (number % 10 == 3) bloom.or(Bloom.create(sha3(ADDRESS)));
+        if (number % 7 == 0) bloom.or(Bloom.create(sha3(TOPIC)));
+
+        return new Block(new byte[32], new byte[32], new byte[20], bloom.getData(), new byte[] {1},
+                number, new byte[] {1}, 0, number, new byte[0], new byte[0], new byte[0],
+                new byte[32], new byte[32], new byte[32], Collections.emptyList(), Collections.emptyList());
+    }
+
+    @Test
+    public void testCandidates() throws InterruptedException {
+        HashMapDB<byte[]> db = new HashMapDB<>();
+        BloomBitsIndex index = new BloomBitsIndex(db, blockStore, SECTION_SIZE, CONFIRMATIONS);
+
+        for (int i = 0; i < BLOCKS; i++) {
+            blocks.add(createBlock(i));
+            index.blockCommitted(blocks.get(i).getHeader());
+        }
+        // section #2 ends at 191 and is confirmed by the block 199
+        waitForSections(index, 3);
+        assertEquals(3, index.getIndexedSections());
+
+        LogFilter byAddress = new LogFilter().withContractAddress(ADDRESS);
+        assertEquals(expected(5, 150, n -> n % 10 == 3), candidates(index, byAddress, 5, 150));
+
+        // the last section is not indexed
+        assertEquals(expected(180, 199, n -> n % 10 == 3 || n >= 192), candidates(index, byAddress, 180, 199));
+
+        LogFilter byAddressAndTopic = new LogFilter().withContractAddress(ADDRESS).withTopic(TOPIC);
+        assertEquals(expected(0, 191, n -> n % 10 == 3 && n % 7 == 0), candidates(index, byAddressAndTopic, 0, 191));
+
+        LogFilter byAnyTopic = new LogFilter().withTopic(TOPIC, new byte[] {7});
+        assertEquals(expected(0, 191, n -> n % 7 == 0), candidates(index, byAnyTopic, 0, 191));
+
+        // reopened index continues from the stored sections
+        BloomBitsIndex reopened = new BloomBitsIndex(db, blockStore, SECTION_SIZE, CONFIRMATIONS);
+        assertEquals(3, reopened.getIndexedSections());
+        assertEquals(expected(0, 191, n -> n % 7 == 0), candidates(reopened, byAnyTopic, 0, 191));
+    }
+
+    @Test
+    public void testDisabled() {
+        BloomBitsIndex index = new BloomBitsIndex(null, null);
+        assertFalse(index.isEnabled());
+        index.blockCommitted(createBlock(10_000).getHeader());
+        assertEquals(0, index.getIndexedSections());
+
+        LogFilter byAddress = new LogFilter().withContractAddress(ADDRESS);
+        assertEquals(expected(5, 150, n -> true), candidates(index, byAddress, 5, 150));
+    }
+
+    private static void waitForSections(BloomBitsIndex index, long sections) throws InterruptedException {
+        for (int i = 0; i < 100 && index.getIndexedSections() < sections; i++) {
+            Thread.sleep(50);
+        }
+    }
+
+    private static List<Long> candidates(BloomBitsIndex index, LogFilter filter, long from, long to) {
+        return index.getCandidates(filter, from, to).boxed().collect(Collectors.toList());
+    }
+
+    private static List<Long> expected(long from, long to, java.util.function.LongPredicate predicate) {
+        return LongStream.rangeClosed(from, to).filter(predicate).boxed().collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) [2016] [ <ether.camp> ]
+ * This file is part of the ethereumJ library.
+ *
+ * The ethereumJ library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The ethereumJ library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with the ethereumJ library. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.db;
+
+import org.apache.commons.lang3.tuple.Pair;
+import org.ethereum.crypto.ECKey;
+import org.ethereum.datasource.inmem.HashMapDB;
+import org.ethereum.net.rlpx.Node;
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Testing {@link PeerSource}
+ */
+public class PeerSourceTest {
+
+    private static Node node(int i) {
+        return new Node(ECKey.fromPrivate(BigInteger.valueOf(i)).getNodeId(), "10.0.0." + i, 30303);
+    }
+
+    private static Map<String, Integer> read(PeerSource source) {
+        Map<String, Integer> ret = new HashMap<>();
+        for (Pair<Node, Integer> node : source.getNodes()) {
+            ret.put(node.getLeft().getHost(), node.getRight());
+        }
+        return ret;
+    }
+
+    @Test
+    public void testUpdate() {
+        HashMapDB<byte[]> db = new HashMapDB<>();
+        PeerSource source = new PeerSource(db);
+
+        List<Pair<Node, Integer>> nodes = new ArrayList<>();
+        for (int i = 1; i <= 3; i++) {
+            nodes.add(Pair.of(node(i), i * 10));
+        }
+        assertEquals(3, source.update(nodes));
+        assertEquals(0, source.update(nodes));
+
+        nodes.set(1, Pair.of(node(2), 25));
+        assertEquals(1, source.update(nodes));
+
+        // the slot of the dropped node is reused
+        nodes.remove(0);
+        nodes.add(Pair.of(node(4), 40));
+        assertEquals(1, source.update(nodes));
+        assertEquals(3, source.getNodes().size());
+
+        Map<String, Integer> expected = new HashMap<>();
+        expected.put("10.0.0.2", 25);
+        expected.put("10.0.0.3", 30);
+        expected.put("10.0.0.4", 40);
+        assertEquals(expected, read(source));
+
+        // persisted state is picked up by a new instance
+        PeerSource reopened = new PeerSource(db);
+        assertEquals(expected, read(reopened));
+        nodes.add(Pair.of(node(5), 50));
+        assertEquals(1, reopened.update(nodes));
+        assertEquals(4, reopened.getNodes().size());
+    }
+
+    @Test
+    public void testTruncate() {
+        HashMapDB<byte[]> db = new HashMapDB<>();
+        PeerSource source = new PeerSource(db);
+
+        List<Pair<Node, Integer>> nodes = new ArrayList<>();
+        for (int i = 1; i <= 5; i++) {
+            nodes.add(Pair.of(node(i), i * 10));
+        }
+        assertEquals(5, source.update(nodes));
+
+        // the tail nodes are moved to the free slots
+        nodes.remove(4);
+        nodes.remove(1);
+        nodes.remove(0);
+        assertEquals(2, source.update(nodes));
+
+        Map<String, Integer> expected = new HashMap<>();
+        expected.put("10.0.0.3", 30);
+        expected.put("10.0.0.4", 40);
+        assertEquals(expected, read(source));
+        assertEquals(expected, read(new PeerSource(db)));
+
+        nodes.clear();
+        assertEquals(0, source.update(nodes));
+        assertEquals(0, source.getNodes().size());
+        assertEquals(0, new PeerSource(db).getNodes().size());
+    }
+}
@@ -0,0 +1,205 @@
+/*
+ * Copyright (c) [2016] [ <ether.camp> ]
+ * This file is part of the ethereumJ library.
+ *
+ * The ethereumJ library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The ethereumJ library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with the ethereumJ library. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.db;
+
+import org.ethereum.core.Block;
+import org.ethereum.core.Bloom;
+import org.ethereum.core.BlockSummary;
+import org.ethereum.core.Transaction;
+import org.ethereum.core.TransactionInfo;
+import org.ethereum.core.TransactionReceipt;
+import org.ethereum.crypto.ECKey;
+import org.ethereum.datasource.inmem.HashMapDB;
+import org.ethereum.db.ReceiptsIndex.Entry;
+import org.ethereum.vm.DataWord;
+import org.ethereum.vm.LogInfo;
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.Assert.*;
+
+/**
+ * Testing {@link ReceiptsIndex}
+ */
+public class ReceiptsIndexTest {
+
+    private static final ECKey SENDER = ECKey.fromPrivate(BigInteger.ONE);
+    private static final byte[] RECEIVER = new byte[] {1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1};
+    private static final byte[] TOPIC = DataWord.of(7).getData();
+
+    private final List<Block> blocks = new ArrayList<>();
+    private final List<BlockSummary> summaries = new ArrayList<>();
+
+    private final Set<Long> missingBlocks = ConcurrentHashMap.newKeySet();
+
+    private final BlockStore blockStore = new BlockStoreDummy() {
+        @Override
+        public Block getChainBlockByNumber(long blockNumber) {
+            if (missingBlocks.contains(blockNumber)) return null;
+            return blockNumber < blocks.size() ? blocks.get((int) blockNumber) : null;
+        }
+
+        @Override
+        public long getMaxNumber() {
+            return blocks.size() - 1;
+        }
+    };
+
+    private final TransactionStore transactionStore = new TransactionStore(new HashMapDB<>());
+
+    // each block contains a transfer to the receiver, every 3rd transfer emits a log
+    private void createBlocks(int count) {
+        int start = blocks.size();
+        for (int i = start; i < start + count; i++) {
+            Transaction tx = new Transaction(BigInteger.valueOf(i).toByteArray(), new byte[] {1}, new byte[] {1},
+                    RECEIVER, new byte[] {1}, new byte[0]);
+            tx.sign(SENDER);
+
+            List<LogInfo> logs = i % 3 == 0 ?
+                    Collections.singletonList(new LogInfo(RECEIVER, Collections.singletonList(DataWord.of(TOPIC)), new byte[0])) :
+                    Collections.emptyList();
+            TransactionReceipt receipt = new TransactionReceipt(new byte[32], new byte[] {1}, new Bloom(), logs);
+            receipt.setTransaction(tx);
+
+            Block block = new Block(new byte[32], new byte[32], new byte[20], new byte[256], new byte[] {1},
+                    i, new byte[] {1}, 0, i, new byte[0], new byte[0], new byte[0],
+                    new byte[32], new byte[32], new byte[32], Collections.singletonList(tx), Collections.emptyList());
+            transactionStore.put(new TransactionInfo(receipt, block.getHash(), 0));
+
+            blocks.add(block);
+            summaries.add(new BlockSummary(block, new HashMap<>(), Collections.singletonList(receipt), new ArrayList<>()));
+        }
+    }
+
+    @Test
+    public void testBackfillAndImport() throws Exception {
+        createBlocks(50);
+        HashMapDB<byte[]> db = new HashMapDB<>();
+        ReceiptsIndex index = new ReceiptsIndex(db, blockStore, transactionStore, 4);
+
+        // existing chain
+        index.setEthereumListener(new org.ethereum.listener.CompositeEthereumListener());
+        waitIndexed(index, 45);
+
+        // imported blocks
+        for (int i = 0; i < 20; i++) {
+            createBlocks(1);
+            index.blockImported(summaries.get(summaries.size() - 1));
+        }
+        waitIndexed(index, 65);
+
+        List<Entry> sent = index.getEntries(SENDER.getAddress(), 0, Long.MAX_VALUE, 0, 1000);
+        assertEquals(66, sent.size());
+        assertEquals(new Entry(10, 0, -1), sent.get(10));
+
+        List<Entry> logs = index.getEntries(TOPIC, 10, 40, 0, 1000);
+        assertEquals(Arrays.asList(new Entry(12, 0, 0), new Entry(15, 0, 0), new Entry(18, 0, 0)), logs.subList(0, 3));
+        assertEquals(new Entry(39, 0, 0), logs.get(logs.size() - 1));
+
+        // the receiver has both transfer and log entries
+        List<Entry> page = index.getEntries(RECEIVER, 0, Long.MAX_VALUE, 2, 3);
+        assertEquals(Arrays.asList(new Entry(1, 0, -1), new Entry(2, 0, -1), new Entry(3, 0, -1)), page);
+
+        // reopened index keeps its position
+        assertEquals(65, new ReceiptsIndex(db, blockStore, transactionStore, 4).getIndexedBlock());
+    }
+
+    @Test
+    public void testMissingData() throws Exception {
+        createBlocks(20);
+        missingBlocks.add(10L);
+        ReceiptsIndex index = new ReceiptsIndex(new HashMapDB<>(), blockStore, transactionStore, 4);
+        index.setEthereumListener(new org.ethereum.listener.CompositeEthereumListener());
+        waitIndexed(index, 9);
+        Thread.sleep(200);
+        assertEquals(9, index.getIndexedBlock());
+
+        // retried on the next imported block
+        missingBlocks.clear();
+        createBlocks(1);
+        index.blockImported(summaries.get(summaries.size() - 1));
+        waitIndexed(index, 16);
+        assertEquals(17, index.getEntries(SENDER.getAddress(), 0, Long.MAX_VALUE, 0, 1000).size());
+
+        // receipts are not available
+        ReceiptsIndex noReceipts = new ReceiptsIndex(new HashMapDB<>(), blockStore, null, 4);
+        assertFalse(noReceipts.indexBlock(3));
+        assertTrue(noReceipts.getEntries(SENDER.getAddress(), 0, Long.MAX_VALUE, 0, 1000).isEmpty());
+    }
+
+    @Test
+    public void testChunks() {
+        createBlocks(ReceiptsIndex.CHUNK_SIZE * 2 + 10);
+        ReceiptsIndex index = new ReceiptsIndex(new HashMapDB<>(), blockStore, transactionStore, 4);
+        for (int i = 0; i < blocks.size(); i++) {
+            index.indexBlock(i);
+        }
+        // re-indexing doesn't duplicate entries
+        index.indexBlock(blocks.size() - 1);
+
+        List<Entry> all = index.getEntries(SENDER.getAddress(), 0, Long.MAX_VALUE, 0, Integer.MAX_VALUE);
+        assertEquals(blocks.size(), all.size());
+        for (int i = 0; i < all.size(); i++) {
+            assertEquals(i, all.get(i).blockNumber);
+        }
+
+        List<Entry> page = index.getEntries(SENDER.getAddress(), 1000, 1100, 20, 50);
+        assertEquals(50, page.size());
+        assertEquals(1020, page.get(0).blockNumber);
+        assertEquals(1069, page.get(49).blockNumber);
+    }
+
+    @Test
+    public void testReindexFrozen() {
+        createBlocks(ReceiptsIndex.CHUNK_SIZE * 2 + 10);
+        ReceiptsIndex index = new ReceiptsIndex(new HashMapDB<>(), blockStore, transactionStore, 4);
+        for (int i = 0; i < blocks.size(); i++) {
+            index.indexBlock(i);
+        }
+
+        // blocks from both frozen chunks are indexed again after reorg
+        int reorgFrom = ReceiptsIndex.CHUNK_SIZE - 5;
+        blocks.subList(reorgFrom, blocks.size()).clear();
+        createBlocks(10);
+        for (int i = reorgFrom; i < blocks.size(); i++) {
+            index.indexBlock(i);
+        }
+
+        List<Entry> all = index.getEntries(SENDER.getAddress(), 0, Long.MAX_VALUE, 0, Integer.MAX_VALUE);
+        assertEquals(blocks.size(), all.size());
+        for (int i = 0; i < all.size(); i++) {
+            assertEquals(i, all.get(i).blockNumber);
+        }
+        assertTrue(index.getEntries(SENDER.getAddress(), blocks.size(), Long.MAX_VALUE, 0, 10).isEmpty());
+    }
+
+    private static void waitIndexed(ReceiptsIndex index, long number) throws InterruptedException {
+        for (int i = 0; i < 100 && index.getIndexedBlock() < number; i++) {
+            Thread.sleep(50);
+        }
+        assertEquals(number, index.getIndexedBlock());
+    }
+}
@@ -0,0 +1,181 @@
+/*
+ * Copyright (c) [2016] [ <ether.camp> ]
+ * This file is part of the ethereumJ library.
+ *
+ * The ethereumJ library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The ethereumJ library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with the ethereumJ library. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.listener;
+
+import org.ethereum.core.BlockSummary;
+import org.ethereum.core.PendingState;
+import org.ethereum.listener.AsyncEthereumListener.OverflowPolicy;
+import org.ethereum.listener.AsyncEthereumListener.PendingTransactionUpdate;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Testing {@link AsyncEthereumListener} queueing and batching
+ */
+public class AsyncEthereumListenerTest {
+
+    private static class BlockingListener extends EthereumListenerAdapter
+            implements AsyncEthereumListener.BatchListener {
+        final CountDownLatch release = new CountDownLatch(1);
+        final List<List<BlockSummary>> batches = new ArrayList<>();
+        final List<PendingState> states = new ArrayList<>();
+
+        @Override
+        public void trace(String output) {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        @Override
+        public synchronized void onBlocks(List<BlockSummary> blocks) {
+            batches.add(blocks);
+        }
+
+        @Override
+        public void onPendingTransactionUpdates(List<PendingTransactionUpdate> updates) {
+        }
+
+        @Override
+        public synchronized void onPendingStateChanged(PendingState pendingState) {
+            states.add(pendingState);
+        }
+    }
+
+    @Test
+    public void testBatching() throws Exception {
+        BlockingListener listener = new BlockingListener();
+        AsyncEthereumListener async = new AsyncEthereumListener(listener).withBatchSize(4, 16);
+
+        async.trace("block the delivery");
+        waitTaken(async);
+        for (int i = 0; i < 10; i++) {
+            async.onBlock(null, true);
+        }
+        assertEquals(10, async.getQueueSize());
+
+        listener.release.countDown();
+        waitDelivered(async, 11);
+
+        assertEquals(3, listener.batches.size());
+        assertEquals(4, listener.batches.get(0).size());
+        assertEquals(4, listener.batches.get(1).size());
+        assertEquals(2, listener.batches.get(2).size());
+    }
+
+    @Test
+    public void testCoalesce() throws Exception {
+        BlockingListener listener = new BlockingListener();
+        AsyncEthereumListener async = new AsyncEthereumListener(listener).withQueueLimit(2);
+
+        async.trace("block the delivery");
+        waitTaken(async);
+        for (int i = 0; i < 100; i++) {
+            async.onPendingStateChanged(null);
+        }
+        async.onBlock(null, true);
+        // the queue is full
+        async.onBlock(null, true);
+
+        assertEquals(2, async.getQueueSize());
+        assertEquals(99, async.getCoalescedEvents());
+        assertEquals(1, async.getDroppedEvents());
+
+        listener.release.countDown();
+        waitDelivered(async, 3);
+        assertEquals(1, listener.states.size());
+        assertEquals(1, listener.batches.size());
+    }
+
+    @Test
+    public void testSlowListenerDoesntBlock() throws Exception {
+        BlockingListener listener = new BlockingListener();
+        AsyncEthereumListener async = new AsyncEthereumListener(listener)
+                .withQueueLimit(10).withOverflowPolicy(OverflowPolicy.DROP);
+        CompositeEthereumListener composite = new CompositeEthereumListener();
+        composite.addListener(async);
+
+        composite.trace("block the delivery");
+        waitTaken(async);
+        for (int i = 0; i < 100; i++) {
+            composite.onPendingStateChanged(null);
+        }
+        assertEquals(10, async.getQueueSize());
+        assertEquals(90, async.getDroppedEvents());
+
+        Thread.sleep(20);
+        assertTrue(async.getLagMillis() >= 20);
+
+        listener.release.countDown();
+        async.stop();
+    }
+
+    private static class RemovedListener extends EthereumListenerAdapter {
+    }
+
+    @Test
+    public void testStoppedOnRemove() throws Exception {
+        AsyncEthereumListener async = new AsyncEthereumListener(new RemovedListener());
+        CompositeEthereumListener composite = new CompositeEthereumListener();
+        composite.addListener(async);
+        composite.trace("start the delivery");
+        waitTaken(async);
+        assertTrue(isDeliveryAlive());
+
+        composite.removeListener(async);
+        for (int i = 0; i < 500 && isDeliveryAlive(); i++) {
+            Thread.sleep(10);
+        }
+        assertFalse(isDeliveryAlive());
+        async.trace("ignored");
+        assertEquals(0, async.getQueueSize());
+    }
+
+    private static boolean isDeliveryAlive() {
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.getName().equals("listener-RemovedListener") && thread.isAlive()) return true;
+        }
+        return false;
+    }
+
+    private static void waitTaken(AsyncEthereumListener async) throws InterruptedException {
+        for (int i = 0; i < 500 && async.getDeliveredEvents() == 0; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(1, async.getDeliveredEvents());
+    }
+
+    private static void waitDelivered(AsyncEthereumListener async, long count) throws InterruptedException {
+        long end = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(5);
+        while (async.getDeliveredEvents() < count && System.currentTimeMillis() < end) {
+            Thread.sleep(10);
+        }
+        // the last batch is counted before it's delivered
+        Thread.sleep(50);
+        assertEquals(count, async.getDeliveredEvents());
+        assertEquals(0, async.getQueueSize());
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright (c) [2016] [ <ether.camp> ]
+ * This file is part of the ethereumJ library.
+ *
+ * The ethereumJ library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The ethereumJ library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with the ethereumJ library. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.metrics;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.ethereum.util.LatencyHistogram;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Scanner;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+/**
+ * Testing {@link Metrics}, {@link MetricsExporter} and {@link MetricsServer}
+ */
+public class MetricsTest {
+
+    @After
+    public void tearDown() {
+        for (String name : Metrics.getMetrics().keySet()) {
+            if (name.startsWith("test.")) Metrics.remove(name);
+        }
+    }
+
+    @Test
+    public void testRegistry() {
+        Counter counter = Metrics.counter("test.counter");
+        counter.inc();
+        counter.add(2);
+        assertSame(counter, Metrics.counter("test.counter"));
+        assertEquals(3, Metrics.counter("test.counter").getCount());
+
+        LatencyHistogram histogram = Metrics.histogram("test.histogram");
+        assertSame(histogram, Metrics.histogram("test.histogram"));
+        assertEquals("test.histogram", histogram.getName());
+
+        Metrics.gauge("test.gauge", () -> 42);
+        assertEquals(42, ((Gauge) Metrics.getMetrics().get("test.gauge")).getValue(), 0);
+
+        try {
+            Metrics.meter("test.counter");
+            fail("Counter can't be used as a meter");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testRemoveOwned() {
+        Gauge first = () -> 1;
+        Gauge second = () -> 2;
+        Metrics.gauge("test.owned", first);
+        Metrics.gauge("test.owned", second);
+
+        // the replaced gauge doesn't remove the current one
+        Metrics.remove("test.owned", first);
+        assertSame(second, Metrics.getMetrics().get("test.owned"));
+
+        Metrics.remove("test.owned", second);
+        assertFalse(Metrics.getMetrics().containsKey("test.owned"));
+    }
+
+    @Test
+    public void testMeterRate() {
+        AtomicLong time = new AtomicLong();
+        Meter meter = new Meter(time::get);
+        assertEquals(0, meter.getRate(), 0);
+
+        // 10 events per second for the first tick
+        meter.mark(50);
+        time.addAndGet(Meter.TICK_INTERVAL);
+        assertEquals(10, meter.getRate(), 1e-9);
+        assertEquals(10, meter.getMeanRate(), 1e-9);
+
+        // rate decays while idle
+        time.addAndGet(12 * Meter.TICK_INTERVAL);
+        assertTrue(meter.getRate() < 10 / Math.E + 1e-9);
+        assertEquals(50, meter.getCount());
+    }
+
+    @Test
+    public void testExport() throws Exception {
+        SortedMap<String, Metric> metrics = new TreeMap<>();
+        Counter counter = new Counter();
+        counter.add(7);
+        metrics.put("test.counter", counter);
+        metrics.put("test.gauge", (Gauge) () -> 1.5);
+        LatencyHistogram histogram = new LatencyHistogram("test.histogram");
+        histogram.record(3_000_000);
+        metrics.put("test.histogram", histogram);
+
+        String text = MetricsExporter.toPrometheus(metrics);
+        assertTrue(text.contains("# TYPE ethereumj_test_counter_total counter\nethereumj_test_counter_total 7\n"));
+        assertTrue(text.contains("# TYPE ethereumj_test_gauge gauge\nethereumj_test_gauge 1.50000\n"));
+        assertTrue(text.contains("ethereumj_test_histogram_seconds{quantile=\"0.5\"} 0.00409600\n"));
+        assertTrue(text.contains("ethereumj_test_histogram_seconds_sum 0.00300000\n"));
+        assertTrue(text.contains("ethereumj_test_histogram_seconds_count 1\n"));
+
+        JsonNode json = new ObjectMapper().readTree(MetricsExporter.toJson(metrics));
+        assertEquals(7, json.get("test.counter").get("count").asLong());
+        assertEquals(1.5, json.get("test.gauge").get("value").asDouble(), 0);
+        assertEquals("histogram", json.get("test.histogram").get("type").asText());
+        assertEquals(3000, json.get("test.histogram").get("mean").asLong());
+    }
+
+    @Test
+    public void testServer() throws Exception {
+        Metrics.counter("test.served").inc();
+
+        MetricsServer server = new MetricsServer();
+        server.start(0);
+        try {
+            String text = get("http://127.0.0.1:" + server.getPort() + "/metrics");
+            assertTrue(text.contains("ethereumj_test_served_total 1\n"));
+
+            String json = get("http://127.0.0.1:" + server.getPort() + "/metrics.json");
+            assertEquals(1, new ObjectMapper().readTree(json).get("test.served").get("count").asLong());
+        } finally {
+            server.close();
+        }
+    }
+
+    private static String get(String url) throws Exception {
+        HttpURLConnection conn = (HttpURLConnection) new URL(url).openConnection();
+        assertEquals(200, conn.getResponseCode());
+        try (InputStream in = conn.getInputStream(); Scanner scanner = new Scanner(in, StandardCharsets.UTF_8.name())) {
+            return scanner.useDelimiter("\\A").hasNext() ? scanner.next() : "";
+        }
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) [2016] [ <ether.camp> ]
+ * This file is part of the ethereumJ library.
+ *
+ * The ethereumJ library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The ethereumJ library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with the ethereumJ library. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.mine;
+
+import org.apache.commons.lang3.tuple.Pair;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Testing {@link EthashDataset}
+ */
+public class EthashDatasetTest {
+
+    private File dir;
+
+    @Before
+    public void setup() throws Exception {
+        dir = Files.createTempDirectory("ethash-dataset").toFile();
+    }
+
+    @After
+    public void cleanup() {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) file.delete();
+        }
+        dir.delete();
+    }
+
+    @Test
+    public void testWriteAndLoad() throws Exception {
+        File file = new File(dir, "mine-dag-light-0.dat");
+        int[] words = new int[1024];
+        for (int i = 0; i < words.length; i++) words[i] = i * 0x01010101;
+
+        EthashDataset.write(file, 0, words);
+        assertEquals(1, dir.listFiles().length);
+
+        EthashDataset loaded = EthashDataset.load(file, 0, words.length * 4);
+        assertNotNull(loaded);
+        assertArrayEquals(words, loaded.toArray());
+        assertEquals(words[777], loaded.getWord(777));
+
+        assertNull(EthashDataset.load(file, 30000, words.length * 4));
+        assertNull(EthashDataset.load(file, 0, words.length * 8));
+        assertNull(EthashDataset.load(new File(dir, "absent.dat"), 0, words.length * 4));
+    }
+
+    @Test
+    public void testDiscard() throws Exception {
+        File file = new File(dir, "mine-dag-0.dat");
+        EthashDataset dataset = EthashDataset.create(file, 0, 1024);
+        dataset.setWord(0, 1);
+        dataset.discard();
+
+        assertFalse(file.exists());
+        assertEquals(0, dir.listFiles().length);
+    }
+
+    @Test
+    public void testWriteFailure() throws Exception {
+        // the target is taken by a non-empty directory
+        File file = new File(dir, "mine-dag-light-0.dat");
+        assertTrue(new File(file, "blocker").mkdirs());
+
+        try {
+            EthashDataset.write(file, 0, new int[1024]);
+            fail("Dataset written over a directory");
+        } catch (IOException expected) {
+        }
+        // no temporary file is left
+        assertArrayEquals(new File[] {file}, dir.listFiles());
+        new File(file, "blocker").delete();
+    }
+
+    @Test
+    public void testParallelGeneration() throws Exception {
+        EthashAlgo ethashAlgo = new EthashAlgo();
+        int[] cache = ethashAlgo.makeCache(1024, ethashAlgo.getSeedHash(0));
+        long fullSize = 1024 * 32 * 64;
+        File file = new File(dir, "mine-dag-0.dat");
+
+        EthashDataset dataset = EthashDataset.create(file, 0, fullSize);
+        List<Integer> progress = Collections.synchronizedList(new ArrayList<>());
+        ethashAlgo.calcDataset(cache, dataset, 4, progress::add);
+        dataset.commit();
+
+        assertTrue(progress.contains(100));
+
+        EthashDataset loaded = EthashDataset.load(file, 0, fullSize);
+        assertNotNull(loaded);
+        int[] expected = ethashAlgo.calcDataset(fullSize, cache);
+        assertArrayEquals(expected, loaded.toArray());
+
+        byte[] hash = new byte[32];
+        byte[] nonce = new byte[8];
+        Pair<byte[], byte[]> light = ethashAlgo.hashimotoLight(fullSize, cache, hash, nonce);
+        Pair<byte[], byte[]> full = ethashAlgo.hashimotoFull(fullSize, loaded, hash, nonce);
+        assertArrayEquals(light.getLeft(), full.getLeft());
+        assertArrayEquals(light.getRight(), full.getRight());
+    }
+}
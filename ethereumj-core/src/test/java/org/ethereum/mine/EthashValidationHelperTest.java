@@ -1,12 +1,24 @@
 package org.ethereum.mine;
 
+import org.apache.commons.lang3.tuple.Pair;
+import org.ethereum.core.BlockHeader;
 import org.junit.Test;
 
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
 import static org.ethereum.mine.EthashValidationHelper.CacheOrder.direct;
 import static org.ethereum.mine.EthashValidationHelper.CacheOrder.reverse;
+import static org.ethereum.util.ByteUtil.longToBytes;
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 
 /**
  * @author Mikhail Kalinin
@@ -208,4 +220,84 @@ public class EthashValidationHelperTest {
         assertNotNull(ethash.getCachedFor(0));
         assertEquals(ethash.caches.size(), 1);
     }
+
+    private static BlockHeader header(long number, long nonce) {
+        return new BlockHeader(new byte[32], new byte[32], new byte[20], new byte[256], new byte[] {1}, number,
+                new byte[] {1}, 0, 0, new byte[0], new byte[32], longToBytes(nonce));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTooFewCachedEpochs() {
+        new EthashValidationHelper(direct, 1, 16, null);
+    }
+
+    @Test // repeated verification of the same header and nonce is served from cache
+    public void testVerifiedCache() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        EthashValidationHelper ethash = new EthashValidationHelper(direct, 2, 16, null);
+        ethash.ethashAlgo = new EthashAlgoMock() {
+            @Override
+            public Pair<byte[], byte[]> hashimotoLight(long fullSize, int[] cache, byte[] hash, byte[] nonce) {
+                calls.incrementAndGet();
+                return Pair.of(nonce, hash);
+            }
+        };
+        ethash.preCache(0);
+
+        BlockHeader h1 = header(1, 1);
+        Pair<byte[], byte[]> res = ethash.ethashWorkFor(h1, h1.getNonce(), true);
+        assertArrayEquals(h1.getNonce(), res.getLeft());
+        assertSame(res, ethash.ethashWorkFor(h1, h1.getNonce(), true));
+        assertEquals(1, calls.get());
+
+        ethash.ethashWorkFor(h1, longToBytes(2), true);
+        assertEquals(2, calls.get());
+
+        // batch keeps the order of headers
+        List<BlockHeader> headers = Arrays.asList(header(2, 3), h1, header(3, 4), header(40_000, 5));
+        List<Pair<byte[], byte[]>> batch = ethash.ethashWorkFor(headers, true);
+        assertEquals(4, batch.size());
+        assertSame(res, batch.get(1));
+        assertArrayEquals(longToBytes(3), batch.get(0).getLeft());
+        assertArrayEquals(longToBytes(4), batch.get(2).getLeft());
+        // epoch 1 is not cached
+        assertNull(batch.get(3));
+        assertEquals(4, calls.get());
+    }
+
+    @Test // light caches are loaded from disk after restart
+    public void testPersistedCache() throws Exception {
+        File dir = Files.createTempDirectory("ethash-helper").toFile();
+        AtomicInteger calls = new AtomicInteger();
+        EthashParams params = new EthashParams() {
+            @Override
+            public long getCacheSize(long blockNumber) {
+                return 64 * 4;
+            }
+        };
+        Supplier<EthashAlgo> countingAlgo = () -> new EthashAlgo(params) {
+            @Override
+            public int[] makeCache(long cacheSize, byte[] seed) {
+                calls.incrementAndGet();
+                return super.makeCache(cacheSize, seed);
+            }
+        };
+
+        try {
+            EthashValidationHelper ethash = new EthashValidationHelper(direct, 2, 16, dir.getAbsolutePath());
+            ethash.ethashAlgo = countingAlgo.get();
+            ethash.preCache(0);
+            int[] cache = ethash.getCachedFor(0).getDataset();
+            assertEquals(1, calls.get());
+
+            ethash = new EthashValidationHelper(direct, 2, 16, dir.getAbsolutePath());
+            ethash.ethashAlgo = countingAlgo.get();
+            ethash.preCache(0);
+            assertArrayEquals(cache, ethash.getCachedFor(0).getDataset());
+            assertEquals(1, calls.get());
+        } finally {
+            for (File file : dir.listFiles()) file.delete();
+            dir.delete();
+        }
+    }
 }
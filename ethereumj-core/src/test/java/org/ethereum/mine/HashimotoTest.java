@@ -0,0 +1,158 @@
+/*
+ * Copyright (c) [2016] [ <ether.camp> ]
+ * This file is part of the ethereumJ library.
+ *
+ * The ethereumJ library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The ethereumJ library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with the ethereumJ library. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.mine;
+
+import org.apache.commons.lang3.tuple.Pair;
+import org.ethereum.util.FastByteComparisons;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.ethereum.crypto.HashUtil.sha3;
+import static org.ethereum.util.ByteUtil.longToBytes;
+import static org.junit.Assert.*;
+
+/**
+ * Testing {@link Hashimoto} against the reference implementation,
+ * ignored tests measure hashes per second
+ */
+public class HashimotoTest {
+
+    private static final long CACHE_SIZE = 1024;
+    private static final long FULL_SIZE = 1024 * 32;
+
+    @Test
+    public void testMatchesSlowAlgo() {
+        EthashAlgo algo = new EthashAlgo();
+        EthashAlgoSlow slow = new EthashAlgoSlow();
+        byte[] seed = algo.getSeedHash(0);
+        int[] cache = algo.makeCache(CACHE_SIZE, seed);
+        byte[][] slowCache = slow.makeCache(CACHE_SIZE, seed);
+        int[] dataset = algo.calcDataset(FULL_SIZE, cache);
+
+        Random rnd = new Random(1);
+        for (int i = 0; i < 16; i++) {
+            byte[] hash = sha3(longToBytes(rnd.nextLong()));
+            byte[] nonce = longToBytes(rnd.nextLong());
+
+            Pair<byte[], byte[]> expected = slow.hashimotoLight(FULL_SIZE, slowCache, hash, nonce);
+            Pair<byte[], byte[]> light = algo.hashimotoLight(FULL_SIZE, cache, hash, nonce);
+            Pair<byte[], byte[]> full = algo.hashimotoFull(FULL_SIZE, dataset, hash, nonce);
+
+            assertArrayEquals(expected.getLeft(), light.getLeft());
+            assertArrayEquals(expected.getRight(), light.getRight());
+            assertArrayEquals(expected.getLeft(), full.getLeft());
+            assertArrayEquals(expected.getRight(), full.getRight());
+        }
+    }
+
+    @Test
+    public void testMine() throws Exception {
+        EthashAlgo algo = new EthashAlgo();
+        int[] cache = algo.makeCache(CACHE_SIZE, algo.getSeedHash(0));
+        EthashDataset dataset = EthashDataset.allocate(FULL_SIZE);
+        algo.calcDataset(cache, dataset, 2, p -> {});
+        byte[] hash = sha3(new byte[] {1});
+        long difficulty = 1000;
+        BigInteger target = BigInteger.ONE.shiftLeft(256).divide(BigInteger.valueOf(difficulty));
+
+        long nonce = algo.mine(FULL_SIZE, dataset, hash, difficulty, 0);
+        byte[] result = algo.hashimotoLight(FULL_SIZE, cache, hash, longToBytes(nonce)).getRight();
+        assertTrue(new BigInteger(1, result).compareTo(target) < 0);
+
+        // the first matching nonce
+        for (long n = 1; n < nonce; n++) {
+            result = algo.hashimotoLight(FULL_SIZE, cache, hash, longToBytes(n)).getRight();
+            assertTrue(new BigInteger(1, result).compareTo(target) >= 0);
+        }
+
+        assertEquals(nonce, algo.mineLight(FULL_SIZE, cache, hash, difficulty, 0));
+
+        // any result meets the difficulty 1
+        assertEquals(1, algo.mine(FULL_SIZE, dataset, hash, 1, 0));
+    }
+
+    @Test
+    public void testBoundary() {
+        byte[] boundary = EthashAlgo.getBoundary(0x100);
+        assertEquals(32, boundary.length);
+        // 2^248
+        assertEquals(1, boundary[0]);
+        assertEquals(0, FastByteComparisons.compareTo(boundary, 1, 31, new byte[31], 0, 31));
+        assertNull(EthashAlgo.getBoundary(1));
+    }
+
+    @Test
+    @Ignore
+    public void benchmarkLight() throws Exception {
+        EthashAlgo algo = new EthashAlgo();
+        long fullSize = algo.getParams().getFullSize(0);
+        int[] cache = algo.makeCache(algo.getParams().getCacheSize(0), algo.getSeedHash(0));
+
+        for (int threads : new int[] {1, Runtime.getRuntime().availableProcessors()}) {
+            AtomicLong nextNonce = new AtomicLong();
+            measure("light", threads, nextNonce,
+                    () -> algo.mineLight(fullSize, cache, new byte[32], new byte[32], nextNonce));
+        }
+    }
+
+    @Test
+    @Ignore
+    public void benchmarkFull() throws Exception {
+        EthashAlgo algo = new EthashAlgo();
+        long fullSize = algo.getParams().getFullSize(0);
+        int[] cache = algo.makeCache(algo.getParams().getCacheSize(0), algo.getSeedHash(0));
+        EthashDataset dataset = EthashDataset.allocate(fullSize);
+        algo.calcDataset(cache, dataset, Runtime.getRuntime().availableProcessors(), p -> {});
+
+        for (int threads : new int[] {1, Runtime.getRuntime().availableProcessors()}) {
+            AtomicLong nextNonce = new AtomicLong();
+            measure("full", threads, nextNonce,
+                    () -> algo.mine(fullSize, dataset, new byte[32], new byte[32], nextNonce));
+        }
+    }
+
+    // searches for the zero boundary which is never met and counts nonces taken from the shared counter
+    private void measure(String name, int threads, AtomicLong nextNonce, Runnable miner) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        Future<?>[] futures = new Future[threads];
+        for (int i = 0; i < threads; i++) {
+            futures[i] = executor.submit(miner);
+        }
+
+        Thread.sleep(5000);
+        long start = System.nanoTime();
+        long startNonce = nextNonce.get();
+        Thread.sleep(10000);
+        long hashes = nextNonce.get() - startNonce;
+        long time = System.nanoTime() - start;
+
+        for (Future<?> future : futures) future.cancel(true);
+        executor.shutdown();
+        executor.awaitTermination(1, TimeUnit.MINUTES);
+
+        System.out.printf("%s, %d threads: %.1f hashes/sec%n", name, threads, hashes * 1e9 / time);
+    }
+}
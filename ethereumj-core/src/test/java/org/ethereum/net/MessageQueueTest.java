@@ -0,0 +1,174 @@
+/*
+ * Copyright (c) [2016] [ <ether.camp> ]
+ * This file is part of the ethereumJ library.
+ *
+ * The ethereumJ library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The ethereumJ library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with the ethereumJ library. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.net;
+
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelHandlerContext;
+import org.ethereum.config.SystemProperties;
+import org.ethereum.core.Transaction;
+import org.ethereum.crypto.ECKey;
+import org.ethereum.listener.EthereumListenerAdapter;
+import org.ethereum.net.eth.message.TransactionsMessage;
+import org.ethereum.net.message.Message;
+import org.ethereum.net.p2p.PingMessage;
+import org.ethereum.net.p2p.PongMessage;
+import org.ethereum.net.server.Channel;
+import org.junit.After;
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Testing outbound batching of {@link MessageQueue}
+ */
+public class MessageQueueTest {
+
+    private final List<Message> written = new ArrayList<>();
+    private int flushes = 0;
+    private MessageQueue queue;
+
+    @After
+    public void tearDown() {
+        if (queue != null) queue.close();
+    }
+
+    private MessageQueue createQueue(int maxBatchSize, long maxBytesPerSec) {
+        SystemProperties config = new SystemProperties();
+        config.overrideParams(
+                // queue is nudged manually
+                "peer.outbound.flushInterval", "1000000",
+                "peer.outbound.maxBatchSize", String.valueOf(maxBatchSize),
+                "peer.outbound.maxBytesPerSec", String.valueOf(maxBytesPerSec));
+
+        ChannelHandlerContext ctx = mock(ChannelHandlerContext.class);
+        when(ctx.write(any())).thenAnswer(invocation -> {
+            written.add((Message) invocation.getArguments()[0]);
+            return mock(ChannelFuture.class);
+        });
+        when(ctx.flush()).thenAnswer(invocation -> {
+            ++flushes;
+            return ctx;
+        });
+
+        queue = new MessageQueue();
+        queue.config = config;
+        queue.ethereumListener = new EthereumListenerAdapter();
+        queue.setChannel(mock(Channel.class));
+        queue.activate(ctx);
+        return queue;
+    }
+
+    private static TransactionsMessage txsMessage(int count, int dataSize) {
+        ECKey key = new ECKey();
+        List<Transaction> txs = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Transaction tx = new Transaction(BigInteger.valueOf(i).toByteArray(), new byte[] {1}, new byte[] {1},
+                    new byte[20], new byte[] {1}, new byte[dataSize]);
+            tx.sign(key);
+            txs.add(tx);
+        }
+        return new TransactionsMessage(txs);
+    }
+
+    @Test
+    public void testResponsesFirst() {
+        MessageQueue queue = createQueue(256 * 1024, 0);
+        TransactionsMessage gossip = txsMessage(1, 0);
+        PingMessage request = new PingMessage();
+        PongMessage response = new PongMessage();
+
+        queue.sendMessage(gossip);
+        queue.sendMessage(request);
+        queue.sendMessage(response);
+        queue.nudgeQueue();
+
+        assertEquals(3, written.size());
+        assertTrue(written.get(0) == response);
+        assertTrue(written.get(1) == request);
+        assertTrue(written.get(2) == gossip);
+        assertEquals(1, flushes);
+    }
+
+    @Test
+    public void testMergeTransactions() {
+        MessageQueue queue = createQueue(256 * 1024, 0);
+        for (int i = 0; i < 3; i++) {
+            queue.sendMessage(txsMessage(2, 100));
+        }
+        // doesn't fit the merged message
+        TransactionsMessage large = txsMessage(1, MessageQueue.MAX_MERGED_TXS_SIZE);
+        queue.sendMessage(large);
+        queue.nudgeQueue();
+
+        assertEquals(2, written.size());
+        assertEquals(6, ((TransactionsMessage) written.get(0)).getTransactions().size());
+        assertTrue(written.get(0).getEncoded().length <= MessageQueue.MAX_MERGED_TXS_SIZE);
+        assertTrue(written.get(1) == large);
+    }
+
+    @Test
+    public void testBatchBudget() {
+        // messages are too large to be merged
+        int dataSize = MessageQueue.MAX_MERGED_TXS_SIZE * 2 / 3;
+        MessageQueue queue = createQueue(MessageQueue.MAX_MERGED_TXS_SIZE, 0);
+        for (int i = 0; i < 5; i++) {
+            queue.sendMessage(txsMessage(1, dataSize));
+        }
+
+        // budget is exceeded by the second message
+        queue.nudgeQueue();
+        assertEquals(2, written.size());
+        queue.nudgeQueue();
+        assertEquals(4, written.size());
+        queue.nudgeQueue();
+        assertEquals(5, written.size());
+        assertEquals(3, flushes);
+
+        queue.nudgeQueue();
+        assertEquals(3, flushes);
+    }
+
+    @Test
+    public void testRateLimit() throws InterruptedException {
+        int dataSize = MessageQueue.MAX_MERGED_TXS_SIZE * 2 / 3;
+        MessageQueue queue = createQueue(256 * 1024, MessageQueue.MAX_MERGED_TXS_SIZE);
+        for (int i = 0; i < 3; i++) {
+            queue.sendMessage(txsMessage(1, dataSize));
+        }
+
+        // the whole allowance is spent by the first flush
+        queue.nudgeQueue();
+        assertEquals(2, written.size());
+        queue.nudgeQueue();
+        assertEquals(2, written.size());
+
+        // allowance is restored with time
+        Thread.sleep(1000);
+        queue.nudgeQueue();
+        assertEquals(3, written.size());
+        assertEquals(2, flushes);
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) [2016] [ <ether.camp> ]
+ * This file is part of the ethereumJ library.
+ *
+ * The ethereumJ library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The ethereumJ library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with the ethereumJ library. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.net.eth.handler;
+
+import org.ethereum.config.SystemProperties;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.ethereum.net.eth.handler.EthMessageExecutor.Type.BLOCK_ANNOUNCE;
+import static org.ethereum.net.eth.handler.EthMessageExecutor.Type.SERVE_HEADERS;
+import static org.ethereum.net.eth.handler.EthMessageExecutor.Type.TX_INGEST;
+import static org.junit.Assert.*;
+
+/**
+ * Testing {@link EthMessageExecutor}
+ */
+public class EthMessageExecutorTest {
+
+    private EthMessageExecutor executor = new EthMessageExecutor(SystemProperties.getDefault());
+
+    @After
+    public void tearDown() {
+        executor.close();
+    }
+
+    @Test
+    public void testPeerOrder() throws InterruptedException {
+        Object peer = new Object();
+        List<Integer> processed = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch done = new CountDownLatch(10);
+        for (int i = 0; i < 10; i++) {
+            int n = i;
+            assertTrue(executor.submit(SERVE_HEADERS, peer, () -> {
+                processed.add(n);
+                done.countDown();
+            }));
+        }
+
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        for (int i = 0; i < 10; i++) {
+            assertEquals(i, (int) processed.get(i));
+        }
+        // stats are updated right after the task completes
+        for (int i = 0; i < 100 && executor.getStats(SERVE_HEADERS).getProcessed() < 10; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(10, executor.getStats(SERVE_HEADERS).getProcessed());
+    }
+
+    @Test
+    public void testBackPressure() throws InterruptedException {
+        int maxPeerQueue = SystemProperties.getDefault().ethWorkersMaxPeerQueue();
+        Object slowPeer = new Object();
+        Object otherPeer = new Object();
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(1);
+
+        // txIngest has a single worker by default, block it with the first task
+        executor.submit(TX_INGEST, slowPeer, () -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+
+        for (int i = 0; i < maxPeerQueue; i++) {
+            assertTrue(executor.submit(TX_INGEST, slowPeer, () -> {}));
+        }
+        assertFalse(executor.submit(TX_INGEST, slowPeer, () -> {}));
+        assertEquals(1, executor.getStats(TX_INGEST).getDropped());
+
+        // other peers are not affected
+        CountDownLatch otherDone = new CountDownLatch(1);
+        assertTrue(executor.submit(TX_INGEST, otherPeer, otherDone::countDown));
+
+        release.countDown();
+        assertTrue(otherDone.await(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testNotDroppable() throws InterruptedException {
+        int maxPeerQueue = SystemProperties.getDefault().ethWorkersMaxPeerQueue();
+        Object peer = new Object();
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(1);
+
+        executor.submit(BLOCK_ANNOUNCE, peer, () -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+
+        // announces fill the queue, responses are still accepted and processed after them
+        List<Integer> processed = Collections.synchronizedList(new ArrayList<>());
+        for (int i = 0; i < maxPeerQueue; i++) {
+            int n = i;
+            assertTrue(executor.submit(BLOCK_ANNOUNCE, peer, () -> processed.add(n)));
+        }
+        assertFalse(executor.submit(BLOCK_ANNOUNCE, peer, () -> {}));
+
+        CountDownLatch done = new CountDownLatch(2);
+        for (int i = 0; i < 2; i++) {
+            int n = maxPeerQueue + i;
+            assertTrue(executor.submit(BLOCK_ANNOUNCE, peer, () -> {
+                processed.add(n);
+                done.countDown();
+            }, false));
+        }
+        assertEquals(1, executor.getStats(BLOCK_ANNOUNCE).getDropped());
+
+        release.countDown();
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertEquals(maxPeerQueue + 2, processed.size());
+        for (int i = 0; i < processed.size(); i++) {
+            assertEquals(i, (int) processed.get(i));
+        }
+    }
+}
@@ -24,8 +24,12 @@ import org.ethereum.net.rlpx.discover.table.NodeTable;
 import org.junit.Ignore;
 import org.junit.Test;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static org.junit.Assert.*;
 
@@ -89,6 +93,66 @@ public class KademliaTest {
         assertEquals(t.getBuckets()[0].getNodesCount(), KademliaOptions.BUCKET_SIZE);
     }
 
+    @Test
+    public void testConcurrentAccess() throws Exception {
+        NodeTable t = getTestNodeTable(0);
+        int threads = 8;
+        List<List<Node>> added = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            List<Node> nodes = new ArrayList<>();
+            for (int j = 0; j < 200; j++) nodes.add(getNode());
+            added.add(nodes);
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<?>> futures = new ArrayList<>();
+        for (List<Node> nodes : added) {
+            futures.add(executor.submit(() -> {
+                for (Node n : nodes) {
+                    t.addNode(n);
+                    t.touchNode(n);
+                    t.getClosestNodes(n.getId());
+                    if (n.getId()[1] % 2 == 0) t.dropNode(n);
+                }
+            }));
+        }
+        for (Future<?> f : futures) f.get();
+        executor.shutdown();
+
+        int count = 0;
+        for (NodeBucket b : t.getBuckets()) {
+            for (NodeEntry e : b.getNodes()) {
+                assertTrue(t.contains(e.getNode()));
+                count++;
+            }
+        }
+        assertEquals(count, t.getNodesCount());
+        for (List<Node> nodes : added) {
+            for (Node n : nodes) {
+                if (n.getId()[1] % 2 == 0) assertFalse(t.contains(n));
+            }
+        }
+    }
+
+    @Test
+    public void testClosestNodes() {
+        NodeTable t = getTestNodeTable(1000);
+        byte[] target = getNodeId();
+
+        List<Node> closest = t.getClosestNodes(target);
+        assertEquals(KademliaOptions.BUCKET_SIZE, closest.size());
+
+        int maxDistance = 0;
+        for (Node n : closest) {
+            maxDistance = Math.max(maxDistance, NodeEntry.distance(target, n.getId()));
+        }
+        for (NodeEntry e : t.getAllNodes()) {
+            if (!closest.contains(e.getNode())) {
+                assertTrue(NodeEntry.distance(target, e.getNode().getId()) >= maxDistance);
+            }
+        }
+    }
+
     public static byte[] getNodeId() {
         Random gen = new Random();
         byte[] id = new byte[64];
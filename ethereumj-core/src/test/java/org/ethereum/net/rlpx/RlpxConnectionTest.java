@@ -18,6 +18,8 @@
 package org.ethereum.net.rlpx;
 
 import com.google.common.collect.Lists;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
 import org.ethereum.crypto.ECKey;
 import org.ethereum.net.client.Capability;
 import org.junit.Before;
@@ -85,6 +87,32 @@ public class RlpxConnectionTest {
         assertEquals(frame.type, frame1.type);
     }
 
+    @Test
+    public void testByteBufFrames() throws Exception {
+        ByteBuf heap = Unpooled.buffer();
+        ByteBuf direct = Unpooled.directBuffer();
+        for (int size : new int[] {0, 1, 15, 16, 123, 4096, 100000}) {
+            byte[] payload = new byte[size];
+            new SecureRandom().nextBytes(payload);
+            ByteBuf buf = size % 2 == 0 ? heap : direct;
+            iCodec.writeFrame(new FrameCodec.Frame(0x12, payload), buf);
+
+            // feed the frame byte by byte in the beginning to check incomplete input handling
+            ByteBuf in = Unpooled.buffer();
+            for (int i = 0; i < 40; i++) {
+                in.writeByte(buf.readByte());
+                assertNull(rCodec.readFrames(in));
+            }
+            in.writeBytes(buf);
+            buf.discardReadBytes();
+
+            FrameCodec.Frame frame = rCodec.readFrames(in).get(0);
+            assertEquals(0x12, frame.getType());
+            assertArrayEquals(payload, frame.getPayload());
+            assertEquals(0, in.readableBytes());
+        }
+    }
+
     @Test
     public void testMessageEncoding() throws IOException {
         byte[] wire = iMessage.encode();
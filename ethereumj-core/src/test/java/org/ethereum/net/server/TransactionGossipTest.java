@@ -0,0 +1,129 @@
+/*
+ * Copyright (c) [2016] [ <ether.camp> ]
+ * This file is part of the ethereumJ library.
+ *
+ * The ethereumJ library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The ethereumJ library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with the ethereumJ library. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.net.server;
+
+import org.ethereum.core.Transaction;
+import org.ethereum.crypto.ECKey;
+import org.junit.After;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.ethereum.util.ByteUtil.toHexString;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyList;
+import static org.mockito.Mockito.atLeast;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Testing {@link TransactionGossip}
+ */
+public class TransactionGossipTest {
+
+    private final TransactionGossip gossip = new TransactionGossip();
+
+    @After
+    public void tearDown() {
+        gossip.close();
+    }
+
+    private static List<Channel> peers(int count) {
+        List<Channel> ret = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            ret.add(spy(new Channel()));
+        }
+        return ret;
+    }
+
+    private static List<Transaction> txs(int count) {
+        ECKey key = new ECKey();
+        List<Transaction> ret = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Transaction tx = new Transaction(BigInteger.valueOf(i).toByteArray(), new byte[] {1}, new byte[] {1},
+                    new byte[20], new byte[] {1}, null);
+            tx.sign(key);
+            ret.add(tx);
+        }
+        return ret;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Set<String> sent(Channel peer) {
+        Set<String> ret = new HashSet<>();
+        ArgumentCaptor<List> captor = ArgumentCaptor.forClass(List.class);
+        verify(peer, atLeast(0)).sendTransactions(captor.capture());
+        for (List<Transaction> txs : captor.getAllValues()) {
+            for (Transaction tx : txs) {
+                assertTrue("Sent twice", ret.add(toHexString(tx.getHash())));
+            }
+        }
+        return ret;
+    }
+
+    @Test
+    public void testRelayedToSqrtPeers() {
+        List<Channel> peers = peers(17);
+        Channel sender = peers.get(0);
+        List<Transaction> txs = txs(300);
+        sender.markTxsKnown(txs);
+
+        gossip.propagate(txs, peers, sender);
+        gossip.flush();
+
+        verify(sender, never()).sendTransactions(anyList());
+        int total = 0;
+        for (Channel peer : peers) {
+            total += sent(peer).size();
+        }
+        // sqrt(16) peers for every tx
+        assertEquals(4 * txs.size(), total);
+    }
+
+    @Test
+    public void testOwnSentToAll() {
+        List<Channel> peers = peers(9);
+        List<Transaction> txs = txs(200);
+        Channel knowsFirst = peers.get(1);
+        knowsFirst.markTxKnown(txs.get(0));
+
+        gossip.propagate(txs, peers, null);
+        gossip.flush();
+
+        for (Channel peer : peers) {
+            int expected = peer == knowsFirst ? txs.size() - 1 : txs.size();
+            assertEquals(expected, sent(peer).size());
+        }
+        // batches are split by MAX_SAFE_TXS
+        verify(peers.get(0), times(2)).sendTransactions(anyList());
+
+        // nothing is sent once the txs are known
+        gossip.propagate(Collections.singletonList(txs.get(1)), peers, null);
+        gossip.flush();
+        verify(peers.get(0), times(2)).sendTransactions(anyList());
+    }
+}
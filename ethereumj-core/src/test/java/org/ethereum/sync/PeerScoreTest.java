@@ -0,0 +1,98 @@
+/*
+ * Copyright (c) [2016] [ <ether.camp> ]
+ * This file is part of the ethereumJ library.
+ *
+ * The ethereumJ library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The ethereumJ library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with the ethereumJ library. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.sync;
+
+import org.ethereum.net.rlpx.Node;
+import org.ethereum.net.rlpx.discover.NodeStatistics;
+import org.ethereum.net.server.Channel;
+import org.ethereum.net.server.PeerStatistics;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Testing {@link PeerScore}
+ */
+public class PeerScoreTest {
+
+    private static Channel channel(SyncStatistics syncStats, NodeStatistics nodeStats) {
+        Channel channel = mock(Channel.class);
+        when(channel.getSyncStats()).thenReturn(syncStats);
+        when(channel.getNodeStatistics()).thenReturn(nodeStats);
+        when(channel.getPeerStats()).thenReturn(new PeerStatistics());
+        return channel;
+    }
+
+    private static NodeStatistics nodeStats() {
+        return new NodeStatistics(new Node(new byte[64], "127.0.0.1", 30303));
+    }
+
+    @Test
+    public void testRollingAverages() {
+        SyncStatistics stats = new SyncStatistics();
+        assertEquals(-1, stats.getAvgThroughput(), 0);
+        assertEquals(-1, stats.getAvgResponseTime(), 0);
+
+        stats.addResponse(1000, 100);
+        assertEquals(100, stats.getAvgThroughput(), 1e-9);
+        assertEquals(1000, stats.getAvgResponseTime(), 1e-9);
+
+        // headers affect latency only
+        stats.addResponse(500);
+        assertEquals(100, stats.getAvgThroughput(), 1e-9);
+        assertEquals(900, stats.getAvgResponseTime(), 1e-9);
+
+        stats.addResponse(2000, 0);
+        assertEquals(80, stats.getAvgThroughput(), 1e-9);
+
+        // per request counters reset doesn't affect the averages
+        stats.reset();
+        assertEquals(80, stats.getAvgThroughput(), 1e-9);
+    }
+
+    @Test
+    public void testScore() {
+        NodeStatistics unknown = nodeStats();
+        int neutral = PeerScore.of(unknown);
+        assertEquals(neutral, PeerScore.of(channel(new SyncStatistics(), nodeStats())));
+
+        SyncStatistics fastStats = new SyncStatistics();
+        fastStats.addResponse(100, 200);
+        NodeStatistics fast = nodeStats();
+        int fastScore = PeerScore.of(channel(fastStats, fast));
+
+        SyncStatistics slowStats = new SyncStatistics();
+        slowStats.addResponse(5000, 10);
+        NodeStatistics slow = nodeStats();
+        int slowScore = PeerScore.of(channel(slowStats, slow));
+
+        assertTrue(fastScore > neutral);
+        assertTrue(slowScore < neutral);
+        assertTrue(fastScore <= PeerScore.MAX_SCORE);
+
+        // disconnected nodes are rated by the last measured score
+        assertEquals(fastScore, PeerScore.of(fast));
+        assertEquals(slowScore, PeerScore.of(slow));
+
+        fast.ethInvalidData.add();
+        assertEquals(Math.round(fastScore / 2d), PeerScore.of(fast));
+    }
+}
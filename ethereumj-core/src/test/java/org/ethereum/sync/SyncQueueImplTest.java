@@ -343,7 +343,7 @@ public class SyncQueueImplTest {
         queue.addHeaders(createHeadersFromBlocks(chain2, randomPeerId()));
 
         List<SyncQueueImpl.HeaderElement> longestChain = queue.getLongestChain();
-        long maxNum = longestChain.get(longestChain.size() - 1).header.getNumber();
+        long maxNum = longestChain.get(longestChain.size() - 1).getNumber();
         assertEquals(1024 + SyncQueueImpl.MAX_CHAIN_LEN / 2 - 1, maxNum);
         assertEquals(1024 + SyncQueueImpl.MAX_CHAIN_LEN / 2 - 1, queue.getHeadersCount());
 
@@ -362,7 +362,30 @@ public class SyncQueueImplTest {
         longestChain = queue.getLongestChain();
         assertEquals(maxNum - 1, queue.getHeadersCount());
         assertEquals(chain2.get(chain2.size() - 1).getHeader(),
-                longestChain.get(longestChain.size() - 1).header.getHeader());
+                longestChain.get(longestChain.size() - 1).getHeader().getHeader());
+    }
+
+    @Test
+    public void testOutOfOrderHeaders() {
+        List<Block> randomChain = TestUtils.getRandomChain(new byte[32], 0, 100);
+        SyncQueueImpl queue = new SyncQueueImpl(randomChain);
+
+        List<Block> chain = TestUtils.getRandomChain(randomChain.get(randomChain.size() - 1).getHash(), 100, 150);
+        List<BlockHeaderWrapper> headers = createHeadersFromBlocks(chain, peer0);
+        Collections.reverse(headers);
+
+        // the gap is kept until the header next to the known chain comes
+        queue.addHeaders(headers.subList(0, headers.size() - 1));
+        assertEquals(100, queue.getLongestChain().size());
+        SyncQueueIfc.HeadersRequest gapRequest = queue.requestHeaders(DEFAULT_REQUEST_LEN, 1, Integer.MAX_VALUE).get(0);
+        assertEquals(99, gapRequest.getStart());
+
+        // the whole chain is linked at once and trimmed to the max length
+        queue.addHeaders(headers.subList(headers.size() - 1, headers.size()));
+        List<SyncQueueImpl.HeaderElement> longestChain = queue.getLongestChain();
+        assertEquals(SyncQueueImpl.MAX_CHAIN_LEN + 1, longestChain.size());
+        assertArrayEquals(chain.get(chain.size() - 1).getHash(), longestChain.get(longestChain.size() - 1).getHeader().getHash());
+        assertEquals(250, queue.requestHeaders(DEFAULT_REQUEST_LEN, 1, Integer.MAX_VALUE).get(0).getStart());
     }
 
     public void test2Impl(List<Block> mainChain, List<Block> initChain, Peer[] peers) {
@@ -1170,6 +1170,47 @@ public class TrieTest {
         }
     }
 
+    @Test
+    public void testScanTreeBatchResolve() {
+        final int[] gets = new int[2];
+        HashMapDB<byte[]> db = new HashMapDB<byte[]>() {
+            @Override
+            public byte[] get(byte[] key) {
+                gets[0]++;
+                return super.get(key);
+            }
+
+            @Override
+            public List<byte[]> getBatch(List<byte[]> keys) {
+                gets[1]++;
+                List<byte[]> ret = new ArrayList<>();
+                for (byte[] key : keys) ret.add(super.get(key));
+                return ret;
+            }
+        };
+        TrieImpl trie = new TrieImpl(db);
+        for (int i = 0; i < 1000; i++) {
+            trie.put(sha3(intToBytes(i)), intToBytes(i));
+        }
+        trie.flush();
+
+        final Set<String> values = new HashSet<>();
+        new TrieImpl(db, trie.getRootHash()).scanTree(new TrieImpl.ScanAction() {
+            @Override
+            public void doOnNode(byte[] hash, TrieImpl.Node node) {}
+
+            @Override
+            public void doOnValue(byte[] nodeHash, TrieImpl.Node node, byte[] key, byte[] value) {
+                values.add(Hex.toHexString(value));
+            }
+        });
+
+        assertEquals(1000, values.size());
+        // root and the nodes which are the only hashed child of a branch are fetched one by one
+        assertTrue(gets[1] > 0);
+        assertTrue(gets[0] < 100);
+    }
+
     @Ignore
     @Test
     public void perfTestRoot() {
@@ -0,0 +1,173 @@
+/*
+ * Copyright (c) [2016] [ <ether.camp> ]
+ * This file is part of the ethereumJ library.
+ *
+ * The ethereumJ library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The ethereumJ library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with the ethereumJ library. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.util;
+
+import org.ethereum.crypto.HashUtil;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Testing {@link FlatByteArrayMap} against {@link ByteArrayMap}
+ */
+public class FlatByteArrayMapTest {
+
+    private static byte[] key(int i) {
+        return HashUtil.sha3(ByteUtil.intToBytes(i));
+    }
+
+    // big-endian number, only the last bytes differ
+    private static byte[] numKey(int i) {
+        byte[] ret = new byte[32];
+        System.arraycopy(ByteUtil.intToBytes(i), 0, ret, 28, 4);
+        return ret;
+    }
+
+    private static void assertSameContent(Map<byte[], Integer> expected, Map<byte[], Integer> actual) {
+        assertEquals(expected.size(), actual.size());
+        int count = 0;
+        for (Map.Entry<byte[], Integer> entry : actual.entrySet()) {
+            assertEquals(expected.get(entry.getKey()), entry.getValue());
+            count++;
+        }
+        assertEquals(expected.size(), count);
+    }
+
+    @Test
+    public void testRandomOps() {
+        Random rnd = new Random(0);
+        Map<byte[], Integer> expected = new ByteArrayMap<>();
+        FlatByteArrayMap<Integer> map = new FlatByteArrayMap<>(32);
+
+        for (int i = 0; i < 100_000; i++) {
+            int n = rnd.nextInt(2000);
+            byte[] k = n % 3 == 0 ? numKey(n) : n % 50 == 1 ? ByteUtil.intToBytes(n) : key(n);
+            switch (rnd.nextInt(4)) {
+                case 0:
+                case 1:
+                    assertEquals(expected.put(k, i), map.put(k.clone(), i));
+                    break;
+                case 2:
+                    assertEquals(expected.remove(k), map.remove(k));
+                    break;
+                default:
+                    assertEquals(expected.get(k), map.get(k));
+                    assertEquals(expected.containsKey(k), map.containsKey(k));
+            }
+            if (i % 10_000 == 0) assertSameContent(expected, map);
+        }
+        assertSameContent(expected, map);
+
+        map.clear();
+        assertTrue(map.isEmpty());
+        assertFalse(map.entrySet().iterator().hasNext());
+        assertNull(map.get(key(1)));
+    }
+
+    @Test
+    public void testNullValue() {
+        FlatByteArrayMap<Integer> map = new FlatByteArrayMap<>(20);
+        byte[] k = new byte[20];
+        assertNull(map.put(k, null));
+        assertTrue(map.containsKey(k));
+        assertEquals(1, map.size());
+        assertNull(map.remove(k));
+        assertFalse(map.containsKey(k));
+        assertEquals(0, map.size());
+    }
+
+    @Test
+    public void testIteratorRemove() {
+        FlatByteArrayMap<Integer> map = new FlatByteArrayMap<>(32);
+        for (int i = 0; i < 1000; i++) {
+            map.put(key(i), i);
+        }
+        map.put(new byte[] {1}, -1);
+
+        Iterator<Map.Entry<byte[], Integer>> it = map.entrySet().iterator();
+        while (it.hasNext()) {
+            if (it.next().getValue() % 2 != 0) it.remove();
+        }
+
+        assertEquals(500, map.size());
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(i % 2 == 0 ? Integer.valueOf(i) : null, map.get(key(i)));
+        }
+        assertFalse(map.containsKey(new byte[] {1}));
+    }
+
+    @Test
+    public void testSet() {
+        FlatByteArraySet set = new FlatByteArraySet(32);
+        assertTrue(set.add(key(1)));
+        assertFalse(set.add(key(1)));
+        assertTrue(set.contains(key(1)));
+        assertTrue(set.add(new byte[0]));
+        assertEquals(2, set.size());
+        assertTrue(set.remove(key(1)));
+        assertFalse(set.contains(key(1)));
+        assertArrayEquals(new byte[0], set.iterator().next());
+    }
+
+    private static long usedMemory() {
+        for (int i = 0; i < 3; i++) System.gc();
+        return Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory();
+    }
+
+    @Ignore("Memory footprint benchmark")
+    @Test
+    public void memoryBenchmark() {
+        int count = 1_000_000;
+        byte[][] keys = new byte[count][];
+        for (int i = 0; i < count; i++) {
+            keys[i] = key(i);
+        }
+        Integer value = 1;
+
+        for (int round = 0; round < 3; round++) {
+            long before = usedMemory();
+            Map<byte[], Integer> map = new ByteArrayMap<>();
+            for (byte[] k : keys) map.put(k.clone(), value);
+            System.out.printf("ByteArrayMap: %d bytes per entry%n", (usedMemory() - before) / map.size());
+            map = null;
+
+            before = usedMemory();
+            map = new FlatByteArrayMap<>(32);
+            for (byte[] k : keys) map.put(k.clone(), value);
+            System.out.printf("FlatByteArrayMap: %d bytes per entry%n", (usedMemory() - before) / map.size());
+            map = null;
+
+            long start = System.nanoTime();
+            map = new ByteArrayMap<>();
+            for (byte[] k : keys) map.put(k, value);
+            for (byte[] k : keys) map.get(k);
+            System.out.printf("ByteArrayMap: %d ms put + get%n", (System.nanoTime() - start) / 1_000_000);
+
+            start = System.nanoTime();
+            map = new FlatByteArrayMap<>(32);
+            for (byte[] k : keys) map.put(k, value);
+            for (byte[] k : keys) map.get(k);
+            System.out.printf("FlatByteArrayMap: %d ms put + get%n", (System.nanoTime() - start) / 1_000_000);
+        }
+    }
+}
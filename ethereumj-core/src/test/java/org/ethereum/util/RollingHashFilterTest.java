@@ -0,0 +1,56 @@
+/*
+ * Copyright (c) [2016] [ <ether.camp> ]
+ * This file is part of the ethereumJ library.
+ *
+ * The ethereumJ library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The ethereumJ library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with the ethereumJ library. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.util;
+
+import org.junit.Test;
+
+import static org.ethereum.crypto.HashUtil.sha3;
+import static org.ethereum.util.ByteUtil.intToBytes;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Testing {@link RollingHashFilter}
+ */
+public class RollingHashFilterTest {
+
+    @Test
+    public void testRolling() {
+        int capacity = 1000;
+        RollingHashFilter filter = new RollingHashFilter(capacity);
+        assertFalse(filter.mightContain(sha3(intToBytes(0))));
+
+        for (int i = 0; i < 5 * capacity; i++) {
+            filter.add(sha3(intToBytes(i)));
+            // the last capacity hashes are always remembered
+            for (int j = Math.max(0, i - capacity + 1); j <= i; j += 97) {
+                assertTrue(filter.mightContain(sha3(intToBytes(j))));
+            }
+        }
+
+        // hashes older than 2 * capacity are forgotten, except for false positives
+        int falsePositives = 0;
+        for (int i = 0; i < 2 * capacity; i++) {
+            if (filter.mightContain(sha3(intToBytes(i)))) falsePositives++;
+        }
+        for (int i = 10 * capacity; i < 12 * capacity; i++) {
+            if (filter.mightContain(sha3(intToBytes(i)))) falsePositives++;
+        }
+        assertTrue("False positives: " + falsePositives, falsePositives < 4 * capacity / 50);
+    }
+}
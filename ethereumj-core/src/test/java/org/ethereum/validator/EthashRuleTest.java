@@ -9,6 +9,7 @@ import org.ethereum.mine.EthashValidationHelper;
 import org.junit.Test;
 import org.spongycastle.util.encoders.Hex;
 
+import java.util.Arrays;
 import java.util.Collections;
 
 import static org.ethereum.validator.BlockHeaderRule.Success;
@@ -95,6 +96,20 @@ public class EthashRuleTest {
         }
     }
 
+    @Test
+    public void testStrictBatch() {
+        CompositeEthereumListener listener = new CompositeEthereumListenerMock();
+        EthashRule rule = new EthashRule(EthashRule.Mode.strict, EthashRule.ChainType.main, listener);
+
+        // trigger ethash cache
+        listener.onBlock(dummySummaryNum_1, true);
+
+        assertEquals(Success, rule.validateBatch(Arrays.asList(validHeader, validHeader)));
+        assertNotEquals(Success, rule.validateBatch(Arrays.asList(validHeader, partlyValidHeader)));
+        assertNotEquals(Success, rule.validateBatch(Arrays.asList(invalidHeader, validHeader)));
+        assertEquals(Success, rule.validateBatch(Collections.<BlockHeader>emptyList()));
+    }
+
     @Test
     public void testMixed() {
         CompositeEthereumListener listener = new CompositeEthereumListenerMock();
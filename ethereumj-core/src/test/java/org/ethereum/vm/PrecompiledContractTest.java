@@ -26,6 +26,7 @@ import org.ethereum.config.blockchain.HomesteadConfig;
 import org.ethereum.util.ByteUtil;
 import org.ethereum.vm.PrecompiledContracts.PrecompiledContract;
 
+import org.junit.Ignore;
 import org.junit.Test;
 
 import org.spongycastle.util.encoders.Hex;
@@ -238,4 +239,110 @@ public class PrecompiledContractTest {
         assertArrayEquals(EMPTY_BYTE_ARRAY, contract.execute(null).getRight());
     }
 
+    // G1 and G2 generators
+    private static final String BN128_G1 =
+            "0000000000000000000000000000000000000000000000000000000000000001" +
+            "0000000000000000000000000000000000000000000000000000000000000002";
+    private static final String BN128_G1_NEG =
+            "0000000000000000000000000000000000000000000000000000000000000001" +
+            "30644e72e131a029b85045b68181585d97816a916871ca8d3c208c16d87cfd45";
+    private static final String BN128_G2 =
+            "198e9393920d483a7260bfb731fb5d25f1aa493335a9e71297e485b7aef312c2" +
+            "1800deef121f1e76426a00665e5c4479674322d4f75edadd46debd5cd992f6ed" +
+            "090689d0585ff075ec9e99ad690c3395bc4b313370b38ef355acdadcd122975b" +
+            "12c85ea5db8c6deb4aab71808dcb408fe3d1e7690c43d37b4ce6cc0166fa7daa";
+
+    @Test
+    public void bn128AdditionTest() {
+
+        DataWord addr = DataWord.of("0000000000000000000000000000000000000000000000000000000000000006");
+        PrecompiledContract contract = PrecompiledContracts.getContractForAddress(addr, byzantiumConfig);
+
+        byte[] dbl = contract.execute(Hex.decode(BN128_G1 + BN128_G1)).getRight();
+        assertEquals("030644e72e131a029b85045b68181585d97816a916871ca8d3c208c16d87cfd3" +
+                "15ed738c0e0a7c92e7845f96b2ae9c0a68a6a449e3538fc7ff3ebf7a5a18a2c4", Hex.toHexString(dbl));
+
+        byte[] triple = contract.execute(ByteUtil.merge(Hex.decode(BN128_G1), dbl)).getRight();
+        assertEquals("0769bf9ac56bea3ff40232bcb1b6bd159315d84715b8e679f2d355961915abf0" +
+                "2ab799bee0489429554fdb7c8d086475319e63b40b9c5b57cdf1ff3dd9fe2261", Hex.toHexString(triple));
+
+        // G + (-G) = 0
+        byte[] zero = contract.execute(Hex.decode(BN128_G1 + BN128_G1_NEG)).getRight();
+        assertArrayEquals(new byte[64], zero);
+
+        // (1; 3) is not on the curve
+        assertFalse(contract.execute(Hex.decode(BN128_G1.substring(0, 127) + "3" + BN128_G1)).getLeft());
+    }
+
+    @Test
+    public void bn128MultiplicationTest() {
+
+        DataWord addr = DataWord.of("0000000000000000000000000000000000000000000000000000000000000007");
+        PrecompiledContract contract = PrecompiledContracts.getContractForAddress(addr, byzantiumConfig);
+
+        // (r - 1) * G = -G
+        byte[] neg = contract.execute(Hex.decode(BN128_G1 +
+                "30644e72e131a029b85045b68181585d2833e84879b9709143e1f593f0000000")).getRight();
+        assertEquals(BN128_G1_NEG, Hex.toHexString(neg));
+
+        byte[] res = contract.execute(Hex.decode(
+                "0769bf9ac56bea3ff40232bcb1b6bd159315d84715b8e679f2d355961915abf0" +
+                "2ab799bee0489429554fdb7c8d086475319e63b40b9c5b57cdf1ff3dd9fe2261" +
+                "00000000000000000000000000000000000000000000000000000000deadbeef")).getRight();
+        assertEquals("0052e3c0f219b80b88c9db726107ac0afe4acfcbd4234351ef77a71fd6baa22b" +
+                "0b26c08b24e81d820181498487cc80089aff701ee2757cc8820b1a798b3791f7", Hex.toHexString(res));
+    }
+
+    @Test
+    public void bn128PairingTest() {
+
+        DataWord addr = DataWord.of("0000000000000000000000000000000000000000000000000000000000000008");
+        PrecompiledContract contract = PrecompiledContracts.getContractForAddress(addr, byzantiumConfig);
+
+        assertEquals(BigInteger.ZERO, bytesToBigInteger(contract.execute(Hex.decode(BN128_G1 + BN128_G2)).getRight()));
+
+        // e(G1, G2) * e(-G1, G2) = 1
+        byte[] data = Hex.decode(BN128_G1 + BN128_G2 + BN128_G1_NEG + BN128_G2);
+        assertEquals(BigInteger.ONE, bytesToBigInteger(contract.execute(data).getRight()));
+
+        // empty input
+        assertEquals(BigInteger.ONE, bytesToBigInteger(contract.execute(EMPTY_BYTE_ARRAY).getRight()));
+
+        // G2 point is not on the curve
+        byte[] invalid = Hex.decode(BN128_G1 + BN128_G2);
+        invalid[invalid.length - 1]++;
+        assertFalse(contract.execute(invalid).getLeft());
+    }
+
+    @Ignore("BN128 precompiles benchmark")
+    @Test
+    public void bn128Benchmark() {
+
+        // 2 * G and 3 * G, the generator has small coordinates which doesn't make a fair input
+        String p1 = "030644e72e131a029b85045b68181585d97816a916871ca8d3c208c16d87cfd3" +
+                "15ed738c0e0a7c92e7845f96b2ae9c0a68a6a449e3538fc7ff3ebf7a5a18a2c4";
+        String p2 = "0769bf9ac56bea3ff40232bcb1b6bd159315d84715b8e679f2d355961915abf0" +
+                "2ab799bee0489429554fdb7c8d086475319e63b40b9c5b57cdf1ff3dd9fe2261";
+
+        byte[][] inputs = {
+                Hex.decode(p1 + p2),
+                Hex.decode(p2 + "30644e72e131a029b85045b68181585d2833e84879b9709143e1f593f0000000"),
+                Hex.decode(BN128_G1 + BN128_G2 + BN128_G1_NEG + BN128_G2)
+        };
+
+        for (int round = 0; round < 5; round++) {
+            for (int i = 0; i < inputs.length; i++) {
+                DataWord addr = DataWord.of(6 + i);
+                PrecompiledContract contract = PrecompiledContracts.getContractForAddress(addr, byzantiumConfig);
+
+                int iterations = i < 2 ? 1000 : 20;
+                long start = System.nanoTime();
+                for (int j = 0; j < iterations; j++) {
+                    contract.execute(inputs[i]);
+                }
+                System.out.printf("%s: %.3f ms%n", contract.getClass().getSimpleName(),
+                        (System.nanoTime() - start) / 1e6 / iterations);
+            }
+        }
+    }
 }
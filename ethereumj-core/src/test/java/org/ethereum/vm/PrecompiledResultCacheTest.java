@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) [2016] [ <ether.camp> ]
+ * This file is part of the ethereumJ library.
+ *
+ * The ethereumJ library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The ethereumJ library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with the ethereumJ library. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.vm;
+
+import org.apache.commons.lang3.tuple.Pair;
+import org.ethereum.config.BlockchainConfig;
+import org.ethereum.config.SystemProperties;
+import org.ethereum.config.blockchain.ByzantiumConfig;
+import org.ethereum.config.blockchain.DaoHFConfig;
+import org.ethereum.config.blockchain.HomesteadConfig;
+import org.ethereum.db.ByteArrayWrapper;
+import org.ethereum.vm.PrecompiledContracts.CachedContract;
+import org.junit.After;
+import org.junit.Test;
+import org.spongycastle.util.encoders.Hex;
+
+import static org.junit.Assert.*;
+
+/**
+ * Testing {@link PrecompiledResultCache} and memoized precompiled contracts
+ */
+public class PrecompiledResultCacheTest {
+
+    private final BlockchainConfig byzantiumConfig = new ByzantiumConfig(new DaoHFConfig(new HomesteadConfig(), 0));
+
+    @After
+    public void tearDown() {
+        PrecompiledContracts.getResultCache().setEnabled(true);
+        PrecompiledContracts.getResultCache().setMaxSize(PrecompiledResultCache.DEFAULT_MAX_SIZE);
+    }
+
+    private static ByteArrayWrapper key(int i) {
+        return new ByteArrayWrapper(new byte[] {(byte) i});
+    }
+
+    @Test
+    public void testEviction() {
+        PrecompiledResultCache cache = new PrecompiledResultCache(3 * (128 + 1 + 32));
+
+        for (int i = 0; i < 3; i++) {
+            cache.put(key(i), Pair.of(true, new byte[32]));
+        }
+        assertEquals(3, cache.getEntriesCount());
+
+        // touch the eldest one
+        assertNotNull(cache.get(key(0)));
+
+        cache.put(key(3), Pair.of(true, new byte[32]));
+        assertEquals(3, cache.getEntriesCount());
+        assertNull(cache.get(key(1)));
+        assertNotNull(cache.get(key(0)));
+        assertNotNull(cache.get(key(3)));
+
+        // large result pushes out everything else
+        cache.put(key(4), Pair.of(true, new byte[300]));
+        assertEquals(1, cache.getEntriesCount());
+        assertEquals(128 + 1 + 300, cache.getSize());
+
+        cache.setMaxSize(0);
+        assertEquals(0, cache.getEntriesCount());
+        assertFalse(cache.isEnabled());
+    }
+
+    @Test
+    public void testInit() {
+        SystemProperties config = new SystemProperties();
+        config.overrideParams("cache.precompiledCacheSize", "0");
+        PrecompiledContracts.init(config);
+        assertFalse(PrecompiledContracts.getResultCache().isEnabled());
+
+        config.overrideParams("cache.precompiledCacheSize", "1");
+        PrecompiledContracts.init(config);
+        assertTrue(PrecompiledContracts.getResultCache().isEnabled());
+    }
+
+    @Test
+    public void testMemoizedContract() {
+        // 3 * G
+        byte[] input = Hex.decode(
+                "0769bf9ac56bea3ff40232bcb1b6bd159315d84715b8e679f2d355961915abf0" +
+                "2ab799bee0489429554fdb7c8d086475319e63b40b9c5b57cdf1ff3dd9fe2261" +
+                "00000000000000000000000000000000000000000000000000000000deadbee0");
+
+        DataWord addr = DataWord.of("0000000000000000000000000000000000000000000000000000000000000007");
+        CachedContract contract = (CachedContract) PrecompiledContracts.getContractForAddress(addr, byzantiumConfig);
+        long hits = contract.getHits();
+        long misses = contract.getMisses();
+
+        Pair<Boolean, byte[]> first = contract.execute(input);
+        Pair<Boolean, byte[]> second = contract.execute(input);
+        assertEquals(misses + 1, contract.getMisses());
+        assertEquals(hits + 1, contract.getHits());
+        assertTrue(second.getLeft());
+        assertArrayEquals(first.getRight(), second.getRight());
+        assertArrayEquals(contract.getContract().execute(input).getRight(), second.getRight());
+
+        PrecompiledContracts.getResultCache().setEnabled(false);
+        contract.execute(input);
+        assertEquals(hits + 1, contract.getHits());
+        assertEquals(misses + 1, contract.getMisses());
+
+        // same input, other contract
+        DataWord pairingAddr = DataWord.of("0000000000000000000000000000000000000000000000000000000000000008");
+        PrecompiledContracts.getResultCache().setEnabled(true);
+        assertFalse(PrecompiledContracts.getContractForAddress(pairingAddr, byzantiumConfig).execute(input).getLeft());
+    }
+}
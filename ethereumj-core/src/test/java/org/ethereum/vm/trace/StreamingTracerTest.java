@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) [2016] [ <ether.camp> ]
+ * This file is part of the ethereumJ library.
+ *
+ * The ethereumJ library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The ethereumJ library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with the ethereumJ library. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.vm.trace;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.ethereum.config.SystemProperties;
+import org.ethereum.vm.BytecodeCompiler;
+import org.ethereum.vm.VM;
+import org.ethereum.vm.program.Program;
+import org.ethereum.vm.program.invoke.ProgramInvokeMockImpl;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Testing {@link StreamingTracer} output
+ */
+public class StreamingTracerTest {
+
+    private final ProgramInvokeMockImpl invoke = new ProgramInvokeMockImpl();
+
+    @After
+    public void tearDown() {
+        invoke.getRepository().close();
+    }
+
+    private List<JsonNode> trace(String code, StreamingTracer.Detail detail) throws Exception {
+        StringWriter out = new StringWriter();
+        StreamingTracer tracer = new StreamingTracer(out, detail);
+        VM vm = new VM(SystemProperties.getDefault(), tracer);
+        vm.play(new Program(new BytecodeCompiler().compile(code), invoke));
+
+        List<JsonNode> ret = new ArrayList<>();
+        ObjectMapper mapper = new ObjectMapper();
+        for (String line : out.toString().split("\n")) {
+            ret.add(mapper.readTree(line));
+        }
+        return ret;
+    }
+
+    @Test
+    public void testStorageDetail() throws Exception {
+        List<JsonNode> lines = trace("PUSH1 0x2a PUSH1 0x00 MSTORE PUSH1 0x01 PUSH1 0x02 SSTORE STOP",
+                StreamingTracer.Detail.STORAGE);
+
+        assertEquals(9, lines.size());
+        assertTrue(lines.get(0).has("contract"));
+        assertEquals("0x", lines.get(8).get("result").asText());
+
+        JsonNode push = lines.get(1);
+        assertEquals("PUSH1", push.get("op").asText());
+        assertEquals(0, push.get("pc").asInt());
+        assertEquals(0, push.get("depth").asInt());
+        assertEquals("0x2a", push.get("push").get(0).asText());
+
+        JsonNode mstore = lines.get(3);
+        assertEquals("MSTORE", mstore.get("op").asText());
+        assertEquals(2, mstore.get("pop").asInt());
+        assertEquals(32, mstore.get("extend").asInt());
+        assertEquals(0, mstore.get("write").get(0).asInt());
+
+        JsonNode sstore = lines.get(6);
+        assertEquals("SSTORE", sstore.get("op").asText());
+        assertEquals("0x1", sstore.get("put").get("0x2").asText());
+        assertTrue(sstore.get("gas").asLong() < push.get("gas").asLong());
+    }
+
+    @Test
+    public void testOpsDetail() throws Exception {
+        List<JsonNode> lines = trace("PUSH1 0x2a PUSH1 0x00 MSTORE PUSH1 0x01 PUSH1 0x02 SSTORE STOP",
+                StreamingTracer.Detail.OPS);
+
+        assertEquals(9, lines.size());
+        for (JsonNode line : lines.subList(1, 8)) {
+            assertFalse(line.has("push"));
+            assertFalse(line.has("pop"));
+            assertFalse(line.has("write"));
+            assertFalse(line.has("put"));
+        }
+    }
+
+    @Test
+    public void testError() throws Exception {
+        List<JsonNode> lines = trace("PUSH1 0x01 JUMP", StreamingTracer.Detail.STACK);
+
+        assertEquals(4, lines.size());
+        assertEquals("JUMP", lines.get(2).get("op").asText());
+        assertTrue(lines.get(3).get("error").asText().contains("BadJumpDestination"));
+    }
+
+    @Test
+    public void testEscape() throws Exception {
+        String message = "a\\b\"c\nd\re\tf\u0001g";
+        String escaped = StreamingTracer.escape(message);
+        assertEquals("a\\\\b\\\"c\\nd\\u000de\\u0009f\\u0001g", escaped);
+        assertEquals(message, new ObjectMapper().readTree("\"" + escaped + "\"").asText());
+    }
+}